@@ -0,0 +1,80 @@
+package com.company.wallet.archive;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+/**
+ * Transaction stored in an archive segment.
+ * <p>
+ * Type and currency are kept by id (and currency name), they are resolved to entities when transaction is read.
+ * Creation time is kept with fraction of seconds, as it is in the database, so keyset pagination works across archive and database.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class ArchivedTransaction {
+
+    private final int walletId;
+    private final int id;
+    private final String globalId;
+    private final String typeId;
+    private final BigDecimal amount;
+    private final int currencyId;
+    private final String currencyName;
+    private final String description;
+    private final Timestamp lastUpdated;
+    private final String lastUpdatedBy;
+
+    public ArchivedTransaction(int walletId, int id, String globalId, String typeId, BigDecimal amount, int currencyId,
+                               String currencyName, String description, Timestamp lastUpdated, String lastUpdatedBy) {
+        this.walletId = walletId;
+        this.id = id;
+        this.globalId = globalId;
+        this.typeId = typeId;
+        this.amount = amount;
+        this.currencyId = currencyId;
+        this.currencyName = currencyName;
+        this.description = description;
+        this.lastUpdated = lastUpdated;
+        this.lastUpdatedBy = lastUpdatedBy;
+    }
+
+    public int getWalletId() {
+        return walletId;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getGlobalId() {
+        return globalId;
+    }
+
+    public String getTypeId() {
+        return typeId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public int getCurrencyId() {
+        return currencyId;
+    }
+
+    public String getCurrencyName() {
+        return currencyName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Timestamp getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public String getLastUpdatedBy() {
+        return lastUpdatedBy;
+    }
+}
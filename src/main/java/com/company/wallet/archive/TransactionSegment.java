@@ -0,0 +1,154 @@
+package com.company.wallet.archive;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read only archive segment: transactions of a range of wallets created in one month (see TransactionSegmentWriter).
+ * <p>
+ * Data file is a sequence of blocks [raw length][compressed length][deflated records], every block holds
+ * transactions of one wallet ordered by creation time and id.
+ * Index file is [magic][number of entries] followed by entries [wallet id][block offset][block length], ordered by wallet id.
+ * Index file is memory-mapped and searched by binary search, only blocks of the requested wallet are read and inflated.
+ * </p>
+ * <p>
+ * Segment can be read by several threads at once.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class TransactionSegment implements Closeable {
+
+    static final int MAGIC = 0x57545331;
+    static final int INDEX_HEADER_SIZE = 8;
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int BLOCK_HEADER_SIZE = 8;
+
+    private final FileChannel data;
+    private final MappedByteBuffer index;
+    private final int entries;
+
+    /**
+     * @param dataFile data file written by TransactionSegmentWriter
+     * @param indexFile index file written by TransactionSegmentWriter
+     * @throws IOException if files can't be opened or index file is not a segment index
+     */
+    public TransactionSegment(Path dataFile, Path indexFile) throws IOException {
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        }
+        if (index.capacity() < INDEX_HEADER_SIZE || index.getInt(0) != MAGIC) {
+            throw new IOException("Not a transaction segment index: " + indexFile);
+        }
+        entries = index.getInt(4);
+        data = FileChannel.open(dataFile, StandardOpenOption.READ);
+    }
+
+    /**
+     * @return transactions of the wallet ordered by creation time and id, empty list if there are none
+     * @throws IOException if data file can't be read or is corrupted
+     */
+    public List<ArchivedTransaction> find(int walletId) throws IOException {
+        List<ArchivedTransaction> result = new ArrayList<>();
+        for (int entry = firstEntry(walletId); entry < entries && walletIdAt(entry) == walletId; entry++) {
+            int position = INDEX_HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+            readBlock(walletId, index.getLong(position + 4), index.getInt(position + 12), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return number of index entries (blocks)
+     */
+    public int getBlocks() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    //first entry with wallet id not less than walletId
+    private int firstEntry(int walletId) {
+        int low = 0;
+        int high = entries;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (walletIdAt(middle) < walletId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int walletIdAt(int entry) {
+        return index.getInt(INDEX_HEADER_SIZE + entry * INDEX_ENTRY_SIZE);
+    }
+
+    private void readBlock(int walletId, long offset, int length, List<ArchivedTransaction> result) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(length);
+        while (block.hasRemaining()) {
+            if (data.read(block, offset + block.position()) < 0) {
+                throw new EOFException("Transaction segment block is truncated at " + offset);
+            }
+        }
+        block.flip();
+        int rawLength = block.getInt();
+        int compressedLength = block.getInt();
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block.array(), BLOCK_HEADER_SIZE, compressedLength);
+            if (inflater.inflate(raw) != rawLength) {
+                throw new IOException("Transaction segment block is corrupted at " + offset);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Transaction segment block is corrupted at " + offset, e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        while (in.hasRemaining()) {
+            result.add(decode(walletId, in));
+        }
+    }
+
+    private static ArchivedTransaction decode(int walletId, ByteBuffer in) {
+        int id = in.getInt();
+        Timestamp lastUpdated = new Timestamp(in.getLong() * 1000);
+        lastUpdated.setNanos(in.getInt());
+        int currencyId = in.getInt();
+        String globalId = readString(in);
+        String typeId = readString(in);
+        BigDecimal amount = new BigDecimal(readString(in));
+        String currencyName = readString(in);
+        String description = readString(in);
+        String lastUpdatedBy = readString(in);
+        return new ArchivedTransaction(walletId, id, globalId, typeId, amount, currencyId, currencyName, description, lastUpdated, lastUpdatedBy);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,149 @@
+package com.company.wallet.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+
+/**
+ * Writes archive segment files (see TransactionSegment for the layout).
+ * <p>
+ * Transactions must be appended in order of wallet id, creation time and id. Records of a wallet are collected
+ * into a block of up to 'blockSize' transactions, which is compressed and appended to the data file.
+ * Index is written and both files are forced to disk on close. Files are never changed after close.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class TransactionSegmentWriter implements Closeable {
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final int blockSize;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream blockOut = new DataOutputStream(block);
+    private final ByteArrayOutputStream indexEntries = new ByteArrayOutputStream();
+    private final DataOutputStream indexOut = new DataOutputStream(indexEntries);
+
+    private int walletId = Integer.MIN_VALUE;
+    private int blockTransactions;
+    private long dataPosition;
+    private int entries;
+    private int transactions;
+
+    /**
+     * Creates data and index files, they must not exist.
+     * @param blockSize max number of transactions in a block
+     */
+    public TransactionSegmentWriter(Path dataFile, Path indexFile, int blockSize) throws IOException {
+        this.blockSize = blockSize;
+        data = FileChannel.open(dataFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @throws IllegalArgumentException if transaction has smaller wallet id than the previous one
+     */
+    public void append(ArchivedTransaction transaction) throws IOException {
+        if (transaction.getWalletId() < walletId) {
+            throw new IllegalArgumentException("Transactions must be ordered by wallet id: " + transaction.getWalletId() + " after " + walletId);
+        }
+        if (transaction.getWalletId() != walletId || blockTransactions == blockSize) {
+            writeBlock();
+            walletId = transaction.getWalletId();
+        }
+        encode(transaction);
+        blockTransactions++;
+        transactions++;
+    }
+
+    /**
+     * @return number of appended transactions
+     */
+    public int getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+            ByteBuffer header = ByteBuffer.allocate(TransactionSegment.INDEX_HEADER_SIZE);
+            header.putInt(TransactionSegment.MAGIC).putInt(entries).flip();
+            writeFully(index, header);
+            writeFully(index, ByteBuffer.wrap(indexEntries.toByteArray()));
+            data.force(true);
+            index.force(true);
+        } finally {
+            deflater.end();
+            data.close();
+            index.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockTransactions == 0) {
+            return;
+        }
+        blockOut.flush();
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            compressed.write(buffer, 0, length);
+        }
+        ByteBuffer out = ByteBuffer.allocate(TransactionSegment.BLOCK_HEADER_SIZE + compressed.size());
+        out.putInt(raw.length).putInt(compressed.size()).put(compressed.toByteArray()).flip();
+        int length = out.remaining();
+        writeFully(data, out);
+
+        indexOut.writeInt(walletId);
+        indexOut.writeLong(dataPosition);
+        indexOut.writeInt(length);
+        entries++;
+        dataPosition += length;
+        block.reset();
+        blockTransactions = 0;
+    }
+
+    private void encode(ArchivedTransaction transaction) throws IOException {
+        blockOut.writeInt(transaction.getId());
+        blockOut.writeLong(Math.floorDiv(transaction.getLastUpdated().getTime(), 1000L));
+        blockOut.writeInt(transaction.getLastUpdated().getNanos());
+        blockOut.writeInt(transaction.getCurrencyId());
+        writeString(transaction.getGlobalId());
+        writeString(transaction.getTypeId());
+        writeString(transaction.getAmount().toPlainString());
+        writeString(transaction.getCurrencyName());
+        writeString(transaction.getDescription());
+        writeString(transaction.getLastUpdatedBy());
+    }
+
+    //length prefixed UTF-8, -1 for null
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            blockOut.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        blockOut.writeInt(bytes.length);
+        blockOut.write(bytes);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.company.wallet.controller;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream of a CSV export (GET /transactions/export), optionally gzip-compressed.
+ * <p>
+ * Response headers are set and the gzip stream is opened on the first write, so an export rejected before any byte is written
+ * (e.g. wallet not found) is answered with the usual JSON error, not with a CSV or gzip header in front of it.
+ * </p>
+ * @author Elena Medvedeva
+ */
+final class CsvExportStream extends OutputStream {
+
+    static final String CSV_CONTENT_TYPE = "text/csv;charset=UTF-8";
+
+    static final String GZIP_CONTENT_TYPE = "application/gzip";
+
+    private final HttpServletResponse response;
+    private final String fileName;
+    private final boolean gzip;
+    private OutputStream out;
+
+    CsvExportStream(HttpServletResponse response, String fileName, boolean gzip) {
+        this.response = response;
+        this.fileName = fileName;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        open().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        open().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the end of the gzip stream and flushes the response, the response stream is closed by the servlet container.
+     */
+    void finish() throws IOException {
+        OutputStream stream = open();
+        if (stream instanceof GZIPOutputStream) {
+            ((GZIPOutputStream) stream).finish();
+        }
+        stream.flush();
+    }
+
+    private OutputStream open() throws IOException {
+        if (out == null) {
+            response.setContentType(gzip ? GZIP_CONTENT_TYPE : CSV_CONTENT_TYPE);
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + (gzip ? ".csv.gz" : ".csv") + "\"");
+            out = gzip ? new GZIPOutputStream(response.getOutputStream(), 64 * 1024) : response.getOutputStream();
+        }
+        return out;
+    }
+}
@@ -0,0 +1,142 @@
+package com.company.wallet.controller;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.gson.JsonResponseWriter;
+import com.company.wallet.gson.adapter.RejectedRowTypeAdapter;
+import com.company.wallet.gson.adapter.TransactionImportTypeAdapter;
+import com.company.wallet.service.TransactionImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Restful controller for bulk import of historical transactions from CSV, see TransactionImportService.
+ * <p>
+ * Example: POST /imports?name=2017 creates import 1, POST /imports/1/rows with CSV body
+ * (globalId,walletId,currency,transactionTypeId,amount,description,createdAt) loads rows,
+ * POST /imports/1/complete starts the import, GET /imports/1 shows its progress and GET /imports/1/rejected the rejected rows.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@RestController
+class ImportController {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionImportService transactionImportService;
+
+    /**
+     * Creates import with status LOADING.
+     * @param name name of the import, e.g. name of the source file
+     * @param response http response to write import to, in JSON format
+     * @throws WalletException if the write mode doesn't support imports
+     * @throws IOException if response couldn't be written
+     */
+    @PostMapping(
+            value = "/imports",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void createImport(@RequestParam(value = "name", required = false) String name, HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called ImportController.createImport with name={}", name);
+        TransactionImport transactionImport = transactionImportService.create(name);
+        logger.info("Transaction import created with id=" + transactionImport.getId());
+        JsonResponseWriter.write(response, TransactionImportTypeAdapter.INSTANCE, transactionImport);
+    }
+
+    /**
+     * Loads CSV rows into the import, request body is streamed into the database without being parsed.
+     * Can be called several times for one import, e.g. once per file.
+     * @param id import id
+     * @param header true if the first line of the body is a header
+     * @param request http request with CSV body
+     * @param response http response to write import to, in JSON format
+     * @throws WalletException if import is not found, is not LOADING or CSV is malformed
+     * @throws IOException if request couldn't be read or response couldn't be written
+     */
+    @PostMapping(
+            value = "/imports/{id}/rows",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void loadRows(@PathVariable("id") int id,
+                         @RequestParam(value = "header", defaultValue = "true") boolean header,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called ImportController.loadRows with id={}, header={}", id, header);
+        TransactionImport transactionImport = transactionImportService.loadRows(id, request.getInputStream(), header);
+        JsonResponseWriter.write(response, TransactionImportTypeAdapter.INSTANCE, transactionImport);
+    }
+
+    /**
+     * Starts the import in the background (202 Accepted), also resumes a failed import from the last committed chunk.
+     * @param id import id
+     * @param response http response to write import to, in JSON format
+     * @throws WalletException if import is not found, is running or completed
+     * @throws IOException if response couldn't be written
+     */
+    @PostMapping(
+            value = "/imports/{id}/complete",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void completeImport(@PathVariable("id") int id, HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called ImportController.completeImport with id={}", id);
+        TransactionImport transactionImport = transactionImportService.complete(id);
+        response.setStatus(HttpStatus.ACCEPTED.value());
+        JsonResponseWriter.write(response, TransactionImportTypeAdapter.INSTANCE, transactionImport);
+    }
+
+    /**
+     * @param id import id
+     * @param response http response to write import with its status, stage, progress and row counters to, in JSON format
+     * @throws WalletException if import is not found
+     * @throws IOException if response couldn't be written
+     */
+    @GetMapping(
+            value = "/imports/{id}",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void getImport(@PathVariable("id") int id, HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called ImportController.getImport with id={}", id);
+        JsonResponseWriter.write(response, TransactionImportTypeAdapter.INSTANCE, transactionImportService.find(id));
+    }
+
+    /**
+     * Returns page of rejected rows ordered by row number, the next page starts after the last returned row.
+     * @param id import id
+     * @param after row number, 0 for the first page
+     * @param limit max number of rows in the page (application.transaction.page.max-limit if not set)
+     * @param response http response to write rejected rows to, in JSON format
+     * @throws WalletException if import is not found or limit is out of range
+     * @throws IOException if response couldn't be written
+     */
+    @GetMapping(
+            value = "/imports/{id}/rejected",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void getRejectedRows(@PathVariable("id") int id,
+                                @RequestParam(value = "after", defaultValue = "0") long after,
+                                @RequestParam(value = "limit", required = false) Integer limit,
+                                HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called ImportController.getRejectedRows with id={}, after={}, limit={}", id, after, limit);
+        JsonResponseWriter.writeArray(response, RejectedRowTypeAdapter.INSTANCE, transactionImportService.findRejectedRows(id, after, limit));
+    }
+
+    /**
+     * Removes the import and its staging table, imported transactions are kept.
+     * @param id import id
+     * @throws WalletException if import is not found or is running
+     */
+    @DeleteMapping(value = "/imports/{id}")
+    public void deleteImport(@PathVariable("id") int id) throws WalletException {
+        logger.debug("Called ImportController.deleteImport with id={}", id);
+        transactionImportService.delete(id);
+    }
+}
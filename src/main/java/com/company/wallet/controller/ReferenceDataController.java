@@ -0,0 +1,42 @@
+package com.company.wallet.controller;
+
+import com.company.wallet.service.ReferenceDataRegistry;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Restful controller for managing reference data (currencies and transaction types)
+ * @author Elena Medvedeva
+ */
+@RestController
+class ReferenceDataController {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    /**
+     * Reloads currencies and transaction types from the database, e.g. after a new currency was added.
+     * @return number of loaded currencies and transaction types in JSON format
+     */
+    @PostMapping(
+            value = "/reference-data/refresh",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    @ResponseBody
+    public String refresh() {
+        logger.debug("Called ReferenceDataController.refresh");
+        referenceData.refresh();
+        JsonObject result = new JsonObject();
+        result.addProperty("currencies", referenceData.getCurrencies().size());
+        result.addProperty("transactionTypes", referenceData.getTransactionTypes().size());
+        return result.toString();
+    }
+}
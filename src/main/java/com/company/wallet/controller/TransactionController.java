@@ -1,21 +1,32 @@
 package com.company.wallet.controller;
 
 import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.WalletException;
-import com.company.wallet.gson.adapter.HibernateProxyTypeAdapter;
-import com.company.wallet.gson.exclusion.ExcludeField;
-import com.company.wallet.gson.exclusion.GsonExclusionStrategy;
+import com.company.wallet.gson.JsonResponseWriter;
+import com.company.wallet.gson.adapter.TransactionTypeAdapter;
 import com.company.wallet.helper.Helper;
+import com.company.wallet.service.BatchMode;
+import com.company.wallet.service.TransactionPage;
+import com.company.wallet.service.TransactionResult;
 import com.company.wallet.service.TransactionService;
+import com.company.wallet.service.WalletService;
 import com.company.wallet.view.model.TransactionModel;
-import com.google.gson.GsonBuilder;
+import com.company.wallet.view.model.TransferModel;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -26,26 +37,61 @@ import java.util.List;
 @RestController
 public class TransactionController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private WalletService walletService;
+
     @Autowired
     private Helper inputParametersValidator;
 
+    /**
+     * Returns wallet transactions ordered by creation time and transaction id.
+     * <p>
+     * Without parameters 'after' and 'limit' all transactions of the wallet are returned, as before paging was added.
+     * If any of them is set, one page is returned; if there are more transactions, response has header X-Next-Cursor,
+     * its value should be passed as parameter 'after' to get the next page.
+     * </p>
+     * <p>
+     * Response has header ETag (see WalletETag), taken from the cached wallet. If request header If-None-Match
+     * has the current ETag, response is 304 Not Modified without body and transactions are not selected.
+     * </p>
+     * @param id wallet id
+     * @param after cursor of the page, not set for the first page
+     * @param limit max number of transactions in the page (application.transaction.page.default-limit if not set but 'after' is set)
+     * @param webRequest request, to check If-None-Match
+     * @param response http response to write transactions to, in JSON format
+     * @throws WalletException if wallet is not found, cursor is malformed or limit is out of range
+     * @throws IOException if response couldn't be written
+     */
     @GetMapping(
             value = "/wallets/{id}/transactions",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    @ResponseBody
-    public String getWalletTransactionsById( @PathVariable("id") int id) throws WalletException, ClassNotFoundException {
-        logger.debug("Called TransactionController.getWalletTransactionsById with parameter walletId={}",id);
-        List<Transaction> transactionList = transactionService.getTransactionsByWalletId(id);
-        return new GsonBuilder().
-                setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_WALLET)).
-                create().toJson(transactionList);
-
+    public void getWalletTransactionsById(@PathVariable("id") int id,
+                                          @RequestParam(value = "after", required = false) String after,
+                                          @RequestParam(value = "limit", required = false) Integer limit,
+                                          WebRequest webRequest,
+                                          HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called TransactionController.getWalletTransactionsById with parameter walletId={}, after={}, limit={}", id, after, limit);
+        Wallet wallet = walletService.findByIdCached(id);
+        if (WalletETag.checkNotModified(webRequest, wallet)) {
+            return;
+        }
+        if (after == null && limit == null) {
+            JsonResponseWriter.writeArray(response, TransactionTypeAdapter.WITHOUT_WALLET, transactionService.getTransactionsByWalletId(id));
+            return;
+        }
+        TransactionPage page = transactionService.getTransactionsPage(id, after, limit);
+        if (page.getNextCursor() != null) {
+            response.setHeader(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        JsonResponseWriter.writeArray(response, TransactionTypeAdapter.WITHOUT_WALLET, page.getTransactions());
     }
 
     /**
@@ -59,17 +105,16 @@ public class TransactionController {
      * </p>
      * @param transactionModel contains input parameters in the following format:
      *                {"globalId":"123","currency":"EUR","walletId": "1","transactionTypeId":"C","amount":"100","description":"add money"}
-     * @return created transaction in JSON format
+     * @param response http response to write created transaction to, in JSON format
      * @throws WalletException when couldn't create transaction (e.g. globalId not unique, not enough funds on wallet balance, etc.)
-     * @throws ClassNotFoundException
+     * @throws IOException if response couldn't be written
      */
 
     @PostMapping(
             value = "/transactions",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    @ResponseBody
-    public String createWalletTransaction(@Valid @RequestBody TransactionModel transactionModel) throws WalletException, ClassNotFoundException {
+    public void createWalletTransaction(@Valid @RequestBody TransactionModel transactionModel, HttpServletResponse response) throws WalletException, IOException {
         logger.debug("Called TransactionController.createWalletTransaction" );
 
 
@@ -77,8 +122,106 @@ public class TransactionController {
                 transactionModel.getTransactionTypeId(),transactionModel.getAmount(),transactionModel.getDescription());
         logger.info("Transaction created with id=" + transaction.getId() );
 
-        return new GsonBuilder().registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY).
-                setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS)).
-                create().toJson(transaction);
+        JsonResponseWriter.write(response, TransactionTypeAdapter.WITH_WALLET, transaction);
+    }
+
+    /**
+     * Transfers money from one wallet to another.
+     * <p>
+     * Example of JSON body
+     * {"globalId":"125","currency":"EUR","fromWalletId": "1","toWalletId": "2","amount":"100","description":"transfer money"}
+     * </p>
+     * @param transferModel contains input parameters in the format above
+     * @param response http response to write created debit and credit transactions to, in JSON format
+     * @throws WalletException when couldn't create transfer (e.g. globalId not unique, not enough funds on wallet balance, etc.)
+     * @throws IOException if response couldn't be written
+     */
+    @PostMapping(
+            value = "/transfers",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void createTransfer(@Valid @RequestBody TransferModel transferModel, HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called TransactionController.createTransfer");
+
+        List<Transaction> transactions = transactionService.createTransfer(transferModel.getGlobalId(), transferModel.getCurrency(), transferModel.getFromWalletId(),
+                transferModel.getToWalletId(), transferModel.getAmount(), transferModel.getDescription());
+        logger.info("Transfer created with globalId=" + transferModel.getGlobalId());
+
+        JsonResponseWriter.writeArray(response, TransactionTypeAdapter.WITH_WALLET, transactions);
+    }
+
+    /**
+     * Creates batch of wallet transactions.
+     * <p>
+     * Example of JSON body
+     * [{"globalId":"123","currency":"EUR","walletId": "1","transactionTypeId":"C","amount":"100","description":"add money"},
+     *  {"globalId":"124","currency":"EUR","walletId": "2","transactionTypeId":"D","amount":"10","description":"withdraw money"}]
+     *
+     * mode=PER_ITEM (default) - valid transactions are created, result of every transaction is returned:
+     * [{"index":0,"status":200,"transaction":{...}},{"index":1,"status":400,"message":"Wallet 2 has not enough funds ..."}]
+     * mode=ALL_OR_NOTHING - all transactions are created, or none of them if any transaction is invalid (error is returned as for single transaction).
+     * </p>
+     * @param transactionModels transactions in the same format as for POST /transactions
+     * @param mode ALL_OR_NOTHING or PER_ITEM
+     * @param response http response to write results of transactions to, in JSON format, in the same order
+     * @throws WalletException when couldn't create batch
+     * @throws IOException if response couldn't be written
+     */
+    @PostMapping(
+            value = "/transactions/batch",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void createWalletTransactions(@RequestBody List<TransactionModel> transactionModels,
+                                         @RequestParam(value = "mode", defaultValue = "PER_ITEM") BatchMode mode,
+                                         HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called TransactionController.createWalletTransactions with {} transactions, mode={}", transactionModels.size(), mode);
+
+        List<TransactionResult> results = transactionService.createTransactions(transactionModels, mode);
+
+        JsonWriter writer = JsonResponseWriter.open(response);
+        writer.beginArray();
+        for (int i = 0; i < results.size(); i++) {
+            TransactionResult result = results.get(i);
+            writer.beginObject();
+            writer.name("index").value(i);
+            if (result.isSuccess()) {
+                writer.name("status").value(HttpStatus.OK.value());
+                writer.name("transaction");
+                TransactionTypeAdapter.WITH_WALLET.write(writer, result.getTransaction());
+            } else {
+                writer.name("status").value(result.getError().getErrorCode());
+                writer.name("message").value(result.getError().getMessage());
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    /**
+     * Exports transactions of a wallet and/or a day as CSV, e.g. GET /transactions/export?walletId=1&date=2018-07-01&gzip=true.
+     * <p>
+     * Rows are written by PostgreSQL COPY (SELECT ...) TO STDOUT and piped from the database connection to the response,
+     * so neither Transaction entities nor the whole CSV are kept in memory. With gzip=true the response is a .csv.gz file.
+     * Columns: id, global_id, wallet_id, currency, type_id, amount, description, last_updated, last_updated_by.
+     * </p>
+     * @param walletId wallet id, transactions of all wallets if not set
+     * @param date day of creation (yyyy-MM-dd), all days if not set
+     * @param gzip true to compress the CSV
+     * @param response http response to write CSV to
+     * @throws WalletException if neither walletId nor date is set, wallet is not found or the day is archived
+     * @throws IOException if response couldn't be written
+     */
+    @GetMapping(value = "/transactions/export")
+    public void exportTransactions(@RequestParam(value = "walletId", required = false) Integer walletId,
+                                   @RequestParam(value = "date", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                   @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                                   HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called TransactionController.exportTransactions with walletId={}, date={}, gzip={}", walletId, date, gzip);
+        String fileName = "transactions" + (walletId == null ? "" : "-" + walletId) + (date == null ? "" : "-" + date);
+        CsvExportStream out = new CsvExportStream(response, fileName, gzip);
+        long count = transactionService.exportTransactions(walletId, date, out);
+        out.finish();
+        logger.info("Exported {} transactions with walletId={}, date={}", count, walletId, date);
     }
 }
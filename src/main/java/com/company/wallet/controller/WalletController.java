@@ -1,21 +1,25 @@
 package com.company.wallet.controller;
 
+import com.company.wallet.entities.Transaction;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.WalletException;
-import com.company.wallet.gson.adapter.HibernateProxyTypeAdapter;
-import com.company.wallet.gson.exclusion.ExcludeField;
-import com.company.wallet.gson.exclusion.GsonExclusionStrategy;
+import com.company.wallet.gson.JsonResponseWriter;
+import com.company.wallet.gson.adapter.WalletTypeAdapter;
 import com.company.wallet.helper.Helper;
 import com.company.wallet.view.model.WalletModel;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.MediaType;
+import org.springframework.web.context.request.WebRequest;
 import com.company.wallet.service.WalletService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
@@ -47,49 +51,127 @@ class WalletController {
     value = "/wallets",
     produces = MediaType.APPLICATION_JSON_VALUE
     )
-    @ResponseBody
-    public String getAll() throws WalletException, ClassNotFoundException {
+    public void getAll(HttpServletResponse response) throws WalletException, IOException {
         logger.debug("Called WalletController.getAll");
-        return new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS))
-                .create().toJson(walletService.findAll());
+        JsonResponseWriter.writeArray(response, WalletTypeAdapter.WITHOUT_TRANSACTIONS, walletService.findAll());
+    }
+
+    /**
+     * Streams all wallets as JSON array, in the same format as GET /wallets.
+     * <p>
+     * Wallets are read through a database cursor and written to the response one by one,
+     * so memory use doesn't depend on the number of wallets and first bytes are sent before all wallets are read.
+     * </p>
+     * @param response http response to write wallets to
+     * @throws WalletException
+     * @throws IOException if response couldn't be written
+     */
+    @GetMapping(
+            value = "/wallets/export",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void exportAll(HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called WalletController.exportAll");
+        JsonWriter writer = JsonResponseWriter.open(response);
+        writer.beginArray();
+        walletService.forEachWallet(wallet -> {
+            try {
+                WalletTypeAdapter.WITHOUT_TRANSACTIONS.write(writer, wallet);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.endArray();
+        writer.flush();
     }
 
+    /**
+     * Returns wallet without its transaction history.
+     * <p>
+     * The most recent transactions can be embedded with parameter recentTransactions,
+     * they are selected by one bounded query and written newest first in field 'transactions'.
+     * Use GET /wallets/{id}/transactions to read the whole history page by page.
+     * </p>
+     * <p>
+     * Response has header ETag (see WalletETag). If request header If-None-Match has the current ETag,
+     * response is 304 Not Modified without body, then cached wallet is not serialized and transactions are not selected.
+     * </p>
+     * @param id wallet id
+     * @param recentTransactions number of the most recent transactions to embed, none if not set
+     * @param webRequest request, to check If-None-Match
+     * @param response http response to write wallet to, in JSON format
+     * @throws WalletException if wallet is not found or recentTransactions is out of range
+     * @throws IOException if response couldn't be written
+     */
     @GetMapping(
             value = "/wallets/{id}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    @ResponseBody
-    public String getWalletById( @PathVariable("id") int id) throws WalletException, ClassNotFoundException {
-        logger.debug("Called WalletController.getWalletById with id={}",id);
-        Wallet wallet = walletService.findById(id);
-        return new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_WALLET))
-                .create().toJson(wallet);
+    public void getWalletById( @PathVariable("id") int id,
+                               @RequestParam(value = "recentTransactions", required = false) Integer recentTransactions,
+                               WebRequest webRequest,
+                               HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called WalletController.getWalletById with id={}, recentTransactions={}",id,recentTransactions);
+        Wallet wallet = walletService.findByIdCached(id);
+        if (WalletETag.checkNotModified(webRequest, wallet)) {
+            return;
+        }
+        if (recentTransactions == null) {
+            JsonResponseWriter.write(response, WalletTypeAdapter.WITHOUT_TRANSACTIONS, wallet);
+            return;
+        }
+        List<Transaction> transactions = walletService.findRecentTransactions(id, recentTransactions);
+        JsonWriter writer = JsonResponseWriter.open(response);
+        WalletTypeAdapter.writeWithTransactions(writer, wallet, transactions);
+        writer.flush();
     }
 
     @GetMapping(
             value = "/wallets/user",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    @ResponseBody
-    public String getWalletsByUserId( @RequestParam("userId") String userId) throws WalletException, ClassNotFoundException {
+    public void getWalletsByUserId( @RequestParam("userId") String userId, HttpServletResponse response) throws WalletException, IOException {
         logger.debug("Called WalletController.getWalletsByUserId with userId={}",userId);
-        List<Wallet> wallets = walletService.findByUserId(userId);
-        return new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS))
-                .create().toJson(wallets);
+        List<Wallet> wallets = walletService.findByUserIdCached(userId);
+        JsonResponseWriter.writeArray(response, WalletTypeAdapter.WITHOUT_TRANSACTIONS, wallets);
     }
 
     /**
      * Creates new wallet.currency must be provided. In the form {"userId":"user",currency":"EUR"}
      * @param walletModel Expecting currency to be set, e. g. {"userId":"user","currency":"EUR"}. Expects WalletModel in JSON format.
-     * @return new wallet in JSON format
+     * @param response http response to write new wallet to, in JSON format
      * @throws WalletException when failed to create wallet
+     * @throws IOException if response couldn't be written
      */
     @PostMapping(value = "/wallets",  produces = MediaType.APPLICATION_JSON_VALUE)
-    @ResponseBody
-    public String createWallet(@Valid @RequestBody WalletModel walletModel) throws WalletException {
+    public void createWallet(@Valid @RequestBody WalletModel walletModel, HttpServletResponse response) throws WalletException, IOException {
         logger.debug("Called WalletController.createWallet");
         Wallet wallet = walletService.createWallet(walletModel.getUserId(),walletModel.getCurrency());
-        return new GsonBuilder().registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY).create().toJson(wallet);
+        JsonResponseWriter.write(response, WalletTypeAdapter.WITH_TRANSACTIONS, wallet);
+    }
+
+    /**
+     * Sets number of balance slots of a hot wallet, e.g. PUT /wallets/1/balance-slots?count=8.
+     * <p>
+     * Credits of the wallet update one of count slots instead of the wallet row, so they don't wait for each other.
+     * Balance of the wallet doesn't change, count=0 keeps the whole balance in the wallet row again.
+     * </p>
+     * @param id wallet id
+     * @param count number of slots, between 0 and application.wallet.balance-slots.max
+     * @param response http response to write wallet to, in JSON format
+     * @throws WalletException if wallet is not found, count is out of range or the write mode doesn't support slots
+     * @throws IOException if response couldn't be written
+     */
+    @PutMapping(
+            value = "/wallets/{id}/balance-slots",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public void setBalanceSlots(@PathVariable("id") int id,
+                                @RequestParam("count") int count,
+                                HttpServletResponse response) throws WalletException, IOException {
+        logger.debug("Called WalletController.setBalanceSlots with id={}, count={}", id, count);
+        Wallet wallet = walletService.setBalanceSlots(id, count);
+        JsonResponseWriter.write(response, WalletTypeAdapter.WITHOUT_TRANSACTIONS, wallet);
     }
 
 }
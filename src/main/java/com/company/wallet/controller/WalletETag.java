@@ -0,0 +1,39 @@
+package com.company.wallet.controller;
+
+import com.company.wallet.entities.Wallet;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Strong ETag of wallet resources (GET /wallets/{id}, GET /wallets/{id}/transactions), derived from wallet id and version.
+ * <p>
+ * Wallet version is incremented by every balance update in the same database transaction which inserts the transaction,
+ * and when a partition with transactions of the wallet is detached or archived (see TransactionRepositoryCustom.detachPartition),
+ * so neither the wallet nor its transaction list can change without a new version.
+ * Version is taken from the wallet snapshot of WalletCache, so unchanged resources are answered without database access.
+ * </p>
+ * @author Elena Medvedeva
+ */
+final class WalletETag {
+
+    private WalletETag() {
+    }
+
+    /**
+     * @return ETag of the wallet, null if wallet has no version yet
+     */
+    static String of(Wallet wallet) {
+        if (wallet.getId() == null || wallet.getVersion() == null) {
+            return null;
+        }
+        return "\"" + wallet.getId() + "-" + wallet.getVersion() + "\"";
+    }
+
+    /**
+     * Sets header ETag and checks header If-None-Match of the request.
+     * @return true if client has the current representation, response status is set to 304 and nothing should be written
+     */
+    static boolean checkNotModified(WebRequest request, Wallet wallet) {
+        String eTag = of(wallet);
+        return eTag != null && request.checkNotModified(eTag);
+    }
+}
@@ -0,0 +1,35 @@
+package com.company.wallet.datasource;
+
+/**
+ * Id of the client of the current request, used to route reads of the client to the primary after its writes
+ * (see ReplicaRoutingDataSource).
+ * <p>
+ * Set by ClientContextFilter from request header X-Client-Id, null if the header is not sent.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public final class ClientContext {
+
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private static final ThreadLocal<String> CLIENT_ID = new ThreadLocal<>();
+
+    private ClientContext() {
+    }
+
+    public static String getClientId() {
+        return CLIENT_ID.get();
+    }
+
+    public static void setClientId(String clientId) {
+        if (clientId == null) {
+            CLIENT_ID.remove();
+        } else {
+            CLIENT_ID.set(clientId);
+        }
+    }
+
+    public static void clear() {
+        CLIENT_ID.remove();
+    }
+}
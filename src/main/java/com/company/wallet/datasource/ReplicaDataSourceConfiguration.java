@@ -0,0 +1,98 @@
+package com.company.wallet.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas, enabled if 'application.datasource.replica.urls' is set.
+ * <p>
+ * Replaces DataSource of Spring Boot with ReplicaRoutingDataSource over the primary (spring.datasource.*)
+ * and replicas (application.datasource.replica.*), wrapped into LazyConnectionDataSourceProxy.
+ * Transactions with readOnly = true are executed on replicas, all other work (including Flyway) on the primary.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Configuration
+@PropertySource("classpath:application.properties")
+@ConditionalOnProperty(prefix = "application.datasource.replica", name = "urls")
+class ReplicaDataSourceConfiguration {
+
+    @Value("${application.datasource.replica.urls}")
+    private String[] urls;
+
+    @Value("${application.datasource.replica.username:${spring.datasource.username:}}")
+    private String username;
+
+    @Value("${application.datasource.replica.password:${spring.datasource.password:}}")
+    private String password;
+
+    @Value("${application.datasource.replica.pool-size:10}")
+    private int poolSize;
+
+    @Value("${application.datasource.replica.health-check-interval-ms:5000}")
+    private long healthCheckIntervalMs;
+
+    @Value("${application.datasource.replica.max-lag-ms:1000}")
+    private long maxLagMs;
+
+    @Value("${application.datasource.replica.lag-query:}")
+    private String lagQuery;
+
+    @Value("${application.datasource.read-your-writes-ms:2000}")
+    private long readYourWritesMs;
+
+    @Bean(initMethod = "init", destroyMethod = "close")
+    ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("wallet-primary");
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("wallet-replica-" + i);
+            replica.setJdbcUrl(urls[i].trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, replicas);
+        routingDataSource.setReadYourWritesMs(readYourWritesMs);
+        routingDataSource.setHealthCheckIntervalMs(healthCheckIntervalMs);
+        routingDataSource.setMaxLagMs(maxLagMs);
+        routingDataSource.setLagQuery(lagQuery);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("wallet.datasource.replicas.healthy", routingDataSource, ReplicaRoutingDataSource::getHealthyReplicas)
+                    .description("Number of replicas used for reads")
+                    .register(registry);
+        }
+        return routingDataSource;
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    ClientContextFilter clientContextFilter() {
+        return new ClientContextFilter();
+    }
+}
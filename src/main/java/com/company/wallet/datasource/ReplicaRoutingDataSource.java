@@ -0,0 +1,247 @@
+package com.company.wallet.datasource;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataSource which sends read only transactions to replicas and everything else to the primary.
+ * <p>
+ * Routing is decided when connection is requested, so the DataSource must be wrapped into LazyConnectionDataSourceProxy:
+ * then connection is requested at the first statement, when read only flag of the transaction is already set
+ * (TransactionSynchronizationManager.isCurrentTransactionReadOnly).
+ * Replicas are used round robin. If there is no healthy replica, reads go to the primary.
+ * </p>
+ * <p>
+ * Read your writes: after a client (see ClientContext) writes, its reads go to the primary for 'readYourWritesMs',
+ * so the client doesn't read from a replica which hasn't replayed the write yet.
+ * </p>
+ * <p>
+ * Health check: every 'healthCheckIntervalMs' every replica is checked by 'lagQuery', which returns replication lag in milliseconds.
+ * Replica which can't be connected or lags more than 'maxLagMs' is not used until a later check succeeds.
+ * If lag query is not set, only connection is checked.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    private long readYourWritesMs;
+    private long healthCheckIntervalMs;
+    private long maxLagMs;
+    private String lagQuery;
+
+    //clients which wrote recently, reads of them go to the primary
+    private Cache<String, Boolean> pinnedClients;
+
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(javax.sql.DataSource primary, List<? extends javax.sql.DataSource> replicas) {
+        this.primary = new DataSource("primary", primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + i, replicas.get(i)));
+        }
+    }
+
+    public long getReadYourWritesMs() {
+        return readYourWritesMs;
+    }
+
+    public void setReadYourWritesMs(long readYourWritesMs) {
+        this.readYourWritesMs = readYourWritesMs;
+    }
+
+    public long getHealthCheckIntervalMs() {
+        return healthCheckIntervalMs;
+    }
+
+    public void setHealthCheckIntervalMs(long healthCheckIntervalMs) {
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+    }
+
+    public long getMaxLagMs() {
+        return maxLagMs;
+    }
+
+    public void setMaxLagMs(long maxLagMs) {
+        this.maxLagMs = maxLagMs;
+    }
+
+    public String getLagQuery() {
+        return lagQuery;
+    }
+
+    public void setLagQuery(String lagQuery) {
+        this.lagQuery = lagQuery;
+    }
+
+    /**
+     * Starts periodic health check of replicas (no periodic check if healthCheckIntervalMs is 0).
+     */
+    public void init() {
+        pinnedClients = readYourWritesMs > 0
+                ? CacheBuilder.newBuilder().expireAfterWrite(readYourWritesMs, TimeUnit.MILLISECONDS).build()
+                : null;
+        if (healthCheckIntervalMs > 0 && !replicas.isEmpty()) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops health check and closes the primary and replica pools.
+     */
+    @Override
+    public void close() throws IOException {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        primary.close();
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route().target.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route().target.getConnection(username, password);
+    }
+
+    /**
+     * @return name of the DataSource which would be used for a connection requested now, e.g. "primary" or "replica-0"
+     */
+    public String currentTarget() {
+        return route().name;
+    }
+
+    /**
+     * @return number of replicas which are used for reads
+     */
+    public int getHealthyReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.healthy).count();
+    }
+
+    /**
+     * Checks every replica, replicas which failed the check are not used until they pass it.
+     */
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy = isHealthy(replica);
+            if (healthy != replica.healthy) {
+                logger.warn("Replica {} is {}", replica.name, healthy ? "back in use" : "evicted");
+                replica.healthy = healthy;
+            }
+        }
+    }
+
+    private DataSource route() {
+        String clientId = ClientContext.getClientId();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (clientId != null && pinnedClients != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                pin(clientId);
+            }
+            return primary;
+        }
+        if (clientId != null && pinnedClients != null && pinnedClients.getIfPresent(clientId) != null) {
+            return primary;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(1, replicas.size()));
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return primary;
+    }
+
+    //window starts when the write starts and starts again when it completes, so long writes are covered too
+    private void pin(String clientId) {
+        pinnedClients.put(clientId, Boolean.TRUE);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    pinnedClients.put(clientId, Boolean.TRUE);
+                }
+            });
+        }
+    }
+
+    private boolean isHealthy(Replica replica) {
+        try (Connection connection = replica.target.getConnection()) {
+            if (lagQuery == null || lagQuery.trim().isEmpty()) {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(lagQuery)) {
+                double lagMs = resultSet.next() ? resultSet.getDouble(1) : 0;
+                if (lagMs > maxLagMs) {
+                    logger.debug("Replica {} lags {} ms", replica.name, lagMs);
+                    return false;
+                }
+                return true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.debug("Health check of replica {} failed: {}", replica.name, e.getMessage());
+            return false;
+        }
+    }
+
+    private static class DataSource {
+        final String name;
+        final javax.sql.DataSource target;
+
+        DataSource(String name, javax.sql.DataSource target) {
+            this.name = name;
+            this.target = target;
+        }
+
+        void close() throws IOException {
+            if (target instanceof Closeable) {
+                ((Closeable) target).close();
+            }
+        }
+    }
+
+    private static class Replica extends DataSource {
+        volatile boolean healthy = true;
+
+        Replica(String name, javax.sql.DataSource target) {
+            super(name, target);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.company.wallet.entities;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable amount of money as a long number of minor units (e.g. cents) with the scale of the currency.
+ * <p>
+ * Amounts and balances are stored in columns NUMERIC(PRECISION, MAX_SCALE), so every valid value fits in a long.
+ * Arithmetic and comparisons are done on longs, BigDecimal is created only to write the value to an entity.
+ * Amounts with different scales are added and compared at the larger scale (see ofStored).
+ * </p>
+ * @author Elena Medvedeva
+ */
+public final class Money implements Comparable<Money> {
+
+    //precision and scale of columns wallet.balance and transaction.amount
+    public static final int PRECISION = 15;
+    public static final int MAX_SCALE = 2;
+
+    private static final long[] POWERS_OF_TEN = new long[PRECISION + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long minorUnits;
+    private final int scale;
+
+    private Money(long minorUnits, int scale) {
+        this.minorUnits = minorUnits;
+        this.scale = scale;
+    }
+
+    /**
+     * @param minorUnits amount in minor units of the currency
+     * @param scale number of decimal places of the currency, 0 to MAX_SCALE
+     * @throws ArithmeticException if amount doesn't fit into the columns
+     */
+    public static Money ofMinorUnits(long minorUnits, int scale) {
+        checkScale(scale);
+        if (Math.abs(minorUnits) >= maxMinorUnits(scale)) {
+            throw new ArithmeticException("Amount is out of range: " + BigDecimal.valueOf(minorUnits, scale).toPlainString());
+        }
+        return new Money(minorUnits, scale);
+    }
+
+    public static Money zero(int scale) {
+        return ofMinorUnits(0, scale);
+    }
+
+    /**
+     * Converts BigDecimal (e.g. balance read from the database) to Money.
+     * @throws ArithmeticException if value has more decimal places than scale (other than zeros) or is out of range
+     */
+    public static Money of(BigDecimal value, int scale) {
+        checkScale(scale);
+        return ofMinorUnits(value.setScale(scale).unscaledValue().longValueExact(), scale);
+    }
+
+    /**
+     * Converts stored value (e.g. balance read from the database) to Money with the scale of the currency.
+     * Value stored with more decimal places than the currency has (e.g. written before the scale was checked)
+     * keeps its own scale up to MAX_SCALE, so stored values are never rounded or rejected. Input amounts are checked by parse.
+     * @throws ArithmeticException if value is out of range or has more than MAX_SCALE decimal places (other than zeros)
+     */
+    public static Money ofStored(BigDecimal value, int scale) {
+        checkScale(scale);
+        return of(value, Math.min(MAX_SCALE, Math.max(scale, value.stripTrailingZeros().scale())));
+    }
+
+    /**
+     * Parses decimal string without creating BigDecimal.
+     * Accepts the same plain notation as new BigDecimal(String), exponent notation is parsed by BigDecimal.
+     * @param amount amount, e.g. "-10.5"
+     * @param scale number of decimal places of the currency, 0 to MAX_SCALE
+     * @throws NumberFormatException if amount is not a number
+     * @throws ArithmeticException if amount has more decimal places than scale (other than zeros) or is out of range
+     */
+    public static Money parse(String amount, int scale) {
+        checkScale(scale);
+        if (amount == null) {
+            throw new NumberFormatException("Amount is null");
+        }
+        int length = amount.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+')) {
+            negative = amount.charAt(0) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (fractionDigits >= 0 && ++fractionDigits > scale) {
+                    if (c != '0') {
+                        throw new ArithmeticException("Amount " + amount + " has more than " + scale + " decimal places");
+                    }
+                    continue;
+                }
+                units = units * 10 + (c - '0');
+                if (units >= maxMinorUnits(scale)) {
+                    throw new ArithmeticException("Amount is out of range: " + amount);
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (c == 'e' || c == 'E') {
+                return of(new BigDecimal(amount), scale);
+            } else {
+                throw new NumberFormatException("Amount is not a number: " + amount);
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Amount is not a number: " + amount);
+        }
+        units *= POWERS_OF_TEN[scale - Math.min(Math.max(fractionDigits, 0), scale)];
+        return ofMinorUnits(negative ? -units : units, scale);
+    }
+
+    /**
+     * @return number of decimal places of the currency with ISO 4217 code, limited by MAX_SCALE.
+     * MAX_SCALE if the code is not an ISO 4217 currency.
+     */
+    public static int scaleOf(String currencyCode) {
+        try {
+            int digits = java.util.Currency.getInstance(currencyCode).getDefaultFractionDigits();
+            return digits < 0 || digits > MAX_SCALE ? MAX_SCALE : digits;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return MAX_SCALE;
+        }
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public Money abs() {
+        return minorUnits >= 0 ? this : new Money(-minorUnits, scale);
+    }
+
+    public Money negate() {
+        return new Money(-minorUnits, scale);
+    }
+
+    /**
+     * @return sum with the larger scale of the two amounts
+     * @throws ArithmeticException if result is out of range
+     */
+    public Money add(Money other) {
+        int resultScale = Math.max(scale, other.scale);
+        return ofMinorUnits(minorUnitsAt(resultScale) + other.minorUnitsAt(resultScale), resultScale);
+    }
+
+    public Money subtract(Money other) {
+        return add(other.negate());
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        int commonScale = Math.max(scale, other.scale);
+        return Long.compare(minorUnitsAt(commonScale), other.minorUnitsAt(commonScale));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && scale == money.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + scale;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    private static long maxMinorUnits(int scale) {
+        return POWERS_OF_TEN[PRECISION - MAX_SCALE + scale];
+    }
+
+    private static void checkScale(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale should be between 0 and " + MAX_SCALE + ": " + scale);
+        }
+    }
+
+    //scale not less than the scale of this amount, result fits in a long as minorUnits is in range
+    private long minorUnitsAt(int targetScale) {
+        return minorUnits * POWERS_OF_TEN[targetScale - scale];
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 import org.springframework.validation.annotation.Validated;
 
 import javax.persistence.*;
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
@@ -14,6 +15,10 @@ import java.util.Objects;
 
 /**
  *  Transaction entity.
+ *  <p>Id sequence is pooled: every sequence value reserves ID_ALLOCATION_SIZE ids, for Hibernate (pooled optimizer)
+ *  and for native inserts (see TransactionRepositoryCustom.nextTransactionIds). Inserts never take the id from the column default.</p>
+ *  <p>Transactions are never updated, lastUpdated is the time of creation. Transaction table is partitioned by it
+ *  and uniqueness of globalId is kept by table transaction_global_id (see V7.1__partition_transaction_table.sql).</p>
  *
  *  @author Elena Medvedeva
  */
@@ -21,9 +26,13 @@ import java.util.Objects;
 @Table(name = "transaction")
 @EntityListeners(AuditingEntityListener.class)
 public class Transaction {
+    //must be equal to the increment of transaction_id_seq
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
     @Column(name = "id",nullable = false)
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_id")
+    @SequenceGenerator(name = "transaction_id", sequenceName = "transaction_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Integer id;
 
     @NotBlank(message = "Transaction globalId must not be empty")
@@ -37,7 +46,8 @@ public class Transaction {
     private TransactionType type;
 
     @NotNull(message = "Transaction amount must be provided")
-    @Column(name = "amount", nullable = false)
+    @Digits(integer = Money.PRECISION - Money.MAX_SCALE, fraction = Money.MAX_SCALE)
+    @Column(name = "amount", nullable = false, precision = Money.PRECISION, scale = Money.MAX_SCALE)
     private BigDecimal amount;
 
     @NotNull(message = "Transaction wallet must be provided")
@@ -53,7 +63,7 @@ public class Transaction {
     @Column(name = "description")
     String description;
 
-    @Column(name = "last_updated")
+    @Column(name = "last_updated", nullable = false)
     @Temporal(TemporalType.TIMESTAMP)
     private Date lastUpdated;
 
@@ -76,6 +86,21 @@ public class Transaction {
        this(globalId,type,amount,wallet,currency,description);
        this.lastUpdatedBy = lastUpdatedBy;
     }
+
+    /**
+     * Used by projection queries (see TransactionRepository.TRANSACTION_PROJECTION), created transaction is not managed by persistence context
+     * and has no wallet.
+     */
+    public Transaction(Integer id, String globalId, TransactionType type, BigDecimal amount, Currency currency, String description, Date lastUpdated, String lastUpdatedBy) {
+        this.id = id;
+        this.globalId = globalId;
+        this.type = type;
+        this.amount = amount;
+        this.currency = currency;
+        this.description = description;
+        this.lastUpdated = lastUpdated;
+        this.lastUpdatedBy = lastUpdatedBy;
+    }
     public Integer getId() {
         return id;
     }
@@ -113,7 +138,7 @@ public class Transaction {
     }
 
     public void setWallet(Wallet destWallet) {
-        this.wallet = wallet;
+        this.wallet = destWallet;
     }
 
     public Currency getCurrency() {
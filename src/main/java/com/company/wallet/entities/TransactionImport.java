@@ -0,0 +1,208 @@
+package com.company.wallet.entities;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ *  Bulk import of historical transactions (see TransactionImportService).
+ *  <p>Rows of the import are kept in its staging table transaction_import_rows_ID until the import is deleted.
+ *  Stage and lastMovedRow are updated in the database transaction of every step, so a failed import resumes where it stopped.</p>
+ *
+ *  @author Elena Medvedeva
+ */
+@Entity
+@Table(name = "transaction_import")
+public class TransactionImport {
+
+    public enum Status {
+        //rows can be loaded
+        LOADING,
+        //rows are validated and moved in the background
+        RUNNING,
+        //step failed, import can be resumed
+        FAILED,
+        COMPLETED
+    }
+
+    public enum Stage {
+        VALIDATE,
+        MOVE,
+        UPDATE_BALANCES,
+        DONE
+    }
+
+    @Id
+    @Column(name = "id", nullable = false)
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "name")
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private Status status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "stage", nullable = false)
+    private Stage stage;
+
+    @Column(name = "rows_loaded", nullable = false)
+    private long rowsLoaded;
+
+    @Column(name = "rows_rejected", nullable = false)
+    private long rowsRejected;
+
+    @Column(name = "rows_imported", nullable = false)
+    private long rowsImported;
+
+    //last staging row of the import, known after validation
+    @Column(name = "last_row", nullable = false)
+    private long lastRow;
+
+    @Column(name = "last_moved_row", nullable = false)
+    private long lastMovedRow;
+
+    @Column(name = "error")
+    private String error;
+
+    @Column(name = "created", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date created;
+
+    @Column(name = "last_updated")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastUpdated;
+
+    @Column(name = "last_updated_by")
+    private String lastUpdatedBy;
+
+    public TransactionImport() { }
+
+    public TransactionImport(String name, String lastUpdatedBy) {
+        this.name = name;
+        this.status = Status.LOADING;
+        this.stage = Stage.VALIDATE;
+        this.created = new Date();
+        this.lastUpdated = this.created;
+        this.lastUpdatedBy = lastUpdatedBy;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public void setStage(Stage stage) {
+        this.stage = stage;
+    }
+
+    public long getRowsLoaded() {
+        return rowsLoaded;
+    }
+
+    public void setRowsLoaded(long rowsLoaded) {
+        this.rowsLoaded = rowsLoaded;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public void setRowsRejected(long rowsRejected) {
+        this.rowsRejected = rowsRejected;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public void setRowsImported(long rowsImported) {
+        this.rowsImported = rowsImported;
+    }
+
+    public long getLastRow() {
+        return lastRow;
+    }
+
+    public void setLastRow(long lastRow) {
+        this.lastRow = lastRow;
+    }
+
+    public long getLastMovedRow() {
+        return lastMovedRow;
+    }
+
+    public void setLastMovedRow(long lastMovedRow) {
+        this.lastMovedRow = lastMovedRow;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    public void setCreated(Date created) {
+        this.created = created;
+    }
+
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Date lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    public String getLastUpdatedBy() {
+        return lastUpdatedBy;
+    }
+
+    public void setLastUpdatedBy(String lastUpdatedBy) {
+        this.lastUpdatedBy = lastUpdatedBy;
+    }
+
+    /**
+     * @return percent of staging rows which passed the current stage
+     */
+    public int getProgress() {
+        switch (stage) {
+            case VALIDATE:
+                return 0;
+            case MOVE:
+                return lastRow == 0 ? 100 : (int) (lastMovedRow * 100 / lastRow);
+            default:
+                return 100;
+        }
+    }
+}
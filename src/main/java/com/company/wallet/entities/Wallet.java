@@ -1,8 +1,10 @@
 package com.company.wallet.entities;
 
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.*;
+import javax.validation.constraints.Digits;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
@@ -11,17 +13,24 @@ import java.util.List;
 
 /**
  *  Wallet entity.
+ *  <p>Only changed columns are updated (@DynamicUpdate), e.g. balance update doesn't rewrite user_id and currency_id.</p>
+ *  <p>Concurrent updates are detected by optimistic locking (@Version).</p>
+ *  <p>Id sequence is pooled (pooled optimizer), every sequence value reserves ID_ALLOCATION_SIZE ids.</p>
  *
  *  @author Elena Medvedeva
  */
 @Entity
 @Table(name = "wallet")
+@DynamicUpdate
 @EntityListeners(AuditingEntityListener.class)
 public class Wallet {
+    //must be equal to the increment of wallet_id_seq
+    public static final int ID_ALLOCATION_SIZE = 50;
 
     @Id
     @Column(name = "id",nullable = false)
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "wallet_id")
+    @SequenceGenerator(name = "wallet_id", sequenceName = "wallet_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Integer id;
 
     @NotNull(message = "User Id must be provided")
@@ -29,7 +38,8 @@ public class Wallet {
     private String userId;
 
     @Min(0)
-    @Column(name = "balance",nullable = false)
+    @Digits(integer = Money.PRECISION - Money.MAX_SCALE, fraction = Money.MAX_SCALE)
+    @Column(name = "balance",nullable = false, precision = Money.PRECISION, scale = Money.MAX_SCALE)
     @NotNull(message = "Wallet balance must be provided")
     private BigDecimal balance;
 
@@ -46,6 +56,18 @@ public class Wallet {
     @Column(name = "last_updated_by")
     private String lastUpdatedBy;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    //balance checkpoint of WriteMode.APPEND_ONLY, see BalanceMaterializer
+    @Column(name = "last_transaction_id")
+    private Integer lastTransactionId;
+
+    //number of balance slots of a hot wallet, see WalletBalanceSlots
+    @Column(name = "balance_slots")
+    private Integer balanceSlots;
+
     @OneToMany(mappedBy = "wallet", fetch = FetchType.LAZY)
     private List<Transaction> transactions;
 
@@ -64,6 +86,35 @@ public class Wallet {
         this.lastUpdatedBy = lastUpdatedBy;
     }
 
+    /**
+     * Used by projection queries (see WalletRepository.WALLET_PROJECTION), created wallet is not managed by persistence context.
+     */
+    public Wallet(Integer id, String userId, Currency currency, BigDecimal balance, Date lastUpdated, String lastUpdatedBy, Long version) {
+        this.id = id;
+        this.userId = userId;
+        this.currency = currency;
+        this.balance = balance;
+        this.lastUpdated = lastUpdated;
+        this.lastUpdatedBy = lastUpdatedBy;
+        this.version = version;
+    }
+
+    /**
+     * Used by projection queries with balance checkpoint (see WalletRepository.WALLET_PROJECTION).
+     */
+    public Wallet(Integer id, String userId, Currency currency, BigDecimal balance, Date lastUpdated, String lastUpdatedBy, Long version, Integer lastTransactionId) {
+        this(id, userId, currency, balance, lastUpdated, lastUpdatedBy, version);
+        this.lastTransactionId = lastTransactionId;
+    }
+
+    /**
+     * Used by projection queries with balance checkpoint and balance slots (see WalletRepository.WALLET_PROJECTION).
+     */
+    public Wallet(Integer id, String userId, Currency currency, BigDecimal balance, Date lastUpdated, String lastUpdatedBy, Long version, Integer lastTransactionId, Integer balanceSlots) {
+        this(id, userId, currency, balance, lastUpdated, lastUpdatedBy, version, lastTransactionId);
+        this.balanceSlots = balanceSlots;
+    }
+
 
     public Integer getId() {
         return id;
@@ -105,6 +156,37 @@ public class Wallet {
         this.lastUpdatedBy = lastUpdatedBy;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return id of the last transaction included into balance in WriteMode.APPEND_ONLY,
+     *          null if balance is updated by every transaction
+     */
+    public Integer getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    public void setLastTransactionId(Integer lastTransactionId) {
+        this.lastTransactionId = lastTransactionId;
+    }
+
+    /**
+     * @return number of balance slots, null if wallet balance is kept only in the wallet row
+     */
+    public Integer getBalanceSlots() {
+        return balanceSlots;
+    }
+
+    public void setBalanceSlots(Integer balanceSlots) {
+        this.balanceSlots = balanceSlots;
+    }
+
     public List<Transaction> getTransactions() {
         return transactions;
     }
@@ -18,12 +18,40 @@ public class ErrorMessage {
     public static final String ARGUMENT_TYPE_MISMATCH = "%s should be of type %s";
     public static final String NO_CURRENCY = "No field 'currency' provided";
     public static final String TRANSACTION_WITH_GLOBAL_ID_PRESENT = "Transaction with globalId=%s already present.";
+    public static final String GLOBAL_ID_REUSED = "Transaction with globalId=%s already present with different parameters.";
     public static final String NO_TRANSACTION_TYPE_PRESENT = "Undefined transactionType %s.";
     public static final String NUMBER_FORMAT_MISMATCH = "'%s' should be a number";
+    public static final String AMOUNT_NOT_REPRESENTABLE = "Amount %s is out of range or has more than %d decimal places for currency %s.";
     public static final String NOT_ENOUGH_FUNDS = "Wallet %d has not enough funds to perform debit transaction with amount %s";
     public static final String PART_NO_MANDATORY_FIELD = " is mandatory. It should be provided and can't be empty.";
     public static final String NO_MANDATORY_FIELD = "Field %s" + PART_NO_MANDATORY_FIELD;
     public static final String TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY = "Transaction can't be saved. Transaction currency %s differs from wallet currency %s.";
+    public static final String LANE_QUEUE_FULL = "Too many pending transactions for wallet %s. Try again later.";
+    public static final String LANE_INTERRUPTED = "Transaction for wallet %s was interrupted.";
+    public static final String GROUP_COMMIT_QUEUE_FULL = "Too many transactions are waiting for group commit. Try again later.";
+    public static final String GROUP_COMMIT_INTERRUPTED = "Transaction for wallet %s was interrupted while waiting for group commit.";
+    public static final String LEDGER_JOURNAL_FULL = "Transaction journal is full. Try again later.";
+    public static final String BATCH_TRANSACTION_FAILED = "Transaction %d of the batch failed: %s";
+    public static final String BATCH_TOO_LARGE = "Batch can't contain more than %d transactions.";
+    public static final String BATCH_MODE_NOT_SUPPORTED = "Batch mode %s is not supported with write mode %s.";
+    public static final String TRANSFER_TO_SAME_WALLET = "Transfer can't be made from wallet %s to itself.";
+    public static final String TRANSFER_AMOUNT_NOT_POSITIVE = "Transfer amount %s should be positive.";
+    public static final String TRANSFER_NOT_SUPPORTED = "Transfers are not supported with write mode %s.";
+    public static final String MALFORMED_CURSOR = "Cursor '%s' is invalid.";
+    public static final String PAGE_LIMIT_OUT_OF_RANGE = "Field limit should be between 1 and %d.";
+    public static final String RECENT_TRANSACTIONS_OUT_OF_RANGE = "Field recentTransactions should be between 1 and %d.";
+    public static final String ARCHIVE_NOT_AVAILABLE = "Archived transactions of wallet %s are not available. Try again later.";
+    public static final String BALANCE_SLOTS_OUT_OF_RANGE = "Number of balance slots should be between 0 and %d.";
+    public static final String BALANCE_SLOTS_NOT_SUPPORTED = "Balance slots are not supported with write mode %s.";
+    public static final String WALLET_HAS_BALANCE_SLOTS = "Wallet %s has balance slots, only single transactions can be created for it.";
+    public static final String NO_IMPORT_FOUND = "Import %s not found.";
+    public static final String IMPORT_NOT_SUPPORTED = "Import of transactions is not supported with write mode %s.";
+    public static final String IMPORT_STATUS_MISMATCH = "Import %s has status %s, expected %s.";
+    public static final String IMPORT_ROWS_NOT_LOADED = "Rows couldn't be loaded into import %s: %s";
+    public static final String EXPORT_FILTER_MISSING = "Field walletId or date should be set.";
+    public static final String EXPORT_DAY_ARCHIVED = "Transactions created before %s are archived and can't be exported.";
+    public static final String CONCURRENT_UPDATE = "Transaction for wallet %s failed because of concurrent updates. Try again later.";
+    public static final String RETRY_INTERRUPTED = "Transaction for wallet %s was interrupted while waiting to be retried.";
 
     //Template messages to compare
     public static final String DUPLICATE_KEY = "duplicate key value violates unique constraint \"transaction_global_id_key\"";
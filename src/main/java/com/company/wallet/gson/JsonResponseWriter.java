@@ -0,0 +1,52 @@
+package com.company.wallet.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes JSON straight to the servlet response output stream, without building it as a String.
+ * <p>
+ * JsonWriter is configured as Gson.toJson configures it: null fields are omitted, html characters are escaped.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class JsonResponseWriter {
+
+    private JsonResponseWriter() {
+    }
+
+    /**
+     * Sets response content type and opens JsonWriter on the response output stream.
+     * Writer must be flushed when JSON is written, it is closed by the servlet container.
+     */
+    public static JsonWriter open(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)));
+        writer.setSerializeNulls(false);
+        writer.setHtmlSafe(true);
+        return writer;
+    }
+
+    public static <T> void write(HttpServletResponse response, TypeAdapter<T> adapter, T value) throws IOException {
+        JsonWriter writer = open(response);
+        adapter.write(writer, value);
+        writer.flush();
+    }
+
+    public static <T> void writeArray(HttpServletResponse response, TypeAdapter<T> adapter, Iterable<T> values) throws IOException {
+        JsonWriter writer = open(response);
+        writer.beginArray();
+        for (T value : values) {
+            adapter.write(writer, value);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+}
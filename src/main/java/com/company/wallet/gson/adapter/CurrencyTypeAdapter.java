@@ -0,0 +1,34 @@
+package com.company.wallet.gson.adapter;
+
+import com.company.wallet.entities.Currency;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes Currency entity to JSON.
+ * @author Elena Medvedeva
+ */
+public class CurrencyTypeAdapter extends EntityTypeAdapter<Currency> {
+
+    public static final CurrencyTypeAdapter INSTANCE = new CurrencyTypeAdapter();
+
+    private CurrencyTypeAdapter() {
+    }
+
+    @Override
+    public void write(JsonWriter out, Currency value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        Currency currency = unproxy(value);
+        out.beginObject();
+        out.name("id").value(currency.getId());
+        out.name("name").value(currency.getName());
+        out.name("lastUpdated");
+        writeDate(out, currency.getLastUpdated());
+        out.name("lastUpdatedBy").value(currency.getLastUpdatedBy());
+        out.endObject();
+    }
+}
@@ -0,0 +1,50 @@
+package com.company.wallet.gson.adapter;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Base class of hand-written entity TypeAdapters.
+ * <p>
+ * Adapters write fields in the order and format Gson uses for reflective serialization,
+ * so output is the same as of GsonBuilder with exclusion strategies, but without reflection.
+ * </p>
+ * @author Elena Medvedeva
+ */
+abstract class EntityTypeAdapter<T> extends TypeAdapter<T> {
+
+    //format of the default Gson Date adapter, DateFormat is not thread safe
+    private static final ThreadLocal<DateFormat> DATE_FORMAT =
+            ThreadLocal.withInitial(() -> DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US));
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+        throw new UnsupportedOperationException("Not supported");
+    }
+
+    static void writeDate(JsonWriter out, Date value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(DATE_FORMAT.get().format(value));
+    }
+
+    /**
+     * @return implementation of Hibernate proxy (initialized if needed), or value itself if it is not a proxy
+     */
+    @SuppressWarnings("unchecked")
+    static <E> E unproxy(E value) {
+        if (value instanceof HibernateProxy) {
+            return (E) ((HibernateProxy) value).getHibernateLazyInitializer().getImplementation();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,32 @@
+package com.company.wallet.gson.adapter;
+
+import com.company.wallet.repository.RejectedRow;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes rejected row of a transaction import to JSON.
+ * @author Elena Medvedeva
+ */
+public class RejectedRowTypeAdapter extends EntityTypeAdapter<RejectedRow> {
+
+    public static final RejectedRowTypeAdapter INSTANCE = new RejectedRowTypeAdapter();
+
+    private RejectedRowTypeAdapter() {
+    }
+
+    @Override
+    public void write(JsonWriter out, RejectedRow row) throws IOException {
+        if (row == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("row").value(row.getRow());
+        out.name("globalId").value(row.getGlobalId());
+        out.name("walletId").value(row.getWalletId());
+        out.name("error").value(row.getError());
+        out.endObject();
+    }
+}
@@ -0,0 +1,43 @@
+package com.company.wallet.gson.adapter;
+
+import com.company.wallet.entities.TransactionImport;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes TransactionImport entity to JSON, with its progress in percent.
+ * @author Elena Medvedeva
+ */
+public class TransactionImportTypeAdapter extends EntityTypeAdapter<TransactionImport> {
+
+    public static final TransactionImportTypeAdapter INSTANCE = new TransactionImportTypeAdapter();
+
+    private TransactionImportTypeAdapter() {
+    }
+
+    @Override
+    public void write(JsonWriter out, TransactionImport value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        TransactionImport transactionImport = unproxy(value);
+        out.beginObject();
+        out.name("id").value(transactionImport.getId());
+        out.name("name").value(transactionImport.getName());
+        out.name("status").value(transactionImport.getStatus().name());
+        out.name("stage").value(transactionImport.getStage().name());
+        out.name("progress").value(transactionImport.getProgress());
+        out.name("rowsLoaded").value(transactionImport.getRowsLoaded());
+        out.name("rowsRejected").value(transactionImport.getRowsRejected());
+        out.name("rowsImported").value(transactionImport.getRowsImported());
+        out.name("error").value(transactionImport.getError());
+        out.name("created");
+        writeDate(out, transactionImport.getCreated());
+        out.name("lastUpdated");
+        writeDate(out, transactionImport.getLastUpdated());
+        out.name("lastUpdatedBy").value(transactionImport.getLastUpdatedBy());
+        out.endObject();
+    }
+}
@@ -0,0 +1,55 @@
+package com.company.wallet.gson.adapter;
+
+import com.company.wallet.entities.Transaction;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes Transaction entity to JSON, with or without wallet.
+ * @author Elena Medvedeva
+ */
+public class TransactionTypeAdapter extends EntityTypeAdapter<Transaction> {
+
+    /**
+     * Transaction with wallet, wallet is written without transactions (see WalletTypeAdapter.WITHOUT_TRANSACTIONS)
+     */
+    public static final TransactionTypeAdapter WITH_WALLET = new TransactionTypeAdapter(true);
+
+    /**
+     * Transaction without field 'wallet'
+     */
+    public static final TransactionTypeAdapter WITHOUT_WALLET = new TransactionTypeAdapter(false);
+
+    private final boolean withWallet;
+
+    private TransactionTypeAdapter(boolean withWallet) {
+        this.withWallet = withWallet;
+    }
+
+    @Override
+    public void write(JsonWriter out, Transaction value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        Transaction transaction = unproxy(value);
+        out.beginObject();
+        out.name("id").value(transaction.getId());
+        out.name("globalId").value(transaction.getGlobalId());
+        out.name("type");
+        TransactionTypeTypeAdapter.INSTANCE.write(out, transaction.getType());
+        out.name("amount").value(transaction.getAmount());
+        if (withWallet) {
+            out.name("wallet");
+            WalletTypeAdapter.WITHOUT_TRANSACTIONS.write(out, transaction.getWallet());
+        }
+        out.name("currency");
+        CurrencyTypeAdapter.INSTANCE.write(out, transaction.getCurrency());
+        out.name("description").value(transaction.getDescription());
+        out.name("lastUpdated");
+        writeDate(out, transaction.getLastUpdated());
+        out.name("lastUpdatedBy").value(transaction.getLastUpdatedBy());
+        out.endObject();
+    }
+}
@@ -0,0 +1,34 @@
+package com.company.wallet.gson.adapter;
+
+import com.company.wallet.entities.TransactionType;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Writes TransactionType entity to JSON.
+ * @author Elena Medvedeva
+ */
+public class TransactionTypeTypeAdapter extends EntityTypeAdapter<TransactionType> {
+
+    public static final TransactionTypeTypeAdapter INSTANCE = new TransactionTypeTypeAdapter();
+
+    private TransactionTypeTypeAdapter() {
+    }
+
+    @Override
+    public void write(JsonWriter out, TransactionType value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        TransactionType type = unproxy(value);
+        out.beginObject();
+        out.name("id").value(type.getId());
+        out.name("description").value(type.getDescription());
+        out.name("lastUpdated");
+        writeDate(out, type.getLastUpdated());
+        out.name("lastUpdatedBy").value(type.getLastUpdatedBy());
+        out.endObject();
+    }
+}
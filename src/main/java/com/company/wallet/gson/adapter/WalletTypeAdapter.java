@@ -0,0 +1,83 @@
+package com.company.wallet.gson.adapter;
+
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.Wallet;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes Wallet entity to JSON, with or without wallet transactions.
+ * @author Elena Medvedeva
+ */
+public class WalletTypeAdapter extends EntityTypeAdapter<Wallet> {
+
+    /**
+     * Wallet without field 'transactions'
+     */
+    public static final WalletTypeAdapter WITHOUT_TRANSACTIONS = new WalletTypeAdapter(false);
+
+    /**
+     * Wallet with transactions, transactions are written without wallet (see TransactionTypeAdapter.WITHOUT_WALLET)
+     */
+    public static final WalletTypeAdapter WITH_TRANSACTIONS = new WalletTypeAdapter(true);
+
+    private final boolean withTransactions;
+
+    private WalletTypeAdapter(boolean withTransactions) {
+        this.withTransactions = withTransactions;
+    }
+
+    @Override
+    public void write(JsonWriter out, Wallet value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        Wallet wallet = unproxy(value);
+        write(out, wallet, withTransactions ? wallet.getTransactions() : null, withTransactions);
+    }
+
+    /**
+     * Writes wallet with given transactions instead of wallet transactions collection,
+     * transactions are written without wallet (see TransactionTypeAdapter.WITHOUT_WALLET)
+     * @param out JSON writer
+     * @param value wallet
+     * @param transactions transactions to write in field 'transactions'
+     */
+    public static void writeWithTransactions(JsonWriter out, Wallet value, List<Transaction> transactions) throws IOException {
+        write(out, value, transactions, true);
+    }
+
+    private static void write(JsonWriter out, Wallet value, List<Transaction> transactions, boolean withTransactions) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        Wallet wallet = unproxy(value);
+        out.beginObject();
+        out.name("id").value(wallet.getId());
+        out.name("userId").value(wallet.getUserId());
+        out.name("balance").value(wallet.getBalance());
+        out.name("currency");
+        CurrencyTypeAdapter.INSTANCE.write(out, wallet.getCurrency());
+        out.name("lastUpdated");
+        writeDate(out, wallet.getLastUpdated());
+        out.name("lastUpdatedBy").value(wallet.getLastUpdatedBy());
+        out.name("version").value(wallet.getVersion());
+        if (withTransactions) {
+            out.name("transactions");
+            if (transactions == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Transaction transaction : transactions) {
+                    TransactionTypeAdapter.WITHOUT_WALLET.write(out, transaction);
+                }
+                out.endArray();
+            }
+        }
+        out.endObject();
+    }
+}
@@ -0,0 +1,109 @@
+package com.company.wallet.ledger;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Open addressing hash map with primitive int keys.
+ * <p>
+ * Keys are not boxed, so lookups by wallet id don't allocate.
+ * Not thread safe, access should be guarded by the caller.
+ * Removal is not supported, wallets are only added.
+ * </p>
+ * @param <V> value type
+ * @author Elena Medvedeva
+ */
+public class IntObjectHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns value for key, computes and adds it if absent.
+     * If function returns null, nothing is added and null is returned.
+     */
+    public V computeIfAbsent(int key, IntFunction<V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        V previous = insert(keys, values, key, value);
+        if (previous == null && ++size > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void resize() {
+        int[] newKeys = new int[keys.length << 1];
+        Object[] newValues = new Object[values.length << 1];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V insert(int[] keys, Object[] values, int key, Object value) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        return null;
+    }
+
+    //spreads sequential wallet ids over the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
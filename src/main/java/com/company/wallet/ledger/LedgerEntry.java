@@ -0,0 +1,73 @@
+package com.company.wallet.ledger;
+
+import java.math.BigDecimal;
+
+/**
+ * Transaction accepted by the in-memory ledger.
+ * <p>
+ * Contains wallet balance after the transaction, so writing entries to the database is idempotent:
+ * transaction insert is skipped if transaction id is present and wallet balance is set, not incremented.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class LedgerEntry {
+
+    private final int transactionId;
+    private final int walletId;
+    private final int currencyId;
+    private final String typeId;
+    private final BigDecimal amount;
+    private final BigDecimal balanceAfter;
+    private final String globalId;
+    private final String description;
+    private final long timestamp;
+
+    public LedgerEntry(int transactionId, int walletId, int currencyId, String typeId, BigDecimal amount,
+                       BigDecimal balanceAfter, String globalId, String description, long timestamp) {
+        this.transactionId = transactionId;
+        this.walletId = walletId;
+        this.currencyId = currencyId;
+        this.typeId = typeId;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.globalId = globalId;
+        this.description = description;
+        this.timestamp = timestamp;
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    public int getWalletId() {
+        return walletId;
+    }
+
+    public int getCurrencyId() {
+        return currencyId;
+    }
+
+    public String getTypeId() {
+        return typeId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public String getGlobalId() {
+        return globalId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
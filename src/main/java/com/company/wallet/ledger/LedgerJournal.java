@@ -0,0 +1,239 @@
+package com.company.wallet.ledger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of ledger entries in a memory-mapped file of fixed size.
+ * <p>
+ * File layout: header (magic, epoch, flushed offset) followed by records [length][CRC32 of payload][payload].
+ * Payload starts with the epoch of the journal. Journal is rewound to the beginning when all records are flushed,
+ * and epoch is incremented, so old records left behind the write position are never replayed.
+ * Reading stops at the first record with wrong length, CRC or epoch (e.g. record torn by a crash).
+ * </p>
+ * <p>
+ * Appended record survives a crash of the application as soon as it is written to the mapped buffer.
+ * If 'fsync' is enabled, buffer is forced to disk on every append, so record also survives a crash of the host.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class LedgerJournal implements Closeable {
+
+    private static final int MAGIC = 0x574C4A31;
+    private static final int EPOCH_OFFSET = 4;
+    private static final int FLUSHED_OFFSET = 8;
+    static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final boolean fsync;
+
+    private int epoch;
+    private int flushed;
+    private int position;
+    private final List<LedgerEntry> unflushed = new ArrayList<>();
+
+    /**
+     * Opens journal file or creates it if it doesn't exist, and reads records which were not flushed.
+     * @param path journal file
+     * @param size file size in bytes
+     * @param fsync force buffer to disk on every append
+     * @throws IOException if file can't be opened or is not a journal file
+     */
+    public LedgerJournal(Path path, int size, boolean fsync) throws IOException {
+        this.fsync = fsync;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int capacity = (int) Math.max(size, channel.size());
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        int magic = buffer.getInt(0);
+        if (magic == 0) {
+            buffer.putInt(0, MAGIC);
+            writeHeader(1, HEADER_SIZE);
+        } else if (magic != MAGIC) {
+            channel.close();
+            throw new IOException("Not a ledger journal: " + path);
+        }
+        epoch = buffer.getInt(EPOCH_OFFSET);
+        flushed = (int) buffer.getLong(FLUSHED_OFFSET);
+        position = flushed;
+        readRecords();
+    }
+
+    /**
+     * @return records which were not flushed when journal was opened, in append order
+     */
+    public synchronized List<LedgerEntry> getUnflushed() {
+        return new ArrayList<>(unflushed);
+    }
+
+    /**
+     * Appends entry to the journal.
+     * @param entry entry to append
+     * @return position after the appended record (to be passed to markFlushed), or -1 if there is no room left
+     */
+    public synchronized int append(LedgerEntry entry) {
+        byte[] payload = encode(epoch, entry);
+        int end = position + RECORD_HEADER_SIZE + payload.length;
+        if (end > buffer.capacity()) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buffer.putInt(position, payload.length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + RECORD_HEADER_SIZE);
+        target.put(payload);
+        position = end;
+        if (fsync) {
+            buffer.force();
+        }
+        return end;
+    }
+
+    /**
+     * Marks records up to position as written to the database, they will not be replayed.
+     */
+    public synchronized void markFlushed(int flushedPosition) {
+        flushed = flushedPosition;
+        unflushed.clear();
+        writeHeader(epoch, flushed);
+    }
+
+    /**
+     * Starts writing from the beginning of the file if all records are flushed.
+     * @return true if journal was rewound
+     */
+    public synchronized boolean rewindIfFlushed() {
+        if (flushed != position || position == HEADER_SIZE) {
+            return false;
+        }
+        epoch++;
+        flushed = HEADER_SIZE;
+        position = HEADER_SIZE;
+        writeHeader(epoch, flushed);
+        return true;
+    }
+
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public synchronized int getFlushed() {
+        return flushed;
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void writeHeader(int newEpoch, int newFlushed) {
+        buffer.putInt(EPOCH_OFFSET, newEpoch);
+        buffer.putLong(FLUSHED_OFFSET, newFlushed);
+        if (fsync) {
+            buffer.force();
+        }
+    }
+
+    private void readRecords() {
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position + RECORD_HEADER_SIZE);
+            source.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            if (in.getInt() != epoch) {
+                break;
+            }
+            unflushed.add(decode(in));
+            position += RECORD_HEADER_SIZE + length;
+        }
+    }
+
+    static byte[] encode(int epoch, LedgerEntry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(epoch);
+            out.writeInt(entry.getTransactionId());
+            out.writeInt(entry.getWalletId());
+            out.writeInt(entry.getCurrencyId());
+            out.writeLong(entry.getTimestamp());
+            writeString(out, entry.getTypeId());
+            writeString(out, entry.getAmount().toPlainString());
+            writeString(out, entry.getBalanceAfter().toPlainString());
+            writeString(out, entry.getGlobalId());
+            writeString(out, entry.getDescription());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static LedgerEntry decode(ByteBuffer in) {
+        int transactionId = in.getInt();
+        int walletId = in.getInt();
+        int currencyId = in.getInt();
+        long timestamp = in.getLong();
+        String typeId = readString(in);
+        BigDecimal amount = new BigDecimal(readString(in));
+        BigDecimal balanceAfter = new BigDecimal(readString(in));
+        String globalId = readString(in);
+        String description = readString(in);
+        return new LedgerEntry(transactionId, walletId, currencyId, typeId, amount, balanceAfter, globalId, description, timestamp);
+    }
+
+    //length prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+package com.company.wallet.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Local stand-in for a message broker: appends event payloads to file 'application.outbox.file.path', one JSON object per line.
+ * <p>
+ * File is forced to disk after every batch if 'application.outbox.file.fsync' is set, so published events survive a crash
+ * before they are deleted from the outbox. Events published again after a failure appear in the file more than once.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@PropertySource("classpath:application.properties")
+@ConditionalOnProperty(name = "application.outbox.sink", havingValue = "file", matchIfMissing = true)
+@Component
+public class FileOutboxSink implements OutboxSink {
+
+    private static final byte NEW_LINE = '\n';
+
+    @Value("${application.outbox.file.path:outbox/wallet-events.jsonl}")
+    private String path;
+
+    @Value("${application.outbox.file.fsync:true}")
+    private boolean fsync;
+
+    private FileChannel file;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    @Override
+    public synchronized void publish(List<OutboxEvent> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (file == null) {
+            Path target = Paths.get(path);
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        int size = 0;
+        byte[][] lines = new byte[events.size()][];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = events.get(i).getPayload().getBytes(StandardCharsets.UTF_8);
+            size += lines[i].length + 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] line : lines) {
+            buffer.put(line).put(NEW_LINE);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        if (fsync) {
+            file.force(false);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+}
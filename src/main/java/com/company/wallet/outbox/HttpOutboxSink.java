@@ -0,0 +1,86 @@
+package com.company.wallet.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Posts every batch of events as a JSON array of payloads to 'application.outbox.http.url'.
+ * Batch is published if the endpoint answers with status 2xx, otherwise it stays in the outbox and is posted again,
+ * so the endpoint should ignore events it already has (by transactionId).
+ * @author Elena Medvedeva
+ */
+@PropertySource("classpath:application.properties")
+@ConditionalOnProperty(name = "application.outbox.sink", havingValue = "http")
+@Component
+public class HttpOutboxSink implements OutboxSink {
+
+    @Value("${application.outbox.http.url:http://localhost:8081/wallet-events}")
+    private String url;
+
+    @Value("${application.outbox.http.timeout-ms:5000}")
+    private int timeoutMs;
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public void publish(List<OutboxEvent> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < events.size(); i++) {
+            body.append(i == 0 ? "" : ",").append(events.get(i).getPayload());
+        }
+        byte[] content = body.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(content.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(content);
+            }
+            int status = connection.getResponseCode();
+            if (status < 200 || status >= 300) {
+                throw new IOException("Wallet events were not accepted by " + url + ", status " + status);
+            }
+            //read the response to the end, so the connection can be reused
+            try (InputStream in = connection.getInputStream()) {
+                byte[] skip = new byte[1024];
+                while (in.read(skip) >= 0) {
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.company.wallet.outbox;
+
+import java.util.Date;
+
+/**
+ * Wallet event stored in table wallet_event_outbox until it is published.
+ * Payload is a JSON object, see WalletEventOutbox for its fields.
+ * @author Elena Medvedeva
+ */
+public class OutboxEvent {
+
+    private final Long id;
+    private final Integer walletId;
+    private final Integer transactionId;
+    private final String payload;
+    private final Date createdAt;
+
+    public OutboxEvent(Long id, Integer walletId, Integer transactionId, String payload, Date createdAt) {
+        this.id = id;
+        this.walletId = walletId;
+        this.transactionId = transactionId;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * @return id in the outbox, null until the event is inserted
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public Integer getWalletId() {
+        return walletId;
+    }
+
+    public Integer getTransactionId() {
+        return transactionId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return time the event was written to the outbox (time of the wallet transaction)
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,23 @@
+package com.company.wallet.outbox;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of wallet events published by WalletEventRelay.
+ * <p>
+ * Built-in sinks are selected by 'application.outbox.sink': 'file' (FileOutboxSink, default) or 'http' (HttpOutboxSink).
+ * Any other value disables them, so an application can declare its own OutboxSink bean (e.g. a message broker producer).
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface OutboxSink {
+
+    /**
+     * Publishes events durably, in the given order. Events are deleted from the outbox only if this method returns,
+     * so the same events can be published again after a failure or crash (at-least-once delivery).
+     * @param events events ordered by outbox id
+     * @throws IOException if events couldn't be published, they stay in the outbox
+     */
+    void publish(List<OutboxEvent> events) throws IOException;
+}
@@ -0,0 +1,77 @@
+package com.company.wallet.repository;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Balance of a wallet with balance checkpoint (WriteMode.APPEND_ONLY): checkpoint balance plus transactions after the checkpoint,
+ * read by one statement (see WalletRepositoryCustom.findPendingBalances).
+ * @author Elena Medvedeva
+ */
+public class PendingBalance {
+
+    private final Integer walletId;
+    private final BigDecimal balance;
+    private final long version;
+    private final Integer lastTransactionId;
+    private final int pendingTransactions;
+    private final Integer lastPendingTransactionId;
+    private final Date lastUpdated;
+
+    public PendingBalance(Integer walletId, BigDecimal balance, long version, Integer lastTransactionId, int pendingTransactions,
+                          Integer lastPendingTransactionId, Date lastUpdated) {
+        this.walletId = walletId;
+        this.balance = balance;
+        this.version = version;
+        this.lastTransactionId = lastTransactionId;
+        this.pendingTransactions = pendingTransactions;
+        this.lastPendingTransactionId = lastPendingTransactionId;
+        this.lastUpdated = lastUpdated;
+    }
+
+    public Integer getWalletId() {
+        return walletId;
+    }
+
+    /**
+     * @return checkpoint balance plus pending transactions
+     */
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return wallet version plus number of pending transactions (version the wallet gets when they are materialized)
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return id of the last transaction included into checkpoint balance
+     */
+    public Integer getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    /**
+     * @return number of transactions after the checkpoint
+     */
+    public int getPendingTransactions() {
+        return pendingTransactions;
+    }
+
+    /**
+     * @return id of the last transaction of the wallet: the last pending one, or the last one included into checkpoint if there are none
+     */
+    public Integer getLastPendingTransactionId() {
+        return lastPendingTransactionId;
+    }
+
+    /**
+     * @return creation time of the last pending transaction, null if there are none
+     */
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+}
@@ -0,0 +1,39 @@
+package com.company.wallet.repository;
+
+/**
+ * Row of a transaction import which didn't pass validation (see TransactionImportRepositoryCustom.findRejectedRows).
+ * @author Elena Medvedeva
+ */
+public class RejectedRow {
+
+    private final long row;
+    private final String globalId;
+    private final String walletId;
+    private final String error;
+
+    public RejectedRow(long row, String globalId, String walletId, String error) {
+        this.row = row;
+        this.globalId = globalId;
+        this.walletId = walletId;
+        this.error = error;
+    }
+
+    /**
+     * @return number of the row in the staging table, rows are numbered in the order they were loaded
+     */
+    public long getRow() {
+        return row;
+    }
+
+    public String getGlobalId() {
+        return globalId;
+    }
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,47 @@
+package com.company.wallet.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Sum of balance slots of a wallet (see WalletRepositoryCustom.findSlotBalances), which is added to the wallet row balance.
+ * @author Elena Medvedeva
+ */
+public class SlotBalance {
+
+    private final Integer walletId;
+    private final BigDecimal balance;
+    private final long version;
+    private final int slots;
+
+    public SlotBalance(Integer walletId, BigDecimal balance, long version, int slots) {
+        this.walletId = walletId;
+        this.balance = balance;
+        this.version = version;
+        this.slots = slots;
+    }
+
+    public Integer getWalletId() {
+        return walletId;
+    }
+
+    /**
+     * @return sum of slot balances
+     */
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return sum of slot versions (number of slot updates)
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of slots
+     */
+    public int getSlots() {
+        return slots;
+    }
+}
@@ -0,0 +1,36 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.WalletException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import javax.transaction.Transactional;
+
+/**
+ * TransactionImport JPA repository
+ * <p> Generates SQL queries to access the database to manage TransactionImport entities, staging tables of imports are managed by custom queries</p>
+ * @author Elena Medvedeva
+ */
+@Transactional(rollbackOn = WalletException.class)
+public interface TransactionImportRepository extends JpaRepository<TransactionImport, Integer>, TransactionImportRepositoryCustom {
+
+    /**
+     * Selects import with SELECT ... FOR UPDATE, so steps of the import are executed one by one.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from TransactionImport i where i.id = :id")
+    TransactionImport findByIdForUpdate(@Param("id") Integer id);
+
+    /**
+     * Changes status of all imports with status 'from', e.g. imports which were running when the application stopped.
+     * @return number of changed imports
+     */
+    @Modifying
+    @Query("update TransactionImport i set i.status = :to, i.error = :error where i.status = :from")
+    int changeStatus(@Param("from") TransactionImport.Status from, @Param("to") TransactionImport.Status to, @Param("error") String error);
+}
@@ -0,0 +1,73 @@
+package com.company.wallet.repository;
+
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Custom queries for TransactionImportRepository: staging table of an import (transaction_import_rows_ID).
+ * <p>
+ * Staging table keeps CSV fields as text, so COPY never fails on a bad value. Validation parses them into typed columns
+ * and marks invalid rows with an error, later statements work with valid rows only.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface TransactionImportRepositoryCustom {
+
+    /**
+     * Creates staging table of the import.
+     */
+    void createStagingTable(Integer importId);
+
+    /**
+     * Drops staging table of the import, does nothing if it doesn't exist.
+     */
+    void dropStagingTable(Integer importId);
+
+    /**
+     * Streams CSV rows into the staging table with COPY FROM STDIN (PostgreSQL CopyManager), rows are not parsed by the application.
+     * Columns: globalId, walletId, currency, transactionTypeId, amount, description, createdAt.
+     * @param header true if the first line is a header
+     * @return number of copied rows
+     */
+    long copyRows(Integer importId, InputStream csv, boolean header);
+
+    /**
+     * Validates all rows of the staging table by set-based statements: mandatory fields, currency, transaction type and wallet references,
+     * currency of the wallet, wallet without balance slots, amount format, creation time (not before horizon, not in the future), globalId unique in the import
+     * and in the database, and wallet balance after all transactions of the import.
+     * @param horizon rows created before it are rejected
+     * @param creditTypeId id of the credit transaction type
+     * @return number of rejected rows
+     */
+    long validateRows(Integer importId, Timestamp horizon, String creditTypeId);
+
+    /**
+     * @return id of the last row of the staging table, 0 if it is empty
+     */
+    long findLastRow(Integer importId);
+
+    /**
+     * @return months in which valid rows were created
+     */
+    List<YearMonth> findMonths(Integer importId);
+
+    /**
+     * Inserts valid rows with afterRow &lt; row &lt;= uptoRow into the transaction table by one statement.
+     * Ids are reserved from the transaction id sequence in blocks of Transaction.ID_ALLOCATION_SIZE, as by nextTransactionIds.
+     * @return number of inserted transactions
+     */
+    int moveRows(Integer importId, long afterRow, long uptoRow, String updatedBy);
+
+    /**
+     * Adds amounts of valid rows to wallet balances by one aggregated statement (credits are added, debits subtracted).
+     * @return number of updated wallets
+     */
+    int updateBalances(Integer importId, String creditTypeId, String updatedBy);
+
+    /**
+     * @return rejected rows after afterRow, ordered by row
+     */
+    List<RejectedRow> findRejectedRows(Integer importId, long afterRow, int limit);
+}
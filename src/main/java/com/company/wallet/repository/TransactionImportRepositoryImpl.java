@@ -0,0 +1,217 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.entities.Transaction;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementation of custom TransactionImportRepository queries.
+ * Uses PostgreSQL native SQL, {h-schema} is replaced by hibernate.default_schema, %1$s by the staging table of the import.
+ * @author Elena Medvedeva
+ */
+public class TransactionImportRepositoryImpl implements TransactionImportRepositoryCustom {
+
+    private static final String STAGING_TABLE = "transaction_import_rows_";
+
+    private static final String CREATE_STAGING_TABLE =
+            "CREATE TABLE %1$s (" +
+            "row_id BIGSERIAL PRIMARY KEY, " +
+            "global_id TEXT, wallet_id TEXT, currency TEXT, type_id TEXT, amount TEXT, description TEXT, created_at TEXT, " +
+            "wallet_ref INTEGER, currency_ref INTEGER, amount_value NUMERIC(15,2), created_value TIMESTAMP, error TEXT)";
+
+    private static final String DROP_STAGING_TABLE = "DROP TABLE IF EXISTS %1$s";
+
+    //plain JDBC statement, {h-schema} is not replaced, table name is qualified in copyRows
+    private static final String COPY_ROWS =
+            "COPY %1$s (global_id, wallet_id, currency, type_id, amount, description, created_at) FROM STDIN WITH (FORMAT csv, HEADER %2$s)";
+
+    //patterns are parameters, text is cast only if it matches, so a bad value never fails the statement
+    private static final String WALLET_ID_PATTERN = "^[0-9]{1,9}$";
+    private static final String AMOUNT_PATTERN = "^[0-9]{1,13}(\\.[0-9]{1,2})?$";
+    private static final String TIMESTAMP_PATTERN = "^[0-9]{4}-(0[1-9]|1[0-2])-(0[1-9]|[12][0-9]|3[01])[ T]([01][0-9]|2[0-3]):[0-5][0-9]:[0-5][0-9](\\.[0-9]{1,6})?$";
+
+    private static final String VALIDATE_FIELDS =
+            "UPDATE %1$s s SET wallet_ref = v.wallet_ref, currency_ref = v.currency_ref, amount_value = v.amount_value, created_value = v.created_value, " +
+            "error = CASE " +
+            "   WHEN s.global_id IS NULL OR s.global_id = '' THEN 'globalId is missing' " +
+            "   WHEN v.currency_ref IS NULL THEN 'unknown currency' " +
+            "   WHEN v.type_ref IS NULL THEN 'unknown transaction type' " +
+            "   WHEN v.wallet_ref IS NULL THEN 'unknown wallet' " +
+            "   WHEN v.wallet_slots IS NOT NULL THEN 'wallet has balance slots' " +
+            "   WHEN v.wallet_currency <> v.currency_ref THEN 'currency differs from wallet currency' " +
+            "   WHEN v.amount_value IS NULL OR v.amount_value = 0 THEN 'invalid amount' " +
+            "   WHEN v.created_value IS NULL THEN 'invalid createdAt' " +
+            "   WHEN v.created_value < :horizon THEN 'createdAt is in an archived or detached month' " +
+            "   WHEN v.created_value > localtimestamp THEN 'createdAt is in the future' " +
+            "END " +
+            "FROM (" +
+            "   SELECT r.row_id, w.id AS wallet_ref, w.currency_id AS wallet_currency, w.balance_slots AS wallet_slots, c.id AS currency_ref, tt.id AS type_ref," +
+            "   CASE WHEN r.amount ~ :amountPattern THEN CAST(r.amount AS NUMERIC(15,2)) END AS amount_value," +
+            "   CASE WHEN r.created_at ~ :timestampPattern THEN CAST(r.created_at AS TIMESTAMP) END AS created_value" +
+            "   FROM %1$s r" +
+            "   LEFT JOIN {h-schema}currency c ON c.name = r.currency" +
+            "   LEFT JOIN {h-schema}transaction_type tt ON tt.id = r.type_id" +
+            "   LEFT JOIN {h-schema}wallet w ON w.id = CASE WHEN r.wallet_id ~ :walletIdPattern THEN CAST(r.wallet_id AS integer) END) v " +
+            "WHERE s.row_id = v.row_id";
+
+    //the first row with a globalId is kept
+    private static final String VALIDATE_DUPLICATES =
+            "UPDATE %1$s s SET error = 'duplicate globalId in the import' " +
+            "FROM (SELECT row_id, row_number() OVER (PARTITION BY global_id ORDER BY row_id) AS n FROM %1$s WHERE error IS NULL) d " +
+            "WHERE s.row_id = d.row_id AND d.n > 1";
+
+    private static final String VALIDATE_EXISTING =
+            "UPDATE %1$s s SET error = 'globalId already exists' " +
+            "WHERE s.error IS NULL AND EXISTS (SELECT 1 FROM {h-schema}transaction_global_id g WHERE g.global_id = s.global_id)";
+
+    private static final String VALIDATE_FUNDS =
+            "UPDATE %1$s s SET error = 'wallet balance would be negative' " +
+            "FROM (" +
+            "   SELECT r.wallet_ref FROM %1$s r JOIN {h-schema}wallet w ON w.id = r.wallet_ref" +
+            "   WHERE r.error IS NULL GROUP BY r.wallet_ref, w.balance" +
+            "   HAVING w.balance + sum(CASE WHEN r.type_id = :creditTypeId THEN r.amount_value ELSE -r.amount_value END) < 0) n " +
+            "WHERE s.error IS NULL AND s.wallet_ref = n.wallet_ref";
+
+    private static final String COUNT_REJECTED = "SELECT count(*) FROM %1$s WHERE error IS NOT NULL";
+
+    private static final String LAST_ROW = "SELECT COALESCE(max(row_id), 0) FROM %1$s";
+
+    private static final String MONTHS =
+            "SELECT DISTINCT CAST(date_trunc('month', created_value) AS date) FROM %1$s WHERE error IS NULL";
+
+    //every sequence value is the upper bound of a block of Transaction.ID_ALLOCATION_SIZE ids, one block more than needed
+    //is taken in case the first one is below the block size (see TransactionRepositoryImpl.nextTransactionIds)
+    private static final String MOVE_ROWS =
+            "WITH r AS (" +
+            "   SELECT global_id, type_id, amount_value, wallet_ref, currency_ref, description, created_value, row_number() OVER (ORDER BY row_id) AS n" +
+            "   FROM %1$s WHERE row_id > :afterRow AND row_id <= :uptoRow AND error IS NULL), " +
+            "b AS (" +
+            "   SELECT hi, row_number() OVER (ORDER BY hi) AS n FROM (" +
+            "       SELECT nextval(pg_get_serial_sequence(CAST(:table AS text), 'id')) AS hi" +
+            "       FROM generate_series(0, (SELECT count(*) FROM r) / :blockSize + 1)) ids" +
+            "   WHERE hi >= :blockSize) " +
+            "INSERT INTO {h-schema}transaction (id, global_id, type_id, amount, wallet_id, currency_id, description, last_updated, last_updated_by) " +
+            "SELECT CAST(b.hi - :blockSize + 1 + mod(r.n - 1, :blockSize) AS integer), r.global_id, r.type_id, r.amount_value, r.wallet_ref, r.currency_ref," +
+            "   r.description, r.created_value, :updatedBy " +
+            "FROM r JOIN b ON b.n = (r.n - 1) / :blockSize + 1";
+
+    private static final String UPDATE_BALANCES =
+            "UPDATE {h-schema}wallet w SET balance = w.balance + d.delta, version = w.version + 1, last_updated = now(), last_updated_by = :updatedBy " +
+            "FROM (SELECT wallet_ref, sum(CASE WHEN type_id = :creditTypeId THEN amount_value ELSE -amount_value END) AS delta" +
+            "      FROM %1$s WHERE error IS NULL GROUP BY wallet_ref) d " +
+            "WHERE w.id = d.wallet_ref";
+
+    private static final String REJECTED_ROWS =
+            "SELECT row_id, global_id, wallet_id, error FROM %1$s WHERE error IS NOT NULL AND row_id > :afterRow ORDER BY row_id LIMIT :limit";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.default_schema:}")
+    private String defaultSchema;
+
+    @Override
+    public void createStagingTable(Integer importId) {
+        entityManager.createNativeQuery(sql(CREATE_STAGING_TABLE, importId)).executeUpdate();
+    }
+
+    @Override
+    public void dropStagingTable(Integer importId) {
+        entityManager.createNativeQuery(sql(DROP_STAGING_TABLE, importId)).executeUpdate();
+    }
+
+    @Override
+    public long copyRows(Integer importId, InputStream csv, boolean header) {
+        String schema = defaultSchema == null || defaultSchema.isEmpty() ? "" : defaultSchema + ".";
+        String copy = String.format(COPY_ROWS, schema + STAGING_TABLE + importId, header);
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                return copyManager.copyIn(copy, csv);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public long validateRows(Integer importId, Timestamp horizon, String creditTypeId) {
+        entityManager.createNativeQuery(sql(VALIDATE_FIELDS, importId))
+                .setParameter("horizon", horizon)
+                .setParameter("amountPattern", AMOUNT_PATTERN)
+                .setParameter("timestampPattern", TIMESTAMP_PATTERN)
+                .setParameter("walletIdPattern", WALLET_ID_PATTERN)
+                .executeUpdate();
+        entityManager.createNativeQuery(sql(VALIDATE_DUPLICATES, importId)).executeUpdate();
+        entityManager.createNativeQuery(sql(VALIDATE_EXISTING, importId)).executeUpdate();
+        entityManager.createNativeQuery(sql(VALIDATE_FUNDS, importId))
+                .setParameter("creditTypeId", creditTypeId)
+                .executeUpdate();
+        return ((Number) entityManager.createNativeQuery(sql(COUNT_REJECTED, importId)).getSingleResult()).longValue();
+    }
+
+    @Override
+    public long findLastRow(Integer importId) {
+        return ((Number) entityManager.createNativeQuery(sql(LAST_ROW, importId)).getSingleResult()).longValue();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<YearMonth> findMonths(Integer importId) {
+        List<Date> months = entityManager.createNativeQuery(sql(MONTHS, importId)).getResultList();
+        List<YearMonth> result = new ArrayList<>(months.size());
+        months.forEach(month -> result.add(YearMonth.from(month.toLocalDate())));
+        return result;
+    }
+
+    @Override
+    public int moveRows(Integer importId, long afterRow, long uptoRow, String updatedBy) {
+        return entityManager.createNativeQuery(sql(MOVE_ROWS, importId))
+                .setParameter("afterRow", afterRow)
+                .setParameter("uptoRow", uptoRow)
+                .setParameter("table", defaultSchema == null || defaultSchema.isEmpty() ? "transaction" : defaultSchema + ".transaction")
+                .setParameter("blockSize", Transaction.ID_ALLOCATION_SIZE)
+                .setParameter("updatedBy", updatedBy)
+                .executeUpdate();
+    }
+
+    @Override
+    public int updateBalances(Integer importId, String creditTypeId, String updatedBy) {
+        return entityManager.createNativeQuery(sql(UPDATE_BALANCES, importId))
+                .setParameter("creditTypeId", creditTypeId)
+                .setParameter("updatedBy", updatedBy)
+                .executeUpdate();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<RejectedRow> findRejectedRows(Integer importId, long afterRow, int limit) {
+        List<Object[]> rows = entityManager.createNativeQuery(sql(REJECTED_ROWS, importId))
+                .setParameter("afterRow", afterRow)
+                .setParameter("limit", limit)
+                .getResultList();
+        List<RejectedRow> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new RejectedRow(((Number) row[0]).longValue(), (String) row[1], (String) row[2], (String) row[3]));
+        }
+        return result;
+    }
+
+    //import id is an integer, so the table name is safe to put into SQL
+    private static String sql(String statement, Integer importId) {
+        return String.format(statement, "{h-schema}" + STAGING_TABLE + importId);
+    }
+}
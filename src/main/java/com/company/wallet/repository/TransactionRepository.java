@@ -3,18 +3,77 @@ package com.company.wallet.repository;
 import com.company.wallet.entities.Transaction;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.WalletException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import javax.transaction.Transactional;
+import java.util.Date;
 import java.util.List;
 
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 /**
  * Transaction JPA repository
  *  <p> Generates SQL queries to access the database to manage Transaction entities</p>
  * @author Elena Medvedeva
  */
 @Transactional(rollbackOn = WalletException.class)
-public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
-    List<Transaction> findByWallet(Wallet wallet);
+public interface TransactionRepository extends JpaRepository<Transaction, Integer>, TransactionRepositoryCustom {
+
+    /**
+     * Transactions selected with their type and currency by one statement and created by constructor, without wallet,
+     * so they are not managed by persistence context and have no dirty state to track.
+     */
+    String TRANSACTION_PROJECTION = "select new com.company.wallet.entities.Transaction(t.id, t.globalId, ty, t.amount, c, t.description, t.lastUpdated, t.lastUpdatedBy)"
+            + " from Transaction t join t.type ty join t.currency c";
+
+    /**
+     * Selects wallet transactions with their type and currency by one statement, in order of creation.
+     * Transactions keep reference to the wallet, so they are entities loaded read only (no dirty state is tracked).
+     */
+    @Query("select t from Transaction t join fetch t.type join fetch t.currency where t.wallet = :wallet order by t.lastUpdated, t.id")
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")})
+    List<Transaction> findByWallet(@Param("wallet") Wallet wallet);
+
+    /**
+     * Selects page of wallet transactions created after the last transaction of the previous page,
+     * ordered by creation time and id (keyset pagination).
+     * <p>
+     * Condition on lastUpdated (creation time) lets the database skip partitions of the transaction table
+     * created before the previous page, index on (wallet_id, last_updated, id) is used in the others.
+     * So the cost doesn't depend on the number of previous pages.
+     * </p>
+     * @param walletId wallet id
+     * @param afterTime creation time of the last transaction of the previous page (exact, with fraction of seconds)
+     * @param afterId id of the last transaction of the previous page, 0 for the first page
+     * @param pageable page size, page number must be 0
+     */
+    @Query(TRANSACTION_PROJECTION + " where t.wallet.id = :walletId and t.lastUpdated >= :afterTime"
+            + " and (t.lastUpdated > :afterTime or t.id > :afterId) order by t.lastUpdated, t.id")
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")})
+    List<Transaction> findPageByWalletId(@Param("walletId") Integer walletId, @Param("afterTime") Date afterTime,
+                                         @Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Selects the most recent wallet transactions, newest first, by one query using index on (wallet_id, last_updated, id).
+     * Partitions are read from the newest one, older partitions are not read when enough transactions are found.
+     * @param walletId wallet id
+     * @param pageable number of transactions, page number must be 0
+     */
+    @Query(TRANSACTION_PROJECTION + " where t.wallet.id = :walletId order by t.lastUpdated desc, t.id desc")
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")})
+    List<Transaction> findRecentByWalletId(@Param("walletId") Integer walletId, Pageable pageable);
+
+    /**
+     * Finds transaction with its wallet by globalId (see TransactionRepositoryCustom.findByGlobalId),
+     * doesn't start a database transaction if called outside of one.
+     */
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
     Transaction findByGlobalId(String globalId);
 }
@@ -0,0 +1,160 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.outbox.OutboxEvent;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Custom queries for TransactionRepository, which can't be generated by Spring Data JPA
+ * @author Elena Medvedeva
+ */
+public interface TransactionRepositoryCustom {
+
+    /**
+     * Updates wallet balance and inserts transaction in one SQL statement.
+     * <p>
+     * Wallet is updated only if it has the same currency as transaction and balance + balanceDelta >= 0.
+     * Transaction is inserted only if wallet was updated.
+     * </p>
+     * @param transaction transaction to insert, wallet is not used
+     * @param walletId wallet id
+     * @param balanceDelta amount to add to wallet balance (negative for debit)
+     * @return inserted transaction with updated wallet (not managed by entity manager),
+     *          or null if wallet was not updated (no wallet, other currency, or not enough funds)
+     */
+    Transaction saveWithBalanceUpdate(Transaction transaction, Integer walletId, BigDecimal balanceDelta);
+
+    /**
+     * Reserves transaction ids from the transaction id sequence, in blocks of Transaction.ID_ALLOCATION_SIZE.
+     * @param count minimal number of ids
+     * @return reserved ids, not less than count
+     */
+    List<Integer> nextTransactionIds(int count);
+
+    /**
+     * Inserts transaction without changing wallet balance (WriteMode.APPEND_ONLY).
+     * <p>
+     * Id is the next reserved id greater than afterId. Reserved ids not greater than it are skipped,
+     * and if there are none left, a new block is reserved: its ids are greater than all ids reserved before.
+     * So under WalletRepositoryCustom.lockBalance, with afterId of the last transaction of the wallet,
+     * transactions of a wallet get ids in the order they are committed, also when several instances reserve blocks.
+     * </p>
+     * @param transaction transaction with wallet, type and currency, id and lastUpdated are set by the insert
+     * @param afterId id of the last transaction of the wallet, 0 if the order of ids doesn't matter
+     * @return the same transaction
+     */
+    Transaction append(Transaction transaction, int afterId);
+
+    /**
+     * Inserts transaction with id already set, does nothing if transaction with this id or globalId is present.
+     * Doesn't change wallet balance.
+     * @param transaction transaction with id, wallet, type and currency references
+     * @return true if transaction was inserted
+     */
+    boolean insertIfAbsent(Transaction transaction);
+
+    /**
+     * Finds transaction with its wallet by globalId.
+     * <p>
+     * Transaction id and creation time are read from the global id lookup table, then the transaction is read
+     * by its primary key (id, last_updated), so only its partition is read.
+     * </p>
+     * @param globalId global id of the transaction
+     * @return transaction, null if globalId is not used or its transaction is not in the transaction table any more
+     *          (partition detached or dropped, see TransactionArchive)
+     */
+    Transaction findByGlobalId(String globalId);
+
+    /**
+     * Selects globalIds which are already used, from the global id lookup table,
+     * so globalIds of transactions in detached or dropped partitions are found as well.
+     * @param globalIds globalIds to check
+     * @return used globalIds of the given ones
+     */
+    Set<String> findUsedGlobalIds(Collection<String> globalIds);
+
+    /**
+     * Inserts new transactions with one JDBC batch (rewritten into multi-row inserts by the driver, see reWriteBatchedInserts).
+     * Ids are reserved with nextTransactionIds and set to the transactions, lastUpdated is set to current time.
+     * Doesn't change wallet balances.
+     * @param transactions transactions without id, with wallet, type and currency references
+     */
+    void insertAll(List<Transaction> transactions);
+
+    /**
+     * @return names of the partitions of the transaction table (PostgreSQL)
+     */
+    List<String> findPartitions();
+
+    /**
+     * Creates partition of the transaction table for transactions created from 'from' (inclusive) to 'to' (exclusive),
+     * does nothing if table with this name exists.
+     */
+    void createPartition(String name, LocalDate from, LocalDate to);
+
+    /**
+     * Detaches partition from the transaction table, it is kept as a separate table.
+     * Global ids of its transactions are kept in the global id lookup table, so they stay unique.
+     * Versions of the wallets with transactions in the partition are incremented in the same database transaction,
+     * because their transaction lists change (see WalletETag).
+     * @return ids of the wallets with transactions in the partition
+     */
+    List<Integer> detachPartition(String name);
+
+    /**
+     * Detaches partition (see detachPartition) and drops it.
+     * @return ids of the wallets with transactions in the partition
+     */
+    List<Integer> dropPartition(String name);
+
+    /**
+     * Reads transactions created from 'from' (inclusive) to 'to' (exclusive), ordered by wallet id, creation time and id,
+     * through a forward-only cursor and passes them to consumer one by one, with wallet id.
+     * Only partitions of the period are read. Transactions are created by constructor and have no wallet.
+     */
+    void forEachCreatedBetween(Date from, Date to, BiConsumer<Integer, Transaction> consumer);
+
+    /**
+     * Inserts events into the wallet event outbox with one JDBC batch, ids are generated by the database.
+     * @param events events without id
+     */
+    void insertOutboxEvents(List<OutboxEvent> events);
+
+    /**
+     * Selects the oldest events of the outbox and locks them with FOR UPDATE SKIP LOCKED,
+     * events locked by another relay are skipped instead of waited for.
+     * @param limit max number of events
+     * @return events ordered by id
+     */
+    List<OutboxEvent> lockOutboxEvents(int limit);
+
+    /**
+     * Deletes published events from the outbox.
+     */
+    void deleteOutboxEvents(Collection<Long> ids);
+
+    /**
+     * @return number of events in the outbox
+     */
+    long countOutboxEvents();
+
+    /**
+     * Streams transactions as CSV with header into out by COPY (SELECT ...) TO STDOUT (PostgreSQL CopyManager),
+     * rows are written by the database and copied to out as they arrive, without creating Transaction entities.
+     * Columns: id, global_id, wallet_id, currency, type_id, amount, description, last_updated, last_updated_by, ordered by last_updated and id.
+     * @param walletId transactions of this wallet, all wallets if null
+     * @param from transactions created from this time (inclusive), no lower bound if null
+     * @param to transactions created before this time, no upper bound if null
+     * @return number of written transactions
+     */
+    long copyTransactions(Integer walletId, Timestamp from, Timestamp to, OutputStream out);
+}
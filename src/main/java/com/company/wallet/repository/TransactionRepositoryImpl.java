@@ -0,0 +1,450 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.outbox.OutboxEvent;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Implementation of custom TransactionRepository queries.
+ * Uses PostgreSQL native SQL, {h-schema} is replaced by hibernate.default_schema.
+ * @author Elena Medvedeva
+ */
+public class TransactionRepositoryImpl implements TransactionRepositoryCustom {
+
+    //Updates wallet, inserts transaction and returns all fields needed for the response in one round trip
+    private static final String SAVE_WITH_BALANCE_UPDATE =
+            "WITH w AS (" +
+            "   UPDATE {h-schema}wallet SET balance = balance + :delta, last_updated = now(), last_updated_by = :updatedBy, version = version + 1" +
+            "   WHERE id = :walletId AND currency_id = :currencyId AND balance + :delta >= 0" +
+            "   RETURNING id, user_id, balance, last_updated, last_updated_by, version), " +
+            "t AS (" +
+            "   INSERT INTO {h-schema}transaction (id, global_id, type_id, amount, wallet_id, currency_id, description, last_updated, last_updated_by)" +
+            "   SELECT :id, :globalId, :typeId, :amount, w.id, :currencyId, CAST(:description AS text), now(), :updatedBy FROM w" +
+            "   RETURNING id, last_updated) " +
+            "SELECT t.id, t.last_updated, w.user_id, w.balance, w.last_updated AS wallet_last_updated, w.last_updated_by, " +
+            "       tt.description AS type_description, tt.last_updated AS type_last_updated, tt.last_updated_by AS type_last_updated_by, w.version " +
+            "FROM t, w, {h-schema}transaction_type tt WHERE tt.id = :typeId";
+
+    private static final String APPEND =
+            "INSERT INTO {h-schema}transaction (id, global_id, type_id, amount, wallet_id, currency_id, description, last_updated, last_updated_by) " +
+            "VALUES (:id, :globalId, :typeId, :amount, :walletId, :currencyId, CAST(:description AS text), now(), :updatedBy) " +
+            "RETURNING last_updated";
+
+    //every sequence value is the upper bound of a block of Transaction.ID_ALLOCATION_SIZE ids (as for Hibernate pooled optimizer)
+    private static final String NEXT_TRANSACTION_IDS =
+            "SELECT nextval(pg_get_serial_sequence(CAST(:table AS text), 'id')) FROM generate_series(1, :count)";
+
+    //global id is reserved first, transaction table is partitioned and has no unique constraint on global_id
+    private static final String INSERT_IF_ABSENT =
+            "WITH g AS (" +
+            "   INSERT INTO {h-schema}transaction_global_id (global_id, transaction_id, last_updated) VALUES (:globalId, :id, :lastUpdated)" +
+            "   ON CONFLICT DO NOTHING RETURNING global_id) " +
+            "INSERT INTO {h-schema}transaction (id, global_id, type_id, amount, wallet_id, currency_id, description, last_updated, last_updated_by) " +
+            "SELECT :id, g.global_id, :typeId, :amount, :walletId, :currencyId, CAST(:description AS text), :lastUpdated, :updatedBy FROM g " +
+            "ON CONFLICT DO NOTHING";
+
+    //lookup table has a row for every transaction, also for transactions of detached partitions
+    private static final String FIND_GLOBAL_ID =
+            "SELECT transaction_id, last_updated FROM {h-schema}transaction_global_id WHERE global_id = :globalId";
+
+    private static final String FIND_USED_GLOBAL_IDS =
+            "SELECT CAST(global_id AS text) FROM {h-schema}transaction_global_id WHERE global_id IN (:globalIds)";
+
+    //condition on the partition key, so only one partition is read
+    private static final String FIND_BY_KEY =
+            "select t from Transaction t join fetch t.wallet where t.lastUpdated = :lastUpdated and t.id = :id";
+
+    private static final String FIND_PARTITIONS =
+            "SELECT CAST(c.relname AS text) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = CAST(CAST(:table AS text) AS regclass) ORDER BY c.relname";
+
+    private static final String CREATE_PARTITION =
+            "CREATE TABLE IF NOT EXISTS {h-schema}%s PARTITION OF {h-schema}transaction FOR VALUES FROM ('%s') TO ('%s')";
+
+    private static final String DETACH_PARTITION = "ALTER TABLE {h-schema}transaction DETACH PARTITION {h-schema}%s";
+
+    private static final String DROP_PARTITION = "DROP TABLE {h-schema}%s";
+
+    //read from the partition after it is detached, it doesn't lock the transaction table any more
+    private static final String INCREMENT_VERSIONS_OF_PARTITION =
+            "UPDATE {h-schema}wallet SET version = version + 1 WHERE id IN (SELECT DISTINCT wallet_id FROM {h-schema}%s) RETURNING id";
+
+    private static final String CREATED_BETWEEN =
+            "select t.wallet.id, t.id, t.globalId, ty, t.amount, c, t.description, t.lastUpdated, t.lastUpdatedBy"
+            + " from Transaction t join t.type ty join t.currency c where t.lastUpdated >= :from and t.lastUpdated < :to"
+            + " order by t.wallet.id, t.lastUpdated, t.id";
+
+    //partition names are generated by TransactionPartitionManager, checked before they are put into DDL
+    private static final Pattern PARTITION_NAME = Pattern.compile("transaction_p\\d{4}_\\d{2}");
+
+    //plain JDBC statement, {h-schema} is not replaced, table name is qualified in insertAll
+    private static final String BATCH_INSERT =
+            "INSERT INTO %stransaction (id, global_id, type_id, amount, wallet_id, currency_id, description, last_updated, last_updated_by) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    //plain JDBC statement as BATCH_INSERT, id is the column default
+    private static final String OUTBOX_INSERT =
+            "INSERT INTO %swallet_event_outbox (wallet_id, transaction_id, payload, created_at) VALUES (?, ?, ?, ?)";
+
+    private static final String OUTBOX_LOCK =
+            "SELECT id, wallet_id, transaction_id, payload, created_at FROM {h-schema}wallet_event_outbox " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED";
+
+    private static final String OUTBOX_DELETE = "DELETE FROM {h-schema}wallet_event_outbox WHERE id IN (:ids)";
+
+    private static final String OUTBOX_COUNT = "SELECT count(*) FROM {h-schema}wallet_event_outbox";
+
+    //plain JDBC statement as BATCH_INSERT, COPY has no bind parameters, so conditions are built from typed values only
+    private static final String COPY_TRANSACTIONS =
+            "COPY (SELECT t.id, t.global_id, t.wallet_id, c.name AS currency, t.type_id, t.amount, t.description, t.last_updated, t.last_updated_by " +
+            "FROM %1$stransaction t JOIN %1$scurrency c ON c.id = t.currency_id WHERE %2$s ORDER BY t.last_updated, t.id) " +
+            "TO STDOUT WITH (FORMAT csv, HEADER true)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${spring.jpa.properties.hibernate.default_schema:}")
+    private String defaultSchema;
+
+    @Value("${application.archive.fetch-size:1000}")
+    private int fetchSize;
+
+    //ids reserved for saveWithBalanceUpdate
+    private final ArrayDeque<Integer> reservedIds = new ArrayDeque<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Transaction saveWithBalanceUpdate(Transaction transaction, Integer walletId, BigDecimal balanceDelta) {
+        List<Object[]> rows = entityManager.createNativeQuery(SAVE_WITH_BALANCE_UPDATE)
+                .setParameter("id", nextTransactionId())
+                .setParameter("delta", balanceDelta)
+                .setParameter("updatedBy", transaction.getLastUpdatedBy())
+                .setParameter("walletId", walletId)
+                .setParameter("currencyId", transaction.getCurrency().getId())
+                .setParameter("globalId", transaction.getGlobalId())
+                .setParameter("typeId", transaction.getType().getId())
+                .setParameter("amount", transaction.getAmount())
+                .setParameter("description", transaction.getDescription())
+                .getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+
+        Wallet wallet = new Wallet((String) row[2], transaction.getCurrency(), (BigDecimal) row[3], (String) row[5]);
+        wallet.setId(walletId);
+        wallet.setLastUpdated((Date) row[4]);
+        wallet.setVersion(((Number) row[9]).longValue());
+
+        TransactionType type = new TransactionType(transaction.getType().getId(), (String) row[6], (String) row[8]);
+        type.setLastUpdated((Date) row[7]);
+
+        Transaction saved = new Transaction(transaction.getGlobalId(), type, transaction.getAmount(), wallet,
+                transaction.getCurrency(), transaction.getDescription(), transaction.getLastUpdatedBy());
+        saved.setId(((Number) row[0]).intValue());
+        saved.setLastUpdated((Date) row[1]);
+        return saved;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Integer> nextTransactionIds(int count) {
+        String table = qualifiedTable();
+        int blocks = (count + Transaction.ID_ALLOCATION_SIZE - 1) / Transaction.ID_ALLOCATION_SIZE;
+        List<Number> upperBounds = entityManager.createNativeQuery(NEXT_TRANSACTION_IDS)
+                .setParameter("table", table)
+                .setParameter("count", Math.max(1, blocks))
+                .getResultList();
+        List<Integer> result = new ArrayList<>(upperBounds.size() * Transaction.ID_ALLOCATION_SIZE);
+        for (Number upperBound : upperBounds) {
+            int hi = upperBound.intValue();
+            for (int id = Math.max(1, hi - Transaction.ID_ALLOCATION_SIZE + 1); id <= hi; id++) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private String qualifiedTable() {
+        return defaultSchema == null || defaultSchema.isEmpty() ? "transaction" : defaultSchema + ".transaction";
+    }
+
+    private Integer nextTransactionId() {
+        return nextTransactionId(0);
+    }
+
+    //reserved ids are in ascending order, a new block is greater than all ids reserved before
+    private Integer nextTransactionId(int afterId) {
+        synchronized (reservedIds) {
+            while (!reservedIds.isEmpty() && reservedIds.peek() <= afterId) {
+                reservedIds.poll();
+            }
+            if (reservedIds.isEmpty()) {
+                reservedIds.addAll(nextTransactionIds(Transaction.ID_ALLOCATION_SIZE));
+            }
+            return reservedIds.poll();
+        }
+    }
+
+    @Override
+    public Transaction append(Transaction transaction, int afterId) {
+        Integer id = nextTransactionId(afterId);
+        Date lastUpdated = (Date) entityManager.createNativeQuery(APPEND)
+                .setParameter("id", id)
+                .setParameter("globalId", transaction.getGlobalId())
+                .setParameter("typeId", transaction.getType().getId())
+                .setParameter("amount", transaction.getAmount())
+                .setParameter("walletId", transaction.getWallet().getId())
+                .setParameter("currencyId", transaction.getCurrency().getId())
+                .setParameter("description", transaction.getDescription())
+                .setParameter("updatedBy", transaction.getLastUpdatedBy())
+                .getSingleResult();
+        transaction.setId(id);
+        transaction.setLastUpdated(lastUpdated);
+        return transaction;
+    }
+
+    @Override
+    public boolean insertIfAbsent(Transaction transaction) {
+        return entityManager.createNativeQuery(INSERT_IF_ABSENT)
+                .setParameter("id", transaction.getId())
+                .setParameter("globalId", transaction.getGlobalId())
+                .setParameter("typeId", transaction.getType().getId())
+                .setParameter("amount", transaction.getAmount())
+                .setParameter("walletId", transaction.getWallet().getId())
+                .setParameter("currencyId", transaction.getCurrency().getId())
+                .setParameter("description", transaction.getDescription())
+                .setParameter("lastUpdated", transaction.getLastUpdated())
+                .setParameter("updatedBy", transaction.getLastUpdatedBy())
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Transaction findByGlobalId(String globalId) {
+        List<Object[]> keys = entityManager.createNativeQuery(FIND_GLOBAL_ID)
+                .setParameter("globalId", globalId)
+                .getResultList();
+        if (keys.isEmpty()) {
+            return null;
+        }
+        List<Transaction> transactions = entityManager.createQuery(FIND_BY_KEY, Transaction.class)
+                .setParameter("lastUpdated", (Date) keys.get(0)[1])
+                .setParameter("id", ((Number) keys.get(0)[0]).intValue())
+                .getResultList();
+        return transactions.isEmpty() ? null : transactions.get(0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> findUsedGlobalIds(Collection<String> globalIds) {
+        if (globalIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(entityManager.createNativeQuery(FIND_USED_GLOBAL_IDS)
+                .setParameter("globalIds", globalIds)
+                .getResultList());
+    }
+
+    @Override
+    public void insertAll(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = nextTransactionIds(transactions.size());
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        String schema = defaultSchema == null || defaultSchema.isEmpty() ? "" : defaultSchema + ".";
+        //pending wallet updates must not be reordered after the inserts
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(String.format(BATCH_INSERT, schema))) {
+                for (int i = 0; i < transactions.size(); i++) {
+                    Transaction transaction = transactions.get(i);
+                    transaction.setId(ids.get(i));
+                    transaction.setLastUpdated(now);
+                    statement.setInt(1, transaction.getId());
+                    statement.setString(2, transaction.getGlobalId());
+                    statement.setString(3, transaction.getType().getId());
+                    statement.setBigDecimal(4, transaction.getAmount());
+                    statement.setInt(5, transaction.getWallet().getId());
+                    statement.setInt(6, transaction.getCurrency().getId());
+                    if (transaction.getDescription() == null) {
+                        statement.setNull(7, Types.VARCHAR);
+                    } else {
+                        statement.setString(7, transaction.getDescription());
+                    }
+                    statement.setTimestamp(8, now);
+                    statement.setString(9, transaction.getLastUpdatedBy());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> findPartitions() {
+        return entityManager.createNativeQuery(FIND_PARTITIONS)
+                .setParameter("table", qualifiedTable())
+                .getResultList();
+    }
+
+    @Override
+    public void createPartition(String name, LocalDate from, LocalDate to) {
+        entityManager.createNativeQuery(String.format(CREATE_PARTITION, checkPartitionName(name), from, to)).executeUpdate();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Integer> detachPartition(String name) {
+        entityManager.createNativeQuery(String.format(DETACH_PARTITION, checkPartitionName(name))).executeUpdate();
+        List<Number> walletIds = entityManager.createNativeQuery(String.format(INCREMENT_VERSIONS_OF_PARTITION, name)).getResultList();
+        List<Integer> result = new ArrayList<>(walletIds.size());
+        walletIds.forEach(walletId -> result.add(walletId.intValue()));
+        return result;
+    }
+
+    @Override
+    public List<Integer> dropPartition(String name) {
+        List<Integer> walletIds = detachPartition(name);
+        entityManager.createNativeQuery(String.format(DROP_PARTITION, checkPartitionName(name))).executeUpdate();
+        return walletIds;
+    }
+
+    @Override
+    public void forEachCreatedBetween(Date from, Date to, BiConsumer<Integer, Transaction> consumer) {
+        Session session = entityManager.unwrap(Session.class);
+        try (ScrollableResults results = session.createQuery(CREATED_BETWEEN)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setHibernateFlushMode(FlushMode.MANUAL)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                Object[] row = results.get();
+                Transaction transaction = new Transaction((Integer) row[1], (String) row[2], (TransactionType) row[3], (BigDecimal) row[4],
+                        (Currency) row[5], (String) row[6], (Date) row[7], (String) row[8]);
+                consumer.accept((Integer) row[0], transaction);
+            }
+        }
+    }
+
+    private static String checkPartitionName(String name) {
+        if (!PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid partition name: " + name);
+        }
+        return name;
+    }
+
+    @Override
+    public void insertOutboxEvents(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        String schema = defaultSchema == null || defaultSchema.isEmpty() ? "" : defaultSchema + ".";
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(String.format(OUTBOX_INSERT, schema))) {
+                for (OutboxEvent event : events) {
+                    statement.setInt(1, event.getWalletId());
+                    if (event.getTransactionId() == null) {
+                        statement.setNull(2, Types.INTEGER);
+                    } else {
+                        statement.setInt(2, event.getTransactionId());
+                    }
+                    statement.setString(3, event.getPayload());
+                    statement.setTimestamp(4, new Timestamp(event.getCreatedAt().getTime()));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public long copyTransactions(Integer walletId, Timestamp from, Timestamp to, OutputStream out) {
+        List<String> conditions = new ArrayList<>();
+        if (walletId != null) {
+            conditions.add("t.wallet_id = " + walletId.intValue());
+        }
+        //range on last_updated, so only partitions of the range are read
+        if (from != null) {
+            conditions.add("t.last_updated >= TIMESTAMP '" + from + "'");
+        }
+        if (to != null) {
+            conditions.add("t.last_updated < TIMESTAMP '" + to + "'");
+        }
+        if (conditions.isEmpty()) {
+            conditions.add("true");
+        }
+        String schema = defaultSchema == null || defaultSchema.isEmpty() ? "" : defaultSchema + ".";
+        String copy = String.format(COPY_TRANSACTIONS, schema, String.join(" AND ", conditions));
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                return copyManager.copyOut(copy, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<OutboxEvent> lockOutboxEvents(int limit) {
+        List<Object[]> rows = entityManager.createNativeQuery(OUTBOX_LOCK)
+                .setParameter("limit", limit)
+                .getResultList();
+        List<OutboxEvent> events = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            events.add(new OutboxEvent(((Number) row[0]).longValue(), ((Number) row[1]).intValue(),
+                    row[2] == null ? null : ((Number) row[2]).intValue(), (String) row[3], (Date) row[4]));
+        }
+        return events;
+    }
+
+    @Override
+    public void deleteOutboxEvents(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        entityManager.createNativeQuery(OUTBOX_DELETE)
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+
+    @Override
+    public long countOutboxEvents() {
+        return ((Number) entityManager.createNativeQuery(OUTBOX_COUNT).getSingleResult()).longValue();
+    }
+}
@@ -3,9 +3,23 @@ package com.company.wallet.repository;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.WalletException;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * Wallet JPA repository
@@ -13,8 +27,46 @@ import java.util.List;
  * @author Elena Medvedeva
  */
 @Transactional(rollbackOn = WalletException.class)
-public interface WalletRepository extends JpaRepository<Wallet, Integer> {
+public interface WalletRepository extends JpaRepository<Wallet, Integer>, WalletRepositoryCustom {
+
+    /**
+     * Wallets selected with their currency by one statement and created by constructor,
+     * so they are not managed by persistence context and have no dirty state to track.
+     */
+    String WALLET_PROJECTION = "select new com.company.wallet.entities.Wallet(w.id, w.userId, c, w.balance, w.lastUpdated, w.lastUpdatedBy, w.version, w.lastTransactionId, w.balanceSlots)"
+            + " from Wallet w join w.currency c";
+
+    @Query(WALLET_PROJECTION + " order by w.id")
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")})
     List<Wallet> findAllByOrderByIdAsc();
-    List<Wallet> findByUserId(String userId);
+
+    @Query(WALLET_PROJECTION + " where w.userId = :userId order by w.id")
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")})
+    List<Wallet> findByUserId(@Param("userId") String userId);
+
+    @Query("select w.id from Wallet w where w.balanceSlots is not null")
+    @QueryHints({@QueryHint(name = HINT_READONLY, value = "true"), @QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL")})
+    List<Integer> findIdsWithBalanceSlots();
+
+    /**
+     * Selects wallet and locks wallet row (SELECT ... FOR UPDATE) until the end of the database transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from Wallet w where w.id = :id")
+    Optional<Wallet> findByIdForUpdate(@Param("id") Integer id);
+
+    /**
+     * Selects wallets and locks wallet rows in wallet id order, so concurrent callers can't deadlock each other
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from Wallet w where w.id in :ids order by w.id")
+    List<Wallet> findAllByIdForUpdate(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Sets wallet balance without loading wallet
+     */
+    @Modifying
+    @Query("update Wallet w set w.balance = :balance, w.lastUpdated = :lastUpdated, w.lastUpdatedBy = :updatedBy, w.version = w.version + 1 where w.id = :id")
+    int updateBalance(@Param("id") Integer id, @Param("balance") BigDecimal balance, @Param("lastUpdated") Date lastUpdated, @Param("updatedBy") String updatedBy);
 
 }
\ No newline at end of file
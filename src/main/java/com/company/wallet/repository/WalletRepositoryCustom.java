@@ -0,0 +1,97 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.entities.Wallet;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Custom queries for WalletRepository, which can't be generated by Spring Data JPA
+ * @author Elena Medvedeva
+ */
+public interface WalletRepositoryCustom {
+
+    /**
+     * Reads all wallets ordered by id through a forward-only cursor and passes them to consumer one by one.
+     * <p>
+     * Rows are fetched in portions of application.wallet.export.fetch-size,
+     * wallets are created by projection query and not kept by the session, so memory use doesn't depend on the number of wallets.
+     * Must be called inside of a database transaction (PostgreSQL uses cursor only if autocommit is off).
+     * </p>
+     * @param consumer called for every wallet, wallet currency is loaded
+     */
+    void forEachOrderById(Consumer<Wallet> consumer);
+
+    /**
+     * Takes transaction level advisory lock of the wallet balance (PostgreSQL pg_advisory_xact_lock), wallet row is not locked.
+     * Serializes funds checks and inserts of WriteMode.APPEND_ONLY for the wallet, lock is released at the end of the database transaction.
+     */
+    void lockBalance(Integer walletId);
+
+    /**
+     * Starts balance checkpoint of the wallet if it has none: wallet balance includes all its transactions,
+     * so checkpoint is set to the last transaction id of the wallet.
+     * Should be called under lockBalance.
+     * @return true if checkpoint was started
+     */
+    boolean initBalanceCheckpoint(Integer walletId);
+
+    /**
+     * Reads balances of wallets with balance checkpoint: checkpoint plus transactions after it (credit if type is creditTypeId, otherwise debit).
+     * @param walletIds wallets to read (wallets without checkpoint are skipped), or null for all wallets with pending transactions
+     * @param creditTypeId id of credit transaction type
+     */
+    List<PendingBalance> findPendingBalances(Collection<Integer> walletIds, String creditTypeId);
+
+    /**
+     * Moves pending transactions of wallets into their balance checkpoints (balance, version and last transaction id), one statement.
+     * Wallet changed by a concurrent call is skipped.
+     * @param walletIds wallets to update, or null for all wallets with balance checkpoint
+     * @return number of updated wallets
+     */
+    int materializeBalances(Collection<Integer> walletIds, String creditTypeId, String updatedBy);
+
+    /**
+     * Materializes balances of all wallets with balance checkpoint and removes their checkpoints,
+     * so every transaction updates wallet balance again.
+     * @return number of updated wallets
+     */
+    int retireBalanceCheckpoints(String creditTypeId);
+
+    /**
+     * Reads sums of balance slots of wallets, wallets without slots are skipped.
+     * @param walletIds wallets to read, or null for all wallets with slots
+     */
+    List<SlotBalance> findSlotBalances(Collection<Integer> walletIds);
+
+    /**
+     * Adds delta to one balance slot of the wallet and increments slot version, only if slot balance stays not negative.
+     * Locks only the slot row.
+     * @return true if slot was updated, false if slot doesn't exist or has not enough funds
+     */
+    boolean addToSlot(Integer walletId, int slot, BigDecimal delta);
+
+    /**
+     * Locks balance slots of the wallet (SELECT ... FOR UPDATE in slot order) until the end of the database transaction.
+     * @return slot balances in slot order
+     */
+    List<BigDecimal> lockSlots(Integer walletId);
+
+    /**
+     * Locks wallet row (SELECT ... FOR NO KEY UPDATE, so transaction inserts referencing the wallet are not blocked).
+     * Should be called after lockSlots.
+     * @return wallet row balance, null if wallet doesn't exist
+     */
+    BigDecimal lockWalletBalance(Integer walletId);
+
+    /**
+     * Sets balance of the wallet row and balances of its slots, should be called under lockSlots and lockWalletBalance.
+     * Slots after slotBalances are removed and their versions are added to the wallet version, slots which are not present are created,
+     * so the wallet version plus versions of its slots grows by one.
+     * @param slotBalances balance of every slot, empty to keep the whole balance in the wallet row
+     * @return number of updated wallets
+     */
+    int setSlotBalances(Integer walletId, BigDecimal walletBalance, List<BigDecimal> slotBalances, String updatedBy);
+}
@@ -0,0 +1,238 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.entities.Wallet;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Implementation of custom WalletRepository queries.
+ * Balance checkpoint queries use PostgreSQL native SQL, {h-schema} is replaced by hibernate.default_schema.
+ * @author Elena Medvedeva
+ */
+public class WalletRepositoryImpl implements WalletRepositoryCustom {
+
+    private static final String ALL_WALLETS = WalletRepository.WALLET_PROJECTION + " order by w.id";
+
+    //first key of the two-key advisory lock, separates wallet balance locks from other advisory locks
+    private static final int BALANCE_LOCK_CLASS = 0x57414c31;
+
+    private static final String LOCK_BALANCE = "SELECT 1 FROM pg_advisory_xact_lock(:lockClass, :walletId)";
+
+    private static final String INIT_BALANCE_CHECKPOINT =
+            "UPDATE {h-schema}wallet SET last_transaction_id = " +
+            "   COALESCE((SELECT max(t.id) FROM {h-schema}transaction t WHERE t.wallet_id = :walletId), 0) " +
+            "WHERE id = :walletId AND last_transaction_id IS NULL";
+
+    //transactions after the checkpoint of every wallet, read through index (wallet_id, id)
+    private static final String PENDING =
+            "CROSS JOIN LATERAL (" +
+            "   SELECT sum(CASE WHEN t.type_id = :creditTypeId THEN abs(t.amount) ELSE -abs(t.amount) END) AS delta," +
+            "          count(t.id) AS pending, max(t.id) AS last_id, max(t.last_updated) AS last_updated" +
+            "   FROM {h-schema}transaction t WHERE t.wallet_id = w.id AND t.id > w.last_transaction_id) p ";
+
+    private static final String PENDING_BALANCES =
+            "SELECT w.id, w.balance + COALESCE(p.delta, 0) AS balance, w.version + p.pending AS version, w.last_transaction_id, p.pending, " +
+            "       COALESCE(p.last_id, w.last_transaction_id) AS last_id, p.last_updated " +
+            "FROM {h-schema}wallet w " + PENDING + "WHERE w.last_transaction_id IS NOT NULL AND %s";
+
+    //last_transaction_id is checked again after the row lock, so concurrent materialization of the same wallet doesn't apply transactions twice
+    private static final String MATERIALIZE_BALANCES =
+            "UPDATE {h-schema}wallet u SET balance = u.balance + m.delta, version = u.version + m.pending, last_transaction_id = m.last_id, " +
+            "   last_updated = m.last_updated, last_updated_by = :updatedBy " +
+            "FROM (SELECT w.id, w.last_transaction_id, p.* FROM {h-schema}wallet w " + PENDING +
+            "      WHERE w.last_transaction_id IS NOT NULL AND p.pending > 0 AND %s) m " +
+            "WHERE u.id = m.id AND u.last_transaction_id = m.last_transaction_id";
+
+    private static final String RETIRE_BALANCE_CHECKPOINTS =
+            "UPDATE {h-schema}wallet u SET balance = u.balance + COALESCE(m.delta, 0), version = u.version + m.pending, last_transaction_id = NULL " +
+            "FROM (SELECT w.id, p.* FROM {h-schema}wallet w " + PENDING + "WHERE w.last_transaction_id IS NOT NULL) m " +
+            "WHERE u.id = m.id";
+
+    private static final String SLOT_BALANCES =
+            "SELECT s.wallet_id, sum(s.balance) AS balance, sum(s.version) AS version, count(*) AS slots FROM {h-schema}wallet_balance_slot s %s GROUP BY s.wallet_id";
+
+    private static final String ADD_TO_SLOT =
+            "UPDATE {h-schema}wallet_balance_slot SET balance = balance + :delta, version = version + 1, last_updated = now() " +
+            "WHERE wallet_id = :walletId AND slot = :slot AND balance + :delta >= 0";
+
+    private static final String LOCK_SLOTS =
+            "SELECT balance FROM {h-schema}wallet_balance_slot WHERE wallet_id = :walletId ORDER BY slot FOR UPDATE";
+
+    private static final String LOCK_WALLET_BALANCE = "SELECT balance FROM {h-schema}wallet WHERE id = :walletId FOR NO KEY UPDATE";
+
+    private static final String SET_WALLET_BALANCE =
+            "UPDATE {h-schema}wallet SET balance = :balance, balance_slots = NULLIF(:slotCount, 0), last_updated = now(), last_updated_by = :updatedBy, " +
+            "   version = version + 1 + COALESCE((SELECT sum(s.version) FROM {h-schema}wallet_balance_slot s WHERE s.wallet_id = :walletId AND s.slot >= :slotCount), 0) " +
+            "WHERE id = :walletId";
+
+    private static final String REMOVE_SLOTS = "DELETE FROM {h-schema}wallet_balance_slot WHERE wallet_id = :walletId AND slot >= :slotCount";
+
+    private static final String SET_SLOT_BALANCE =
+            "INSERT INTO {h-schema}wallet_balance_slot (wallet_id, slot, balance, version, last_updated) VALUES (:walletId, :slot, :balance, 0, now()) " +
+            "ON CONFLICT (wallet_id, slot) DO UPDATE SET balance = EXCLUDED.balance, last_updated = EXCLUDED.last_updated";
+
+    private static final String SELECTED_WALLETS = "w.id IN (:walletIds)";
+    private static final String PENDING_WALLETS = "p.pending > 0";
+    private static final String ALL_CHECKPOINTS = "true";
+    private static final String SELECTED_SLOTS = "WHERE s.wallet_id IN (:walletIds)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${application.wallet.export.fetch-size:1000}")
+    private int fetchSize;
+
+    @Override
+    public void forEachOrderById(Consumer<Wallet> consumer) {
+        Session session = entityManager.unwrap(Session.class);
+        try (ScrollableResults results = session.createQuery(ALL_WALLETS, Wallet.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setHibernateFlushMode(FlushMode.MANUAL)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            //wallets are created by constructor and not kept by the session
+            while (results.next()) {
+                consumer.accept((Wallet) results.get(0));
+            }
+        }
+    }
+
+    @Override
+    public void lockBalance(Integer walletId) {
+        entityManager.createNativeQuery(LOCK_BALANCE)
+                .setParameter("lockClass", BALANCE_LOCK_CLASS)
+                .setParameter("walletId", walletId)
+                .getSingleResult();
+    }
+
+    @Override
+    public boolean initBalanceCheckpoint(Integer walletId) {
+        return entityManager.createNativeQuery(INIT_BALANCE_CHECKPOINT)
+                .setParameter("walletId", walletId)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<PendingBalance> findPendingBalances(Collection<Integer> walletIds, String creditTypeId) {
+        if (walletIds != null && walletIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query query = entityManager.createNativeQuery(String.format(PENDING_BALANCES, walletIds == null ? PENDING_WALLETS : SELECTED_WALLETS))
+                .setParameter("creditTypeId", creditTypeId);
+        if (walletIds != null) {
+            query.setParameter("walletIds", walletIds);
+        }
+        List<Object[]> rows = query.getResultList();
+        List<PendingBalance> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new PendingBalance(((Number) row[0]).intValue(), (BigDecimal) row[1], ((Number) row[2]).longValue(),
+                    ((Number) row[3]).intValue(), ((Number) row[4]).intValue(), ((Number) row[5]).intValue(), (Date) row[6]));
+        }
+        return result;
+    }
+
+    //called by BalanceMaterializer at start and from its own thread, without a database transaction
+    @Transactional
+    @Override
+    public int materializeBalances(Collection<Integer> walletIds, String creditTypeId, String updatedBy) {
+        if (walletIds != null && walletIds.isEmpty()) {
+            return 0;
+        }
+        Query query = entityManager.createNativeQuery(String.format(MATERIALIZE_BALANCES, walletIds == null ? ALL_CHECKPOINTS : SELECTED_WALLETS))
+                .setParameter("creditTypeId", creditTypeId)
+                .setParameter("updatedBy", updatedBy);
+        if (walletIds != null) {
+            query.setParameter("walletIds", walletIds);
+        }
+        return query.executeUpdate();
+    }
+
+    @Transactional
+    @Override
+    public int retireBalanceCheckpoints(String creditTypeId) {
+        return entityManager.createNativeQuery(RETIRE_BALANCE_CHECKPOINTS)
+                .setParameter("creditTypeId", creditTypeId)
+                .executeUpdate();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<SlotBalance> findSlotBalances(Collection<Integer> walletIds) {
+        if (walletIds != null && walletIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query query = entityManager.createNativeQuery(String.format(SLOT_BALANCES, walletIds == null ? "" : SELECTED_SLOTS));
+        if (walletIds != null) {
+            query.setParameter("walletIds", walletIds);
+        }
+        List<Object[]> rows = query.getResultList();
+        List<SlotBalance> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new SlotBalance(((Number) row[0]).intValue(), (BigDecimal) row[1], ((Number) row[2]).longValue(), ((Number) row[3]).intValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean addToSlot(Integer walletId, int slot, BigDecimal delta) {
+        return entityManager.createNativeQuery(ADD_TO_SLOT)
+                .setParameter("walletId", walletId)
+                .setParameter("slot", slot)
+                .setParameter("delta", delta)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<BigDecimal> lockSlots(Integer walletId) {
+        return entityManager.createNativeQuery(LOCK_SLOTS)
+                .setParameter("walletId", walletId)
+                .getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public BigDecimal lockWalletBalance(Integer walletId) {
+        List<BigDecimal> balances = entityManager.createNativeQuery(LOCK_WALLET_BALANCE)
+                .setParameter("walletId", walletId)
+                .getResultList();
+        return balances.isEmpty() ? null : balances.get(0);
+    }
+
+    @Override
+    public int setSlotBalances(Integer walletId, BigDecimal walletBalance, List<BigDecimal> slotBalances, String updatedBy) {
+        int updated = entityManager.createNativeQuery(SET_WALLET_BALANCE)
+                .setParameter("walletId", walletId)
+                .setParameter("balance", walletBalance)
+                .setParameter("slotCount", slotBalances.size())
+                .setParameter("updatedBy", updatedBy)
+                .executeUpdate();
+        entityManager.createNativeQuery(REMOVE_SLOTS)
+                .setParameter("walletId", walletId)
+                .setParameter("slotCount", slotBalances.size())
+                .executeUpdate();
+        for (int slot = 0; slot < slotBalances.size(); slot++) {
+            entityManager.createNativeQuery(SET_SLOT_BALANCE)
+                    .setParameter("walletId", walletId)
+                    .setParameter("slot", slot)
+                    .setParameter("balance", slotBalances.get(slot))
+                    .executeUpdate();
+        }
+        return updated;
+    }
+}
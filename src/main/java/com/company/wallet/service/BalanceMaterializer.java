@@ -0,0 +1,58 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Wallet;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Balance checkpoints of WriteMode.APPEND_ONLY.
+ * <p>
+ * Wallet balance (and version) is a checkpoint which includes transactions of the wallet up to Wallet.lastTransactionId.
+ * Later transactions are pending: they are added to the wallet on read and moved into the checkpoint in the background,
+ * so a hot wallet row is updated once per materialization instead of once per transaction.
+ * Wallets read through this interface have the same balance and version as if every transaction updated the wallet.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface BalanceMaterializer {
+
+    /**
+     * @return wallet with pending transactions added, the same wallet if it has no balance checkpoint
+     */
+    public Wallet withPendingBalance(@NotNull Wallet wallet);
+
+    /**
+     * @return wallets with pending transactions added, read by one statement
+     */
+    public List<Wallet> withPendingBalance(@NotNull List<Wallet> wallets);
+
+    /**
+     * @return consumer which adds pending transactions to wallets before they are passed to the given consumer
+     */
+    public Consumer<Wallet> withPendingBalance(@NotNull Consumer<Wallet> consumer);
+
+    /**
+     * Remembers that the wallet got a pending transaction, when the current database transaction is committed.
+     */
+    public void markPendingAfterCommit(@NotNull Integer walletId);
+
+    /**
+     * Materializes balances of the wallets marked as pending.
+     * @return number of updated wallets
+     */
+    public int materializePending();
+
+    /**
+     * Materializes balances of all wallets with pending transactions.
+     * @return number of updated wallets
+     */
+    public int materializeAll();
+
+    /**
+     * Materializes balances and removes balance checkpoints of all wallets, needed before wallets are written in other write modes.
+     * @return number of updated wallets
+     */
+    public int retireCheckpoints();
+}
@@ -0,0 +1,252 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.repository.PendingBalance;
+import com.company.wallet.repository.WalletRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Balance materializer, which keeps wallets with pending transactions written by this application instance
+ * and materializes them every 'application.transaction.append-only.materialize-interval-ms' (no periodic materialization if 0),
+ * by portions of 'application.transaction.append-only.materialize-batch-size' wallets.
+ * <p>
+ * At start balances of all wallets with pending transactions are materialized with WriteMode.APPEND_ONLY
+ * (transactions written before restart), and balance checkpoints are removed with other write modes.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class BalanceMaterializerImpl implements BalanceMaterializer {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Value("${application.transaction.write-mode:SERIALIZABLE}")
+    private WriteMode writeMode;
+
+    @Value("${application.transaction.type.credit}")
+    private String transactionTypeCredit;
+
+    @Value("${db.updated_by}")
+    private String updatedBy;
+
+    @Value("${application.transaction.append-only.materialize-interval-ms:1000}")
+    private long materializeIntervalMs;
+
+    @Value("${application.transaction.append-only.materialize-batch-size:1000}")
+    private int materializeBatchSize;
+
+    private final Set<Integer> pendingWallets = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService materializer;
+
+    public void setWalletRepository(WalletRepository walletRepository) {
+        this.walletRepository = walletRepository;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public String getTransactionTypeCredit() {
+        return transactionTypeCredit;
+    }
+
+    public void setTransactionTypeCredit(String transactionTypeCredit) {
+        this.transactionTypeCredit = transactionTypeCredit;
+    }
+
+    public String getUpdatedBy() {
+        return updatedBy;
+    }
+
+    public void setUpdatedBy(String updatedBy) {
+        this.updatedBy = updatedBy;
+    }
+
+    public long getMaterializeIntervalMs() {
+        return materializeIntervalMs;
+    }
+
+    public void setMaterializeIntervalMs(long materializeIntervalMs) {
+        this.materializeIntervalMs = materializeIntervalMs;
+    }
+
+    public int getMaterializeBatchSize() {
+        return materializeBatchSize;
+    }
+
+    public void setMaterializeBatchSize(int materializeBatchSize) {
+        this.materializeBatchSize = materializeBatchSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            if (writeMode == WriteMode.APPEND_ONLY) {
+                materializeAll();
+            } else {
+                retireCheckpoints();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Couldn't materialize wallet balances at start", e);
+        }
+        if (materializeIntervalMs > 0) {
+            materializer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-balance-materializer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            materializer.scheduleWithFixedDelay(this::materializePendingQuietly, materializeIntervalMs, materializeIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (materializer != null) {
+            materializer.shutdownNow();
+        }
+        materializePendingQuietly();
+    }
+
+    @Override
+    public Wallet withPendingBalance(@NotNull Wallet wallet) {
+        if (wallet.getLastTransactionId() == null) {
+            return wallet;
+        }
+        List<PendingBalance> balances = walletRepository.findPendingBalances(Collections.singletonList(wallet.getId()), transactionTypeCredit);
+        return balances.isEmpty() ? wallet : apply(wallet, balances.get(0));
+    }
+
+    @Override
+    public List<Wallet> withPendingBalance(@NotNull List<Wallet> wallets) {
+        List<Integer> walletIds = wallets.stream().filter(wallet -> wallet.getLastTransactionId() != null)
+                .map(Wallet::getId).collect(Collectors.toList());
+        if (walletIds.isEmpty()) {
+            return wallets;
+        }
+        Map<Integer, PendingBalance> balances = byWalletId(walletRepository.findPendingBalances(walletIds, transactionTypeCredit));
+        List<Wallet> result = new ArrayList<>(wallets.size());
+        for (Wallet wallet : wallets) {
+            PendingBalance balance = balances.get(wallet.getId());
+            result.add(balance == null ? wallet : apply(wallet, balance));
+        }
+        return result;
+    }
+
+    @Override
+    public Consumer<Wallet> withPendingBalance(@NotNull Consumer<Wallet> consumer) {
+        //only wallets with pending transactions are read, other wallets are up to date
+        Map<Integer, PendingBalance> balances = byWalletId(walletRepository.findPendingBalances(null, transactionTypeCredit));
+        if (balances.isEmpty()) {
+            return consumer;
+        }
+        return wallet -> {
+            PendingBalance balance = wallet.getLastTransactionId() == null ? null : balances.get(wallet.getId());
+            consumer.accept(balance == null ? wallet : apply(wallet, balance));
+        };
+    }
+
+    @Override
+    public void markPendingAfterCommit(@NotNull Integer walletId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingWallets.add(walletId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                pendingWallets.add(walletId);
+            }
+        });
+    }
+
+    @Override
+    public int materializePending() {
+        int updated = 0;
+        while (!pendingWallets.isEmpty()) {
+            List<Integer> walletIds = new ArrayList<>(materializeBatchSize);
+            Iterator<Integer> iterator = pendingWallets.iterator();
+            while (iterator.hasNext() && walletIds.size() < materializeBatchSize) {
+                walletIds.add(iterator.next());
+                iterator.remove();
+            }
+            try {
+                updated += walletRepository.materializeBalances(walletIds, transactionTypeCredit, updatedBy);
+            } catch (RuntimeException e) {
+                pendingWallets.addAll(walletIds);
+                throw e;
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public int materializeAll() {
+        return walletRepository.materializeBalances(null, transactionTypeCredit, updatedBy);
+    }
+
+    @Override
+    public int retireCheckpoints() {
+        pendingWallets.clear();
+        int retired = walletRepository.retireBalanceCheckpoints(transactionTypeCredit);
+        if (retired > 0) {
+            logger.info("Removed balance checkpoints of {} wallets", retired);
+        }
+        return retired;
+    }
+
+    //pending balance is read by one statement, so balance, version and checkpoint are taken from it together
+    private static Wallet apply(Wallet wallet, PendingBalance balance) {
+        return new Wallet(wallet.getId(), wallet.getUserId(), wallet.getCurrency(), balance.getBalance(),
+                balance.getLastUpdated() != null ? balance.getLastUpdated() : wallet.getLastUpdated(),
+                wallet.getLastUpdatedBy(), balance.getVersion(), balance.getLastTransactionId(), wallet.getBalanceSlots());
+    }
+
+    private static Map<Integer, PendingBalance> byWalletId(List<PendingBalance> balances) {
+        Map<Integer, PendingBalance> result = new HashMap<>();
+        balances.forEach(balance -> result.put(balance.getWalletId(), balance));
+        return result;
+    }
+
+    private void materializePendingQuietly() {
+        try {
+            materializePending();
+        } catch (RuntimeException e) {
+            logger.error("Couldn't materialize wallet balances", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.company.wallet.service;
+
+/**
+ * How batch of transactions is created (see TransactionService.createTransactions).
+ * @author Elena Medvedeva
+ */
+public enum BatchMode {
+    /**
+     * All transactions are created, or none if any of them is invalid.
+     */
+    ALL_OR_NOTHING,
+
+    /**
+     * Valid transactions are created, invalid ones are reported in their results.
+     */
+    PER_ITEM
+}
@@ -0,0 +1,36 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Remembers recently created transactions by globalId, so client retries are answered without a write.
+ * <p>
+ * Retry with the same parameters gets the originally created transaction,
+ * retry with the same globalId but different parameters is rejected with HttpStatus.CONFLICT.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface IdempotencyCache {
+
+    /**
+     * Finds transaction with the same globalId in the cache only, so new transactions don't wait for a database lookup.
+     * @return cached transaction, or null if globalId is not cached
+     * @throws WalletException with HttpStatus.CONFLICT if cached transaction with this globalId has different parameters
+     */
+    public Transaction findCreated(@NotBlank String globalId, String currencyName, String walletId, String transactionTypeId, Money amount, String description) throws WalletException;
+
+    /**
+     * Finds transaction with the same globalId in the database, after its write failed because globalId is not unique
+     * (transaction was evicted from the cache or created by another instance). Found transaction is cached.
+     * @return stored transaction, or null if there is no transaction with this globalId in the database
+     * @throws WalletException with HttpStatus.CONFLICT if stored transaction with this globalId has different parameters
+     */
+    public Transaction findStored(@NotBlank String globalId, String currencyName, String walletId, String transactionTypeId, Money amount, String description) throws WalletException;
+
+    public void put(@NotNull Transaction transaction);
+}
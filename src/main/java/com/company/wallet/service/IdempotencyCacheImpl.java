@@ -0,0 +1,111 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.repository.TransactionRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency cache based on bounded Guava cache with expiration after write.
+ * <p>
+ * Only the cache is checked before the write. Transaction which is not cached any more is found by TransactionRepository.findByGlobalId
+ * after unique constraint of globalId failed the write (see findStored).
+ * Found transaction is cached, so wallet balance in the replayed response is the balance at the time of the lookup.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@Component
+class IdempotencyCacheImpl implements IdempotencyCache {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Value("${application.transaction.idempotency.cache-size:100000}")
+    private long cacheSize;
+
+    @Value("${application.transaction.idempotency.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private Cache<String, Transaction> transactions;
+
+    @PostConstruct
+    public void init() {
+        transactions = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @Override
+    public Transaction findCreated(@NotBlank String globalId, String currencyName, String walletId, String transactionTypeId, Money amount, String description) throws WalletException {
+        Transaction transaction = transactions.getIfPresent(globalId);
+        return transaction == null ? null : replay(transaction, currencyName, walletId, transactionTypeId, amount, description);
+    }
+
+    @Override
+    public Transaction findStored(@NotBlank String globalId, String currencyName, String walletId, String transactionTypeId, Money amount, String description) throws WalletException {
+        Transaction transaction = transactionRepository.findByGlobalId(globalId);
+        if (transaction == null) {
+            return null;
+        }
+        transactions.put(globalId, transaction);
+        return replay(transaction, currencyName, walletId, transactionTypeId, amount, description);
+    }
+
+    private Transaction replay(Transaction transaction, String currencyName, String walletId, String transactionTypeId, Money amount, String description) throws WalletException {
+        String globalId = transaction.getGlobalId();
+        if (!samePayload(transaction, currencyName, walletId, transactionTypeId, amount, description)) {
+            throw new WalletException(String.format(ErrorMessage.GLOBAL_ID_REUSED, globalId), HttpStatus.CONFLICT.value());
+        }
+        logger.debug("Replaying transaction with globalId={}", globalId);
+        return transaction;
+    }
+
+    @Override
+    public void put(@NotNull Transaction transaction) {
+        transactions.put(transaction.getGlobalId(), transaction);
+    }
+
+    private static boolean samePayload(Transaction transaction, String currencyName, String walletId, String transactionTypeId, Money amount, String description) {
+        return transaction.getCurrency().getName().equals(currencyName)
+                && transaction.getWallet().getId().toString().equals(walletId)
+                && transaction.getType().getId().equalsIgnoreCase(transactionTypeId)
+                && transaction.getAmount().compareTo(amount.toBigDecimal()) == 0
+                && Objects.equals(transaction.getDescription(), description);
+    }
+}
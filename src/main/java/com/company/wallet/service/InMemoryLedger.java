@@ -0,0 +1,23 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+/**
+ * In-memory ledger: wallet balances are kept in memory, transactions are validated and applied in memory,
+ * journaled to a local file and written to the database in the background.
+ * <p>
+ * Used by TransactionService with WriteMode.IN_MEMORY_LEDGER.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface InMemoryLedger {
+
+    public Transaction createTransaction(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException;
+
+    public void flush();
+}
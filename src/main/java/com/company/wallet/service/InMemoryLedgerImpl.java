@@ -0,0 +1,418 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.Helper;
+import com.company.wallet.ledger.IntObjectHashMap;
+import com.company.wallet.ledger.LedgerEntry;
+import com.company.wallet.ledger.LedgerJournal;
+import com.company.wallet.repository.TransactionRepository;
+import com.company.wallet.repository.WalletRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.company.wallet.exceptions.ErrorMessage.NUMBER_FORMAT_MISMATCH;
+
+/**
+ * In-memory ledger with memory-mapped write-ahead journal (see LedgerJournal) and write-behind to the database.
+ * <p>
+ * Wallets are loaded from the database on first use and kept in IntObjectHashMap by wallet id.
+ * Transaction is validated and applied under one ledger lock, which covers only in-memory work and journal append,
+ * so no database row lock is taken while the request waits. Transaction ids are reserved from the database sequence in blocks.
+ * Accepted entries are written to the database by a background thread every 'flush-interval-ms' (TransactionWriter.writeLedgerEntries).
+ * On start, entries of the journal which were not flushed are written to the database before any new transaction is accepted.
+ * </p>
+ * <p>
+ * The application instance must be the only writer of the wallets while this mode is enabled.
+ * Wallet balances and transactions in the database lag behind the ledger by up to one flush interval.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class InMemoryLedgerImpl implements InMemoryLedger {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionWriter transactionWriter;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @Autowired
+    private Helper inputParametersValidator;
+
+    @Value("${application.transaction.write-mode:SERIALIZABLE}")
+    private WriteMode writeMode;
+
+    @Value("${application.transaction.type.credit:C}")
+    private String transactionTypeCredit;
+
+    @Value("${db.updated_by:wallet-microservice}")
+    private String updatedBy;
+
+    @Value("${application.ledger.journal.path:ledger/wallet-ledger.journal}")
+    private String journalPath;
+
+    @Value("${application.ledger.journal.size-mb:64}")
+    private int journalSizeMb;
+
+    @Value("${application.ledger.journal.fsync:false}")
+    private boolean fsync;
+
+    @Value("${application.ledger.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${application.ledger.flush-batch-size:1000}")
+    private int flushBatchSize;
+
+    @Value("${application.ledger.id-block-size:1000}")
+    private int idBlockSize;
+
+    //guards wallets, pending entries and journal appends
+    private final ReentrantLock lock = new ReentrantLock();
+
+    //only one flush at a time, taken before lock
+    private final Object flushLock = new Object();
+
+    private final IntObjectHashMap<LedgerWallet> wallets = new IntObjectHashMap<>(1024);
+
+    //entries accepted but not written to the database, with journal position after the entry
+    private final ArrayDeque<PendingEntry> pending = new ArrayDeque<>();
+
+    private final Set<String> pendingGlobalIds = new HashSet<>();
+
+    private final ArrayDeque<Integer> transactionIds = new ArrayDeque<>();
+
+    //incremented every time flushed entries are removed from pending
+    private volatile long flushCount;
+
+    private LedgerJournal journal;
+
+    private ScheduledExecutorService flusher;
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public String getJournalPath() {
+        return journalPath;
+    }
+
+    public void setJournalPath(String journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    public int getJournalSizeMb() {
+        return journalSizeMb;
+    }
+
+    public void setJournalSizeMb(int journalSizeMb) {
+        this.journalSizeMb = journalSizeMb;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * Opens journal, writes entries left from previous run to the database and starts background flush.
+     * Does nothing if write mode is not WriteMode.IN_MEMORY_LEDGER.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        if (writeMode != WriteMode.IN_MEMORY_LEDGER) {
+            return;
+        }
+        wallets.clear();
+        pending.clear();
+        pendingGlobalIds.clear();
+        transactionIds.clear();
+        journal = new LedgerJournal(Paths.get(journalPath), journalSizeMb * 1024 * 1024, fsync);
+        List<LedgerEntry> unflushed = journal.getUnflushed();
+        if (!unflushed.isEmpty()) {
+            logger.info("Replaying {} ledger entries from journal {}", unflushed.size(), journalPath);
+            for (int from = 0; from < unflushed.size(); from += flushBatchSize) {
+                transactionWriter.writeLedgerEntries(unflushed.subList(from, Math.min(unflushed.size(), from + flushBatchSize)));
+            }
+        }
+        journal.markFlushed(journal.getPosition());
+        journal.rewindIfFlushed();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-ledger-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException, InterruptedException {
+        if (journal == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        try {
+            flushAll();
+        } catch (RuntimeException e) {
+            logger.error("Failed to write ledger entries to the database, they will be replayed from journal on start", e);
+        }
+        journal.close();
+    }
+
+    /**
+     * Validates transaction, applies it to the wallet balance in memory and appends it to the journal.
+     * Validation rules and error messages are the same as for TransactionWriter.createTransaction.
+     * @return created transaction, wallet balance is the balance after the transaction
+     * @throws WalletException if transaction is not valid, or journal is full
+     */
+    @Override
+    public Transaction createTransaction(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException {
+        try {
+            Currency currency = referenceData.findCurrency(currencyName);
+            String error = String.format(ErrorMessage.NO_CURRENCY_PRESENT, currencyName);
+            inputParametersValidator.conditionIsTrue(currency != null, error, HttpStatus.BAD_REQUEST.value());
+
+            TransactionType transactionType = referenceData.findTransactionType(transactionTypeId);
+            error = String.format(ErrorMessage.NO_TRANSACTION_TYPE_PRESENT, transactionTypeId);
+            inputParametersValidator.conditionIsTrue(transactionType != null, error, HttpStatus.CONFLICT.value());
+
+            LedgerWallet wallet = getWallet(Integer.valueOf(walletId));
+            error = String.format(ErrorMessage.NO_WALLET_FOUND, walletId);
+            inputParametersValidator.conditionIsTrue(wallet != null, error, HttpStatus.BAD_REQUEST.value());
+
+            error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY, currency.getName(), wallet.currency.getName());
+            inputParametersValidator.conditionIsTrue(wallet.currency.getId().equals(currency.getId()), error, HttpStatus.BAD_REQUEST.value());
+
+            Money balanceDelta = transactionTypeId.equalsIgnoreCase(transactionTypeCredit) ? amount.abs() : amount.abs().negate();
+            BigDecimal transactionAmount = amount.toBigDecimal();
+
+            LedgerEntry entry = apply(wallet, globalId, transactionType.getId(), transactionAmount, balanceDelta, description);
+
+            Wallet walletView = new Wallet(wallet.userId, wallet.currency, entry.getBalanceAfter(), updatedBy);
+            walletView.setId(wallet.id);
+            walletView.setLastUpdated(new Date(entry.getTimestamp()));
+            Transaction transaction = new Transaction(globalId, transactionType, transactionAmount, walletView, currency, description, updatedBy);
+            transaction.setId(entry.getTransactionId());
+            transaction.setLastUpdated(new Date(entry.getTimestamp()));
+            return transaction;
+
+        } catch (NumberFormatException e) {
+            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH, walletId), HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private LedgerEntry apply(LedgerWallet wallet, String globalId, String transactionTypeId, BigDecimal amount, Money balanceDelta, String description) throws WalletException {
+        String duplicate = String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, globalId);
+        boolean journalFull = false;
+        while (true) {
+            //pending entries are checked under the lock, flushed ones and all other transactions (also archived) in the global id lookup table.
+            //The only database lookup of the write: entry is accepted before it's inserted, so the unique constraint can't reject it
+            long flushCountBefore = flushCount;
+            inputParametersValidator.conditionIsTrue(transactionRepository.findUsedGlobalIds(Collections.singleton(globalId)).isEmpty(),
+                    duplicate, HttpStatus.CONFLICT.value());
+            lock.lock();
+            try {
+                if (flushCount != flushCountBefore) {
+                    //entry with the same globalId could be removed from pending after it was checked in the database
+                    continue;
+                }
+                inputParametersValidator.conditionIsTrue(!pendingGlobalIds.contains(globalId), duplicate, HttpStatus.CONFLICT.value());
+
+                Money balance = wallet.balance.add(balanceDelta);
+                inputParametersValidator.conditionIsTrue(balance.signum() >= 0,
+                        String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet.id, amount.toPlainString()), HttpStatus.BAD_REQUEST.value());
+
+                LedgerEntry entry = new LedgerEntry(nextTransactionId(), wallet.id, wallet.currency.getId(), transactionTypeId,
+                        amount, balance.toBigDecimal(), globalId, description, System.currentTimeMillis());
+                int position = journal.append(entry);
+                if (position >= 0) {
+                    wallet.balance = balance;
+                    pending.add(new PendingEntry(entry, position));
+                    pendingGlobalIds.add(globalId);
+                    return entry;
+                }
+                transactionIds.push(entry.getTransactionId());
+                inputParametersValidator.conditionIsTrue(!journalFull, ErrorMessage.LEDGER_JOURNAL_FULL, HttpStatus.SERVICE_UNAVAILABLE.value());
+                journalFull = true;
+            } finally {
+                lock.unlock();
+            }
+            //journal is full: write all pending entries to the database, so journal starts from the beginning, and try again
+            flushAll();
+        }
+    }
+
+    private LedgerWallet getWallet(int walletId) {
+        lock.lock();
+        try {
+            LedgerWallet wallet = wallets.get(walletId);
+            if (wallet != null) {
+                return wallet;
+            }
+        } finally {
+            lock.unlock();
+        }
+        Wallet loaded = walletRepository.findById(walletId).orElse(null);
+        if (loaded == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            //balance in the database is up to date: wallet was not in the ledger, so it has no pending entries
+            return wallets.computeIfAbsent(walletId, id -> new LedgerWallet(loaded, referenceData.getScale(loaded.getCurrency().getName())));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //called under the lock
+    private int nextTransactionId() {
+        if (transactionIds.isEmpty()) {
+            transactionIds.addAll(transactionRepository.nextTransactionIds(Math.max(1, idBlockSize)));
+        }
+        return transactionIds.poll();
+    }
+
+    /**
+     * Writes up to 'flush-batch-size' pending entries to the database.
+     * If writing fails, entries stay pending and are written by the next flush.
+     * When there are no pending entries left, journal is rewound.
+     */
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            flushBatch();
+        }
+    }
+
+    private void flushAll() {
+        synchronized (flushLock) {
+            boolean more = true;
+            while (more) {
+                more = flushBatch();
+            }
+        }
+    }
+
+    //must be called with flushLock held, not with ledger lock. Returns true if there are pending entries left
+    private boolean flushBatch() {
+        List<PendingEntry> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            for (PendingEntry entry : pending) {
+                if (batch.size() >= flushBatchSize) {
+                    break;
+                }
+                batch.add(entry);
+            }
+            if (batch.isEmpty()) {
+                journal.rewindIfFlushed();
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        List<LedgerEntry> entries = new ArrayList<>(batch.size());
+        batch.forEach(entry -> entries.add(entry.entry));
+        transactionWriter.writeLedgerEntries(entries);
+
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                pendingGlobalIds.remove(pending.poll().entry.getGlobalId());
+            }
+            flushCount++;
+            journal.markFlushed(batch.get(batch.size() - 1).position);
+            if (pending.isEmpty()) {
+                journal.rewindIfFlushed();
+            }
+            return !pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Failed to write ledger entries to the database, will retry", e);
+        }
+    }
+
+    private static class LedgerWallet {
+        final int id;
+        final String userId;
+        final Currency currency;
+        Money balance;
+
+        LedgerWallet(Wallet wallet, int scale) {
+            this.id = wallet.getId();
+            this.userId = wallet.getUserId();
+            this.currency = wallet.getCurrency();
+            this.balance = Money.ofStored(wallet.getBalance(), scale);
+        }
+    }
+
+    private static class PendingEntry {
+        final LedgerEntry entry;
+        final int position;
+
+        PendingEntry(LedgerEntry entry, int position) {
+            this.entry = entry;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotBlank;
+import java.util.Collection;
+
+/**
+ * In-memory registry of reference data: currencies and transaction types.
+ * <p>
+ * Reference data is loaded from the database at start and replaced as a whole on refresh,
+ * so lookups don't access the database. Returned entities are detached and must not be modified.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface ReferenceDataRegistry {
+
+    /**
+     * @return currency with the name, or null if there is no such currency
+     */
+    public Currency findCurrency(@NotBlank String name);
+
+    /**
+     * @return transaction type with the id, or null if there is no such type
+     */
+    public TransactionType findTransactionType(@NotBlank String id);
+
+    /**
+     * @return number of decimal places of amounts in the currency (see Money.scaleOf)
+     */
+    public int getScale(@NotBlank String currencyName);
+
+    /**
+     * Parses amount with the scale of the currency.
+     * @throws WalletException with HttpStatus.BAD_REQUEST if amount is not a number, has too many decimal places or is out of range
+     */
+    public Money parseAmount(@NotBlank String currencyName, @NotBlank String amount) throws WalletException;
+
+    public Collection<Currency> getCurrencies();
+
+    public Collection<TransactionType> getTransactionTypes();
+
+    /**
+     * Loads reference data from the database and replaces the registry content at once.
+     */
+    public void refresh();
+}
@@ -0,0 +1,159 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.repository.CurrencyRepository;
+import com.company.wallet.repository.TransactionTypeRepository;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotBlank;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference data registry based on immutable maps, which are built from the database and swapped by one volatile write.
+ * <p>
+ * Registry is refreshed every 'application.reference-data.refresh-interval-ms' (no periodic refresh if 0)
+ * and on demand by POST /reference-data/refresh.
+ * Failed refresh keeps previous content. Currencies and transaction types added to the database
+ * are not visible until the next refresh.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@Component
+class ReferenceDataRegistryImpl implements ReferenceDataRegistry {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private CurrencyRepository currencyRepository;
+
+    @Autowired
+    private TransactionTypeRepository transactionTypeRepository;
+
+    @Value("${application.reference-data.refresh-interval-ms:300000}")
+    private long refreshIntervalMs;
+
+    private volatile Snapshot snapshot = new Snapshot(ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of());
+
+    private ScheduledExecutorService refresher;
+
+    public long getRefreshIntervalMs() {
+        return refreshIntervalMs;
+    }
+
+    public void setRefreshIntervalMs(long refreshIntervalMs) {
+        this.refreshIntervalMs = refreshIntervalMs;
+    }
+
+    /**
+     * Loads reference data and starts periodic refresh.
+     */
+    @PostConstruct
+    public void init() {
+        refresh();
+        if (refreshIntervalMs > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-reference-data-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    @Override
+    public Currency findCurrency(@NotBlank String name) {
+        return snapshot.currencies.get(name);
+    }
+
+    @Override
+    public TransactionType findTransactionType(@NotBlank String id) {
+        return snapshot.transactionTypes.get(id);
+    }
+
+    @Override
+    public int getScale(@NotBlank String currencyName) {
+        Integer scale = snapshot.scales.get(currencyName);
+        return scale != null ? scale : Money.scaleOf(currencyName);
+    }
+
+    @Override
+    public Money parseAmount(@NotBlank String currencyName, @NotBlank String amount) throws WalletException {
+        int scale = getScale(currencyName);
+        try {
+            return Money.parse(amount, scale);
+        } catch (NumberFormatException e) {
+            throw new WalletException(String.format(ErrorMessage.NUMBER_FORMAT_MISMATCH, amount), HttpStatus.BAD_REQUEST.value());
+        } catch (ArithmeticException e) {
+            throw new WalletException(String.format(ErrorMessage.AMOUNT_NOT_REPRESENTABLE, amount, scale, currencyName), HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    @Override
+    public Collection<Currency> getCurrencies() {
+        return snapshot.currencies.values();
+    }
+
+    @Override
+    public Collection<TransactionType> getTransactionTypes() {
+        return snapshot.transactionTypes.values();
+    }
+
+    @Override
+    public void refresh() {
+        ImmutableMap.Builder<String, Currency> currencies = ImmutableMap.builder();
+        ImmutableMap.Builder<String, Integer> scales = ImmutableMap.builder();
+        currencyRepository.findAll().forEach(currency -> {
+            currencies.put(currency.getName(), currency);
+            scales.put(currency.getName(), Money.scaleOf(currency.getName()));
+        });
+        ImmutableMap.Builder<String, TransactionType> transactionTypes = ImmutableMap.builder();
+        transactionTypeRepository.findAll().forEach(type -> transactionTypes.put(type.getId(), type));
+        snapshot = new Snapshot(currencies.build(), scales.build(), transactionTypes.build());
+        logger.debug("Loaded {} currencies and {} transaction types", snapshot.currencies.size(), snapshot.transactionTypes.size());
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.error("Failed to refresh reference data, previous data is used", e);
+        }
+    }
+
+    //content of the registry, replaced as a whole
+    private static class Snapshot {
+        private final ImmutableMap<String, Currency> currencies;
+        private final ImmutableMap<String, Integer> scales;
+        private final ImmutableMap<String, TransactionType> transactionTypes;
+
+        private Snapshot(ImmutableMap<String, Currency> currencies, ImmutableMap<String, Integer> scales, ImmutableMap<String, TransactionType> transactionTypes) {
+            this.currencies = currencies;
+            this.scales = scales;
+            this.transactionTypes = transactionTypes;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Retries wallet writes which failed because of concurrent updates
+ * (optimistic lock failure, serialization failure or deadlock).
+ * <p>
+ * Each attempt should run in its own database transaction, so task must not be called inside of a running transaction.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface RetryExecutor {
+
+    public <T> T execute(@NotNull String walletId, @NotNull WalletTask<T> task) throws WalletException;
+}
@@ -0,0 +1,159 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.OptimisticLockException;
+import javax.validation.constraints.NotNull;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries wallet writes with jittered exponential backoff.
+ * <p>
+ * Retried failures: Spring ConcurrencyFailureException (optimistic and pessimistic locking failures),
+ * JPA OptimisticLockException and any exception caused by SQLException with SQLState
+ * 40001 (serialization_failure) or 40P01 (deadlock_detected).
+ * Other exceptions are rethrown immediately.
+ * When all attempts failed, WalletException with HttpStatus.SERVICE_UNAVAILABLE is thrown.
+ * </p>
+ * <p>
+ * Metrics: 'wallet.transaction.retries' - number of retried attempts,
+ * 'wallet.transaction.retries.exhausted' - number of writes given up after max attempts.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@Component
+class RetryExecutorImpl implements RetryExecutor {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    static final String SERIALIZATION_FAILURE = "40001";
+    static final String DEADLOCK_DETECTED = "40P01";
+
+    @Value("${application.transaction.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${application.transaction.retry.initial-backoff-ms:5}")
+    private long initialBackoffMs;
+
+    @Value("${application.transaction.retry.max-backoff-ms:200}")
+    private long maxBackoffMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter retries;
+
+    private Counter exhausted;
+
+    @PostConstruct
+    public void init() {
+        this.retries = Counter.builder("wallet.transaction.retries")
+                .description("Wallet writes retried because of concurrent updates")
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("wallet.transaction.retries.exhausted")
+                .description("Wallet writes given up after max number of attempts")
+                .register(meterRegistry);
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoffMs() {
+        return initialBackoffMs;
+    }
+
+    public void setInitialBackoffMs(long initialBackoffMs) {
+        this.initialBackoffMs = initialBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    public void setMaxBackoffMs(long maxBackoffMs) {
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Calls task until it succeeds, fails with not retryable exception or max attempts are reached.
+     * @param walletId wallet id, used in error message
+     * @param task task to execute, should start new database transaction
+     * @return task result
+     * @throws WalletException thrown by task, or if all attempts failed because of concurrent updates
+     */
+    @Override
+    public <T> T execute(@NotNull String walletId, @NotNull WalletTask<T> task) throws WalletException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    logger.warn("Giving up write for wallet {} after {} attempts: {}", walletId, attempt, e.getMessage());
+                    throw new WalletException(String.format(ErrorMessage.CONCURRENT_UPDATE, walletId), HttpStatus.SERVICE_UNAVAILABLE.value());
+                }
+                retries.increment();
+                logger.debug("Retrying write for wallet {}, attempt {} failed: {}", walletId, attempt, e.getMessage());
+                backoff(attempt, walletId);
+            }
+        }
+    }
+
+    /**
+     * Sleeps random time between 0 and min(maxBackoffMs, initialBackoffMs * 2^(attempt-1)) ("full jitter"),
+     * so concurrent writers which failed together don't retry together.
+     */
+    private void backoff(int attempt, String walletId) throws WalletException {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalletException(String.format(ErrorMessage.RETRY_INTERRUPTED, walletId), HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+    }
+
+    static boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof ConcurrencyFailureException || cause instanceof OptimisticLockException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (SERIALIZATION_FAILURE.equals(sqlState) || DEADLOCK_DETECTED.equals(sqlState)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
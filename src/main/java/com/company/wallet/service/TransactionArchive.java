@@ -0,0 +1,49 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotNull;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Cold storage of old transactions: transactions of past months are moved from the database into compressed segment files.
+ * <p>
+ * Archived transactions are read by wallet id, they have no wallet (as transactions read by projection queries).
+ * All archived transactions were created before the horizon, all transactions in the database after it.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface TransactionArchive {
+
+    /**
+     * @return end of the last archived month (exclusive), or null if nothing is archived
+     */
+    public Timestamp getHorizon();
+
+    /**
+     * @return archived transactions of the wallet ordered by creation time and id
+     * @throws WalletException if archive can't be read
+     */
+    public List<Transaction> findTransactions(@NotNull Integer walletId) throws WalletException;
+
+    /**
+     * @return up to limit archived transactions of the wallet after the cursor, ordered by creation time and id
+     * @throws WalletException if archive can't be read
+     */
+    public List<Transaction> findTransactions(@NotNull Integer walletId, @NotNull TransactionPage.Cursor cursor, int limit) throws WalletException;
+
+    /**
+     * Archives all months which ended more than retention period ago and are still in the database, oldest first.
+     * @return archived months
+     */
+    public List<YearMonth> archiveExpired();
+
+    /**
+     * Writes transactions of the month to segment files and then drops the month partition from the database.
+     * @param month month, must be before the current month
+     */
+    public void archiveMonth(@NotNull YearMonth month);
+}
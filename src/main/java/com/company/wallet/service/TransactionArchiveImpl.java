@@ -0,0 +1,412 @@
+package com.company.wallet.service;
+
+import com.company.wallet.archive.ArchivedTransaction;
+import com.company.wallet.archive.TransactionSegment;
+import com.company.wallet.archive.TransactionSegmentWriter;
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.repository.TransactionRepository;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Archive of segment files on local disk (see TransactionSegment), one directory per month and
+ * one segment per range of 'application.archive.wallets-per-segment' wallets: {path}/{yyyy_MM}/wallets-{first wallet id}.dat/.idx
+ * <p>
+ * Month is written into a temporary directory, which is renamed when all segments are forced to disk,
+ * then the month partition is dropped from the database. So a month is either fully archived or not archived.
+ * Months are archived oldest first when 'application.archive.retention-months' months have passed
+ * (check every 'application.archive.check-interval-ms', only if 'application.archive.enabled').
+ * </p>
+ * <p>
+ * Reads look up the segment of the wallet in every archived month, indexes of recently used segments are kept memory-mapped.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class TransactionArchiveImpl implements TransactionArchive {
+
+    private static final DateTimeFormatter MONTH_DIRECTORY = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String SEGMENT_PREFIX = "wallets-";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @Autowired
+    private WalletCache walletCache;
+
+    @Value("${application.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${application.archive.path:archive}")
+    private String path;
+
+    @Value("${application.archive.retention-months:12}")
+    private int retentionMonths;
+
+    @Value("${application.archive.wallets-per-segment:10000}")
+    private int walletsPerSegment;
+
+    @Value("${application.archive.block-size:1000}")
+    private int blockSize;
+
+    @Value("${application.archive.open-segments:256}")
+    private int openSegments;
+
+    @Value("${application.archive.check-interval-ms:86400000}")
+    private long checkIntervalMs;
+
+    private final ConcurrentSkipListSet<YearMonth> archivedMonths = new ConcurrentSkipListSet<>();
+
+    //segments by index file, Optional.empty() if the month has no segment for the wallet range
+    private LoadingCache<Path, Optional<TransactionSegment>> segments;
+
+    private ScheduledExecutorService archiver;
+
+    public void setTransactionRepository(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
+    }
+
+    public void setReferenceData(ReferenceDataRegistry referenceData) {
+        this.referenceData = referenceData;
+    }
+
+    public void setWalletCache(WalletCache walletCache) {
+        this.walletCache = walletCache;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getRetentionMonths() {
+        return retentionMonths;
+    }
+
+    public void setRetentionMonths(int retentionMonths) {
+        this.retentionMonths = retentionMonths;
+    }
+
+    public int getWalletsPerSegment() {
+        return walletsPerSegment;
+    }
+
+    public void setWalletsPerSegment(int walletsPerSegment) {
+        this.walletsPerSegment = walletsPerSegment;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getOpenSegments() {
+        return openSegments;
+    }
+
+    public void setOpenSegments(int openSegments) {
+        this.openSegments = openSegments;
+    }
+
+    public long getCheckIntervalMs() {
+        return checkIntervalMs;
+    }
+
+    public void setCheckIntervalMs(long checkIntervalMs) {
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    /**
+     * Finds archived months and starts periodic archiving.
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        RemovalListener<Path, Optional<TransactionSegment>> closeSegment = removal -> removal.getValue().ifPresent(segment -> {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warn("Couldn't close archive segment {}", removal.getKey(), e);
+            }
+        });
+        segments = CacheBuilder.newBuilder()
+                .maximumSize(openSegments)
+                .removalListener(closeSegment)
+                .build(new CacheLoader<Path, Optional<TransactionSegment>>() {
+                    @Override
+                    public Optional<TransactionSegment> load(Path index) throws IOException {
+                        Path data = index.resolveSibling(index.getFileName().toString().replace(".idx", ".dat"));
+                        return Files.exists(index) ? Optional.of(new TransactionSegment(data, index)) : Optional.empty();
+                    }
+                });
+        Path root = Paths.get(path);
+        if (Files.isDirectory(root)) {
+            try (DirectoryStream<Path> months = Files.newDirectoryStream(root)) {
+                for (Path month : months) {
+                    YearMonth archived = monthOf(month.getFileName().toString());
+                    if (archived != null && Files.isDirectory(month)) {
+                        archivedMonths.add(archived);
+                    }
+                }
+            }
+        }
+        if (enabled && checkIntervalMs > 0) {
+            archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-transaction-archive");
+                thread.setDaemon(true);
+                return thread;
+            });
+            archiver.scheduleWithFixedDelay(this::archiveExpiredQuietly, 0, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+        if (segments != null) {
+            segments.invalidateAll();
+        }
+    }
+
+    @Override
+    public Timestamp getHorizon() {
+        if (archivedMonths.isEmpty()) {
+            return null;
+        }
+        return Timestamp.valueOf(archivedMonths.last().plusMonths(1).atDay(1).atStartOfDay());
+    }
+
+    @Override
+    public List<Transaction> findTransactions(@NotNull Integer walletId) throws WalletException {
+        return findTransactions(walletId, TransactionPage.Cursor.FIRST, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Transaction> findTransactions(@NotNull Integer walletId, @NotNull TransactionPage.Cursor cursor, int limit) throws WalletException {
+        List<Transaction> result = new ArrayList<>();
+        YearMonth from = YearMonth.from(cursor.getAfterTime().toLocalDateTime());
+        for (YearMonth month : archivedMonths.tailSet(from)) {
+            for (ArchivedTransaction archived : readSegment(month, walletId)) {
+                if (isAfter(archived, cursor)) {
+                    result.add(toTransaction(archived));
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<YearMonth> archiveExpired() {
+        return archiveExpired(LocalDate.now());
+    }
+
+    synchronized List<YearMonth> archiveExpired(LocalDate today) {
+        YearMonth oldestKept = YearMonth.from(today).minusMonths(retentionMonths);
+        List<YearMonth> expired = transactionRepository.findPartitions().stream()
+                .map(TransactionPartitionManagerImpl::monthOf)
+                .filter(month -> month != null && month.isBefore(oldestKept))
+                .sorted()
+                .collect(Collectors.toList());
+        for (YearMonth month : expired) {
+            archiveMonth(month);
+        }
+        return expired;
+    }
+
+    @Override
+    public synchronized void archiveMonth(@NotNull YearMonth month) {
+        if (!month.isBefore(YearMonth.now())) {
+            throw new IllegalArgumentException("Month " + month + " is not over yet");
+        }
+        //month could be archived before a crash, with partition left in the database
+        if (!archivedMonths.contains(month)) {
+            try {
+                writeMonth(month);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't archive transactions of " + month, e);
+            }
+            archivedMonths.add(month);
+        }
+        //wallet versions were incremented with the drop, cached snapshots would keep the old ETags
+        transactionRepository.dropPartition(TransactionPartitionManagerImpl.nameOf(month)).forEach(walletCache::evictAfterCommit);
+        logger.info("Archived transactions of {}", month);
+    }
+
+    private void writeMonth(YearMonth month) throws IOException {
+        Path root = Paths.get(path);
+        Path directory = root.resolve(month.format(MONTH_DIRECTORY));
+        Path temporary = root.resolve(month.format(MONTH_DIRECTORY) + TEMPORARY_SUFFIX);
+        deleteDirectory(temporary);
+        Files.createDirectories(temporary);
+
+        Map<Integer, TransactionSegmentWriter> writers = new HashMap<>();
+        try {
+            Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+            Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+            transactionRepository.forEachCreatedBetween(from, to, (walletId, transaction) -> {
+                try {
+                    int firstWalletId = firstWalletId(walletId);
+                    TransactionSegmentWriter writer = writers.get(firstWalletId);
+                    if (writer == null) {
+                        //wallets come in ascending order, previous range is complete
+                        for (TransactionSegmentWriter previous : writers.values()) {
+                            previous.close();
+                        }
+                        writers.clear();
+                        writer = new TransactionSegmentWriter(temporary.resolve(SEGMENT_PREFIX + firstWalletId + ".dat"),
+                                temporary.resolve(SEGMENT_PREFIX + firstWalletId + ".idx"), blockSize);
+                        writers.put(firstWalletId, writer);
+                    }
+                    writer.append(toArchived(walletId, transaction));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (TransactionSegmentWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+        Files.move(temporary, directory, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<ArchivedTransaction> readSegment(YearMonth month, int walletId) throws WalletException {
+        Path index = Paths.get(path, month.format(MONTH_DIRECTORY), SEGMENT_PREFIX + firstWalletId(walletId) + ".idx");
+        try {
+            Optional<TransactionSegment> segment = segments.get(index);
+            return segment.isPresent() ? segment.get().find(walletId) : new ArrayList<>();
+        } catch (ExecutionException | IOException e) {
+            logger.error("Couldn't read archive segment {}", index, e);
+            throw new WalletException(String.format(ErrorMessage.ARCHIVE_NOT_AVAILABLE, walletId), HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+    }
+
+    private int firstWalletId(int walletId) {
+        return walletId - Math.floorMod(walletId, walletsPerSegment);
+    }
+
+    private static boolean isAfter(ArchivedTransaction archived, TransactionPage.Cursor cursor) {
+        int compared = archived.getLastUpdated().compareTo(cursor.getAfterTime());
+        return compared > 0 || (compared == 0 && archived.getId() > cursor.getAfterId());
+    }
+
+    private static ArchivedTransaction toArchived(Integer walletId, Transaction transaction) {
+        Timestamp lastUpdated = transaction.getLastUpdated() instanceof Timestamp
+                ? (Timestamp) transaction.getLastUpdated() : new Timestamp(transaction.getLastUpdated().getTime());
+        return new ArchivedTransaction(walletId, transaction.getId(), transaction.getGlobalId(), transaction.getType().getId(),
+                transaction.getAmount(), transaction.getCurrency().getId(), transaction.getCurrency().getName(),
+                transaction.getDescription(), lastUpdated, transaction.getLastUpdatedBy());
+    }
+
+    private Transaction toTransaction(ArchivedTransaction archived) {
+        TransactionType type = referenceData.findTransactionType(archived.getTypeId());
+        if (type == null) {
+            type = new TransactionType(archived.getTypeId(), null, null);
+        }
+        Currency currency = referenceData.findCurrency(archived.getCurrencyName());
+        if (currency == null) {
+            currency = new Currency(archived.getCurrencyId(), archived.getCurrencyName(), null);
+        }
+        return new Transaction(archived.getId(), archived.getGlobalId(), type, archived.getAmount(), currency,
+                archived.getDescription(), archived.getLastUpdated(), archived.getLastUpdatedBy());
+    }
+
+    //null if directory is not a month directory
+    private static YearMonth monthOf(String directory) {
+        try {
+            return YearMonth.parse(directory, MONTH_DIRECTORY);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void archiveExpiredQuietly() {
+        try {
+            archiveExpired();
+        } catch (RuntimeException e) {
+            logger.error("Couldn't archive transactions", e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.view.model.TransactionModel;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Group commit stage: concurrent transaction requests are collected into micro batches,
+ * each batch is written in one database transaction.
+ * <p>
+ * Caller waits for the result of its own transaction, failure of one transaction doesn't fail other transactions of the batch.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface TransactionBatcher {
+
+    public Transaction submit(@NotNull TransactionModel transaction, @NotNull Money amount) throws WalletException;
+}
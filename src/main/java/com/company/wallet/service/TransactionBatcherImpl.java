@@ -0,0 +1,245 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.view.model.TransactionModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit stage based on a bounded queue and one writer thread.
+ * <p>
+ * Writer thread takes the first pending transaction and waits up to 'max-wait-ms' for more,
+ * until 'max-batch-size' transactions are collected. Batch is written by TransactionWriter.createTransactions.
+ * If the batch fails as a whole (e.g. unique globalId violated by a concurrent request), transactions of the batch
+ * are written one by one, so every caller gets its own result.
+ * Writer thread is started on first use. If the queue is full, WalletException with HttpStatus.SERVICE_UNAVAILABLE is thrown.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@Component
+class TransactionBatcherImpl implements TransactionBatcher {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionWriter transactionWriter;
+
+    @Autowired
+    private RetryExecutor retryExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${application.transaction.group-commit.max-batch-size:100}")
+    private int maxBatchSize;
+
+    @Value("${application.transaction.group-commit.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    @Value("${application.transaction.group-commit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private BlockingQueue<PendingTransaction> queue;
+
+    private DistributionSummary batchSizes;
+
+    private volatile Thread writerThread;
+
+    private volatile boolean stopped;
+
+    public void setTransactionWriter(TransactionWriter transactionWriter) {
+        this.transactionWriter = transactionWriter;
+    }
+
+    public void setRetryExecutor(RetryExecutor retryExecutor) {
+        this.retryExecutor = retryExecutor;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @PostConstruct
+    public void init() {
+        queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        batchSizes = DistributionSummary.builder("wallet.transaction.group-commit.batch.size")
+                .description("Number of transactions written in one database transaction")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopped = true;
+        Thread thread = writerThread;
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<PendingTransaction> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.forEach(pending -> pending.result.completeExceptionally(interrupted(pending.model)));
+    }
+
+    /**
+     * Adds transaction to the next batch and waits for the result.
+     * @param transaction transaction to create
+     * @param amount amount of the transaction, already parsed by the caller
+     * @return created transaction
+     * @throws WalletException if transaction was not created, or if queue is full or current thread was interrupted
+     */
+    @Override
+    public Transaction submit(@NotNull TransactionModel transaction, @NotNull Money amount) throws WalletException {
+        startWriter();
+        PendingTransaction pending = new PendingTransaction(transaction, amount);
+        if (stopped || !queue.offer(pending)) {
+            throw new WalletException(ErrorMessage.GROUP_COMMIT_QUEUE_FULL, HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw interrupted(transaction);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof WalletException) {
+                throw (WalletException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new WalletException((Exception) cause);
+        }
+    }
+
+    private void startWriter() {
+        if (writerThread == null) {
+            synchronized (this) {
+                if (writerThread == null && !stopped) {
+                    Thread thread = new Thread(this::run, "wallet-group-commit");
+                    thread.setDaemon(true);
+                    thread.start();
+                    writerThread = thread;
+                }
+            }
+        }
+    }
+
+    private void run() {
+        List<PendingTransaction> batch = new ArrayList<>();
+        while (!stopped) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < maxBatchSize) {
+                    PendingTransaction next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                batch.forEach(pending -> pending.result.completeExceptionally(interrupted(pending.model)));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void write(List<PendingTransaction> batch) {
+        batchSizes.record(batch.size());
+        List<TransactionModel> models = new ArrayList<>(batch.size());
+        List<Money> amounts = new ArrayList<>(batch.size());
+        batch.forEach(pending -> {
+            models.add(pending.model);
+            amounts.add(pending.amount);
+        });
+        try {
+            List<TransactionResult> results = transactionWriter.createTransactions(models, amounts, false);
+            for (int i = 0; i < batch.size(); i++) {
+                TransactionResult result = results.get(i);
+                if (result.isSuccess()) {
+                    batch.get(i).result.complete(result.getTransaction());
+                } else {
+                    batch.get(i).result.completeExceptionally(result.getError());
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Group commit of {} transactions failed, writing them one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::writeOne);
+        }
+    }
+
+    private void writeOne(PendingTransaction pending) {
+        TransactionModel model = pending.model;
+        try {
+            pending.result.complete(retryExecutor.execute(model.getWalletId(),
+                    () -> transactionWriter.createTransactionLocked(model.getGlobalId(), model.getCurrency(), model.getWalletId(),
+                            model.getTransactionTypeId(), pending.amount, model.getDescription())));
+        } catch (Exception e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private static WalletException interrupted(TransactionModel model) {
+        return new WalletException(String.format(ErrorMessage.GROUP_COMMIT_INTERRUPTED, model.getWalletId()), HttpStatus.SERVICE_UNAVAILABLE.value());
+    }
+
+    static class PendingTransaction {
+        final TransactionModel model;
+        final Money amount;
+        final CompletableFuture<Transaction> result = new CompletableFuture<>();
+
+        PendingTransaction(TransactionModel model, Money amount) {
+            this.model = model;
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.repository.RejectedRow;
+
+import javax.validation.constraints.NotNull;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Bulk import of historical transactions from CSV.
+ * <p>
+ * CSV rows are streamed into a staging table of the import by COPY (one or more loadRows calls), then complete runs
+ * the import in the background: rows are validated by set-based statements, valid rows are moved into the transaction table
+ * in chunks and wallet balances are updated by one aggregated statement. Invalid rows are rejected with an error and don't stop the import.
+ * Every stage is committed with the import state, so a failed import continues from the last committed chunk when complete is called again.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface TransactionImportService {
+
+    /**
+     * Creates import with status LOADING.
+     * @throws WalletException if the write mode doesn't support imports
+     */
+    public TransactionImport create(String name) throws WalletException;
+
+    /**
+     * Streams CSV rows into the import, see TransactionImportRepositoryCustom.copyRows for columns.
+     * @param header true if the first line is a header
+     * @throws WalletException if import is not found, is not LOADING or CSV couldn't be copied
+     */
+    public TransactionImport loadRows(@NotNull Integer importId, @NotNull InputStream csv, boolean header) throws WalletException;
+
+    /**
+     * Starts import (status RUNNING) in the background, also resumes a FAILED import.
+     * @throws WalletException if import is not found or is RUNNING or COMPLETED
+     */
+    public TransactionImport complete(@NotNull Integer importId) throws WalletException;
+
+    /**
+     * @throws WalletException if import is not found
+     */
+    public TransactionImport find(@NotNull Integer importId) throws WalletException;
+
+    /**
+     * @return rejected rows after afterRow, ordered by row
+     * @throws WalletException if import is not found or limit is out of range
+     */
+    public List<RejectedRow> findRejectedRows(@NotNull Integer importId, long afterRow, Integer limit) throws WalletException;
+
+    /**
+     * Removes import and its staging table, imported transactions are kept.
+     * @throws WalletException if import is not found or is RUNNING
+     */
+    public void delete(@NotNull Integer importId) throws WalletException;
+}
@@ -0,0 +1,238 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.Helper;
+import com.company.wallet.repository.RejectedRow;
+import com.company.wallet.repository.TransactionImportRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Transaction import, stages of imports are run one by one by a single background thread.
+ * Valid rows are moved by chunks of 'application.import.chunk-size' rows.
+ * <p>
+ * Rows created before the archive horizon (see TransactionArchive) or the retention horizon of partitions
+ * (see TransactionPartitionManager) are rejected, as they would be invisible in wallet history. Partitions for the months
+ * of imported rows are created before rows are moved. Imports are not supported with write modes which keep
+ * balances outside of the wallet row (APPEND_ONLY, IN_MEMORY_LEDGER), and no outbox events are written for imported transactions.
+ * Imports which were RUNNING when the application stopped are FAILED at start.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class TransactionImportServiceImpl implements TransactionImportService {
+
+    static final String INTERRUPTED = "Interrupted by restart";
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionImporter importer;
+
+    @Autowired
+    private TransactionImportRepository transactionImportRepository;
+
+    @Autowired
+    private TransactionPartitionManager partitionManager;
+
+    @Autowired
+    private TransactionArchive transactionArchive;
+
+    @Autowired
+    private Helper inputParametersValidator;
+
+    @Value("${application.transaction.write-mode:SERIALIZABLE}")
+    private WriteMode writeMode;
+
+    @Value("${application.import.chunk-size:100000}")
+    private int chunkSize;
+
+    @Value("${application.transaction.page.max-limit:1000}")
+    private int maxPageLimit;
+
+    private ExecutorService runner;
+
+    public void setImporter(TransactionImporter importer) {
+        this.importer = importer;
+    }
+
+    public void setTransactionImportRepository(TransactionImportRepository transactionImportRepository) {
+        this.transactionImportRepository = transactionImportRepository;
+    }
+
+    public void setPartitionManager(TransactionPartitionManager partitionManager) {
+        this.partitionManager = partitionManager;
+    }
+
+    public void setTransactionArchive(TransactionArchive transactionArchive) {
+        this.transactionArchive = transactionArchive;
+    }
+
+    public void setInputParametersValidator(Helper inputParametersValidator) {
+        this.inputParametersValidator = inputParametersValidator;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMaxPageLimit() {
+        return maxPageLimit;
+    }
+
+    public void setMaxPageLimit(int maxPageLimit) {
+        this.maxPageLimit = maxPageLimit;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            int interrupted = transactionImportRepository.changeStatus(TransactionImport.Status.RUNNING, TransactionImport.Status.FAILED, INTERRUPTED);
+            if (interrupted > 0) {
+                logger.warn("{} transaction imports were interrupted, call complete to resume them", interrupted);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Couldn't check interrupted transaction imports", e);
+        }
+        runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wallet-transaction-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (runner != null) {
+            runner.shutdownNow();
+        }
+    }
+
+    @Override
+    public TransactionImport create(String name) throws WalletException {
+        //these modes keep wallet balance outside of the wallet row, which is updated by the import
+        inputParametersValidator.conditionIsTrue(writeMode != WriteMode.APPEND_ONLY && writeMode != WriteMode.IN_MEMORY_LEDGER,
+                String.format(ErrorMessage.IMPORT_NOT_SUPPORTED, writeMode), HttpStatus.BAD_REQUEST.value());
+        return importer.create(name);
+    }
+
+    @Override
+    public TransactionImport loadRows(@NotNull Integer importId, @NotNull InputStream csv, boolean header) throws WalletException {
+        try {
+            return importer.load(importId, csv, header);
+        } catch (DataAccessException | UncheckedIOException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            throw new WalletException(String.format(ErrorMessage.IMPORT_ROWS_NOT_LOADED, importId, cause.getMessage()), HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    @Override
+    public TransactionImport complete(@NotNull Integer importId) throws WalletException {
+        TransactionImport transactionImport = importer.start(importId);
+        runner.execute(() -> runQuietly(importId));
+        return transactionImport;
+    }
+
+    @Override
+    public TransactionImport find(@NotNull Integer importId) throws WalletException {
+        TransactionImport transactionImport = transactionImportRepository.findById(importId).orElse(null);
+        inputParametersValidator.conditionIsTrue(transactionImport != null, String.format(ErrorMessage.NO_IMPORT_FOUND, importId), HttpStatus.BAD_REQUEST.value());
+        return transactionImport;
+    }
+
+    @Override
+    public List<RejectedRow> findRejectedRows(@NotNull Integer importId, long afterRow, Integer limit) throws WalletException {
+        int pageLimit = limit == null ? maxPageLimit : limit;
+        inputParametersValidator.conditionIsTrue(pageLimit > 0 && pageLimit <= maxPageLimit, String.format(ErrorMessage.PAGE_LIMIT_OUT_OF_RANGE, maxPageLimit), HttpStatus.BAD_REQUEST.value());
+        find(importId);
+        return transactionImportRepository.findRejectedRows(importId, afterRow, pageLimit);
+    }
+
+    @Override
+    public void delete(@NotNull Integer importId) throws WalletException {
+        importer.delete(importId);
+    }
+
+    /**
+     * Runs stages of the import from its current stage, every call of the importer is one database transaction.
+     */
+    void run(Integer importId) throws WalletException {
+        TransactionImport transactionImport = find(importId);
+        if (transactionImport.getStage() == TransactionImport.Stage.VALIDATE) {
+            transactionImport = importer.validate(importId, horizon());
+            logger.info("Transaction import {}: {} rows rejected of {}", importId, transactionImport.getRowsRejected(), transactionImport.getRowsLoaded());
+        }
+        if (transactionImport.getStage() == TransactionImport.Stage.MOVE) {
+            //only missing partitions are created, so this is repeated safely when a failed import is resumed
+            partitionManager.createPartitions(transactionImportRepository.findMonths(importId));
+        }
+        while (transactionImport.getStage() == TransactionImport.Stage.MOVE) {
+            transactionImport = importer.move(importId, chunkSize);
+            logger.info("Transaction import {}: {} rows imported, {}%", importId, transactionImport.getRowsImported(), transactionImport.getProgress());
+        }
+        if (transactionImport.getStage() == TransactionImport.Stage.UPDATE_BALANCES) {
+            importer.updateBalances(importId);
+            logger.info("Transaction import {} completed", importId);
+        }
+    }
+
+    //latest of the archive and retention horizons, rows before it would not be seen in wallet history
+    private Timestamp horizon() {
+        Timestamp horizon = new Timestamp(0);
+        Timestamp archive = transactionArchive.getHorizon();
+        if (archive != null && archive.after(horizon)) {
+            horizon = archive;
+        }
+        Timestamp retention = partitionManager.getRetentionHorizon();
+        if (retention != null && retention.after(horizon)) {
+            horizon = retention;
+        }
+        return horizon;
+    }
+
+    private void runQuietly(Integer importId) {
+        try {
+            run(importId);
+        } catch (WalletException | RuntimeException e) {
+            logger.error("Transaction import " + importId + " failed", e);
+            try {
+                importer.fail(importId, e.getMessage());
+            } catch (RuntimeException failed) {
+                logger.error("Couldn't mark transaction import " + importId + " as failed", failed);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotNull;
+import java.io.InputStream;
+import java.sql.Timestamp;
+
+/**
+ * Steps of a transaction import (see TransactionImportService), every step is one database transaction
+ * which changes the data and the import state together, so a failed step can simply be executed again.
+ * @author Elena Medvedeva
+ */
+public interface TransactionImporter {
+
+    /**
+     * Creates import with status LOADING and its staging table.
+     */
+    public TransactionImport create(String name);
+
+    /**
+     * Copies CSV rows into the staging table, import must have status LOADING.
+     * @throws WalletException if import is not found or has other status
+     */
+    public TransactionImport load(@NotNull Integer importId, @NotNull InputStream csv, boolean header) throws WalletException;
+
+    /**
+     * Changes status to RUNNING, import must have status LOADING or FAILED.
+     * @throws WalletException if import is not found or has other status
+     */
+    public TransactionImport start(@NotNull Integer importId) throws WalletException;
+
+    /**
+     * Validates rows of the import (stage VALIDATE), next stage is MOVE.
+     * @param horizon rows created before it are rejected
+     */
+    public TransactionImport validate(@NotNull Integer importId, @NotNull Timestamp horizon) throws WalletException;
+
+    /**
+     * Moves next chunkSize rows of the staging table into the transaction table (stage MOVE),
+     * next stage is UPDATE_BALANCES after the last row.
+     */
+    public TransactionImport move(@NotNull Integer importId, int chunkSize) throws WalletException;
+
+    /**
+     * Adds imported transactions to wallet balances (stage UPDATE_BALANCES), import is COMPLETED.
+     */
+    public TransactionImport updateBalances(@NotNull Integer importId) throws WalletException;
+
+    /**
+     * Changes status to FAILED with the error, in a new database transaction.
+     */
+    public void fail(@NotNull Integer importId, String error);
+
+    /**
+     * Drops staging table and removes the import, import must not be RUNNING.
+     */
+    public void delete(@NotNull Integer importId) throws WalletException;
+}
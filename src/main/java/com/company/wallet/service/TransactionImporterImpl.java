@@ -0,0 +1,172 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.Helper;
+import com.company.wallet.repository.TransactionImportRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.NotNull;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Import steps. Import row is locked by SELECT ... FOR UPDATE in every step, so steps of one import never run at the same time.
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class TransactionImporterImpl implements TransactionImporter {
+
+    @Autowired
+    private TransactionImportRepository transactionImportRepository;
+
+    @Autowired
+    private WalletCache walletCache;
+
+    @Autowired
+    private Helper inputParametersValidator;
+
+    @Value("${db.updated_by}")
+    private String updatedBy;
+
+    @Value("${application.transaction.type.credit}")
+    private String transactionTypeCredit;
+
+    public void setTransactionImportRepository(TransactionImportRepository transactionImportRepository) {
+        this.transactionImportRepository = transactionImportRepository;
+    }
+
+    public void setWalletCache(WalletCache walletCache) {
+        this.walletCache = walletCache;
+    }
+
+    public void setInputParametersValidator(Helper inputParametersValidator) {
+        this.inputParametersValidator = inputParametersValidator;
+    }
+
+    public String getUpdatedBy() {
+        return updatedBy;
+    }
+
+    public void setUpdatedBy(String updatedBy) {
+        this.updatedBy = updatedBy;
+    }
+
+    public String getTransactionTypeCredit() {
+        return transactionTypeCredit;
+    }
+
+    public void setTransactionTypeCredit(String transactionTypeCredit) {
+        this.transactionTypeCredit = transactionTypeCredit;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+    @Override
+    public TransactionImport create(String name) {
+        TransactionImport transactionImport = transactionImportRepository.saveAndFlush(new TransactionImport(name, updatedBy));
+        transactionImportRepository.createStagingTable(transactionImport.getId());
+        return transactionImport;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public TransactionImport load(@NotNull Integer importId, @NotNull InputStream csv, boolean header) throws WalletException {
+        TransactionImport transactionImport = lock(importId, TransactionImport.Status.LOADING);
+        long rows = transactionImportRepository.copyRows(importId, csv, header);
+        transactionImport.setRowsLoaded(transactionImport.getRowsLoaded() + rows);
+        return touch(transactionImport);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public TransactionImport start(@NotNull Integer importId) throws WalletException {
+        TransactionImport transactionImport = lock(importId, TransactionImport.Status.LOADING, TransactionImport.Status.FAILED);
+        transactionImport.setStatus(TransactionImport.Status.RUNNING);
+        transactionImport.setError(null);
+        return touch(transactionImport);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public TransactionImport validate(@NotNull Integer importId, @NotNull Timestamp horizon) throws WalletException {
+        TransactionImport transactionImport = lock(importId, TransactionImport.Status.RUNNING);
+        transactionImport.setRowsRejected(transactionImportRepository.validateRows(importId, horizon, transactionTypeCredit));
+        transactionImport.setLastRow(transactionImportRepository.findLastRow(importId));
+        transactionImport.setStage(TransactionImport.Stage.MOVE);
+        return touch(transactionImport);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public TransactionImport move(@NotNull Integer importId, int chunkSize) throws WalletException {
+        TransactionImport transactionImport = lock(importId, TransactionImport.Status.RUNNING);
+        long after = transactionImport.getLastMovedRow();
+        long upto = Math.min(after + chunkSize, transactionImport.getLastRow());
+        if (upto > after) {
+            int moved = transactionImportRepository.moveRows(importId, after, upto, updatedBy);
+            transactionImport.setRowsImported(transactionImport.getRowsImported() + moved);
+            transactionImport.setLastMovedRow(upto);
+        }
+        if (upto >= transactionImport.getLastRow()) {
+            transactionImport.setStage(TransactionImport.Stage.UPDATE_BALANCES);
+        }
+        return touch(transactionImport);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public TransactionImport updateBalances(@NotNull Integer importId) throws WalletException {
+        TransactionImport transactionImport = lock(importId, TransactionImport.Status.RUNNING);
+        transactionImportRepository.updateBalances(importId, transactionTypeCredit, updatedBy);
+        transactionImport.setStage(TransactionImport.Stage.DONE);
+        transactionImport.setStatus(TransactionImport.Status.COMPLETED);
+        walletCache.evictAllAfterCommit();
+        return touch(transactionImport);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, isolation = Isolation.READ_COMMITTED)
+    @Override
+    public void fail(@NotNull Integer importId, String error) {
+        TransactionImport transactionImport = transactionImportRepository.findByIdForUpdate(importId);
+        if (transactionImport != null) {
+            transactionImport.setStatus(TransactionImport.Status.FAILED);
+            transactionImport.setError(error);
+            touch(transactionImport);
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public void delete(@NotNull Integer importId) throws WalletException {
+        TransactionImport transactionImport = lock(importId, TransactionImport.Status.LOADING, TransactionImport.Status.FAILED, TransactionImport.Status.COMPLETED);
+        transactionImportRepository.dropStagingTable(importId);
+        transactionImportRepository.delete(transactionImport);
+    }
+
+    private TransactionImport lock(Integer importId, TransactionImport.Status... expected) throws WalletException {
+        TransactionImport transactionImport = transactionImportRepository.findByIdForUpdate(importId);
+        inputParametersValidator.conditionIsTrue(transactionImport != null, String.format(ErrorMessage.NO_IMPORT_FOUND, importId), HttpStatus.BAD_REQUEST.value());
+        String error = String.format(ErrorMessage.IMPORT_STATUS_MISMATCH, importId, transactionImport.getStatus(), Arrays.toString(expected));
+        inputParametersValidator.conditionIsTrue(Arrays.asList(expected).contains(transactionImport.getStatus()), error, HttpStatus.CONFLICT.value());
+        return transactionImport;
+    }
+
+    private TransactionImport touch(TransactionImport transactionImport) {
+        transactionImport.setLastUpdated(new Date());
+        transactionImport.setLastUpdatedBy(updatedBy);
+        return transactionImport;
+    }
+}
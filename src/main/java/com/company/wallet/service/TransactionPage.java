@@ -0,0 +1,118 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Page of wallet transactions ordered by creation time and id, with cursor of the next page.
+ * <p>
+ * Cursor is opaque for clients, it encodes creation time (with fraction of seconds) and id of the last transaction of the page.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public class TransactionPage {
+
+    private final List<Transaction> transactions;
+
+    private final String nextCursor;
+
+    public TransactionPage(List<Transaction> transactions, String nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return cursor of the next page, or null if this page is the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @param last the last transaction of the page, with id and lastUpdated
+     * @return cursor of the next page
+     */
+    public static String encodeCursor(Transaction last) {
+        Date lastUpdated = last.getLastUpdated();
+        int nanos = lastUpdated instanceof Timestamp ? ((Timestamp) lastUpdated).getNanos() : (int) Math.floorMod(lastUpdated.getTime(), 1000L) * 1000000;
+        String value = Math.floorDiv(lastUpdated.getTime(), 1000L) + ":" + nanos + ":" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor cursor returned by getNextCursor
+     * @return position after the last transaction of the previous page
+     * @throws WalletException with HttpStatus.BAD_REQUEST if cursor is malformed
+     */
+    public static Cursor decodeCursor(String cursor) throws WalletException {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (parts.length == 3) {
+                Timestamp lastUpdated = new Timestamp(Long.parseLong(parts[0]) * 1000);
+                lastUpdated.setNanos(Integer.parseInt(parts[1]));
+                return new Cursor(lastUpdated, Integer.valueOf(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            //malformed
+        }
+        throw new WalletException(String.format(ErrorMessage.MALFORMED_CURSOR, cursor), HttpStatus.BAD_REQUEST.value());
+    }
+
+    /**
+     * Position in wallet history: creation time and id of the last read transaction.
+     */
+    public static class Cursor {
+
+        /**
+         * Position before all transactions.
+         */
+        public static final Cursor FIRST = new Cursor(new Timestamp(0), 0);
+
+        private final Timestamp afterTime;
+
+        private final Integer afterId;
+
+        public Cursor(Timestamp afterTime, Integer afterId) {
+            this.afterTime = afterTime;
+            this.afterId = afterId;
+        }
+
+        public Timestamp getAfterTime() {
+            return afterTime;
+        }
+
+        public Integer getAfterId() {
+            return afterId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Cursor)) {
+                return false;
+            }
+            Cursor cursor = (Cursor) o;
+            return afterTime.equals(cursor.afterTime) && afterId.equals(cursor.afterId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(afterTime, afterId);
+        }
+    }
+}
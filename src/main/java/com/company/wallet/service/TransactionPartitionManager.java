@@ -0,0 +1,29 @@
+package com.company.wallet.service;
+
+import javax.validation.constraints.NotNull;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Collection;
+
+/**
+ * Maintains monthly partitions of the transaction table: creates partitions ahead of time and detaches old ones.
+ * @author Elena Medvedeva
+ */
+public interface TransactionPartitionManager {
+
+    /**
+     * Creates partitions for the current month and the months ahead, which don't exist yet,
+     * and detaches partitions older than retention period.
+     */
+    public void maintainPartitions();
+
+    /**
+     * Creates partitions for the months which don't have them yet, e.g. before historical transactions are imported.
+     */
+    public void createPartitions(@NotNull Collection<YearMonth> months);
+
+    /**
+     * @return start of the oldest month which is kept in the transaction table, null if partitions are never detached
+     */
+    public Timestamp getRetentionHorizon();
+}
@@ -0,0 +1,196 @@
+package com.company.wallet.service;
+
+import com.company.wallet.repository.TransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Partition manager which keeps one partition per month, named transaction_pYYYY_MM (see V7.1__partition_transaction_table.sql).
+ * <p>
+ * Partitions are checked at start and every 'application.transaction.partitions.check-interval-ms' (no periodic check if 0).
+ * Partitions for the current month and 'application.transaction.partitions.months-ahead' next months are created,
+ * so inserts never miss a partition. Partitions which ended more than 'application.transaction.partitions.retention-months'
+ * months ago are detached (never if 0): they are kept as separate tables, and wallet history, indexes and vacuum
+ * of the transaction table are limited to the retention period.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@PropertySource("classpath:application.properties")
+@Service
+class TransactionPartitionManagerImpl implements TransactionPartitionManager {
+
+    static final String PARTITION_PREFIX = "transaction_p";
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletCache walletCache;
+
+    @Value("${application.transaction.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${application.transaction.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @Value("${application.transaction.partitions.check-interval-ms:3600000}")
+    private long checkIntervalMs;
+
+    private ScheduledExecutorService checker;
+
+    public void setTransactionRepository(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
+    }
+
+    public void setWalletCache(WalletCache walletCache) {
+        this.walletCache = walletCache;
+    }
+
+    public int getMonthsAhead() {
+        return monthsAhead;
+    }
+
+    public void setMonthsAhead(int monthsAhead) {
+        this.monthsAhead = monthsAhead;
+    }
+
+    public int getRetentionMonths() {
+        return retentionMonths;
+    }
+
+    public void setRetentionMonths(int retentionMonths) {
+        this.retentionMonths = retentionMonths;
+    }
+
+    public long getCheckIntervalMs() {
+        return checkIntervalMs;
+    }
+
+    public void setCheckIntervalMs(long checkIntervalMs) {
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    /**
+     * Checks partitions and starts periodic check.
+     */
+    @PostConstruct
+    public void init() {
+        maintainPartitionsQuietly();
+        if (checkIntervalMs > 0) {
+            checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-transaction-partitions");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(this::maintainPartitionsQuietly, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    @Override
+    public void maintainPartitions() {
+        maintainPartitions(LocalDate.now());
+    }
+
+    void maintainPartitions(LocalDate today) {
+        Set<YearMonth> existing = findExisting();
+        YearMonth current = YearMonth.from(today);
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            if (!existing.contains(month)) {
+                transactionRepository.createPartition(nameOf(month), month.atDay(1), month.plusMonths(1).atDay(1));
+                logger.info("Created transaction partition {}", nameOf(month));
+            }
+        }
+        if (retentionMonths > 0) {
+            YearMonth oldestKept = current.minusMonths(retentionMonths);
+            existing.stream().filter(month -> month.isBefore(oldestKept)).sorted().forEach(month -> {
+                //wallet versions were incremented with the detach, cached snapshots would keep the old ETags
+                transactionRepository.detachPartition(nameOf(month)).forEach(walletCache::evictAfterCommit);
+                logger.info("Detached transaction partition {}", nameOf(month));
+            });
+        }
+    }
+
+    @Override
+    public void createPartitions(@NotNull Collection<YearMonth> months) {
+        Set<YearMonth> existing = findExisting();
+        new TreeSet<>(months).stream().filter(month -> !existing.contains(month)).forEach(month -> {
+            transactionRepository.createPartition(nameOf(month), month.atDay(1), month.plusMonths(1).atDay(1));
+            logger.info("Created transaction partition {}", nameOf(month));
+        });
+    }
+
+    @Override
+    public Timestamp getRetentionHorizon() {
+        if (retentionMonths <= 0) {
+            return null;
+        }
+        return Timestamp.valueOf(YearMonth.now().minusMonths(retentionMonths).atDay(1).atStartOfDay());
+    }
+
+    private Set<YearMonth> findExisting() {
+        Set<YearMonth> existing = new HashSet<>();
+        for (String partition : transactionRepository.findPartitions()) {
+            YearMonth month = monthOf(partition);
+            if (month != null) {
+                existing.add(month);
+            }
+        }
+        return existing;
+    }
+
+    private void maintainPartitionsQuietly() {
+        try {
+            maintainPartitions();
+        } catch (RuntimeException e) {
+            logger.error("Couldn't maintain transaction partitions", e);
+        }
+    }
+
+    static String nameOf(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    //null if table is not a monthly partition
+    static YearMonth monthOf(String partition) {
+        if (!partition.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
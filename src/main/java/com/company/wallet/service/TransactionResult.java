@@ -0,0 +1,40 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.WalletException;
+
+/**
+ * Result of one transaction in a batch: created transaction or error.
+ * @author Elena Medvedeva
+ */
+public class TransactionResult {
+
+    private final Transaction transaction;
+
+    private final WalletException error;
+
+    private TransactionResult(Transaction transaction, WalletException error) {
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public static TransactionResult success(Transaction transaction) {
+        return new TransactionResult(transaction, null);
+    }
+
+    public static TransactionResult failure(WalletException error) {
+        return new TransactionResult(null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public WalletException getError() {
+        return error;
+    }
+}
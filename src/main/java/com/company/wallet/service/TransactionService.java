@@ -2,9 +2,12 @@ package com.company.wallet.service;
 
 import com.company.wallet.entities.Transaction;
 import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.view.model.TransactionModel;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -13,6 +16,10 @@ import java.util.List;
  */
 public interface TransactionService {
     public List<Transaction> getTransactionsByWalletId(@NotNull Integer walletId) throws WalletException;
+    public TransactionPage getTransactionsPage(@NotNull Integer walletId, String after, Integer limit) throws WalletException;
     public Transaction createTransaction(@NotBlank String globalId, @NotBlank  String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotBlank String amount, String description) throws WalletException;
+    public List<Transaction> createTransfer(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String fromWalletId, @NotBlank String toWalletId, @NotBlank String amount, String description) throws WalletException;
+    public List<TransactionResult> createTransactions(@NotNull List<TransactionModel> transactions, @NotNull BatchMode mode) throws WalletException;
+    public long exportTransactions(Integer walletId, LocalDate day, @NotNull OutputStream out) throws WalletException;
 
 }
@@ -1,35 +1,44 @@
 package com.company.wallet.service;
 
-import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
 import com.company.wallet.entities.Transaction;
-import com.company.wallet.entities.TransactionType;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.ErrorMessage;
 import com.company.wallet.exceptions.WalletException;
-import com.company.wallet.repository.CurrencyRepository;
-import com.company.wallet.repository.TransactionRepository;
-import com.company.wallet.repository.TransactionTypeRepository;
 import com.company.wallet.helper.Helper;
+import com.company.wallet.repository.TransactionRepository;
+import com.company.wallet.view.model.TransactionModel;
+import com.google.common.base.Throwables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.validation.annotation.Validated;
 
 //import javax.transaction.Transactional;
 import org.springframework.transaction.annotation.Transactional;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
-import java.math.BigDecimal;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.company.wallet.exceptions.ErrorMessage.NUMBER_FORMAT_MISMATCH;
 
+/**
+ * Service for managing transactions.
+ * <p>
+ * Transactions are written by TransactionWriter, the way of execution is defined by WriteMode.
+ * </p>
+ * @author Elena Medvedeva
+ */
 @Validated
 @PropertySource("classpath:application.properties")
 @Service
@@ -43,61 +52,191 @@ public class TransactionServiceImpl implements TransactionService {
     private WalletService walletService;
 
     @Autowired
-    private CurrencyRepository currencyRepository;
+    private TransactionWriter transactionWriter;
+
+    @Autowired
+    private WalletBalanceSlots walletBalanceSlots;
+
+    @Autowired
+    private WalletLaneExecutor walletLaneExecutor;
 
     @Autowired
-    private TransactionTypeRepository transactionTypeRepository;
+    private RetryExecutor retryExecutor;
+
+    @Autowired
+    private TransactionBatcher transactionBatcher;
+
+    @Autowired
+    private InMemoryLedger inMemoryLedger;
+
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @Autowired
+    private TransactionArchive transactionArchive;
 
     @Autowired
     private Helper inputParametersValidator;
 
+    @Value("${application.transaction.write-mode:SERIALIZABLE}")
+    private WriteMode writeMode;
 
-    @Value("${db.updated_by}")
-    private String updatedBy;
+    @Value("${application.transaction.batch.max-size:1000}")
+    private int maxBatchSize;
 
-    @Value("${application.transaction.type.credit}")
-    private String transactionTypeCredit;
+    @Value("${application.transaction.page.default-limit:100}")
+    private int defaultPageLimit;
+
+    @Value("${application.transaction.page.max-limit:1000}")
+    private int maxPageLimit;
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
 
-    public String getUpdatedBy() {
-        return updatedBy;
+    public int getMaxBatchSize() {
+        return maxBatchSize;
     }
 
-    public void setUpdatedBy(String updatedBy) {
-        this.updatedBy = updatedBy;
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
     }
 
-    public String getTransactionTypeCredit() {
-        return transactionTypeCredit;
+    public int getDefaultPageLimit() {
+        return defaultPageLimit;
     }
 
-    public void setTransactionTypeCredit(String transactionTypeCredit) {
-        this.transactionTypeCredit = transactionTypeCredit;
+    public void setDefaultPageLimit(int defaultPageLimit) {
+        this.defaultPageLimit = defaultPageLimit;
     }
 
-    @Transactional(rollbackFor = WalletException.class)
+    public int getMaxPageLimit() {
+        return maxPageLimit;
+    }
+
+    public void setMaxPageLimit(int maxPageLimit) {
+        this.maxPageLimit = maxPageLimit;
+    }
+
+    /**
+     * Returns the whole history of the wallet (archived and in the database), use getTransactionsPage for wallets with many transactions.
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
     @Override
     public List<Transaction> getTransactionsByWalletId(@NotNull Integer walletId) throws WalletException {
         Wallet wallet = walletService.findById(walletId);
         if(wallet != null) {
-            return transactionRepository.findByWallet(wallet);
+            Timestamp horizon = transactionArchive.getHorizon();
+            if (horizon == null) {
+                return transactionRepository.findByWallet(wallet);
+            }
+            List<Transaction> transactions = new ArrayList<>(transactionArchive.findTransactions(walletId));
+            //partition of the last archived month may be not dropped yet
+            transactionRepository.findByWallet(wallet).stream()
+                    .filter(transaction -> !transaction.getLastUpdated().before(horizon))
+                    .forEach(transactions::add);
+            return transactions;
         } else {
             throw new WalletException(String.format(ErrorMessage.NO_WALLET_FOUND,walletId.toString()), HttpStatus.BAD_REQUEST.value());
         }
     }
 
     /**
-     * Creates transaction for wallet.
-     * If there is not enough funds on wallet balance, throws WalletException
-     * If transactionTypeId='C' (credit transaction), takes absolute amount from  @param amount  and adds it to wallet balance.
-     * If transactionTypeId='D' (debit transaction), takes absolute amount from  @param amount  and subtracts it from wallet balance.
-     * Valid refence to transaction type, currency, wallet should be provided.
-     * Global id should be unique.
-     * Transaction should have the same currency as wallet.
-     * No additional SQL query is used to select currency by Id and transaction type by Id
-     * because JPARepository.getOne is used, which returns only reference for transaction object.
-     *
-     * Set isolation = Isolation.SERIALIZABLE in order to avoid concurrency issues (in case of deploying application to multiple hosts)
-     *
+     * Returns page of wallet transactions ordered by creation time and id.
+     * <p>
+     * Page is selected by keyset (transactions after the cursor), so time doesn't grow with the page depth
+     * and partitions of the transaction table created before the cursor are not read.
+     * One more transaction than limit is selected to find out if there is a next page.
+     * Transactions created before the archive horizon are read from TransactionArchive, the rest of the page from the database.
+     * </p>
+     * @param walletId wallet id
+     * @param after cursor of the page (TransactionPage.getNextCursor of the previous page), null for the first page
+     * @param limit max number of transactions, application.transaction.page.default-limit if null
+     * @return page of transactions
+     * @throws WalletException if wallet is not found, cursor is malformed or limit is out of range
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
+    public TransactionPage getTransactionsPage(@NotNull Integer walletId, String after, Integer limit) throws WalletException {
+        int pageLimit = limit == null ? defaultPageLimit : limit;
+        inputParametersValidator.conditionIsTrue(pageLimit > 0 && pageLimit <= maxPageLimit, String.format(ErrorMessage.PAGE_LIMIT_OUT_OF_RANGE, maxPageLimit), HttpStatus.BAD_REQUEST.value());
+        TransactionPage.Cursor cursor = after == null || after.isEmpty() ? TransactionPage.Cursor.FIRST : TransactionPage.decodeCursor(after);
+
+        Wallet wallet = walletService.findById(walletId);
+        inputParametersValidator.conditionIsTrue(wallet != null, String.format(ErrorMessage.NO_WALLET_FOUND, walletId.toString()), HttpStatus.BAD_REQUEST.value());
+
+        List<Transaction> transactions = new ArrayList<>();
+        Timestamp horizon = transactionArchive.getHorizon();
+        if (horizon != null && cursor.getAfterTime().before(horizon)) {
+            transactions.addAll(transactionArchive.findTransactions(walletId, cursor, pageLimit + 1));
+            cursor = new TransactionPage.Cursor(horizon, 0);
+        }
+        if (transactions.size() <= pageLimit) {
+            transactions.addAll(transactionRepository.findPageByWalletId(walletId, cursor.getAfterTime(), cursor.getAfterId(), PageRequest.of(0, pageLimit + 1 - transactions.size())));
+        }
+        if (transactions.size() <= pageLimit) {
+            return new TransactionPage(transactions, null);
+        }
+        List<Transaction> page = transactions.subList(0, pageLimit);
+        return new TransactionPage(page, TransactionPage.encodeCursor(page.get(pageLimit - 1)));
+    }
+
+    /**
+     * Streams transactions of the wallet and/or the day as CSV into out, see TransactionRepositoryCustom.copyTransactions for columns.
+     * <p>
+     * Bytes are copied from the database connection to out, Transaction entities are not created.
+     * Only transactions in the database are exported: a day before the archive horizon is rejected,
+     * and the export of a wallet starts at the horizon (see TransactionArchive).
+     * </p>
+     * @param walletId wallet id, all wallets if null
+     * @param day day of creation, all days if null
+     * @param out stream to write CSV to, not closed
+     * @return number of exported transactions
+     * @throws WalletException if neither walletId nor day is set, wallet is not found or the day is archived
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
+    public long exportTransactions(Integer walletId, LocalDate day, @NotNull OutputStream out) throws WalletException {
+        inputParametersValidator.conditionIsTrue(walletId != null || day != null, ErrorMessage.EXPORT_FILTER_MISSING, HttpStatus.BAD_REQUEST.value());
+        if (walletId != null) {
+            walletService.findByIdCached(walletId);
+        }
+        Timestamp from = day == null ? null : Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = day == null ? null : Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        Timestamp horizon = transactionArchive.getHorizon();
+        if (horizon != null) {
+            inputParametersValidator.conditionIsTrue(to == null || to.after(horizon), String.format(ErrorMessage.EXPORT_DAY_ARCHIVED, horizon.toLocalDateTime().toLocalDate()), HttpStatus.BAD_REQUEST.value());
+            //partition of the last archived month may be not dropped yet
+            if (from == null || from.before(horizon)) {
+                from = horizon;
+            }
+        }
+        return transactionRepository.copyTransactions(walletId, from, to, out);
+    }
+
+    /**
+     * Creates transaction for wallet, see TransactionWriter.createTransaction for validation rules.
+     * <p>
+     * WriteMode.SERIALIZABLE - transaction is written with isolation = Isolation.SERIALIZABLE.
+     * WriteMode.LANES - transaction is written on the wallet lane with isolation = Isolation.READ_COMMITTED,
+     * so transactions for the same wallet don't compete with each other.
+     * WriteMode.ATOMIC_SQL - funds check, balance update and transaction insert are done by one SQL statement.
+     * WriteMode.GROUP_COMMIT - transaction is written together with concurrent transactions in one database transaction.
+     * WriteMode.IN_MEMORY_LEDGER - transaction is applied to the wallet balance in memory and journaled, database is updated in the background.
+     * WriteMode.APPEND_ONLY - transaction is inserted under advisory lock of the wallet balance, wallet row is updated in the background.
+     * Transaction of a wallet with balance slots is written by TransactionWriter.createTransactionStriped in all write modes
+     * except WriteMode.IN_MEMORY_LEDGER and WriteMode.APPEND_ONLY.
+     * Single transaction writes are retried by RetryExecutor if they failed because of concurrent updates.
+     * Repeated request with the same globalId is answered by IdempotencyCache without a write.
+     * If globalId is not cached any more, the write fails on unique globalId and the stored transaction is returned.
+     * </p>
      * @param globalId unique global id
      * @param currencyName valid currency name
      * @param walletId valid wallet id
@@ -105,42 +244,204 @@ public class TransactionServiceImpl implements TransactionService {
      * @param amount transaction amount
      * @param description
      * @return created transaction
-     * @throws WalletException if couldn't create transaction
+     * @throws WalletException if couldn't create transaction,
+     *          with HttpStatus.CONFLICT if transaction with the same globalId and different parameters is present
      */
-    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE, rollbackFor = WalletException.class)
     @Override
     public Transaction createTransaction(@NotBlank String globalId, @NotBlank  String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotBlank String amount, String description) throws WalletException{
+        //amount is parsed once, write path works with minor units
+        Money transactionAmount = referenceData.parseAmount(currencyName, amount);
+        Transaction created = idempotencyCache.findCreated(globalId, currencyName, walletId, transactionTypeId, transactionAmount, description);
+        if (created != null) {
+            return created;
+        }
+        Transaction transaction;
         try {
-            //Check for unique transaction globalId happens due to entity constrains on Transaction.globalId (unique=true)
+            transaction = write(globalId, currencyName, walletId, transactionTypeId, transactionAmount, description);
+        } catch (DataIntegrityViolationException | WalletException e) {
+            //globalId was not cached: transaction was evicted from the cache or created by another instance
+            Transaction stored = isDuplicateGlobalId(e, globalId)
+                    ? idempotencyCache.findStored(globalId, currencyName, walletId, transactionTypeId, transactionAmount, description) : null;
+            if (stored == null) {
+                throw e;
+            }
+            return stored;
+        }
+        idempotencyCache.put(transaction);
+        return transaction;
+    }
 
-            //Get currency reference
-            Currency currency = currencyRepository.findByName(currencyName);
-            String error = String.format(ErrorMessage.NO_CURRENCY_PRESENT, currencyName);
-            inputParametersValidator.conditionIsTrue(currency != null,error,HttpStatus.BAD_REQUEST.value());
+    private static boolean isDuplicateGlobalId(Exception e, String globalId) {
+        if (e instanceof WalletException) {
+            return String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, globalId).equals(e.getMessage());
+        }
+        String error = Throwables.getRootCause(e).getMessage();
+        return error != null && error.contains(ErrorMessage.DUPLICATE_KEY);
+    }
 
-            //Get transactionType reference
-            TransactionType transactionType = transactionTypeRepository.getOne(transactionTypeId);
+    private Transaction write(String globalId, String currencyName, String walletId, String transactionTypeId, Money amount, String description) throws WalletException {
+        if (hasBalanceSlots(walletId)) {
+            return retryExecutor.execute(walletId,
+                    () -> transactionWriter.createTransactionStriped(globalId, currencyName, walletId, transactionTypeId, amount, description));
+        }
+        switch (writeMode) {
+            case LANES:
+                return walletLaneExecutor.execute(parseWalletId(walletId), () -> retryExecutor.execute(walletId,
+                        () -> transactionWriter.createTransactionLocked(globalId, currencyName, walletId, transactionTypeId, amount, description)));
+            case GROUP_COMMIT:
+                return transactionBatcher.submit(new TransactionModel(globalId, currencyName, walletId, transactionTypeId, amount.toString(), description), amount);
+            case IN_MEMORY_LEDGER:
+                return inMemoryLedger.createTransaction(globalId, currencyName, walletId, transactionTypeId, amount, description);
+            case ATOMIC_SQL:
+                return retryExecutor.execute(walletId,
+                        () -> transactionWriter.createTransactionAtomic(globalId, currencyName, walletId, transactionTypeId, amount, description));
+            case APPEND_ONLY:
+                return retryExecutor.execute(walletId,
+                        () -> transactionWriter.createTransactionAppendOnly(globalId, currencyName, walletId, transactionTypeId, amount, description));
+            default:
+                return retryExecutor.execute(walletId,
+                        () -> transactionWriter.createTransaction(globalId, currencyName, walletId, transactionTypeId, amount, description));
+        }
+    }
 
-            //Check wallet is present
-            Wallet wallet = walletService.findById(Integer.valueOf(walletId));
-            error = String.format(ErrorMessage.NO_WALLET_FOUND, walletId);
-            inputParametersValidator.conditionIsTrue(wallet != null,error,HttpStatus.BAD_REQUEST.value());
+    /**
+     * Transfers amount between two wallets of the same currency, see TransactionWriter.createTransfer.
+     * <p>
+     * Transfer is retried by RetryExecutor if it failed because of concurrent updates.
+     * Not supported with WriteMode.IN_MEMORY_LEDGER, because ledger balances would not see the transfer,
+     * and with WriteMode.APPEND_ONLY, because transfer updates wallet rows.
+     * </p>
+     * @return debit and credit transactions
+     * @throws WalletException if couldn't create transfer
+     */
+    @Override
+    public List<Transaction> createTransfer(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String fromWalletId, @NotBlank String toWalletId, @NotBlank String amount, String description) throws WalletException {
+        inputParametersValidator.conditionIsTrue(writeMode != WriteMode.IN_MEMORY_LEDGER && writeMode != WriteMode.APPEND_ONLY, String.format(ErrorMessage.TRANSFER_NOT_SUPPORTED, writeMode), HttpStatus.BAD_REQUEST.value());
+        Money transferAmount = referenceData.parseAmount(currencyName, amount);
+        return retryExecutor.execute(fromWalletId,
+                () -> transactionWriter.createTransfer(globalId, currencyName, fromWalletId, toWalletId, transferAmount, description));
+    }
 
-            //check that transaction and wallet have the same currency
-            error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY,currency.getName(), wallet.getCurrency().getName());
-            inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()),error,HttpStatus.BAD_REQUEST.value());
+    /**
+     * Creates batch of transactions, see TransactionWriter.createTransactions for validation rules.
+     * <p>
+     * BatchMode.ALL_OR_NOTHING - batch is created in one database transaction, first invalid transaction fails the whole batch.
+     * BatchMode.PER_ITEM - batch is created in one database transaction, invalid transactions are reported in their results.
+     * If the batch fails as a whole (e.g. unique globalId violated by a concurrent request), transactions are created one by one.
+     * With WriteMode.IN_MEMORY_LEDGER and WriteMode.APPEND_ONLY transactions are created one by one, BatchMode.ALL_OR_NOTHING is not supported.
+     * </p>
+     * @param transactions transactions to create
+     * @param mode batch mode
+     * @return result for every transaction, in the same order
+     * @throws WalletException if batch is too large, or if mode is BatchMode.ALL_OR_NOTHING and some transaction is invalid
+     */
+    @Override
+    public List<TransactionResult> createTransactions(@NotNull List<TransactionModel> transactions, @NotNull BatchMode mode) throws WalletException {
+        inputParametersValidator.conditionIsTrue(transactions.size() <= maxBatchSize, String.format(ErrorMessage.BATCH_TOO_LARGE, maxBatchSize), HttpStatus.BAD_REQUEST.value());
+        if (transactions.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (writeMode == WriteMode.IN_MEMORY_LEDGER || writeMode == WriteMode.APPEND_ONLY) {
+            inputParametersValidator.conditionIsTrue(mode == BatchMode.PER_ITEM, String.format(ErrorMessage.BATCH_MODE_NOT_SUPPORTED, mode, writeMode), HttpStatus.BAD_REQUEST.value());
+            return createOneByOne(transactions, parseAmounts(transactions));
+        }
+        List<Money> amounts = parseAmounts(transactions);
+        if (mode == BatchMode.ALL_OR_NOTHING) {
+            return remember(transactionWriter.createTransactions(transactions, amounts, true));
+        }
+        try {
+            return remember(transactionWriter.createTransactions(transactions, amounts, false));
+        } catch (RuntimeException e) {
+            logger.debug("Batch of {} transactions failed, creating them one by one: {}", transactions.size(), e.getMessage());
+            return createOneByOne(transactions, amounts);
+        }
+    }
+
+    //Amounts are parsed once, for the batch and for writing it one by one. Invalid amount is null, its error is reported with its transaction
+    private List<Money> parseAmounts(List<TransactionModel> transactions) {
+        List<Money> amounts = new ArrayList<>(transactions.size());
+        for (TransactionModel model : transactions) {
+            Money amount = null;
+            if (isPresent(model.getCurrency()) && isPresent(model.getAmount())) {
+                try {
+                    amount = referenceData.parseAmount(model.getCurrency(), model.getAmount());
+                } catch (WalletException e) {
+                    //reported for the transaction itself
+                }
+            }
+            amounts.add(amount);
+        }
+        return amounts;
+    }
+
+    private List<TransactionResult> remember(List<TransactionResult> results) {
+        results.stream().filter(TransactionResult::isSuccess).forEach(result -> idempotencyCache.put(result.getTransaction()));
+        return results;
+    }
+
+    private List<TransactionResult> createOneByOne(List<TransactionModel> transactions, List<Money> amounts) {
+        List<TransactionResult> results = new ArrayList<>(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            try {
+                results.add(TransactionResult.success(createOne(transactions.get(i), amounts.get(i))));
+            } catch (WalletException e) {
+                results.add(TransactionResult.failure(e));
+            } catch (DataIntegrityViolationException e) {
+                String error = ErrorMessage.generateErrorMessageForDataIntegrityViolationException(Throwables.getRootCause(e).getMessage());
+                results.add(TransactionResult.failure(new WalletException(error, HttpStatus.CONFLICT.value())));
+            } catch (RuntimeException e) {
+                logger.error("Transaction of the batch failed", e);
+                results.add(TransactionResult.failure(new WalletException(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR.value())));
+            }
+        }
+        return results;
+    }
 
-            //Update wallet, checks if there is enough funds for debit transaction. If not, throws WalletException
-            wallet = walletService.updateWalletAmount(wallet,amount,transactionTypeId.equalsIgnoreCase(transactionTypeCredit));
+    private Transaction createOne(TransactionModel model, Money parsedAmount) throws WalletException {
+        checkMandatory(model.getGlobalId(), "globalId");
+        checkMandatory(model.getCurrency(), "currency");
+        checkMandatory(model.getWalletId(), "walletId");
+        checkMandatory(model.getTransactionTypeId(), "transactionTypeId");
+        checkMandatory(model.getAmount(), "amount");
+        Money amount = parsedAmount != null ? parsedAmount : referenceData.parseAmount(model.getCurrency(), model.getAmount());
+        Transaction transaction;
+        if (writeMode == WriteMode.IN_MEMORY_LEDGER) {
+            transaction = inMemoryLedger.createTransaction(model.getGlobalId(), model.getCurrency(), model.getWalletId(), model.getTransactionTypeId(), amount, model.getDescription());
+        } else if (writeMode == WriteMode.APPEND_ONLY) {
+            transaction = retryExecutor.execute(model.getWalletId(), () -> transactionWriter.createTransactionAppendOnly(model.getGlobalId(), model.getCurrency(),
+                    model.getWalletId(), model.getTransactionTypeId(), amount, model.getDescription()));
+        } else if (hasBalanceSlots(model.getWalletId())) {
+            transaction = retryExecutor.execute(model.getWalletId(), () -> transactionWriter.createTransactionStriped(model.getGlobalId(), model.getCurrency(),
+                    model.getWalletId(), model.getTransactionTypeId(), amount, model.getDescription()));
+        } else {
+            transaction = retryExecutor.execute(model.getWalletId(), () -> transactionWriter.createTransactionLocked(model.getGlobalId(), model.getCurrency(),
+                    model.getWalletId(), model.getTransactionTypeId(), amount, model.getDescription()));
+        }
+        idempotencyCache.put(transaction);
+        return transaction;
+    }
 
-            //Create transaction
-            Transaction transaction = new Transaction(globalId,transactionType,new BigDecimal(amount),wallet,currency,description,updatedBy);
+    private void checkMandatory(String value, String field) throws WalletException {
+        inputParametersValidator.conditionIsTrue(isPresent(value), String.format(ErrorMessage.NO_MANDATORY_FIELD, field), HttpStatus.BAD_REQUEST.value());
+    }
 
-            return transactionRepository.save(transaction);
+    private static boolean isPresent(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
 
-        } catch(NumberFormatException e){
-            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH,amount),HttpStatus.BAD_REQUEST.value());
+    //wallets with balance slots bypass lanes and group commit, IN_MEMORY_LEDGER and APPEND_ONLY don't support slots
+    private boolean hasBalanceSlots(String walletId) throws WalletException {
+        if (writeMode == WriteMode.IN_MEMORY_LEDGER || writeMode == WriteMode.APPEND_ONLY) {
+            return false;
         }
+        return walletBalanceSlots.hasSlots(parseWalletId(walletId));
+    }
 
+    private Integer parseWalletId(String walletId) throws WalletException {
+        try {
+            return Integer.valueOf(walletId);
+        } catch (NumberFormatException e) {
+            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH, walletId), HttpStatus.BAD_REQUEST.value());
+        }
     }
 }
@@ -0,0 +1,28 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.WalletException;
+
+import com.company.wallet.ledger.LedgerEntry;
+import com.company.wallet.view.model.TransactionModel;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * Writes transactions and updates wallet balances in a database transaction.
+ * <p>Used by TransactionService, which decides how write is executed (see WriteMode).</p>
+ * @author Elena Medvedeva
+ */
+public interface TransactionWriter {
+    public Transaction createTransaction(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException;
+    public Transaction createTransactionAtomic(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException;
+    public Transaction createTransactionStriped(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException;
+    public Transaction createTransactionAppendOnly(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException;
+    public List<TransactionResult> createTransactions(@NotNull List<TransactionModel> transactions, @NotNull List<Money> amounts, boolean allOrNothing) throws WalletException;
+    public List<Transaction> createTransfer(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String fromWalletId, @NotBlank String toWalletId, @NotNull Money amount, String description) throws WalletException;
+    public void writeLedgerEntries(@NotNull List<LedgerEntry> entries);
+    public Transaction createTransactionLocked(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException;
+}
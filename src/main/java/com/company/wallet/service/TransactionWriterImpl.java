@@ -0,0 +1,563 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.Helper;
+import com.company.wallet.ledger.LedgerEntry;
+import com.company.wallet.repository.CurrencyRepository;
+import com.company.wallet.repository.PendingBalance;
+import com.company.wallet.repository.TransactionRepository;
+import com.company.wallet.repository.TransactionTypeRepository;
+import com.company.wallet.repository.WalletRepository;
+import com.company.wallet.view.model.TransactionModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static com.company.wallet.exceptions.ErrorMessage.AMOUNT_NOT_REPRESENTABLE;
+import static com.company.wallet.exceptions.ErrorMessage.NUMBER_FORMAT_MISMATCH;
+
+/**
+ * Writes transactions and updates wallet balances in a database transaction.
+ * Event of every written transaction is added to WalletEventOutbox in the same database transaction.
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class TransactionWriterImpl implements TransactionWriter {
+
+    //globalId suffixes of the two transactions of a transfer
+    static final String TRANSFER_DEBIT_SUFFIX = "-debit";
+    static final String TRANSFER_CREDIT_SUFFIX = "-credit";
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private CurrencyRepository currencyRepository;
+
+    @Autowired
+    private TransactionTypeRepository transactionTypeRepository;
+
+    @Autowired
+    private WalletCache walletCache;
+
+    @Autowired
+    private BalanceMaterializer balanceMaterializer;
+
+    @Autowired
+    private WalletBalanceSlots walletBalanceSlots;
+
+    @Autowired
+    private WalletEventOutbox walletEventOutbox;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @Autowired
+    private Helper inputParametersValidator;
+
+    @Value("${db.updated_by}")
+    private String updatedBy;
+
+    @Value("${application.transaction.type.credit}")
+    private String transactionTypeCredit;
+
+    @Value("${application.transaction.type.debit}")
+    private String transactionTypeDebit;
+
+    public String getUpdatedBy() {
+        return updatedBy;
+    }
+
+    public void setUpdatedBy(String updatedBy) {
+        this.updatedBy = updatedBy;
+    }
+
+    public String getTransactionTypeCredit() {
+        return transactionTypeCredit;
+    }
+
+    public void setTransactionTypeCredit(String transactionTypeCredit) {
+        this.transactionTypeCredit = transactionTypeCredit;
+    }
+
+    public String getTransactionTypeDebit() {
+        return transactionTypeDebit;
+    }
+
+    public void setTransactionTypeDebit(String transactionTypeDebit) {
+        this.transactionTypeDebit = transactionTypeDebit;
+    }
+
+    /**
+     * Creates transaction for wallet.
+     * If there is not enough funds on wallet balance, throws WalletException
+     * If transactionTypeId='C' (credit transaction), takes absolute amount from  @param amount  and adds it to wallet balance.
+     * If transactionTypeId='D' (debit transaction), takes absolute amount from  @param amount  and subtracts it from wallet balance.
+     * Valid refence to transaction type, currency, wallet should be provided.
+     * Global id should be unique.
+     * Transaction should have the same currency as wallet.
+     * No additional SQL query is used to select currency and transaction type,
+     * they are taken from ReferenceDataRegistry and saved as references (see save).
+     *
+     * Set isolation = Isolation.SERIALIZABLE in order to avoid concurrency issues (in case of deploying application to multiple hosts)
+     *
+     * @param globalId unique global id
+     * @param currencyName valid currency name
+     * @param walletId valid wallet id
+     * @param transactionTypeId valid transaction type - 'C' or 'D'
+     * @param amount transaction amount, parsed with the scale of the currency (see ReferenceDataRegistry.parseAmount)
+     * @param description
+     * @return created transaction
+     * @throws WalletException if couldn't create transaction
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE, rollbackFor = WalletException.class)
+    @Override
+    public Transaction createTransaction(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException {
+        return create(globalId, currencyName, walletId, transactionTypeId, amount, description, false);
+    }
+
+    /**
+     * Creates transaction for wallet the same way as createTransaction,
+     * but with isolation = Isolation.READ_COMMITTED and wallet row locked by SELECT ... FOR UPDATE.
+     * Row lock is enough to check wallet balance, because balance can't be changed by other transaction until commit.
+     * Used when transactions for wallet are already executed one by one (see WalletLaneExecutor),
+     * so the lock is normally not contended and only protects from other application hosts.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public Transaction createTransactionLocked(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException {
+        return create(globalId, currencyName, walletId, transactionTypeId, amount, description, true);
+    }
+
+    /**
+     * Creates transaction for wallet with the same validation rules as createTransaction,
+     * but wallet is not loaded: funds check, balance update and transaction insert are done by one conditional SQL statement
+     * (see TransactionRepositoryCustom.saveWithBalanceUpdate), so isolation = Isolation.READ_COMMITTED is enough.
+     * Wallet is selected only if statement didn't update wallet, to find out the reason.
+     * Not unique globalId causes DataIntegrityViolationException as for createTransaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public Transaction createTransactionAtomic(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException {
+        try {
+            Currency currency = findCurrency(currencyName);
+            TransactionType transactionType = findTransactionType(transactionTypeId);
+
+            Integer id = Integer.valueOf(walletId);
+            boolean isCredit = transactionTypeId.equalsIgnoreCase(transactionTypeCredit);
+            Money balanceDelta = isCredit ? amount.abs() : amount.abs().negate();
+
+            Transaction transaction = new Transaction(globalId, transactionType, amount.toBigDecimal(), null, currency, description, updatedBy);
+            Transaction saved = transactionRepository.saveWithBalanceUpdate(transaction, id, balanceDelta.toBigDecimal());
+            if (saved == null) {
+                //wallet was not updated, find out why
+                Wallet wallet = walletService.findById(id);
+                inputParametersValidator.conditionIsTrue(wallet != null, String.format(ErrorMessage.NO_WALLET_FOUND, walletId), HttpStatus.BAD_REQUEST.value());
+                String error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY, currency.getName(), wallet.getCurrency().getName());
+                inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()), error, HttpStatus.BAD_REQUEST.value());
+                throw new WalletException(String.format(ErrorMessage.NOT_ENOUGH_FUNDS, id, amount), HttpStatus.BAD_REQUEST.value());
+            }
+            walletEventOutbox.write(saved, saved.getWallet().getBalance());
+            walletCache.putAfterCommit(saved.getWallet());
+            return saved;
+
+        } catch(NumberFormatException e){
+            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH,walletId),HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    /**
+     * Creates transaction for wallet with balance slots with the same validation rules as createTransaction,
+     * with isolation = Isolation.READ_COMMITTED. Balance is changed by WalletBalanceSlots.addToBalance,
+     * so a credit locks one slot row instead of the wallet row. Transaction is inserted without loading it into the persistence context.
+     * Wallet is evicted from WalletCache after commit, because concurrent transactions of other slots are not seen by this one.
+     * Not unique globalId causes DataIntegrityViolationException as for createTransaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public Transaction createTransactionStriped(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException {
+        Currency currency = findCurrency(currencyName);
+        TransactionType transactionType = findTransactionType(transactionTypeId);
+        Integer id = parseWalletId(walletId);
+
+        Wallet wallet = walletService.findById(id);
+        String error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY, currency.getName(), wallet.getCurrency().getName());
+        inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()), error, HttpStatus.BAD_REQUEST.value());
+
+        boolean isCredit = transactionTypeId.equalsIgnoreCase(transactionTypeCredit);
+        Wallet updated = walletBalanceSlots.addToBalance(wallet, isCredit ? amount.abs() : amount.abs().negate());
+
+        //order of ids matters only for balance checkpoints (WriteMode.APPEND_ONLY)
+        Transaction transaction = transactionRepository.append(new Transaction(globalId, transactionType, amount.toBigDecimal(), wallet, currency, description, updatedBy), 0);
+        transaction.setWallet(updated);
+        walletEventOutbox.write(transaction, updated.getBalance());
+        walletCache.evictAfterCommit(id);
+        return transaction;
+    }
+
+    /**
+     * Creates transaction for wallet with the same validation rules as createTransaction, without update of the wallet row (WriteMode.APPEND_ONLY).
+     * <p>
+     * Transactions of the wallet are serialized by advisory lock of the wallet balance (WalletRepositoryCustom.lockBalance),
+     * funds are checked against balance checkpoint plus pending transactions, read by one statement,
+     * and transaction is inserted. Balance checkpoint is started by the first transaction of the wallet.
+     * Returned transaction has the wallet with balance and version after it, as with other write modes.
+     * Not unique globalId causes DataIntegrityViolationException as for createTransaction.
+     * </p>
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public Transaction createTransactionAppendOnly(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotNull Money amount, String description) throws WalletException {
+        Currency currency = findCurrency(currencyName);
+        TransactionType transactionType = findTransactionType(transactionTypeId);
+        Integer id = parseWalletId(walletId);
+
+        //user and currency of the wallet never change, snapshot is enough
+        Wallet wallet = walletService.findByIdCached(id);
+        String error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY, currency.getName(), wallet.getCurrency().getName());
+        inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()), error, HttpStatus.BAD_REQUEST.value());
+
+        walletRepository.lockBalance(id);
+        List<PendingBalance> balances = walletRepository.findPendingBalances(Collections.singletonList(id), transactionTypeCredit);
+        if (balances.isEmpty()) {
+            walletRepository.initBalanceCheckpoint(id);
+            balances = walletRepository.findPendingBalances(Collections.singletonList(id), transactionTypeCredit);
+        }
+        PendingBalance pending = balances.get(0);
+
+        boolean isCredit = transactionTypeId.equalsIgnoreCase(transactionTypeCredit);
+        Money balance;
+        try {
+            balance = Money.ofStored(pending.getBalance(), amount.getScale()).add(isCredit ? amount.abs() : amount.abs().negate());
+        } catch (ArithmeticException e) {
+            throw new WalletException(String.format(AMOUNT_NOT_REPRESENTABLE, amount.abs(), amount.getScale(), currency.getName()), HttpStatus.BAD_REQUEST.value());
+        }
+        inputParametersValidator.conditionIsTrue(balance.signum() >= 0, String.format(ErrorMessage.NOT_ENOUGH_FUNDS, id, amount), HttpStatus.BAD_REQUEST.value());
+
+        Transaction transaction = transactionRepository.append(new Transaction(globalId, transactionType, amount.toBigDecimal(), wallet, currency, description, updatedBy),
+                pending.getLastPendingTransactionId());
+        Wallet updated = new Wallet(id, wallet.getUserId(), wallet.getCurrency(), balance.toBigDecimal(), transaction.getLastUpdated(),
+                wallet.getLastUpdatedBy(), pending.getVersion() + 1, pending.getLastTransactionId(), wallet.getBalanceSlots());
+        transaction.setWallet(updated);
+        walletEventOutbox.write(transaction, updated.getBalance());
+        walletCache.putAfterCommit(updated);
+        balanceMaterializer.markPendingAfterCommit(id);
+        return transaction;
+    }
+
+    /**
+     * Creates transactions in one database transaction with isolation = Isolation.READ_COMMITTED (group commit).
+     * <p>
+     * All wallets of the batch are locked in wallet id order by one SELECT ... FOR UPDATE.
+     * Every transaction is validated before it is written: mandatory fields, currency, wallet (without balance slots), unique globalId (in the batch and in the database)
+     * and funds (against wallet balance updated by previous transactions of the batch).
+     * Invalid transaction gets WalletException in its result and doesn't affect other transactions, unless allOrNothing is set.
+     * Transactions are inserted with one JDBC batch (see TransactionRepositoryCustom.insertAll), every wallet is updated once.
+     * Unexpected database error fails the whole batch, caller should retry transactions one by one.
+     * </p>
+     * @param transactions transactions to create
+     * @param amounts amounts of the transactions already parsed by the caller, in the same order;
+     *                null if amount couldn't be parsed, then it is parsed again to report the error with the transaction
+     * @param allOrNothing if true, first invalid transaction rolls back the whole batch
+     * @return result for every transaction, in the same order
+     * @throws WalletException if batch couldn't be written, or if allOrNothing is set and some transaction is invalid
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public List<TransactionResult> createTransactions(@NotNull List<TransactionModel> transactions, @NotNull List<Money> amounts, boolean allOrNothing) throws WalletException {
+        //lock wallets in id order
+        Set<Integer> walletIds = new TreeSet<>();
+        Set<String> globalIds = new HashSet<>();
+        for (TransactionModel model : transactions) {
+            try {
+                walletIds.add(Integer.valueOf(model.getWalletId()));
+            } catch (NumberFormatException e) {
+                //reported for the transaction itself
+            }
+            if (model.getGlobalId() != null) {
+                globalIds.add(model.getGlobalId());
+            }
+        }
+        Map<Integer, Wallet> wallets = new HashMap<>();
+        if (!walletIds.isEmpty()) {
+            walletRepository.findAllByIdForUpdate(walletIds).forEach(wallet -> wallets.put(wallet.getId(), wallet));
+        }
+
+        Set<String> usedGlobalIds = transactionRepository.findUsedGlobalIds(globalIds);
+
+        List<TransactionResult> results = new ArrayList<>(transactions.size());
+        List<Transaction> created = new ArrayList<>(transactions.size());
+        //balance after every transaction, wallets of the batch are changed by later transactions
+        List<BigDecimal> balances = new ArrayList<>(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            try {
+                Transaction transaction = createInBatch(transactions.get(i), amounts.get(i), wallets, usedGlobalIds);
+                created.add(transaction);
+                balances.add(transaction.getWallet().getBalance());
+                results.add(TransactionResult.success(transaction));
+            } catch (WalletException e) {
+                if (allOrNothing) {
+                    throw new WalletException(String.format(ErrorMessage.BATCH_TRANSACTION_FAILED, i, e.getMessage()), e.getErrorCode());
+                }
+                results.add(TransactionResult.failure(e));
+            }
+        }
+        transactionRepository.insertAll(created);
+        walletEventOutbox.writeAll(created, balances);
+        created.stream().map(Transaction::getWallet).distinct().forEach(walletCache::putAfterCommit);
+        return results;
+    }
+
+    //Validates one transaction of the batch and applies it to the wallet. Must not call other transactional services, exception there would mark the whole batch rollback only
+    private Transaction createInBatch(TransactionModel model, Money parsedAmount, Map<Integer, Wallet> wallets, Set<String> usedGlobalIds) throws WalletException {
+        String amount = model.getAmount();
+        try {
+            checkMandatory(model.getGlobalId(), "globalId");
+            checkMandatory(model.getCurrency(), "currency");
+            checkMandatory(model.getWalletId(), "walletId");
+            checkMandatory(model.getTransactionTypeId(), "transactionTypeId");
+            checkMandatory(amount, "amount");
+
+            String error = String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, model.getGlobalId());
+            inputParametersValidator.conditionIsTrue(!usedGlobalIds.contains(model.getGlobalId()), error, HttpStatus.CONFLICT.value());
+
+            Currency currency = findCurrency(model.getCurrency());
+            TransactionType transactionType = findTransactionType(model.getTransactionTypeId());
+
+            Wallet wallet = wallets.get(Integer.valueOf(model.getWalletId()));
+            error = String.format(ErrorMessage.NO_WALLET_FOUND, model.getWalletId());
+            inputParametersValidator.conditionIsTrue(wallet != null, error, HttpStatus.BAD_REQUEST.value());
+
+            error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY, currency.getName(), wallet.getCurrency().getName());
+            inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()), error, HttpStatus.BAD_REQUEST.value());
+            //balance of the wallet row doesn't include slots
+            inputParametersValidator.conditionIsTrue(wallet.getBalanceSlots() == null, String.format(ErrorMessage.WALLET_HAS_BALANCE_SLOTS, wallet.getId()), HttpStatus.BAD_REQUEST.value());
+
+            Money transactionAmount = parsedAmount != null ? parsedAmount : referenceData.parseAmount(currency.getName(), amount);
+            boolean isCredit = model.getTransactionTypeId().equalsIgnoreCase(transactionTypeCredit);
+            Money balance = addToBalance(wallet, isCredit ? transactionAmount.abs() : transactionAmount.abs().negate());
+            inputParametersValidator.conditionIsTrue(balance.signum() >= 0, String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet.getId(), amount), HttpStatus.BAD_REQUEST.value());
+
+            wallet.setBalance(balance.toBigDecimal());
+            wallet.setLastUpdatedBy(updatedBy);
+            wallet.setLastUpdated(new Date());
+
+            usedGlobalIds.add(model.getGlobalId());
+            //inserted with the other transactions of the batch
+            return new Transaction(model.getGlobalId(), transactionType, transactionAmount.toBigDecimal(), wallet, currency, model.getDescription(), updatedBy);
+
+        } catch(NumberFormatException e){
+            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH, model.getWalletId()), HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private void checkMandatory(String value, String field) throws WalletException {
+        inputParametersValidator.conditionIsTrue(value != null && !value.trim().isEmpty(), String.format(ErrorMessage.NO_MANDATORY_FIELD, field), HttpStatus.BAD_REQUEST.value());
+    }
+
+    /**
+     * Transfers amount from one wallet to another in one database transaction with isolation = Isolation.READ_COMMITTED.
+     * <p>
+     * Both wallets are locked by one SELECT ... FOR UPDATE in wallet id order, so concurrent transfers A to B and B to A
+     * wait for each other instead of deadlocking.
+     * Transfer is written as two transactions: debit of fromWalletId with globalId + TRANSFER_DEBIT_SUFFIX
+     * and credit of toWalletId with globalId + TRANSFER_CREDIT_SUFFIX.
+     * Wallets with balance slots are not supported, because only wallet rows are locked.
+     * Not unique globalId causes DataIntegrityViolationException as for createTransaction.
+     * </p>
+     * @param globalId unique global id of the transfer
+     * @param currencyName currency of both wallets
+     * @param fromWalletId wallet to debit
+     * @param toWalletId wallet to credit
+     * @param amount positive transfer amount
+     * @param description
+     * @return debit and credit transactions
+     * @throws WalletException if couldn't create transfer
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public List<Transaction> createTransfer(@NotBlank String globalId, @NotBlank String currencyName, @NotBlank String fromWalletId, @NotBlank String toWalletId, @NotNull Money amount, String description) throws WalletException {
+        inputParametersValidator.conditionIsTrue(amount.signum() > 0, String.format(ErrorMessage.TRANSFER_AMOUNT_NOT_POSITIVE, amount), HttpStatus.BAD_REQUEST.value());
+
+        Integer fromId = parseWalletId(fromWalletId);
+        Integer toId = parseWalletId(toWalletId);
+        inputParametersValidator.conditionIsTrue(!fromId.equals(toId), String.format(ErrorMessage.TRANSFER_TO_SAME_WALLET, fromWalletId), HttpStatus.BAD_REQUEST.value());
+
+        Currency currency = findCurrency(currencyName);
+
+        //lock wallets in id order
+        Map<Integer, Wallet> wallets = new HashMap<>();
+        walletRepository.findAllByIdForUpdate(new TreeSet<>(Arrays.asList(fromId, toId))).forEach(wallet -> wallets.put(wallet.getId(), wallet));
+        Wallet from = wallets.get(fromId);
+        inputParametersValidator.conditionIsTrue(from != null, String.format(ErrorMessage.NO_WALLET_FOUND, fromWalletId), HttpStatus.BAD_REQUEST.value());
+        Wallet to = wallets.get(toId);
+        inputParametersValidator.conditionIsTrue(to != null, String.format(ErrorMessage.NO_WALLET_FOUND, toWalletId), HttpStatus.BAD_REQUEST.value());
+
+        for (Wallet wallet : Arrays.asList(from, to)) {
+            String error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY, currency.getName(), wallet.getCurrency().getName());
+            inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()), error, HttpStatus.BAD_REQUEST.value());
+            inputParametersValidator.conditionIsTrue(wallet.getBalanceSlots() == null, String.format(ErrorMessage.WALLET_HAS_BALANCE_SLOTS, wallet.getId()), HttpStatus.BAD_REQUEST.value());
+        }
+
+        Money balance = addToBalance(from, amount.negate());
+        inputParametersValidator.conditionIsTrue(balance.signum() >= 0, String.format(ErrorMessage.NOT_ENOUGH_FUNDS, from.getId(), amount), HttpStatus.BAD_REQUEST.value());
+
+        Date now = new Date();
+        from.setBalance(balance.toBigDecimal());
+        from.setLastUpdated(now);
+        from.setLastUpdatedBy(updatedBy);
+        to.setBalance(addToBalance(to, amount).toBigDecimal());
+        to.setLastUpdated(now);
+        to.setLastUpdatedBy(updatedBy);
+
+        BigDecimal transferAmount = amount.toBigDecimal();
+        Transaction debit = save(new Transaction(globalId + TRANSFER_DEBIT_SUFFIX, findTransactionType(transactionTypeDebit), transferAmount, from, currency, description, updatedBy));
+        Transaction credit = save(new Transaction(globalId + TRANSFER_CREDIT_SUFFIX, findTransactionType(transactionTypeCredit), transferAmount, to, currency, description, updatedBy));
+        walletEventOutbox.writeAll(Arrays.asList(debit, credit), Arrays.asList(from.getBalance(), to.getBalance()));
+        walletCache.putAfterCommit(from);
+        walletCache.putAfterCommit(to);
+        return Arrays.asList(debit, credit);
+    }
+
+    /**
+     * Writes entries of the in-memory ledger to the database in one database transaction.
+     * Write is idempotent, so entries can be written again after a crash:
+     * transactions which are already present are skipped and wallet balance is set to the balance after the last inserted entry of the wallet.
+     * Skipped entries don't change wallet balance: either they were written before together with their balance,
+     * or their globalId is used by another transaction, and then their balance is not valid.
+     * @param entries ledger entries in the order they were accepted
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED)
+    @Override
+    public void writeLedgerEntries(@NotNull List<LedgerEntry> entries) {
+        Map<Integer, LedgerEntry> lastEntries = new TreeMap<>();
+        List<Transaction> inserted = new ArrayList<>(entries.size());
+        List<BigDecimal> balances = new ArrayList<>(entries.size());
+        for (LedgerEntry entry : entries) {
+            Transaction transaction = new Transaction(entry.getGlobalId(), transactionTypeRepository.getOne(entry.getTypeId()), entry.getAmount(),
+                    walletRepository.getOne(entry.getWalletId()), currencyRepository.getOne(entry.getCurrencyId()), entry.getDescription(), updatedBy);
+            transaction.setId(entry.getTransactionId());
+            transaction.setLastUpdated(new Date(entry.getTimestamp()));
+            //entries written again after a crash have their events already
+            if (transactionRepository.insertIfAbsent(transaction)) {
+                inserted.add(transaction);
+                balances.add(entry.getBalanceAfter());
+                lastEntries.put(entry.getWalletId(), entry);
+            }
+        }
+        walletEventOutbox.writeAll(inserted, balances);
+        for (LedgerEntry entry : lastEntries.values()) {
+            walletRepository.updateBalance(entry.getWalletId(), entry.getBalanceAfter(), new Date(entry.getTimestamp()), updatedBy);
+            walletCache.evictAfterCommit(entry.getWalletId());
+        }
+    }
+
+    private Transaction create(String globalId, String currencyName, String walletId, String transactionTypeId, Money amount, String description, boolean lockWallet) throws WalletException {
+        try {
+            //Check for unique transaction globalId happens due to entity constrains on Transaction.globalId (unique=true)
+
+            //Get currency and transactionType from registry
+            Currency currency = findCurrency(currencyName);
+            TransactionType transactionType = findTransactionType(transactionTypeId);
+
+            //Check wallet is present
+            Wallet wallet = lockWallet ? walletService.findByIdForUpdate(Integer.valueOf(walletId)) : walletService.findById(Integer.valueOf(walletId));
+            String error = String.format(ErrorMessage.NO_WALLET_FOUND, walletId);
+            inputParametersValidator.conditionIsTrue(wallet != null,error,HttpStatus.BAD_REQUEST.value());
+
+            //check that transaction and wallet have the same currency
+            error = String.format(ErrorMessage.TRANSACTION_CURRENCY_NOT_EQ_WALLET_CURRENCY,currency.getName(), wallet.getCurrency().getName());
+            inputParametersValidator.conditionIsTrue(wallet.getCurrency().getId().equals(currency.getId()),error,HttpStatus.BAD_REQUEST.value());
+
+            //Update wallet, checks if there is enough funds for debit transaction. If not, throws WalletException
+            wallet = walletService.updateWalletAmount(wallet,amount,transactionTypeId.equalsIgnoreCase(transactionTypeCredit));
+
+            //Create transaction and its wallet event
+            Transaction saved = save(new Transaction(globalId,transactionType,amount.toBigDecimal(),wallet,currency,description,updatedBy));
+            walletEventOutbox.write(saved, saved.getWallet().getBalance());
+            return saved;
+
+        } catch(NumberFormatException e){
+            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH,walletId),HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private Integer parseWalletId(String walletId) throws WalletException {
+        try {
+            return Integer.valueOf(walletId);
+        } catch (NumberFormatException e) {
+            throw new WalletException(String.format(NUMBER_FORMAT_MISMATCH, walletId), HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    //Wallet balance plus delta in minor units of the wallet currency
+    private Money addToBalance(Wallet wallet, Money delta) throws WalletException {
+        try {
+            return Money.ofStored(wallet.getBalance(), delta.getScale()).add(delta);
+        } catch (ArithmeticException e) {
+            throw new WalletException(String.format(AMOUNT_NOT_REPRESENTABLE, delta.abs(), delta.getScale(), wallet.getCurrency().getName()), HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private Currency findCurrency(String currencyName) throws WalletException {
+        Currency currency = referenceData.findCurrency(currencyName);
+        inputParametersValidator.conditionIsTrue(currency != null, String.format(ErrorMessage.NO_CURRENCY_PRESENT, currencyName), HttpStatus.BAD_REQUEST.value());
+        return currency;
+    }
+
+    private TransactionType findTransactionType(String transactionTypeId) throws WalletException {
+        TransactionType transactionType = referenceData.findTransactionType(transactionTypeId);
+        inputParametersValidator.conditionIsTrue(transactionType != null, String.format(ErrorMessage.NO_TRANSACTION_TYPE_PRESENT, transactionTypeId), HttpStatus.CONFLICT.value());
+        return transactionType;
+    }
+
+    //Registry entities are detached and have assigned ids, so Hibernate would select them to find out if they are new.
+    //Transaction is saved with references instead, and gets registry entities back to be serialized without lazy loading.
+    private Transaction save(Transaction transaction) {
+        TransactionType transactionType = transaction.getType();
+        Currency currency = transaction.getCurrency();
+        transaction.setType(transactionTypeRepository.getOne(transactionType.getId()));
+        transaction.setCurrency(currencyRepository.getOne(currency.getId()));
+        Transaction saved = transactionRepository.save(transaction);
+        if (saved != null) {
+            saved.setType(transactionType);
+            saved.setCurrency(currency);
+        }
+        return saved;
+    }
+}
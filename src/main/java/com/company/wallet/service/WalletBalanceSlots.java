@@ -0,0 +1,61 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Balance slots of hot wallets.
+ * <p>
+ * Balance of a wallet with slots is the wallet row balance plus balances of its slots, version is the wallet version plus versions of its slots.
+ * Credit updates one random slot, so concurrent credits of a hot wallet lock different rows.
+ * Debit takes funds from a slot which has enough of them; if none of the tried slots has, slots and wallet row are locked
+ * and the rest of the balance is spread evenly over the slots (rebalancing).
+ * Wallets read through this interface have one balance, as wallets without slots.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface WalletBalanceSlots {
+
+    /**
+     * @return wallet with balances of its slots added, the same wallet if it has no slots
+     */
+    public Wallet withSlotBalance(@NotNull Wallet wallet);
+
+    /**
+     * @return wallets with balances of their slots added, read by one statement
+     */
+    public List<Wallet> withSlotBalance(@NotNull List<Wallet> wallets);
+
+    /**
+     * @return consumer which adds balances of slots to wallets before they are passed to the given consumer
+     */
+    public Consumer<Wallet> withSlotBalance(@NotNull Consumer<Wallet> consumer);
+
+    /**
+     * Checks if the wallet has balance slots without reading the wallet. Ids of wallets with slots are kept in memory,
+     * changed by setSlots after commit and reloaded every 'application.wallet.balance-slots.refresh-ms' (slots may be changed by other instances).
+     * @return true if the wallet had slots at the last reload or change
+     */
+    public boolean hasSlots(@NotNull Integer walletId);
+
+    /**
+     * Adds delta (positive for credit, negative for debit) to balance of the wallet with slots, must be called inside of a database transaction.
+     * @param wallet wallet as stored in the wallet row (see WalletService.findById)
+     * @return wallet with the balance after the change
+     * @throws WalletException if there is not enough funds
+     */
+    public Wallet addToBalance(@NotNull Wallet wallet, @NotNull Money delta) throws WalletException;
+
+    /**
+     * Changes number of balance slots of the wallet, balance is spread evenly over the new slots (kept in the wallet row if slots is 0).
+     * Must be called inside of a database transaction.
+     * @param wallet wallet as stored in the wallet row (see WalletService.findById)
+     * @return wallet with the new number of slots
+     */
+    public Wallet setSlots(@NotNull Wallet wallet, int slots) throws WalletException;
+}
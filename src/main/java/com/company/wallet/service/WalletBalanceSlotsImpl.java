@@ -0,0 +1,292 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.Helper;
+import com.company.wallet.repository.SlotBalance;
+import com.company.wallet.repository.WalletRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Balance slots of hot wallets, stored in table wallet_balance_slot.
+ * <p>
+ * Number of slots of a wallet is limited by 'application.wallet.balance-slots.max',
+ * debit tries up to 'application.wallet.balance-slots.debit-attempts' slots before rebalancing.
+ * Slots and the wallet row are always locked in this order (slots in slot order), and the wallet row is locked with FOR NO KEY UPDATE,
+ * so rebalancing doesn't deadlock with credits, which lock one slot and insert a transaction referencing the wallet.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class WalletBalanceSlotsImpl implements WalletBalanceSlots {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private Helper inputParametersValidator;
+
+    @Value("${application.transaction.write-mode:SERIALIZABLE}")
+    private WriteMode writeMode;
+
+    @Value("${db.updated_by}")
+    private String updatedBy;
+
+    @Value("${application.wallet.balance-slots.max:64}")
+    private int maxSlots;
+
+    @Value("${application.wallet.balance-slots.debit-attempts:3}")
+    private int debitAttempts;
+
+    @Value("${application.wallet.balance-slots.refresh-ms:10000}")
+    private long refreshMs;
+
+    //ids of wallets with slots, replaced as a whole, null until the first load
+    private volatile Set<Integer> walletsWithSlots;
+    private volatile long walletsWithSlotsLoaded;
+
+    public void setWalletRepository(WalletRepository walletRepository) {
+        this.walletRepository = walletRepository;
+    }
+
+    public void setInputParametersValidator(Helper inputParametersValidator) {
+        this.inputParametersValidator = inputParametersValidator;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public String getUpdatedBy() {
+        return updatedBy;
+    }
+
+    public void setUpdatedBy(String updatedBy) {
+        this.updatedBy = updatedBy;
+    }
+
+    public int getMaxSlots() {
+        return maxSlots;
+    }
+
+    public void setMaxSlots(int maxSlots) {
+        this.maxSlots = maxSlots;
+    }
+
+    public int getDebitAttempts() {
+        return debitAttempts;
+    }
+
+    public void setDebitAttempts(int debitAttempts) {
+        this.debitAttempts = debitAttempts;
+    }
+
+    public long getRefreshMs() {
+        return refreshMs;
+    }
+
+    public void setRefreshMs(long refreshMs) {
+        this.refreshMs = refreshMs;
+    }
+
+    @Override
+    public Wallet withSlotBalance(@NotNull Wallet wallet) {
+        if (wallet.getBalanceSlots() == null) {
+            return wallet;
+        }
+        List<SlotBalance> balances = walletRepository.findSlotBalances(Collections.singletonList(wallet.getId()));
+        return balances.isEmpty() ? wallet : apply(wallet, balances.get(0));
+    }
+
+    @Override
+    public List<Wallet> withSlotBalance(@NotNull List<Wallet> wallets) {
+        List<Integer> walletIds = wallets.stream().filter(wallet -> wallet.getBalanceSlots() != null)
+                .map(Wallet::getId).collect(Collectors.toList());
+        if (walletIds.isEmpty()) {
+            return wallets;
+        }
+        Map<Integer, SlotBalance> balances = byWalletId(walletRepository.findSlotBalances(walletIds));
+        List<Wallet> result = new ArrayList<>(wallets.size());
+        for (Wallet wallet : wallets) {
+            SlotBalance balance = balances.get(wallet.getId());
+            result.add(balance == null ? wallet : apply(wallet, balance));
+        }
+        return result;
+    }
+
+    @Override
+    public Consumer<Wallet> withSlotBalance(@NotNull Consumer<Wallet> consumer) {
+        //only a few hot wallets have slots
+        Map<Integer, SlotBalance> balances = byWalletId(walletRepository.findSlotBalances(null));
+        if (balances.isEmpty()) {
+            return consumer;
+        }
+        return wallet -> {
+            SlotBalance balance = wallet.getBalanceSlots() == null ? null : balances.get(wallet.getId());
+            consumer.accept(balance == null ? wallet : apply(wallet, balance));
+        };
+    }
+
+    @Override
+    public boolean hasSlots(@NotNull Integer walletId) {
+        Set<Integer> walletIds = walletsWithSlots;
+        if (walletIds == null || System.currentTimeMillis() - walletsWithSlotsLoaded > refreshMs) {
+            walletIds = loadWalletsWithSlots();
+        }
+        return walletIds.contains(walletId);
+    }
+
+    //one thread reloads, the others get the ids it has loaded
+    private synchronized Set<Integer> loadWalletsWithSlots() {
+        if (walletsWithSlots == null || System.currentTimeMillis() - walletsWithSlotsLoaded > refreshMs) {
+            walletsWithSlots = new HashSet<>(walletRepository.findIdsWithBalanceSlots());
+            walletsWithSlotsLoaded = System.currentTimeMillis();
+        }
+        return walletsWithSlots;
+    }
+
+    private synchronized void setHasSlots(Integer walletId, boolean hasSlots) {
+        if (walletsWithSlots == null) {
+            return;
+        }
+        Set<Integer> walletIds = new HashSet<>(walletsWithSlots);
+        if (hasSlots) {
+            walletIds.add(walletId);
+        } else {
+            walletIds.remove(walletId);
+        }
+        walletsWithSlots = walletIds;
+    }
+
+    /**
+     * Credit is added to one random slot. Debit is taken from the first of debit-attempts slots (starting from a random one)
+     * which has enough funds, otherwise the wallet is rebalanced.
+     * Wallet row is not locked unless the wallet is rebalanced (also when the wallet lost its slots concurrently).
+     */
+    @Transactional(propagation = Propagation.MANDATORY, rollbackFor = WalletException.class)
+    @Override
+    public Wallet addToBalance(@NotNull Wallet wallet, @NotNull Money delta) throws WalletException {
+        int slots = wallet.getBalanceSlots() == null ? 0 : wallet.getBalanceSlots();
+        if (slots > 0) {
+            int first = ThreadLocalRandom.current().nextInt(slots);
+            int attempts = delta.signum() >= 0 ? 1 : Math.min(debitAttempts, slots);
+            for (int i = 0; i < attempts; i++) {
+                if (walletRepository.addToSlot(wallet.getId(), (first + i) % slots, delta.toBigDecimal())) {
+                    List<SlotBalance> balances = walletRepository.findSlotBalances(Collections.singletonList(wallet.getId()));
+                    Wallet updated = balances.isEmpty() ? wallet : apply(wallet, balances.get(0));
+                    updated.setLastUpdated(new Date());
+                    return updated;
+                }
+            }
+        }
+        return rebalance(wallet, delta, null);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY, rollbackFor = WalletException.class)
+    @Override
+    public Wallet setSlots(@NotNull Wallet wallet, int slots) throws WalletException {
+        inputParametersValidator.conditionIsTrue(slots >= 0 && slots <= maxSlots, String.format(ErrorMessage.BALANCE_SLOTS_OUT_OF_RANGE, maxSlots), HttpStatus.BAD_REQUEST.value());
+        //these modes keep wallet balance outside of the wallet row and would not see the slots
+        inputParametersValidator.conditionIsTrue(slots == 0 || (writeMode != WriteMode.IN_MEMORY_LEDGER && writeMode != WriteMode.APPEND_ONLY),
+                String.format(ErrorMessage.BALANCE_SLOTS_NOT_SUPPORTED, writeMode), HttpStatus.BAD_REQUEST.value());
+        Wallet updated = rebalance(wallet, Money.zero(Money.scaleOf(wallet.getCurrency().getName())), slots);
+        boolean hasSlots = updated.getBalanceSlots() != null;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            setHasSlots(wallet.getId(), hasSlots);
+            return updated;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                setHasSlots(wallet.getId(), hasSlots);
+            }
+        });
+        return updated;
+    }
+
+    //Locks slots and wallet row, adds delta and spreads the balance evenly over slots (current slots if slots is null)
+    private Wallet rebalance(Wallet wallet, Money delta, Integer slots) throws WalletException {
+        Integer id = wallet.getId();
+        List<BigDecimal> slotBalances = walletRepository.lockSlots(id);
+        BigDecimal walletBalance = walletRepository.lockWalletBalance(id);
+        inputParametersValidator.conditionIsTrue(walletBalance != null, String.format(ErrorMessage.NO_WALLET_FOUND, id), HttpStatus.BAD_REQUEST.value());
+        List<SlotBalance> current = walletRepository.findSlotBalances(Collections.singletonList(id));
+        long version = wallet.getVersion() + (current.isEmpty() ? 0 : current.get(0).getVersion());
+
+        Money balance;
+        try {
+            balance = Money.ofStored(walletBalance, delta.getScale()).add(delta);
+            for (BigDecimal slotBalance : slotBalances) {
+                balance = balance.add(Money.ofStored(slotBalance, delta.getScale()));
+            }
+        } catch (ArithmeticException e) {
+            String error = String.format(ErrorMessage.AMOUNT_NOT_REPRESENTABLE, delta.abs(), delta.getScale(), wallet.getCurrency().getName());
+            throw new WalletException(error, HttpStatus.BAD_REQUEST.value());
+        }
+        inputParametersValidator.conditionIsTrue(balance.signum() >= 0, String.format(ErrorMessage.NOT_ENOUGH_FUNDS, id, delta.abs()), HttpStatus.BAD_REQUEST.value());
+
+        List<BigDecimal> spread = spread(balance, slots == null ? slotBalances.size() : slots);
+        BigDecimal rowBalance = spread.isEmpty() ? balance.toBigDecimal() : Money.zero(delta.getScale()).toBigDecimal();
+        walletRepository.setSlotBalances(id, rowBalance, spread, updatedBy);
+
+        return new Wallet(id, wallet.getUserId(), wallet.getCurrency(), balance.toBigDecimal(), new Date(), updatedBy,
+                version + 1, wallet.getLastTransactionId(), spread.isEmpty() ? null : spread.size());
+    }
+
+    //Splits balance into equal parts in minor units, first parts get the remainder
+    static List<BigDecimal> spread(Money balance, int slots) {
+        List<BigDecimal> result = new ArrayList<>(slots);
+        if (slots == 0) {
+            return result;
+        }
+        long share = balance.getMinorUnits() / slots;
+        long remainder = balance.getMinorUnits() % slots;
+        for (int slot = 0; slot < slots; slot++) {
+            result.add(Money.ofMinorUnits(share + (slot < remainder ? 1 : 0), balance.getScale()).toBigDecimal());
+        }
+        return result;
+    }
+
+    private static Wallet apply(Wallet wallet, SlotBalance balance) {
+        return new Wallet(wallet.getId(), wallet.getUserId(), wallet.getCurrency(), wallet.getBalance().add(balance.getBalance()),
+                wallet.getLastUpdated(), wallet.getLastUpdatedBy(), wallet.getVersion() + balance.getVersion(),
+                wallet.getLastTransactionId(), wallet.getBalanceSlots());
+    }
+
+    private static Map<Integer, SlotBalance> byWalletId(List<SlotBalance> balances) {
+        Map<Integer, SlotBalance> result = new HashMap<>();
+        balances.forEach(balance -> result.put(balance.getWalletId(), balance));
+        return result;
+    }
+}
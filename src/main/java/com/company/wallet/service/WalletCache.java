@@ -0,0 +1,56 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Wallet;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * Cache of wallet snapshots (wallet without transactions) and of wallet ids of users, used to answer balance reads.
+ * <p>
+ * Writers update the cache only after commit of their database transaction (see putAfterCommit, evictAfterCommit),
+ * so a snapshot is never newer than the committed wallet.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface WalletCache {
+
+    /**
+     * @return snapshot of the wallet, or null if wallet is not cached
+     */
+    public Wallet get(@NotNull Integer walletId);
+
+    /**
+     * Caches snapshot of the wallet read from the database, unless a snapshot with a newer version is cached.
+     */
+    public void put(@NotNull Wallet wallet);
+
+    /**
+     * @return wallet ids of the user, or null if user is not cached
+     */
+    public List<Integer> getWalletIds(@NotBlank String userId);
+
+    public void putWalletIds(@NotBlank String userId, @NotNull List<Integer> walletIds);
+
+    /**
+     * Caches snapshot of the wallet, as it is at the moment of commit of the current database transaction.
+     * Does nothing if the transaction is rolled back. Without database transaction, wallet is cached immediately.
+     */
+    public void putAfterCommit(@NotNull Wallet wallet);
+
+    /**
+     * Removes wallet from the cache after commit of the current database transaction.
+     */
+    public void evictAfterCommit(@NotNull Integer walletId);
+
+    /**
+     * Removes wallet ids of the user from the cache after commit of the current database transaction.
+     */
+    public void evictWalletIdsAfterCommit(@NotBlank String userId);
+
+    /**
+     * Removes all wallets from the cache after commit of the current database transaction, e.g. after balances of many wallets were changed by one statement.
+     */
+    public void evictAllAfterCommit();
+}
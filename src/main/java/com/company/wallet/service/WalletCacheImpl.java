@@ -0,0 +1,173 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Wallet;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wallet cache based on bounded Guava caches (least recently used entries are evicted) with expiration after write.
+ * <p>
+ * Expiration bounds staleness caused by writes which don't go through this application instance
+ * (other hosts, direct database updates) and by reads racing with evictions.
+ * Reads never replace a snapshot with an older wallet version.
+ * </p>
+ * <p>
+ * Metrics: 'cache.gets', 'cache.evictions', 'cache.size' etc. with tag cache='wallet.cache' or 'wallet.user.cache' - Guava cache statistics,
+ * 'wallet.cache.staleness' - age of the snapshots returned by get, in milliseconds.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@Component
+class WalletCacheImpl implements WalletCache {
+
+    @Value("${application.wallet.cache.size:100000}")
+    private long cacheSize;
+
+    @Value("${application.wallet.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Cache<Integer, Snapshot> wallets;
+
+    private Cache<String, List<Integer>> userWallets;
+
+    private DistributionSummary staleness;
+
+    @PostConstruct
+    public void init() {
+        wallets = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        userWallets = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, wallets, "wallet.cache");
+        GuavaCacheMetrics.monitor(meterRegistry, userWallets, "wallet.user.cache");
+        staleness = DistributionSummary.builder("wallet.cache.staleness")
+                .description("Age of wallet snapshots returned from the cache")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Wallet get(@NotNull Integer walletId) {
+        Snapshot snapshot = wallets.getIfPresent(walletId);
+        if (snapshot == null) {
+            return null;
+        }
+        staleness.record(System.currentTimeMillis() - snapshot.createdAt);
+        return snapshot.wallet;
+    }
+
+    @Override
+    public void put(@NotNull Wallet wallet) {
+        Snapshot snapshot = new Snapshot(wallet);
+        wallets.asMap().merge(wallet.getId(), snapshot, (cached, read) -> cached.isNewerThan(read) ? cached : read);
+    }
+
+    @Override
+    public List<Integer> getWalletIds(@NotBlank String userId) {
+        return userWallets.getIfPresent(userId);
+    }
+
+    @Override
+    public void putWalletIds(@NotBlank String userId, @NotNull List<Integer> walletIds) {
+        userWallets.put(userId, Collections.unmodifiableList(walletIds));
+    }
+
+    @Override
+    public void putAfterCommit(@NotNull Wallet wallet) {
+        afterCommit(() -> wallets.put(wallet.getId(), new Snapshot(wallet)));
+    }
+
+    @Override
+    public void evictAfterCommit(@NotNull Integer walletId) {
+        afterCommit(() -> wallets.invalidate(walletId));
+    }
+
+    @Override
+    public void evictWalletIdsAfterCommit(@NotBlank String userId) {
+        afterCommit(() -> userWallets.invalidate(userId));
+    }
+
+    @Override
+    public void evictAllAfterCommit() {
+        afterCommit(wallets::invalidateAll);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    //Copy of the wallet without transactions, entity itself is managed by the persistence context and can be changed
+    private static class Snapshot {
+        private final Wallet wallet;
+        private final long createdAt;
+
+        Snapshot(Wallet source) {
+            wallet = new Wallet(source.getUserId(), source.getCurrency(), source.getBalance(), source.getLastUpdatedBy());
+            wallet.setId(source.getId());
+            wallet.setLastUpdated(source.getLastUpdated());
+            wallet.setVersion(source.getVersion());
+            wallet.setLastTransactionId(source.getLastTransactionId());
+            wallet.setBalanceSlots(source.getBalanceSlots());
+            createdAt = System.currentTimeMillis();
+        }
+
+        boolean isNewerThan(Snapshot other) {
+            return wallet.getVersion() != null && other.wallet.getVersion() != null && wallet.getVersion() > other.wallet.getVersion();
+        }
+    }
+}
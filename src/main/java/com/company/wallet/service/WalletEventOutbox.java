@@ -0,0 +1,54 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.outbox.OutboxEvent;
+import com.company.wallet.outbox.OutboxSink;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Transactional outbox of wallet balance changes.
+ * <p>
+ * Every wallet transaction writes an event in its own database transaction, so an event exists if and only if
+ * the wallet transaction is committed. Events are published later by WalletEventRelay and deleted after they are published.
+ * Event payload is a JSON object with fields walletId, transactionId, globalId, transactionTypeId, amount, currency,
+ * balance (wallet balance after the transaction) and createdAt (milliseconds since epoch).
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface WalletEventOutbox {
+
+    /**
+     * @return true if events are written ('application.outbox.enabled')
+     */
+    public boolean isEnabled();
+
+    /**
+     * Writes event of the transaction, must be called inside of the database transaction which writes it. Does nothing if outbox is disabled.
+     * @param transaction inserted transaction with id and wallet
+     * @param balance wallet balance after the transaction
+     */
+    public void write(@NotNull Transaction transaction, @NotNull BigDecimal balance);
+
+    /**
+     * Writes events of the transactions with one statement, see write.
+     * @param transactions inserted transactions with ids and wallets
+     * @param balances wallet balance after every transaction, in the same order
+     */
+    public void writeAll(@NotNull List<Transaction> transactions, @NotNull List<BigDecimal> balances);
+
+    /**
+     * Locks up to limit oldest events not locked by other relays, publishes them to the sink and deletes them, in one database transaction.
+     * @return published events, empty if there is nothing to publish
+     * @throws IOException if sink failed, events stay in the outbox
+     */
+    public List<OutboxEvent> publishBatch(int limit, @NotNull OutboxSink sink) throws IOException;
+
+    /**
+     * @return number of events waiting to be published
+     */
+    public long countBacklog();
+}
@@ -0,0 +1,133 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.outbox.OutboxEvent;
+import com.company.wallet.outbox.OutboxSink;
+import com.company.wallet.repository.TransactionRepository;
+import com.google.gson.stream.JsonWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Wallet event outbox, stored in table wallet_event_outbox.
+ * Events are written if 'application.outbox.enabled' is set, so wallet transactions don't pay for an extra insert otherwise.
+ * @author Elena Medvedeva
+ */
+@Validated
+@PropertySource("classpath:application.properties")
+@Service
+class WalletEventOutboxImpl implements WalletEventOutbox {
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @Value("${application.outbox.enabled:false}")
+    private boolean enabled;
+
+    public void setTransactionRepository(TransactionRepository transactionRepository) {
+        this.transactionRepository = transactionRepository;
+    }
+
+    public void setReferenceData(ReferenceDataRegistry referenceData) {
+        this.referenceData = referenceData;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Override
+    public void write(@NotNull Transaction transaction, @NotNull BigDecimal balance) {
+        writeAll(Collections.singletonList(transaction), Collections.singletonList(balance));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Override
+    public void writeAll(@NotNull List<Transaction> transactions, @NotNull List<BigDecimal> balances) {
+        if (!enabled || transactions.isEmpty()) {
+            return;
+        }
+        List<OutboxEvent> events = new ArrayList<>(transactions.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            events.add(toEvent(transactions.get(i), balances.get(i)));
+        }
+        transactionRepository.insertOutboxEvents(events);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = IOException.class)
+    @Override
+    public List<OutboxEvent> publishBatch(int limit, @NotNull OutboxSink sink) throws IOException {
+        List<OutboxEvent> events = transactionRepository.lockOutboxEvents(limit);
+        if (events.isEmpty()) {
+            return events;
+        }
+        sink.publish(events);
+        transactionRepository.deleteOutboxEvents(events.stream().map(OutboxEvent::getId).collect(Collectors.toList()));
+        return events;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true)
+    @Override
+    public long countBacklog() {
+        return transactionRepository.countOutboxEvents();
+    }
+
+    private OutboxEvent toEvent(Transaction transaction, BigDecimal balance) {
+        Integer walletId = transaction.getWallet().getId();
+        Date createdAt = transaction.getLastUpdated() != null ? transaction.getLastUpdated() : new Date();
+        StringWriter payload = new StringWriter(256);
+        try (JsonWriter json = new JsonWriter(payload)) {
+            json.beginObject();
+            json.name("walletId").value(walletId);
+            json.name("transactionId").value(transaction.getId());
+            json.name("globalId").value(transaction.getGlobalId());
+            json.name("transactionTypeId").value(transaction.getType().getId());
+            json.name("amount").value(transaction.getAmount().abs().toPlainString());
+            json.name("currency").value(currencyName(transaction.getCurrency()));
+            json.name("balance").value(balance.toPlainString());
+            json.name("createdAt").value(createdAt.getTime());
+            json.endObject();
+        } catch (IOException e) {
+            //StringWriter doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return new OutboxEvent(null, walletId, transaction.getId(), payload.toString(), createdAt);
+    }
+
+    //transactions written from the in-memory ledger have currency references, name is taken from the registry
+    private String currencyName(Currency currency) {
+        Integer id = currency.getId();
+        return referenceData.getCurrencies().stream()
+                .filter(registered -> registered.getId().equals(id))
+                .map(Currency::getName)
+                .findFirst()
+                .orElseGet(currency::getName);
+    }
+}
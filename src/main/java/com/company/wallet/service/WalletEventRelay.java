@@ -0,0 +1,20 @@
+package com.company.wallet.service;
+
+/**
+ * Publishes events of WalletEventOutbox to the configured OutboxSink in the background.
+ * @author Elena Medvedeva
+ */
+public interface WalletEventRelay {
+
+    /**
+     * Publishes batches of events until the outbox has no more events which are not locked by other relays.
+     * Stops at the first failed batch, it is published again by the next call.
+     * @return number of published events
+     */
+    public int relay();
+
+    /**
+     * @return number of events waiting to be published, as of the last backlog check
+     */
+    public long getBacklog();
+}
@@ -0,0 +1,201 @@
+package com.company.wallet.service;
+
+import com.company.wallet.outbox.OutboxEvent;
+import com.company.wallet.outbox.OutboxSink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relay of the wallet event outbox: every 'application.outbox.relay-interval-ms' publishes events
+ * by batches of 'application.outbox.batch-size', in one database transaction per batch (see WalletEventOutbox.publishBatch).
+ * Runs only if 'application.outbox.enabled' is set. Several application instances relay in parallel without waiting for each other,
+ * events of different batches may then be published out of order.
+ * <p>
+ * Metrics: 'wallet.outbox.published' - number of published events, 'wallet.outbox.publish.failures' - number of failed batches,
+ * 'wallet.outbox.publish.lag' - time from writing an event to publishing it, 'wallet.outbox.batch.size' - events per published batch,
+ * 'wallet.outbox.backlog' - events waiting to be published, counted every 'application.outbox.backlog-check-interval-ms'.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@PropertySource("classpath:application.properties")
+@Service
+class WalletEventRelayImpl implements WalletEventRelay {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private WalletEventOutbox outbox;
+
+    @Autowired(required = false)
+    private OutboxSink sink;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${application.outbox.relay-interval-ms:100}")
+    private long relayIntervalMs;
+
+    @Value("${application.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${application.outbox.backlog-check-interval-ms:5000}")
+    private long backlogCheckIntervalMs;
+
+    private final AtomicLong backlog = new AtomicLong();
+
+    private volatile long lastBacklogCheck;
+
+    private Counter published;
+
+    private Counter failures;
+
+    private Timer lag;
+
+    private DistributionSummary batchSizes;
+
+    private ScheduledExecutorService relayer;
+
+    public void setOutbox(WalletEventOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    public void setSink(OutboxSink sink) {
+        this.sink = sink;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public long getRelayIntervalMs() {
+        return relayIntervalMs;
+    }
+
+    public void setRelayIntervalMs(long relayIntervalMs) {
+        this.relayIntervalMs = relayIntervalMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBacklogCheckIntervalMs() {
+        return backlogCheckIntervalMs;
+    }
+
+    public void setBacklogCheckIntervalMs(long backlogCheckIntervalMs) {
+        this.backlogCheckIntervalMs = backlogCheckIntervalMs;
+    }
+
+    @PostConstruct
+    public void init() {
+        published = Counter.builder("wallet.outbox.published")
+                .description("Wallet events published from the outbox")
+                .register(meterRegistry);
+        failures = Counter.builder("wallet.outbox.publish.failures")
+                .description("Batches of wallet events which couldn't be published")
+                .register(meterRegistry);
+        lag = Timer.builder("wallet.outbox.publish.lag")
+                .description("Time from writing a wallet event to the outbox to publishing it")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("wallet.outbox.batch.size")
+                .description("Number of wallet events published in one batch")
+                .register(meterRegistry);
+        Gauge.builder("wallet.outbox.backlog", backlog, AtomicLong::get)
+                .description("Wallet events waiting to be published")
+                .register(meterRegistry);
+
+        if (outbox.isEnabled() && relayIntervalMs > 0) {
+            if (sink == null) {
+                throw new IllegalStateException("Wallet event outbox is enabled, but there is no OutboxSink, check application.outbox.sink");
+            }
+            relayer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wallet-event-relay");
+                thread.setDaemon(true);
+                return thread;
+            });
+            relayer.scheduleWithFixedDelay(this::relayQuietly, relayIntervalMs, relayIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (relayer != null) {
+            relayer.shutdownNow();
+            relayQuietly();
+        }
+    }
+
+    @Override
+    public int relay() {
+        int count = 0;
+        while (true) {
+            List<OutboxEvent> events;
+            try {
+                events = outbox.publishBatch(batchSize, sink);
+            } catch (IOException e) {
+                failures.increment();
+                logger.warn("Couldn't publish wallet events: {}", e.getMessage());
+                break;
+            }
+            if (events.isEmpty()) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            events.forEach(event -> lag.record(Math.max(0, now - event.getCreatedAt().getTime()), TimeUnit.MILLISECONDS));
+            published.increment(events.size());
+            batchSizes.record(events.size());
+            count += events.size();
+            if (events.size() < batchSize) {
+                break;
+            }
+        }
+        checkBacklog();
+        return count;
+    }
+
+    @Override
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    //counting is a scan of the outbox, so it is done less often than relaying
+    private void checkBacklog() {
+        long now = System.currentTimeMillis();
+        if (now - lastBacklogCheck >= backlogCheckIntervalMs) {
+            lastBacklogCheck = now;
+            backlog.set(outbox.countBacklog());
+        }
+    }
+
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            failures.increment();
+            logger.error("Couldn't relay wallet events", e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.WalletException;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Executes tasks on a fixed set of single threaded lanes.
+ * <p>
+ * Wallet id is hashed onto a lane, so all tasks for one wallet run in order on one lane,
+ * while tasks for wallets on different lanes run in parallel.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public interface WalletLaneExecutor {
+
+    public <T> T execute(@NotNull Integer walletId, @NotNull WalletTask<T> task) throws WalletException;
+
+    public int laneFor(@NotNull Integer walletId);
+}
@@ -0,0 +1,136 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wallet lanes based on single threaded executors with bounded queues.
+ * <p>
+ * Lane threads are started on first use, so no threads are created if lanes are not used.
+ * If the lane queue is full, WalletException with HttpStatus.SERVICE_UNAVAILABLE is thrown.
+ * </p>
+ * @author Elena Medvedeva
+ */
+@Validated
+@Component
+class WalletLaneExecutorImpl implements WalletLaneExecutor {
+
+    Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    //lane index of the current thread, null if current thread is not a lane thread
+    private static final ThreadLocal<Integer> CURRENT_LANE = new ThreadLocal<>();
+
+    @Value("${application.transaction.lanes.count:16}")
+    private int laneCount;
+
+    @Value("${application.transaction.lanes.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor[] lanes;
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public void setLaneCount(int laneCount) {
+        this.laneCount = laneCount;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    @PostConstruct
+    public void init() {
+        lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            final int lane = i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                    runnable -> {
+                        Thread thread = new Thread(() -> {
+                            CURRENT_LANE.set(lane);
+                            runnable.run();
+                        }, "wallet-lane-" + lane);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        logger.debug("Initialized {} wallet lanes", lanes.length);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public int laneFor(@NotNull Integer walletId) {
+        return Math.floorMod(walletId.hashCode(), lanes.length);
+    }
+
+    /**
+     * Runs task on the lane of the wallet and waits for the result.
+     * If called from the same lane, task is executed in the current thread.
+     * @param walletId wallet id
+     * @param task task to execute
+     * @return task result
+     * @throws WalletException thrown by task, or if lane queue is full or current thread was interrupted
+     */
+    @Override
+    public <T> T execute(@NotNull Integer walletId, @NotNull WalletTask<T> task) throws WalletException {
+        int lane = laneFor(walletId);
+        if (Integer.valueOf(lane).equals(CURRENT_LANE.get())) {
+            return task.call();
+        }
+
+        Future<T> future;
+        try {
+            future = lanes[lane].submit(task::call);
+        } catch (RejectedExecutionException e) {
+            throw new WalletException(String.format(ErrorMessage.LANE_QUEUE_FULL, walletId), HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WalletException(String.format(ErrorMessage.LANE_INTERRUPTED, walletId), HttpStatus.SERVICE_UNAVAILABLE.value());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof WalletException) {
+                throw (WalletException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new WalletException((Exception) cause);
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.company.wallet.service;
 
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.WalletException;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Service for managing wallets
@@ -13,9 +16,16 @@ import java.util.List;
  */
 public interface WalletService {
     public List<Wallet> findAll() throws WalletException;
+    public void forEachWallet(@NotNull Consumer<Wallet> consumer) throws WalletException;
     public Wallet findById(@NotNull Integer id) throws WalletException;
+    public Wallet findByIdCached(@NotNull Integer id) throws WalletException;
+    public List<Wallet> findByUserIdCached(@NotBlank String userId) throws WalletException;
+    public List<Transaction> findRecentTransactions(@NotNull Integer walletId, @NotNull Integer count) throws WalletException;
+    public Wallet findByIdForUpdate(@NotNull Integer id) throws WalletException;
     public List<Wallet> findByUserId(@NotBlank String userId) throws WalletException;
     public Wallet createWallet(@NotBlank String userId, @NotBlank String currencyName) throws WalletException;
     public Wallet updateWalletAmount(@NotNull Wallet wallet,@NotBlank String amount,@NotNull Boolean isCredit) throws WalletException;
+    public Wallet updateWalletAmount(@NotNull Wallet wallet,@NotNull Money amount,@NotNull Boolean isCredit) throws WalletException;
+    public Wallet setBalanceSlots(@NotNull Integer id, @NotNull Integer slots) throws WalletException;
 
 }
\ No newline at end of file
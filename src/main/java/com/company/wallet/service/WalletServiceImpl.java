@@ -1,6 +1,8 @@
 package com.company.wallet.service;
 
 import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.ErrorMessage;
 import com.company.wallet.exceptions.WalletException;
@@ -12,6 +14,7 @@ import org.hibernate.ObjectNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
@@ -22,9 +25,11 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 /**
  * Service for managing wallets
  * @author Elena Medvedeva
@@ -43,12 +48,27 @@ class WalletServiceImpl implements WalletService{
     @Autowired
     private CurrencyRepository currencyRepository;
 
+    @Autowired
+    private WalletCache walletCache;
+
+    @Autowired
+    private BalanceMaterializer balanceMaterializer;
+
+    @Autowired
+    private WalletBalanceSlots walletBalanceSlots;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
     @Autowired
     private Helper inputParametersValidator;
 
     @Value("${db.updated_by}")
     private String updatedBy;
 
+    @Value("${application.wallet.recent-transactions.max:100}")
+    private int maxRecentTransactions;
+
     public String getUpdatedBy() {
         return updatedBy;
     }
@@ -57,10 +77,35 @@ class WalletServiceImpl implements WalletService{
         this.updatedBy = updatedBy;
     }
 
-    @Transactional(rollbackFor = WalletException.class)
+    public int getMaxRecentTransactions() {
+        return maxRecentTransactions;
+    }
+
+    public void setMaxRecentTransactions(int maxRecentTransactions) {
+        this.maxRecentTransactions = maxRecentTransactions;
+    }
+
+    /**
+     * Returns all wallets ordered by id, read by projection query in a read only database transaction.
+     * Wallets include pending transactions of WriteMode.APPEND_ONLY (see BalanceMaterializer) and balance slots (see WalletBalanceSlots),
+     * as all wallets returned by this service except wallets as stored in the wallet row (findById, findByIdForUpdate).
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
     @Override
     public List<Wallet> findAll() throws WalletException {
-        return walletRepository.findAllByOrderByIdAsc();
+        return walletBalanceSlots.withSlotBalance(balanceMaterializer.withPendingBalance(walletRepository.findAllByOrderByIdAsc()));
+    }
+
+    /**
+     * Passes all wallets ordered by id to consumer, without loading them into memory at once.
+     * Runs in a read only database transaction, which is open until the last wallet is consumed.
+     * @param consumer called for every wallet
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
+    public void forEachWallet(@NotNull Consumer<Wallet> consumer) throws WalletException {
+        //pending balance replaces the checkpoint balance, so slots are added after it
+        walletRepository.forEachOrderById(balanceMaterializer.withPendingBalance(walletBalanceSlots.withSlotBalance(consumer)));
     }
 
     @Transactional(rollbackFor = WalletException.class)
@@ -72,14 +117,90 @@ class WalletServiceImpl implements WalletService{
        return optionalWallet.get();
     }
 
+    /**
+     * Finds wallet snapshot (wallet without transactions) in WalletCache, reads wallet from the database on cache miss.
+     * Snapshot must not be changed, use findById to get wallet for update.
+     * @param id wallet id
+     * @return wallet snapshot
+     * @throws WalletException if wallet doesn't exist
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
+    public Wallet findByIdCached(@NotNull Integer id) throws WalletException {
+        Wallet wallet = walletCache.get(id);
+        if (wallet == null) {
+            Optional<Wallet> optionalWallet = walletRepository.findById(id);
+            inputParametersValidator.conditionIsTrue(optionalWallet.isPresent(),String.format(ErrorMessage.NO_WALLET_FOUND,id.toString()),HttpStatus.BAD_REQUEST.value());
+            walletCache.put(walletBalanceSlots.withSlotBalance(balanceMaterializer.withPendingBalance(optionalWallet.get())));
+            wallet = walletCache.get(id);
+        }
+        return wallet;
+    }
+
+    /**
+     * Finds wallet snapshots of the user, see findByIdCached.
+     * Wallet ids of the user are cached, wallets are taken from the cache one by one.
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
+    public List<Wallet> findByUserIdCached(@NotBlank String userId) throws WalletException {
+        List<Integer> walletIds = walletCache.getWalletIds(userId);
+        if (walletIds == null) {
+            List<Wallet> wallets = walletBalanceSlots.withSlotBalance(balanceMaterializer.withPendingBalance(walletRepository.findByUserId(userId)));
+            walletIds = new ArrayList<>(wallets.size());
+            for (Wallet wallet : wallets) {
+                walletCache.put(wallet);
+                walletIds.add(wallet.getId());
+            }
+            walletCache.putWalletIds(userId, walletIds);
+        }
+        List<Wallet> result = new ArrayList<>(walletIds.size());
+        for (Integer walletId : walletIds) {
+            result.add(findByIdCached(walletId));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the most recent transactions of the wallet, newest first.
+     * Transactions are selected by one bounded query, wallet transactions collection is not loaded.
+     * @param walletId wallet id
+     * @param count max number of transactions, between 1 and application.wallet.recent-transactions.max
+     * @return up to count transactions
+     * @throws WalletException if count is out of range
+     */
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
+    public List<Transaction> findRecentTransactions(@NotNull Integer walletId, @NotNull Integer count) throws WalletException {
+        String error = String.format(ErrorMessage.RECENT_TRANSACTIONS_OUT_OF_RANGE, maxRecentTransactions);
+        inputParametersValidator.conditionIsTrue(count > 0 && count <= maxRecentTransactions, error, HttpStatus.BAD_REQUEST.value());
+        return transactionRepository.findRecentByWalletId(walletId, PageRequest.of(0, count));
+    }
+
+    /**
+     * Finds wallet and locks wallet row until the end of the current database transaction.
+     * Should be called inside of the database transaction.
+     * @param id wallet id
+     * @return locked wallet
+     * @throws WalletException if wallet doesn't exist
+     */
     @Transactional(rollbackFor = WalletException.class)
     @Override
+    public Wallet findByIdForUpdate(@NotNull Integer id) throws WalletException {
+        Optional<Wallet> optionalWallet =  walletRepository.findByIdForUpdate(id);
+        inputParametersValidator.conditionIsTrue(optionalWallet.isPresent(),String.format(ErrorMessage.NO_WALLET_FOUND,id.toString()),HttpStatus.BAD_REQUEST.value());
+        return optionalWallet.get();
+    }
+
+    @Transactional(readOnly = true, rollbackFor = WalletException.class)
+    @Override
     public List<Wallet> findByUserId(@NotBlank String userId) throws WalletException {
-        return walletRepository.findByUserId(userId);
+        return walletBalanceSlots.withSlotBalance(balanceMaterializer.withPendingBalance(walletRepository.findByUserId(userId)));
     }
 
     /**
      * Creates wallet based on currency.
+     * Currency is taken from ReferenceDataRegistry, wallet is saved with currency reference, so currency is not selected.
      * @param userId valid currency id
      * @param currencyName valid currency name
      * @return created wallet
@@ -89,10 +210,16 @@ class WalletServiceImpl implements WalletService{
     @Override
     public Wallet createWallet(@NotBlank String userId,@NotBlank String currencyName) throws WalletException{
         try {
-            Currency currency = currencyRepository.findByName(currencyName);
+            Currency currency = referenceData.findCurrency(currencyName);
             String error = String.format(ErrorMessage.NO_CURRENCY_PRESENT,currencyName);
             inputParametersValidator.conditionIsTrue(currency != null,error,HttpStatus.BAD_REQUEST.value());
-            return walletRepository.save(new Wallet(userId, currency, new BigDecimal(0), updatedBy));
+            Wallet wallet = walletRepository.save(new Wallet(userId, currencyRepository.getOne(currency.getId()), new BigDecimal(0), updatedBy));
+            if (wallet != null) {
+                wallet.setCurrency(currency);
+                walletCache.putAfterCommit(wallet);
+                walletCache.evictWalletIdsAfterCommit(userId);
+            }
+            return wallet;
         } catch (ObjectNotFoundException e){
             throw new WalletException(String.format(ErrorMessage.NO_CURRENCY_PRESENT,currencyName),HttpStatus.BAD_REQUEST.value());
         }
@@ -107,7 +234,7 @@ class WalletServiceImpl implements WalletService{
      * Set isolation = Isolation.SERIALIZABLE in order to avoid concurrency issues (in case of deploying application to multiple hosts)
      * This will slow down performance.
      * @param wallet
-     * @param amount
+     * @param amount amount, parsed with the scale of the wallet currency (see ReferenceDataRegistry.parseAmount)
      * @param isCredit
      * @return updated wallet
      * @throws WalletException if couldn't update wallet balance, e.g. not enough funds.
@@ -115,23 +242,56 @@ class WalletServiceImpl implements WalletService{
     @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE, rollbackFor = WalletException.class)
     @Override
     public Wallet updateWalletAmount(@NotNull Wallet wallet,@NotBlank String amount,@NotNull  Boolean isCredit) throws WalletException{
+        return updateBalance(wallet, referenceData.parseAmount(wallet.getCurrency().getName(), amount), isCredit, amount);
+    }
+
+    /**
+     * Updates wallet balance with amount which is already parsed, see updateWalletAmount(Wallet, String, Boolean).
+     * Funds check and new balance are calculated in minor units of the wallet currency.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.SERIALIZABLE, rollbackFor = WalletException.class)
+    @Override
+    public Wallet updateWalletAmount(@NotNull Wallet wallet,@NotNull Money amount,@NotNull  Boolean isCredit) throws WalletException{
+        return updateBalance(wallet, amount, isCredit, amount.toString());
+    }
+
+    //requestedAmount is the amount as requested, for error messages
+    private Wallet updateBalance(Wallet wallet, Money amount, boolean isCredit, String requestedAmount) throws WalletException {
+        Money transactionAmount = isCredit ? amount.abs() : amount.abs().negate();
+        Money balance;
         try {
-            BigDecimal transactionAmount = (isCredit) ? new BigDecimal(amount).abs() : new BigDecimal(amount).abs().negate();
+            balance = Money.ofStored(wallet.getBalance(), amount.getScale()).add(transactionAmount);
+        } catch (ArithmeticException e) {
+            String error = String.format(ErrorMessage.AMOUNT_NOT_REPRESENTABLE, requestedAmount, amount.getScale(), wallet.getCurrency().getName());
+            throw new WalletException(error, HttpStatus.BAD_REQUEST.value());
+        }
 
-            //check that there is enough funds on wallet balance for debit transaction
-            Boolean condition = (isCredit || (wallet.getBalance().compareTo(transactionAmount.abs()) >= 0) );
-            inputParametersValidator.conditionIsTrue(condition, String.format(ErrorMessage.NOT_ENOUGH_FUNDS,wallet.getId(),amount),HttpStatus.BAD_REQUEST.value());
+        //check that there is enough funds on wallet balance for debit transaction
+        inputParametersValidator.conditionIsTrue(isCredit || balance.signum() >= 0, String.format(ErrorMessage.NOT_ENOUGH_FUNDS,wallet.getId(),requestedAmount),HttpStatus.BAD_REQUEST.value());
 
-            //update wallet
-            wallet.setBalance(wallet.getBalance().add(transactionAmount));
-            wallet.setLastUpdatedBy(updatedBy);
-            wallet.setLastUpdated(new Date());
+        //update wallet
+        wallet.setBalance(balance.toBigDecimal());
+        wallet.setLastUpdatedBy(updatedBy);
+        wallet.setLastUpdated(new Date());
 
-            return walletRepository.save(wallet);
+        Wallet saved = walletRepository.save(wallet);
+        walletCache.putAfterCommit(saved);
+        return saved;
+    }
 
-        }catch (NumberFormatException e){
-            String error = String.format(ErrorMessage.NUMBER_FORMAT_MISMATCH,amount);
-            throw new WalletException(error, HttpStatus.BAD_REQUEST.value());
-        }
+    /**
+     * Changes number of balance slots of the wallet (see WalletBalanceSlots), 0 keeps the whole balance in the wallet row again.
+     * Balance of the wallet doesn't change, version is incremented.
+     * @param id wallet id
+     * @param slots number of slots, between 0 and application.wallet.balance-slots.max
+     * @return wallet with the new number of slots
+     * @throws WalletException if wallet doesn't exist, slots is out of range or the write mode doesn't support slots
+     */
+    @Transactional(propagation = Propagation.REQUIRED, isolation = Isolation.READ_COMMITTED, rollbackFor = WalletException.class)
+    @Override
+    public Wallet setBalanceSlots(@NotNull Integer id, @NotNull Integer slots) throws WalletException {
+        Wallet wallet = walletBalanceSlots.setSlots(findById(id), slots);
+        walletCache.evictAfterCommit(id);
+        return wallet;
     }
 }
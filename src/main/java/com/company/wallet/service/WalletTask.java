@@ -0,0 +1,14 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.WalletException;
+
+/**
+ * Unit of work which can be executed by WalletLaneExecutor or RetryExecutor
+ * @param <T> result
+ *
+ * @author Elena Medvedeva
+ */
+@FunctionalInterface
+public interface WalletTask<T> {
+    T call() throws WalletException;
+}
@@ -0,0 +1,50 @@
+package com.company.wallet.service;
+
+/**
+ * Strategy used by TransactionService to apply transactions to wallet balances.
+ * <p>
+ * Configured with property 'application.transaction.write-mode'.
+ * </p>
+ * @author Elena Medvedeva
+ */
+public enum WriteMode {
+    /**
+     * Each transaction runs in its own database transaction with isolation = Isolation.SERIALIZABLE.
+     */
+    SERIALIZABLE,
+
+    /**
+     * Transactions for one wallet are executed one by one on the wallet lane (see WalletLaneExecutor),
+     * unrelated wallets are processed in parallel.
+     * Database transaction runs with isolation = Isolation.READ_COMMITTED and locks wallet row.
+     */
+    LANES,
+
+    /**
+     * Funds check, wallet balance update and transaction insert are done by one conditional SQL statement
+     * with isolation = Isolation.READ_COMMITTED (see TransactionRepositoryCustom.saveWithBalanceUpdate).
+     * Wallet is not loaded and saved by Hibernate.
+     */
+    ATOMIC_SQL,
+
+    /**
+     * Concurrent transactions are collected into micro batches (see TransactionBatcher),
+     * each batch is written in one database transaction with isolation = Isolation.READ_COMMITTED and locked wallet rows.
+     */
+    GROUP_COMMIT,
+
+    /**
+     * Wallet balances are kept in memory, transactions are validated and applied in memory and journaled to a local file,
+     * database is updated in the background (see InMemoryLedger).
+     * Application instance must be the only writer of the wallets.
+     */
+    IN_MEMORY_LEDGER,
+
+    /**
+     * Transactions are only inserted, wallet row is not updated by them: wallet balance is a checkpoint,
+     * transactions after it are added on read and moved into the checkpoint in the background (see BalanceMaterializer).
+     * Funds check and insert run with isolation = Isolation.READ_COMMITTED under advisory lock of the wallet balance.
+     * All application instances must use this mode, balance checkpoints are removed at start in other modes.
+     */
+    APPEND_ONLY
+}
@@ -0,0 +1,90 @@
+package com.company.wallet.view.model;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import static com.company.wallet.exceptions.ErrorMessage.PART_NO_MANDATORY_FIELD;
+
+public class TransferModel {
+
+    @NotBlank(message = "Field globalId" + PART_NO_MANDATORY_FIELD)
+    @NotNull(message = "Field globalId" + PART_NO_MANDATORY_FIELD)
+    private String globalId;
+
+    @NotBlank(message = "Field currency" + PART_NO_MANDATORY_FIELD)
+    @NotNull(message = "Field currency" + PART_NO_MANDATORY_FIELD)
+    private String currency;
+
+    @NotBlank(message = "Field fromWalletId" + PART_NO_MANDATORY_FIELD)
+    @NotNull(message = "Field fromWalletId" + PART_NO_MANDATORY_FIELD)
+    private String fromWalletId;
+
+    @NotBlank(message = "Field toWalletId" + PART_NO_MANDATORY_FIELD)
+    @NotNull(message = "Field toWalletId" + PART_NO_MANDATORY_FIELD)
+    private String toWalletId;
+
+    @NotBlank(message = "Field amount" + PART_NO_MANDATORY_FIELD)
+    @NotNull(message = "Field amount" + PART_NO_MANDATORY_FIELD)
+    private String amount;
+
+    private String description;
+
+    public TransferModel(){}
+
+    public TransferModel(String globalId, String currency, String fromWalletId, String toWalletId, String amount, String description) {
+        this.globalId = globalId;
+        this.currency = currency;
+        this.fromWalletId = fromWalletId;
+        this.toWalletId = toWalletId;
+        this.amount = amount;
+        this.description = description;
+    }
+
+    public String getGlobalId() {
+        return globalId;
+    }
+
+    public void setGlobalId(String globalId) {
+        this.globalId = globalId;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public String getFromWalletId() {
+        return fromWalletId;
+    }
+
+    public void setFromWalletId(String fromWalletId) {
+        this.fromWalletId = fromWalletId;
+    }
+
+    public String getToWalletId() {
+        return toWalletId;
+    }
+
+    public void setToWalletId(String toWalletId) {
+        this.toWalletId = toWalletId;
+    }
+
+    public String getAmount() {
+        return amount;
+    }
+
+    public void setAmount(String amount) {
+        this.amount = amount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+}
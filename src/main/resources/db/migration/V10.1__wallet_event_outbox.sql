@@ -0,0 +1,11 @@
+--Transactional outbox of wallet balance changes: a row is inserted in the database transaction of every wallet transaction,
+--rows are published and deleted by WalletEventRelay (SELECT ... FOR UPDATE SKIP LOCKED, so several relays don't block each other).
+--No foreign key to the wallet, the insert doesn't lock the wallet row.
+CREATE TABLE IF NOT EXISTS wallet_event_outbox
+(
+id BIGSERIAL PRIMARY KEY,
+wallet_id integer NOT NULL,
+transaction_id integer,
+payload text NOT NULL,
+created_at TIMESTAMP NOT NULL
+);
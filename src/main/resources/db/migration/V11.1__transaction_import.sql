@@ -0,0 +1,18 @@
+--Bulk imports of historical transactions (see TransactionImportService). Rows of an import are copied into
+--its staging table transaction_import_rows_<id>, created with the import; stage and last_moved_row let a failed import resume.
+CREATE TABLE IF NOT EXISTS transaction_import
+(
+id SERIAL PRIMARY KEY,
+name VARCHAR,
+status VARCHAR NOT NULL,
+stage VARCHAR NOT NULL,
+rows_loaded BIGINT DEFAULT 0 NOT NULL,
+rows_rejected BIGINT DEFAULT 0 NOT NULL,
+rows_imported BIGINT DEFAULT 0 NOT NULL,
+last_row BIGINT DEFAULT 0 NOT NULL,
+last_moved_row BIGINT DEFAULT 0 NOT NULL,
+error TEXT,
+created TIMESTAMP DEFAULT now() NOT NULL,
+last_updated TIMESTAMP DEFAULT now(),
+last_updated_by VARCHAR
+);
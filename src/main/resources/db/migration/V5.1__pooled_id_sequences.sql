@@ -0,0 +1,9 @@
+--Transaction and wallet ids are reserved in blocks of 50 (see Transaction.ID_ALLOCATION_SIZE and Wallet.ID_ALLOCATION_SIZE):
+--every sequence value is the upper bound of a block, so one sequence call is needed per 50 inserted rows
+ALTER SEQUENCE transaction_id_seq INCREMENT BY 50;
+ALTER SEQUENCE wallet_id_seq INCREMENT BY 50;
+--Hibernate pooled optimizer takes the first value of a sequence which was never called (1) as the start of a block
+--and calls the sequence again for its upper bound, so a block reserved in between would be handed out twice.
+--Marking the sequences as called makes their next value 51, the upper bound of a block as for all later values
+SELECT setval('transaction_id_seq', (SELECT last_value FROM transaction_id_seq));
+SELECT setval('wallet_id_seq', (SELECT last_value FROM wallet_id_seq));
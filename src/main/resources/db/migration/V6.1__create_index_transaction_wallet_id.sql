@@ -0,0 +1,2 @@
+--Keyset pagination of wallet transactions: WHERE wallet_id = ? AND id > ? ORDER BY id
+CREATE INDEX ON transaction (wallet_id, id);
@@ -0,0 +1,83 @@
+--Transaction table partitioned by range of creation time (PostgreSQL 11 or later).
+--Transactions are never updated, so last_updated is the time of creation and is used as partition key.
+--Monthly partitions transaction_pYYYY_MM are created ahead by TransactionPartitionManager.
+
+--id sequence is kept with its increment (see V5.1), it must not be dropped with the old table
+ALTER SEQUENCE transaction_id_seq OWNED BY NONE;
+ALTER TABLE transaction RENAME TO transaction_unpartitioned;
+--constraint names are kept for the new table, errors are mapped to messages by them (see ErrorMessage.ERRORS)
+ALTER TABLE transaction_unpartitioned RENAME CONSTRAINT transaction_pkey TO transaction_unpartitioned_pkey;
+ALTER TABLE transaction_unpartitioned RENAME CONSTRAINT transaction_global_id_key TO transaction_unpartitioned_global_id_key;
+ALTER TABLE transaction_unpartitioned RENAME CONSTRAINT transaction_type_id_fkey TO transaction_unpartitioned_type_id_fkey;
+ALTER TABLE transaction_unpartitioned RENAME CONSTRAINT transaction_wallet_id_fkey TO transaction_unpartitioned_wallet_id_fkey;
+ALTER TABLE transaction_unpartitioned RENAME CONSTRAINT transaction_currency_id_fkey TO transaction_unpartitioned_currency_id_fkey;
+
+--Unique constraint of a partitioned table must include partition key,
+--so global uniqueness of global_id is kept by the lookup table, filled by trigger on insert of a transaction
+CREATE TABLE IF NOT EXISTS transaction_global_id
+(
+global_id VARCHAR CONSTRAINT transaction_global_id_key PRIMARY KEY,
+transaction_id integer NOT NULL,
+last_updated TIMESTAMP NOT NULL
+);
+
+--PL/pgSQL resolves transaction_global_id when the trigger fires. The application doesn't have the schema on its search_path
+--(it uses hibernate.default_schema), so the search_path of this migration (the schema of the tables, set by Flyway) is kept with the function
+CREATE OR REPLACE FUNCTION transaction_global_id_insert() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO transaction_global_id (global_id, transaction_id, last_updated)
+    VALUES (NEW.global_id, NEW.id, NEW.last_updated)
+    ON CONFLICT (global_id) DO NOTHING;
+    --row may be inserted before the transaction by the same statement (see TransactionRepositoryImpl.insertIfAbsent)
+    IF NOT FOUND AND NOT EXISTS (SELECT 1 FROM transaction_global_id WHERE global_id = NEW.global_id AND transaction_id = NEW.id) THEN
+        RAISE unique_violation USING MESSAGE = 'duplicate key value violates unique constraint "transaction_global_id_key"',
+            DETAIL = format('Key (global_id)=(%s) already exists.', NEW.global_id);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql SET search_path FROM CURRENT;
+
+CREATE TABLE transaction
+(
+id integer NOT NULL DEFAULT nextval('transaction_id_seq'),
+global_id VARCHAR NOT NULL,
+type_id VARCHAR NOT NULL CONSTRAINT transaction_type_id_fkey REFERENCES transaction_type (id),
+amount NUMERIC(15,2) NOT NULL,
+wallet_id integer CONSTRAINT transaction_wallet_id_fkey REFERENCES wallet(id),
+currency_id	integer CONSTRAINT transaction_currency_id_fkey REFERENCES currency (id) NOT NULL,
+description TEXT,
+last_updated TIMESTAMP NOT NULL DEFAULT now(),
+last_updated_by VARCHAR DEFAULT 'admin',
+CONSTRAINT transaction_pkey PRIMARY KEY (id, last_updated)
+) PARTITION BY RANGE (last_updated);
+
+ALTER SEQUENCE transaction_id_seq OWNED BY transaction.id;
+
+--Wallet history (keyset pagination by last_updated, id) and lookup by global_id, created on every partition
+CREATE INDEX ON transaction (wallet_id, last_updated, id);
+CREATE INDEX ON transaction (global_id);
+
+CREATE TRIGGER transaction_global_id_insert AFTER INSERT ON transaction
+    FOR EACH ROW EXECUTE PROCEDURE transaction_global_id_insert();
+
+--Partitions for existing transactions and for the next 3 months
+DO $$
+DECLARE
+    partition_month DATE;
+BEGIN
+    FOR partition_month IN
+        SELECT CAST(generate_series(date_trunc('month', COALESCE(min(last_updated), localtimestamp)),
+                                    date_trunc('month', localtimestamp) + interval '3 months', interval '1 month') AS date)
+        FROM transaction_unpartitioned
+    LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF transaction FOR VALUES FROM (%L) TO (%L)',
+            'transaction_p' || to_char(partition_month, 'YYYY_MM'), partition_month, CAST(partition_month + interval '1 month' AS date));
+    END LOOP;
+END;
+$$;
+
+INSERT INTO transaction (id, global_id, type_id, amount, wallet_id, currency_id, description, last_updated, last_updated_by)
+SELECT id, global_id, type_id, amount, wallet_id, currency_id, description, COALESCE(last_updated, now()), last_updated_by
+FROM transaction_unpartitioned;
+
+DROP TABLE transaction_unpartitioned;
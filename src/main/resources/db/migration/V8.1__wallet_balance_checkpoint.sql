@@ -0,0 +1,7 @@
+--Balance checkpoint of WriteMode.APPEND_ONLY: wallet.balance includes transactions of the wallet up to last_transaction_id,
+--later transactions are pending and added to the balance on read (see BalanceMaterializer).
+--NULL if wallet balance is updated by every transaction (other write modes).
+ALTER TABLE wallet ADD COLUMN last_transaction_id integer;
+
+--Pending transactions of a wallet: WHERE wallet_id = ? AND id > ?
+CREATE INDEX transaction_wallet_id_id_idx ON transaction (wallet_id, id);
@@ -0,0 +1,14 @@
+--Balance slots of hot wallets: balance of the wallet is wallet.balance plus balances of its slots, version is wallet.version
+--plus versions of its slots (see WalletBalanceSlots). Credits update one random slot row instead of the wallet row.
+--NULL if wallet has no slots.
+ALTER TABLE wallet ADD COLUMN balance_slots integer;
+
+CREATE TABLE IF NOT EXISTS wallet_balance_slot
+(
+wallet_id integer REFERENCES wallet (id) NOT NULL,
+slot integer NOT NULL,
+balance NUMERIC(15,2) DEFAULT 0 NOT NULL CHECK (balance >= 0),
+version BIGINT DEFAULT 0 NOT NULL,
+last_updated TIMESTAMP DEFAULT now(),
+PRIMARY KEY (wallet_id, slot)
+);
@@ -0,0 +1,113 @@
+package com.company.wallet.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * TransactionSegmentWriter and TransactionSegment tests
+ *
+ * @author Elena Medvedeva
+ */
+public class TransactionSegmentTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Timestamp created = Timestamp.valueOf("2025-10-31 23:59:59.123456789");
+        try (TransactionSegmentWriter writer = writer(10)) {
+            writer.append(new ArchivedTransaction(7, 1, "g1", "C", new BigDecimal("100.25"), 3, "EUR", "add money", created, "admin"));
+            writer.append(new ArchivedTransaction(7, 2, "g2", "D", new BigDecimal("-0.5"), 3, "EUR", null, created, null));
+            assertEquals(2, writer.getTransactions());
+        }
+        try (TransactionSegment segment = segment()) {
+            List<ArchivedTransaction> found = segment.find(7);
+            assertEquals(2, found.size());
+            ArchivedTransaction first = found.get(0);
+            assertEquals(7, first.getWalletId());
+            assertEquals(1, first.getId());
+            assertEquals("g1", first.getGlobalId());
+            assertEquals("C", first.getTypeId());
+            assertEquals(new BigDecimal("100.25"), first.getAmount());
+            assertEquals(3, first.getCurrencyId());
+            assertEquals("EUR", first.getCurrencyName());
+            assertEquals("add money", first.getDescription());
+            assertEquals(created, first.getLastUpdated());
+            assertEquals("admin", first.getLastUpdatedBy());
+            assertNull(found.get(1).getDescription());
+            assertNull(found.get(1).getLastUpdatedBy());
+            assertEquals(new BigDecimal("-0.5"), found.get(1).getAmount());
+        }
+    }
+
+    @Test
+    public void testManyWalletsAndBlocks() throws IOException {
+        Timestamp created = Timestamp.valueOf("2025-10-01 00:00:00");
+        try (TransactionSegmentWriter writer = writer(3)) {
+            int id = 1;
+            for (int walletId = 1; walletId <= 50; walletId += 7) {
+                for (int i = 0; i < walletId; i++) {
+                    writer.append(new ArchivedTransaction(walletId, id++, "g" + id, "C", BigDecimal.ONE, 1, "EUR", "d", created, "admin"));
+                }
+            }
+        }
+        try (TransactionSegment segment = segment()) {
+            assertTrue(segment.getBlocks() > 8);
+            for (int walletId = 1; walletId <= 50; walletId += 7) {
+                List<ArchivedTransaction> found = segment.find(walletId);
+                assertEquals(walletId, found.size());
+                for (int i = 1; i < found.size(); i++) {
+                    assertEquals(walletId, found.get(i).getWalletId());
+                    assertTrue(found.get(i).getId() > found.get(i - 1).getId());
+                }
+            }
+            assertTrue(segment.find(2).isEmpty());
+            assertTrue(segment.find(0).isEmpty());
+            assertTrue(segment.find(1000).isEmpty());
+        }
+    }
+
+    @Test
+    public void testEmptySegment() throws IOException {
+        writer(10).close();
+        try (TransactionSegment segment = segment()) {
+            assertEquals(0, segment.getBlocks());
+            assertTrue(segment.find(1).isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWalletsMustBeOrdered() throws IOException {
+        Timestamp created = Timestamp.valueOf("2025-10-01 00:00:00");
+        try (TransactionSegmentWriter writer = writer(10)) {
+            writer.append(new ArchivedTransaction(2, 1, "g1", "C", BigDecimal.ONE, 1, "EUR", null, created, null));
+            writer.append(new ArchivedTransaction(1, 2, "g2", "C", BigDecimal.ONE, 1, "EUR", null, created, null));
+        }
+    }
+
+    private TransactionSegmentWriter writer(int blockSize) throws IOException {
+        return new TransactionSegmentWriter(dataFile(), indexFile(), blockSize);
+    }
+
+    private TransactionSegment segment() throws IOException {
+        return new TransactionSegment(dataFile(), indexFile());
+    }
+
+    private Path dataFile() {
+        return folder.getRoot().toPath().resolve("segment.dat");
+    }
+
+    private Path indexFile() {
+        return folder.getRoot().toPath().resolve("segment.idx");
+    }
+}
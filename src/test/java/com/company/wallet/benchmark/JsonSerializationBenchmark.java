@@ -0,0 +1,117 @@
+package com.company.wallet.benchmark;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.gson.JsonResponseWriter;
+import com.company.wallet.gson.adapter.HibernateProxyTypeAdapter;
+import com.company.wallet.gson.adapter.TransactionTypeAdapter;
+import com.company.wallet.gson.adapter.WalletTypeAdapter;
+import com.company.wallet.gson.exclusion.ExcludeField;
+import com.company.wallet.gson.exclusion.GsonExclusionStrategy;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JSON serialization by GsonBuilder created for every request (with GsonExclusionStrategy)
+ * with pre-built entity TypeAdapters writing to the response stream (JsonResponseWriter).
+ * <p>
+ * Views of GET /wallets (wallets without transactions) and POST /transactions (transaction with wallet) are measured,
+ * 'wallets' is the number of wallets in GET /wallets response.
+ * It is not a unit test, run it with JMH from the project root after mvn test-compile, e.g.
+ * </p>
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.openjdk.jmh.Main JsonSerializationBenchmark -prof gc
+ * </pre>
+ *
+ * @author Elena Medvedeva
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int wallets;
+
+    private List<Wallet> walletList;
+
+    private Transaction transaction;
+
+    @Setup
+    public void setUp() {
+        Currency currency = new Currency(1, "EUR", "benchmark");
+        walletList = new ArrayList<>(wallets);
+        for (int i = 0; i < wallets; i++) {
+            Wallet wallet = new Wallet("user-" + i, currency, new BigDecimal(i).movePointLeft(2), "benchmark");
+            wallet.setId(i);
+            wallet.setVersion((long) i);
+            walletList.add(wallet);
+        }
+        transaction = new Transaction("benchmark-1", new TransactionType("C", "credit", "benchmark"), new BigDecimal("10.50"),
+                walletList.get(0), currency, "benchmark transaction", "benchmark");
+        transaction.setId(1);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse walletsGsonBuilder() throws ClassNotFoundException, IOException {
+        String json = new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS))
+                .create().toJson(walletList);
+        return respond(json);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse walletsTypeAdapter() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JsonResponseWriter.writeArray(response, WalletTypeAdapter.WITHOUT_TRANSACTIONS, walletList);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse transactionGsonBuilder() throws ClassNotFoundException, IOException {
+        String json = new GsonBuilder().registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY).
+                setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS)).
+                create().toJson(transaction);
+        return respond(json);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse transactionTypeAdapter() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JsonResponseWriter.write(response, TransactionTypeAdapter.WITH_WALLET, transaction);
+        return response;
+    }
+
+    //String body is copied to the response, as message converter does for @ResponseBody String
+    private static MockHttpServletResponse respond(String json) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+        return response;
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args.length > 0 ? args : new String[]{JsonSerializationBenchmark.class.getSimpleName()});
+    }
+}
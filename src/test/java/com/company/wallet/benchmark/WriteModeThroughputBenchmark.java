@@ -0,0 +1,154 @@
+package com.company.wallet.benchmark;
+
+import com.company.wallet.Application;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.service.BalanceMaterializer;
+import com.company.wallet.service.TransactionService;
+import com.company.wallet.service.WalletService;
+import com.company.wallet.service.WriteMode;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares throughput of transaction write modes for 1, 10 and 10000 hot wallets
+ * (single hot wallet shows the difference of APPEND_ONLY, which doesn't update the wallet row per transaction).
+ * <p>
+ * It is not a unit test, it runs against the database configured in src/main/resources/application.properties
+ * (PostgreSQL is needed, because the difference is in locking and serialization failures).
+ * Run main method from the project root, e.g.
+ * </p>
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; \
+ *   -Dbenchmark.modes=SERIALIZABLE,LANES -Dbenchmark.threads=32 -Dbenchmark.transactions=20000 \
+ *   com.company.wallet.benchmark.WriteModeThroughputBenchmark
+ * </pre>
+ * Every mode is run in its own application context (started with application.transaction.write-mode),
+ * so beans specific to the mode are set up as in production.
+ * IN_MEMORY_LEDGER also needs application.ledger.journal.path, e.g. --application.ledger.journal.path=/tmp/wallet.journal.
+ * Every run (after warm up) creates credit transactions for hot wallets (round robin) from benchmark.threads client threads
+ * and prints transactions per second and number of failed transactions (e.g. serialization failures).
+ *
+ * @author Elena Medvedeva
+ */
+public class WriteModeThroughputBenchmark {
+
+    private static final int[] HOT_WALLETS = {1, 10, 10_000};
+    private static final String CURRENCY = "EUR";
+
+    /**
+     * Test classes are on the classpath, so @TestConfiguration classes of unit tests are excluded from component scan
+     * (as Spring Boot tests do).
+     */
+    private static final ApplicationContextInitializer<ConfigurableApplicationContext> BENCHMARK_EXCLUDE_FILTER =
+            context -> context.getBeanFactory().registerSingleton(TestConfigurationExcludeFilter.class.getName(),
+                    new TestConfigurationExcludeFilter());
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("benchmark.threads", 32);
+        int transactions = Integer.getInteger("benchmark.transactions", 20_000);
+        String[] modes = System.getProperty("benchmark.modes", "SERIALIZABLE,LANES,ATOMIC_SQL,GROUP_COMMIT,APPEND_ONLY").split(",");
+
+        System.out.println(String.format("%-16s %12s %14s %10s", "mode", "hot wallets", "trn/sec", "failed"));
+        for (String mode : modes) {
+            //every mode gets its own context, so mode specific beans (group commit batcher, balance materializer schedule,
+            //in-memory ledger) are configured as in production
+            SpringApplication application = new SpringApplication(Application.class);
+            application.addInitializers(BENCHMARK_EXCLUDE_FILTER);
+            ConfigurableApplicationContext context = application.run(withWriteMode(withMainConfig(args), mode.trim()));
+            try {
+                benchmark(context, mode.trim(), threads, transactions);
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static void benchmark(ConfigurableApplicationContext context, String mode,
+                                  int threads, int transactions) throws Exception {
+        WalletService walletService = context.getBean(WalletService.class);
+        TransactionService transactionService = context.getBean(TransactionService.class);
+        String credit = context.getEnvironment().getProperty("application.transaction.type.credit");
+
+        List<Integer> wallets = new ArrayList<>();
+        for (int i = 0; i < HOT_WALLETS[HOT_WALLETS.length - 1]; i++) {
+            Wallet wallet = walletService.createWallet("benchmark-" + i, CURRENCY);
+            wallets.add(wallet.getId());
+        }
+
+        for (int hot : HOT_WALLETS) {
+            //warm up
+            run(transactionService, credit, wallets.subList(0, hot), threads, transactions / 10, null);
+            run(transactionService, credit, wallets.subList(0, hot), threads, transactions, mode);
+        }
+        if (WriteMode.valueOf(mode) == WriteMode.APPEND_ONLY) {
+            //other write modes update wallet balance directly, so pending transactions are applied first
+            context.getBean(BalanceMaterializer.class).retireCheckpoints();
+        }
+    }
+
+    private static void run(TransactionService transactionService, String credit, List<Integer> wallets,
+                            int threads, int transactions, String mode) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            clients.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < transactions) {
+                    String walletId = wallets.get(i % wallets.size()).toString();
+                    try {
+                        transactionService.createTransaction(UUID.randomUUID().toString(), CURRENCY, walletId, credit, "1", "benchmark");
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        if (mode == null) {
+            return;
+        }
+        System.out.println(String.format("%-16s %12d %14.1f %10d", mode, wallets.size(), transactions / seconds, failed.get()));
+    }
+
+    private static String[] withWriteMode(String[] args, String mode) {
+        String[] result = Arrays.copyOf(args, args.length + 1);
+        result[args.length] = "--application.transaction.write-mode=" + mode;
+        return result;
+    }
+
+    private static String[] withMainConfig(String[] args) {
+        boolean configured = Arrays.stream(args).anyMatch(arg -> arg.startsWith("--spring.config.location"));
+        if (configured) {
+            return args;
+        }
+        String[] result = Arrays.copyOf(args, args.length + 1);
+        result[args.length] = "--spring.config.location=file:src/main/resources/application.properties";
+        return result;
+    }
+
+    private static class TestConfigurationExcludeFilter extends TypeExcludeFilter {
+
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+            return metadataReader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.company.wallet.controller;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.service.ReferenceDataRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * ReferenceDataController tests
+ * @author Elena Medvedeva
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(ReferenceDataController.class)
+public class ReferenceDataControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private ReferenceDataRegistry referenceData;
+
+    @Test
+    public void refresh_thenReturnCounts() throws Exception {
+        given(referenceData.getCurrencies()).willReturn(Arrays.asList(new Currency(1, "EUR", "user"), new Currency(2, "USD", "user")));
+        given(referenceData.getTransactionTypes()).willReturn(Arrays.asList(new TransactionType("C", "credit", "user"), new TransactionType("D", "debit", "user")));
+
+        mvc.perform(post("/reference-data/refresh"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currencies", is(2)))
+                .andExpect(jsonPath("$.transactionTypes", is(2)));
+        Mockito.verify(referenceData).refresh();
+    }
+}
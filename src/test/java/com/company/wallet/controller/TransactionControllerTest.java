@@ -4,35 +4,53 @@ import com.company.wallet.entities.Currency;
 import com.company.wallet.entities.Transaction;
 import com.company.wallet.entities.TransactionType;
 import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.service.BatchMode;
+import com.company.wallet.service.TransactionPage;
+import com.company.wallet.service.TransactionResult;
 import com.company.wallet.service.TransactionService;
+import com.company.wallet.service.WalletService;
 import com.company.wallet.helper.Helper;
 import com.company.wallet.helper.HelperImpl;
 import com.google.gson.GsonBuilder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.StreamUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 
 import static com.company.wallet.exceptions.ErrorMessage.NO_MANDATORY_FIELD;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -67,6 +85,9 @@ public class TransactionControllerTest {
     @MockBean
     private TransactionService service;
 
+    @MockBean
+    private WalletService walletService;
+
     private Currency currency;
     private Wallet wallet;
     private Transaction transactionCredit;
@@ -74,10 +95,12 @@ public class TransactionControllerTest {
     static int globalIdCounter = 1;
 
     @Before
-    public void before(){
+    public void before() throws Exception {
         currency = new Currency(CURRENCY_ID, TEST_CURRENCY,LAST_UPDATED_BY );
         wallet = new Wallet(USER,new Currency(CURRENCY_ID, TEST_CURRENCY,LAST_UPDATED_BY),new BigDecimal(0),LAST_UPDATED_BY);
         wallet.setId(1);
+        wallet.setVersion(7L);
+        given(walletService.findByIdCached(wallet.getId())).willReturn(wallet);
         typeCredit = new TransactionType(CREDIT,"credit trn", LAST_UPDATED_BY);
         transactionCredit = new Transaction(String.valueOf(globalIdCounter++) ,typeCredit,new BigDecimal(20),wallet,currency,"Credit transaction");
         transactionCredit.setId(5);
@@ -99,7 +122,54 @@ public class TransactionControllerTest {
                 .andExpect(jsonPath("$[0].type.description", is(transactionCredit.getType().getDescription())))
                 .andExpect(jsonPath("$[0].amount", is(transactionCredit.getAmount().intValue())))
                 .andExpect(jsonPath("$[0].currency.name", is(TEST_CURRENCY)))
-                .andExpect(jsonPath("$[0].description", is(transactionCredit.getDescription())));
+                .andExpect(jsonPath("$[0].description", is(transactionCredit.getDescription())))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+        //without 'after' and 'limit' the whole list is returned, not the first page
+        Mockito.verify(service, Mockito.never()).getTransactionsPage(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testGetWalletTransactionsById_FirstPage() throws Exception {
+        String next = TransactionPage.encodeCursor(transactionCredit);
+        given(service.getTransactionsPage(wallet.getId(), null, 1)).willReturn(new TransactionPage(Arrays.asList(transactionCredit), next));
+
+        mvc.perform(get("/wallets/" + wallet.getId() + "/transactions?limit=1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(header().string("X-Next-Cursor", next));
+    }
+
+    @Test
+    public void testGetWalletTransactionsById_NextPage() throws Exception {
+        Transaction previous = new Transaction(String.valueOf(globalIdCounter++), typeCredit, new BigDecimal(1), wallet, currency, "Previous");
+        previous.setId(4);
+        String after = TransactionPage.encodeCursor(previous);
+        String next = TransactionPage.encodeCursor(transactionCredit);
+        given(service.getTransactionsPage(wallet.getId(), after, 1)).willReturn(new TransactionPage(Arrays.asList(transactionCredit), next));
+
+        mvc.perform(get("/wallets/" + wallet.getId() + "/transactions?limit=1&after=" + after)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(transactionCredit.getId())))
+                .andExpect(header().string("X-Next-Cursor", next));
+    }
+
+    @Test
+    public void testGetWalletTransactionsById_NotModified() throws Exception {
+        given(service.getTransactionsByWalletId(wallet.getId())).willReturn(Arrays.asList(transactionCredit));
+
+        mvc.perform(get("/wallets/" + wallet.getId() + "/transactions").header("If-None-Match", "\"1-6\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-7\""))
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        Mockito.reset(service);
+        mvc.perform(get("/wallets/" + wallet.getId() + "/transactions").header("If-None-Match", "\"1-7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        Mockito.verifyZeroInteractions(service);
     }
 
     @Test
@@ -254,4 +324,117 @@ public class TransactionControllerTest {
                 .andExpect(jsonPath("$.message", is(errorMessage)))
                 .andExpect(jsonPath("$.details", is("uri=/transactions")));
     }
+
+    @Test
+    public void testCreateTransactions_PerItemResults() throws Exception {
+        Map<String, String> dataMap = new HashMap<>();
+        dataMap.put("globalId",transactionCredit.getGlobalId());
+        dataMap.put("currency",transactionCredit.getCurrency().getName());
+        dataMap.put("walletId",transactionCredit.getWallet().getId().toString());
+        dataMap.put("transactionTypeId",transactionCredit.getType().getId());
+        dataMap.put("amount",transactionCredit.getAmount().toString());
+        String error = String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet.getId(), "100");
+
+        given(service.createTransactions(Mockito.anyList(), Mockito.eq(BatchMode.PER_ITEM)))
+                .willReturn(Arrays.asList(TransactionResult.success(transactionCredit),
+                        TransactionResult.failure(new WalletException(error, HttpStatus.BAD_REQUEST.value()))));
+        String json = new GsonBuilder().create().toJson(Arrays.asList(dataMap, dataMap));
+
+        mvc.perform(post("/transactions/batch")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].index", is(0)))
+                .andExpect(jsonPath("$[0].status", is(200)))
+                .andExpect(jsonPath("$[0].transaction.id", is(transactionCredit.getId())))
+                .andExpect(jsonPath("$[0].transaction.globalId", is(transactionCredit.getGlobalId())))
+                .andExpect(jsonPath("$[1].index", is(1)))
+                .andExpect(jsonPath("$[1].status", is(400)))
+                .andExpect(jsonPath("$[1].message", is(error)));
+    }
+
+    @Test
+    public void testCreateTransactions_AllOrNothingFailed() throws Exception {
+        String error = String.format(ErrorMessage.BATCH_TRANSACTION_FAILED, 0, String.format(ErrorMessage.NO_WALLET_FOUND, "1001"));
+        given(service.createTransactions(Mockito.anyList(), Mockito.eq(BatchMode.ALL_OR_NOTHING)))
+                .willThrow(new WalletException(error, HttpStatus.BAD_REQUEST.value()));
+
+        mvc.perform(post("/transactions/batch?mode=ALL_OR_NOTHING")
+                .content("[{\"globalId\":\"1\",\"currency\":\"EUR\",\"walletId\":\"1001\",\"transactionTypeId\":\"C\",\"amount\":\"1\"}]")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is(error)))
+                .andExpect(jsonPath("$.details", is("uri=/transactions/batch")));
+    }
+
+    @Test
+    public void testCreateTransfer_thenReturnJsonArray() throws Exception {
+        Transaction debit = new Transaction(transactionCredit.getGlobalId() + "-debit", new TransactionType("D", "debit", LAST_UPDATED_BY),
+                new BigDecimal(10), wallet, currency, "transfer");
+        debit.setId(transactionCredit.getId() + 1);
+        given(service.createTransfer("77", TEST_CURRENCY, "1", "2", "10", "transfer"))
+                .willReturn(Arrays.asList(debit, transactionCredit));
+
+        mvc.perform(post("/transfers")
+                .content("{\"globalId\":\"77\",\"currency\":\"EUR\",\"fromWalletId\":\"1\",\"toWalletId\":\"2\",\"amount\":\"10\",\"description\":\"transfer\"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(debit.getId())))
+                .andExpect(jsonPath("$[0].globalId", is(debit.getGlobalId())))
+                .andExpect(jsonPath("$[1].id", is(transactionCredit.getId())));
+    }
+
+    @Test
+    public void testCreateTransfer_NoToWalletId() throws Exception {
+        mvc.perform(post("/transfers")
+                .content("{\"globalId\":\"77\",\"currency\":\"EUR\",\"fromWalletId\":\"1\",\"amount\":\"10\"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testExportTransactions_Csv() throws Exception {
+        String csv = "id,global_id,wallet_id,currency,type_id,amount,description,last_updated,last_updated_by\n1,123,1,EUR,C,100.00,add money,2018-07-01 10:00:00,user\n";
+        given(service.exportTransactions(Mockito.eq(1), Mockito.eq(LocalDate.of(2018, 7, 1)), Mockito.any())).willAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(2)).write(csv.getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+
+        mvc.perform(get("/transactions/export?walletId=1&date=2018-07-01"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"transactions-1-2018-07-01.csv\""))
+                .andExpect(content().string(csv));
+    }
+
+    @Test
+    public void testExportTransactions_Gzip() throws Exception {
+        String csv = "id,global_id,wallet_id,currency,type_id,amount,description,last_updated,last_updated_by\n";
+        given(service.exportTransactions(Mockito.isNull(), Mockito.eq(LocalDate.of(2018, 7, 1)), Mockito.any())).willAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(2)).write(csv.getBytes(StandardCharsets.UTF_8));
+            return 0L;
+        });
+
+        byte[] body = mvc.perform(get("/transactions/export?date=2018-07-01&gzip=true"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"transactions-2018-07-01.csv.gz\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertEquals(csv, StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testExportTransactions_Rejected() throws Exception {
+        given(service.exportTransactions(Mockito.isNull(), Mockito.isNull(), Mockito.any()))
+                .willThrow(new WalletException(ErrorMessage.EXPORT_FILTER_MISSING, HttpStatus.BAD_REQUEST.value()));
+
+        mvc.perform(get("/transactions/export?gzip=true"))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist("Content-Disposition"))
+                .andExpect(jsonPath("$.message", is(ErrorMessage.EXPORT_FILTER_MISSING)));
+    }
 }
@@ -1,6 +1,8 @@
 package com.company.wallet.controller;
 
 import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.helper.Helper;
 import com.company.wallet.service.WalletService;
@@ -8,6 +10,7 @@ import com.company.wallet.helper.HelperImpl;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -20,12 +23,16 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static com.company.wallet.exceptions.ErrorMessage.NO_MANDATORY_FIELD;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -66,6 +73,25 @@ public class WalletControllerTest {
         wallet.setId(1);
     }
 
+    @Test
+    public void testExportAll_thenStreamJsonArray() throws Exception {
+        Wallet second = new Wallet(USER, currency, new BigDecimal(10), LAST_UPDATED_BY);
+        second.setId(2);
+        Mockito.doAnswer(invocation -> {
+            Consumer<Wallet> consumer = invocation.getArgument(0);
+            consumer.accept(wallet);
+            consumer.accept(second);
+            return null;
+        }).when(service).forEachWallet(Mockito.any());
+
+        mvc.perform(get("/wallets/export"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(wallet.getId())))
+                .andExpect(jsonPath("$[1].id", is(second.getId())))
+                .andExpect(jsonPath("$[1].currency.name", is(TEST_CURRENCY)));
+    }
+
     @Test
     public void testGetAll_whenGetWallet_thenReturnJsonArray() throws Exception {
         List<Wallet> allWallets = Arrays.asList(wallet);
@@ -82,7 +108,7 @@ public class WalletControllerTest {
     @Test
     public void testGetWalletById_thenReturnJson() throws Exception {
 
-        given(service.findById(wallet.getId())).willReturn(wallet);
+        given(service.findByIdCached(wallet.getId())).willReturn(wallet);
 
         mvc.perform(get("/wallets/" + wallet.getId().toString())
                 .contentType(MediaType.APPLICATION_JSON))
@@ -94,10 +120,62 @@ public class WalletControllerTest {
                 .andExpect(jsonPath("$.lastUpdatedBy", is(wallet.getLastUpdatedBy())));
     }
 
+    @Test
+    public void testGetWalletById_thenNoTransactions() throws Exception {
+        given(service.findByIdCached(wallet.getId())).willReturn(wallet);
+
+        mvc.perform(get("/wallets/" + wallet.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(wallet.getId())))
+                .andExpect(jsonPath("$.transactions").doesNotExist());
+        Mockito.verify(service, Mockito.never()).findRecentTransactions(Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    public void testGetWalletById_withRecentTransactions() throws Exception {
+        TransactionType credit = new TransactionType("C", "credit", LAST_UPDATED_BY);
+        Transaction newest = new Transaction("2", credit, new BigDecimal(20), wallet, currency, "second");
+        newest.setId(2);
+        Transaction older = new Transaction("1", credit, new BigDecimal(10), wallet, currency, "first");
+        older.setId(1);
+        given(service.findByIdCached(wallet.getId())).willReturn(wallet);
+        given(service.findRecentTransactions(wallet.getId(), 2)).willReturn(Arrays.asList(newest, older));
+
+        mvc.perform(get("/wallets/" + wallet.getId()).param("recentTransactions", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(wallet.getId())))
+                .andExpect(jsonPath("$.transactions", hasSize(2)))
+                .andExpect(jsonPath("$.transactions[0].globalId", is("2")))
+                .andExpect(jsonPath("$.transactions[1].globalId", is("1")))
+                .andExpect(jsonPath("$.transactions[0].wallet").doesNotExist());
+    }
+
+    @Test
+    public void testGetWalletById_NotModified() throws Exception {
+        wallet.setVersion(3L);
+        given(service.findByIdCached(wallet.getId())).willReturn(wallet);
+
+        mvc.perform(get("/wallets/" + wallet.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-3\""));
+
+        mvc.perform(get("/wallets/" + wallet.getId()).param("recentTransactions", "2").header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"1-3\""))
+                .andExpect(content().string(""));
+        Mockito.verify(service, Mockito.never()).findRecentTransactions(Mockito.anyInt(), Mockito.anyInt());
+
+        wallet.setVersion(4L);
+        mvc.perform(get("/wallets/" + wallet.getId()).header("If-None-Match", "\"1-3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-4\""))
+                .andExpect(jsonPath("$.version", is(4)));
+    }
+
     @Test
     public void testGetWalletByUserId_thenReturnJson() throws Exception {
 
-        given(service.findByUserId(wallet.getUserId())).willReturn(Arrays.asList(wallet));
+        given(service.findByUserIdCached(wallet.getUserId())).willReturn(Arrays.asList(wallet));
 
         mvc.perform(get("/wallets/user")
                 .param("userId",wallet.getUserId())
@@ -125,6 +203,18 @@ public class WalletControllerTest {
                 .andExpect(jsonPath("$.lastUpdatedBy", is(wallet.getLastUpdatedBy())));
     }
 
+    @Test
+    public void testSetBalanceSlots_thenReturnJson() throws Exception {
+        given(service.setBalanceSlots(wallet.getId(), 8)).willReturn(wallet);
+
+        mvc.perform(put("/wallets/" + wallet.getId() + "/balance-slots").param("count", "8"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(wallet.getId())))
+                .andExpect(jsonPath("$.balance", is(wallet.getBalance().intValue())))
+                .andExpect(jsonPath("$.balanceSlots").doesNotExist());
+        Mockito.verify(service).setBalanceSlots(wallet.getId(), 8);
+    }
+
     @Test
     public void testCreateWallet_NoCurrency() throws Exception {
 
@@ -0,0 +1,122 @@
+package com.company.wallet.datasource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ReplicaRoutingDataSource tests on two H2 databases, each knows its name in table 'node'.
+ *
+ * @author Elena Medvedeva
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private static final String SELECT_NODE = "select name from node";
+
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writeTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @Before
+    public void setUp() {
+        DriverManagerDataSource primary = database("primary");
+        DriverManagerDataSource replica = database("replica");
+        routingDataSource = new ReplicaRoutingDataSource(primary, Collections.singletonList(replica));
+        routingDataSource.setReadYourWritesMs(60000);
+        routingDataSource.setMaxLagMs(1000);
+        routingDataSource.init();
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ClientContext.clear();
+        routingDataSource.close();
+    }
+
+    @Test
+    public void testReadOnlyTransactionGoesToReplica() {
+        assertEquals("replica", readOnlyTransaction.execute(status -> readNode()));
+        assertEquals("primary", writeTransaction.execute(status -> readNode()));
+        assertEquals("primary", readNode());
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        ClientContext.setClientId("writer");
+        writeTransaction.execute(status -> jdbcTemplate.update("update node set name = name"));
+        assertEquals("primary", readOnlyTransaction.execute(status -> readNode()));
+
+        ClientContext.setClientId("reader");
+        assertEquals("replica", readOnlyTransaction.execute(status -> readNode()));
+
+        ClientContext.clear();
+        assertEquals("replica", readOnlyTransaction.execute(status -> readNode()));
+    }
+
+    @Test
+    public void testReadYourWrites_Disabled() throws Exception {
+        routingDataSource.close();
+        routingDataSource = new ReplicaRoutingDataSource(database("primary"), Collections.singletonList(database("replica")));
+        routingDataSource.init();
+        ClientContext.setClientId("writer");
+        assertEquals("primary", routingDataSource.currentTarget());
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(routingDataSource));
+        transaction.setReadOnly(true);
+        assertEquals("replica-0", transaction.execute(status -> routingDataSource.currentTarget()));
+    }
+
+    @Test
+    public void testLaggingReplicaIsEvicted() {
+        routingDataSource.setLagQuery("select max(lag_ms) from node");
+        routingDataSource.checkHealth();
+        assertEquals(1, routingDataSource.getHealthyReplicas());
+
+        new JdbcTemplate(database("replica")).update("update node set lag_ms = 5000");
+        routingDataSource.checkHealth();
+        assertEquals(0, routingDataSource.getHealthyReplicas());
+        assertEquals("primary", readOnlyTransaction.execute(status -> readNode()));
+
+        new JdbcTemplate(database("replica")).update("update node set lag_ms = 10");
+        routingDataSource.checkHealth();
+        assertEquals(1, routingDataSource.getHealthyReplicas());
+        assertEquals("replica", readOnlyTransaction.execute(status -> readNode()));
+    }
+
+    @Test
+    public void testUnavailableReplicaIsEvicted() {
+        routingDataSource.setLagQuery("select lag_ms from table_which_does_not_exist");
+        routingDataSource.checkHealth();
+        assertEquals(0, routingDataSource.getHealthyReplicas());
+        assertEquals("primary", readOnlyTransaction.execute(status -> readNode()));
+    }
+
+    private String readNode() {
+        return jdbcTemplate.queryForObject(SELECT_NODE, String.class);
+    }
+
+    private static DriverManagerDataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists node (name varchar(20), lag_ms int)");
+        jdbcTemplate.update("delete from node");
+        jdbcTemplate.update("insert into node (name, lag_ms) values (?, 0)", name);
+        return dataSource;
+    }
+}
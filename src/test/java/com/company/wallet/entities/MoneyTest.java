@@ -0,0 +1,88 @@
+package com.company.wallet.entities;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+/**
+ * Money tests
+ *
+ * @author Elena Medvedeva
+ */
+public class MoneyTest {
+
+    @Test
+    public void testParse_SameAsBigDecimal() {
+        for (String amount : new String[]{"0", "10", "-10", "+10", "10.5", "10.50", "10.500", ".5", "5.", "-0.01", "0001.10", "1E+2", "12.5e-1"}) {
+            Money money = Money.parse(amount, 2);
+            assertEquals(amount, 0, new BigDecimal(amount).compareTo(money.toBigDecimal()));
+            assertEquals(amount, 2, money.getScale());
+        }
+        assertEquals(1050, Money.parse("10.5", 2).getMinorUnits());
+        assertEquals(10, Money.parse("10", 0).getMinorUnits());
+    }
+
+    @Test
+    public void testParse_NotANumber() {
+        for (String amount : new String[]{"", "-", ".", "AAAee", "1.2.3", "1,5", " 1", "1-"}) {
+            try {
+                Money.parse(amount, 2);
+                fail(amount);
+            } catch (NumberFormatException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testParse_NotRepresentable() {
+        for (String amount : new String[]{"10.001", "0.5e-2", "10000000000000", "-10000000000000"}) {
+            try {
+                Money.parse(amount, 2);
+                fail(amount);
+            } catch (ArithmeticException e) {
+                //expected
+            }
+        }
+        assertEquals(9999999999999L, Money.parse("9999999999999", 0).getMinorUnits());
+        assertEquals(Money.parse("99999999999.99", 2), Money.parse("-99999999999.99", 2).negate());
+    }
+
+    @Test
+    public void testArithmetic() {
+        Money balance = Money.of(new BigDecimal("40.00"), 2);
+        Money debit = Money.parse("-40.01", 2).abs().negate();
+        assertTrue(balance.add(debit).signum() < 0);
+        assertEquals(Money.zero(2), balance.subtract(Money.parse("40", 2)));
+        assertEquals(new BigDecimal("80.00"), balance.add(balance).toBigDecimal());
+        assertTrue(balance.compareTo(Money.parse("39.99", 2)) > 0);
+        assertEquals("40.00", balance.toString());
+        assertEquals(new BigDecimal("41.00"), balance.add(Money.parse("1", 0)).toBigDecimal());
+        assertTrue(Money.parse("40", 0).compareTo(balance) == 0);
+    }
+
+    @Test
+    public void testOfStored_KeepsScaleOfValue() {
+        assertEquals(Money.parse("10", 0), Money.ofStored(new BigDecimal("10.00"), 0));
+        Money balance = Money.ofStored(new BigDecimal("10.50"), 0);
+        assertEquals(1, balance.getScale());
+        assertEquals(new BigDecimal("7.5"), balance.subtract(Money.parse("3", 0)).toBigDecimal());
+        assertEquals(2, Money.ofStored(new BigDecimal("10.5"), 2).getScale());
+        try {
+            Money.ofStored(new BigDecimal("10.001"), 2);
+            fail();
+        } catch (ArithmeticException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testScaleOf() {
+        assertEquals(2, Money.scaleOf("EUR"));
+        assertEquals(0, Money.scaleOf("JPY"));
+        assertEquals(Money.MAX_SCALE, Money.scaleOf("BHD"));
+        assertEquals(Money.MAX_SCALE, Money.scaleOf("not a currency"));
+    }
+}
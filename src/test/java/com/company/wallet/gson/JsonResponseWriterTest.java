@@ -0,0 +1,101 @@
+package com.company.wallet.gson;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.gson.adapter.HibernateProxyTypeAdapter;
+import com.company.wallet.gson.adapter.TransactionTypeAdapter;
+import com.company.wallet.gson.adapter.WalletTypeAdapter;
+import com.company.wallet.gson.exclusion.ExcludeField;
+import com.company.wallet.gson.exclusion.GsonExclusionStrategy;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * JsonResponseWriter and entity TypeAdapters tests.
+ * Output must be the same as of GsonBuilder with exclusion strategies, which was used by controllers before.
+ *
+ * @author Elena Medvedeva
+ */
+public class JsonResponseWriterTest {
+
+    private Wallet wallet;
+    private Transaction credit;
+    private Transaction debit;
+
+    @Before
+    public void setUp() {
+        Currency currency = new Currency(1, "EUR", "user");
+        currency.setLastUpdated(new Timestamp(1_500_000_000_123L));
+        wallet = new Wallet("user", currency, new BigDecimal("40.50"), "user");
+        wallet.setId(2);
+        wallet.setVersion(3L);
+        TransactionType creditType = new TransactionType("C", "credit <trn> & 'quoted'", "user");
+        TransactionType debitType = new TransactionType("D", "debit trn", null);
+        credit = new Transaction("g-1", creditType, new BigDecimal("20.5"), wallet, currency, "credit \"1\"", "user");
+        credit.setId(5);
+        debit = new Transaction("g-2", debitType, new BigDecimal(-20), wallet, currency, null, "user");
+        debit.setId(6);
+        wallet.setTransactions(Arrays.asList(credit, debit));
+    }
+
+    @Test
+    public void testWalletWithoutTransactions() throws Exception {
+        String expected = new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS))
+                .create().toJson(Arrays.asList(wallet, wallet));
+        assertEquals(expected, writeArray(WalletTypeAdapter.WITHOUT_TRANSACTIONS, Arrays.asList(wallet, wallet)));
+    }
+
+    @Test
+    public void testWalletWithTransactions() throws Exception {
+        String expected = new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_WALLET))
+                .create().toJson(wallet);
+        assertEquals(expected, write(WalletTypeAdapter.WITH_TRANSACTIONS, wallet));
+
+        wallet.setTransactions(null);
+        expected = new GsonBuilder().registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY).create().toJson(wallet);
+        assertEquals(expected, write(WalletTypeAdapter.WITH_TRANSACTIONS, wallet));
+    }
+
+    @Test
+    public void testTransactionWithWallet() throws Exception {
+        String expected = new GsonBuilder().registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY).
+                setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_TRANSACTIONS)).
+                create().toJson(Arrays.asList(credit, debit));
+        assertEquals(expected, writeArray(TransactionTypeAdapter.WITH_WALLET, Arrays.asList(credit, debit)));
+    }
+
+    @Test
+    public void testTransactionWithoutWallet() throws Exception {
+        String expected = new GsonBuilder().setExclusionStrategies(new GsonExclusionStrategy(ExcludeField.EXCLUDE_WALLET))
+                .create().toJson(credit);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JsonResponseWriter.write(response, TransactionTypeAdapter.WITHOUT_WALLET, credit);
+        assertEquals(expected, response.getContentAsString());
+        assertEquals(MediaType.APPLICATION_JSON_UTF8_VALUE, response.getContentType());
+    }
+
+    private static <T> String write(TypeAdapter<T> adapter, T value) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JsonResponseWriter.write(response, adapter, value);
+        return response.getContentAsString();
+    }
+
+    private static <T> String writeArray(TypeAdapter<T> adapter, List<T> values) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JsonResponseWriter.writeArray(response, adapter, values);
+        return response.getContentAsString();
+    }
+}
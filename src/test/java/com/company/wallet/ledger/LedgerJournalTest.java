@@ -0,0 +1,108 @@
+package com.company.wallet.ledger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * LedgerJournal tests
+ *
+ * @author Elena Medvedeva
+ */
+public class LedgerJournalTest {
+
+    private static final int SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppend_ReplayedAfterReopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            assertTrue(journal.append(entry(1, "g1", null)) > 0);
+            assertTrue(journal.append(entry(2, "g2", "second")) > 0);
+        }
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            List<LedgerEntry> entries = journal.getUnflushed();
+            assertEquals(2, entries.size());
+            assertEquals(1, entries.get(0).getTransactionId());
+            assertEquals("g1", entries.get(0).getGlobalId());
+            assertNull(entries.get(0).getDescription());
+            assertEquals("second", entries.get(1).getDescription());
+            assertEquals(0, new BigDecimal("90.50").compareTo(entries.get(1).getBalanceAfter()));
+        }
+    }
+
+    @Test
+    public void testMarkFlushed_FlushedEntriesNotReplayed() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            int position = journal.append(entry(1, "g1", null));
+            journal.append(entry(2, "g2", null));
+            journal.markFlushed(position);
+        }
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            List<LedgerEntry> entries = journal.getUnflushed();
+            assertEquals(1, entries.size());
+            assertEquals("g2", entries.get(0).getGlobalId());
+        }
+    }
+
+    @Test
+    public void testRewind_OldEntriesNotReplayed() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            journal.append(entry(1, "g1", "long description of the first entry"));
+            journal.append(entry(2, "g2", null));
+            journal.markFlushed(journal.getPosition());
+            assertTrue(journal.rewindIfFlushed());
+            journal.append(entry(3, "g3", null));
+        }
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            List<LedgerEntry> entries = journal.getUnflushed();
+            assertEquals(1, entries.size());
+            assertEquals("g3", entries.get(0).getGlobalId());
+        }
+    }
+
+    @Test
+    public void testCorruptedRecord_ReplayStops() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        int position;
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            position = journal.append(entry(1, "g1", null));
+            journal.append(entry(2, "g2", null));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(position + 20);
+            file.write(0xFF);
+        }
+        try (LedgerJournal journal = new LedgerJournal(path, SIZE, false)) {
+            assertEquals(1, journal.getUnflushed().size());
+            assertEquals(position, journal.getPosition());
+        }
+    }
+
+    @Test
+    public void testAppend_NoRoomLeft() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("journal");
+        try (LedgerJournal journal = new LedgerJournal(path, 128, false)) {
+            assertTrue(journal.append(entry(1, "g1", null)) > 0);
+            assertEquals(-1, journal.append(entry(2, "g2", null)));
+            assertFalse(journal.rewindIfFlushed());
+        }
+    }
+
+    private static LedgerEntry entry(int id, String globalId, String description) {
+        return new LedgerEntry(id, 1, 1, "C", new BigDecimal("10.50"), new BigDecimal("90.50"), globalId, description, 1000L * id);
+    }
+}
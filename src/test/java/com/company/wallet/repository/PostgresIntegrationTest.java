@@ -0,0 +1,142 @@
+package com.company.wallet.repository;
+
+import com.company.wallet.Application;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.service.TransactionService;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests against PostgreSQL: schema is created by Flyway migrations in schema_wallet_it, and the application datasource
+ * connects with hibernate.default_schema only, as in production (the schema is not on its search_path).
+ * <p>
+ * Skipped if PostgreSQL is not available at -Dit.datasource.url (jdbc:postgresql://localhost:5432/wallet by default,
+ * user and password -Dit.datasource.username and -Dit.datasource.password, postgres by default).
+ * </p>
+ * @author Elena Medvedeva
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class, webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "spring.datasource.url=${it.datasource.url:" + PostgresIntegrationTest.DEFAULT_URL + "}",
+        "spring.datasource.username=${it.datasource.username:postgres}",
+        "spring.datasource.password=${it.datasource.password:postgres}",
+        "spring.jpa.properties.hibernate.default_schema=" + PostgresIntegrationTest.SCHEMA,
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQL95Dialect",
+        "spring.jpa.properties.hibernate.jdbc.lob.non_contextual_creation=true",
+        "spring.flyway.enabled=true",
+        "spring.flyway.schemas=" + PostgresIntegrationTest.SCHEMA
+})
+public class PostgresIntegrationTest {
+
+    static final String DEFAULT_URL = "jdbc:postgresql://localhost:5432/wallet";
+    static final String SCHEMA = "schema_wallet_it";
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeClass
+    public static void dropSchema() {
+        String url = System.getProperty("it.datasource.url", DEFAULT_URL);
+        try (Connection connection = DriverManager.getConnection(url, System.getProperty("it.datasource.username", "postgres"),
+                System.getProperty("it.datasource.password", "postgres"));
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        } catch (SQLException e) {
+            Assume.assumeNoException("PostgreSQL is not available at " + url, e);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction() throws WalletException {
+        assertEquals("public", jdbcTemplate.queryForObject("SELECT current_schema()", String.class));
+
+        Transaction transaction = transactionService.createTransaction("it-1", "EUR", "1", "C", "10.00", "integration test");
+        assertEquals(transaction.getId(), jdbcTemplate.queryForObject(
+                "SELECT transaction_id FROM " + SCHEMA + ".transaction_global_id WHERE global_id = 'it-1'", Integer.class));
+        Transaction found = transactionRepository.findByGlobalId("it-1");
+        assertEquals(transaction.getId(), found.getId());
+        assertEquals(Integer.valueOf(1), found.getWallet().getId());
+        assertNull(transactionRepository.findByGlobalId("it-unused"));
+
+        //globalId is unique across partitions by the lookup table, which the trigger checks
+        try {
+            jdbcTemplate.update("INSERT INTO " + SCHEMA + ".transaction (global_id, type_id, amount, wallet_id, currency_id, last_updated) " +
+                    "VALUES ('it-1', 'C', 1, 1, 1, date_trunc('month', localtimestamp) + interval '1 month')");
+            fail("Duplicate globalId");
+        } catch (DataIntegrityViolationException e) {
+            assertTrue(e.getMostSpecificCause().getMessage().contains(ErrorMessage.DUPLICATE_KEY));
+        }
+    }
+
+    @Test
+    public void testDetachedPartitionKeepsGlobalIds() {
+        transactionTemplate.execute(status -> {
+            transactionRepository.createPartition("transaction_p2020_01", LocalDate.of(2020, 1, 1), LocalDate.of(2020, 2, 1));
+            return null;
+        });
+        jdbcTemplate.update("INSERT INTO " + SCHEMA + ".transaction (global_id, type_id, amount, wallet_id, currency_id, last_updated) " +
+                "VALUES ('it-detached', 'C', 1, 1, 1, TIMESTAMP '2020-01-15 12:00:00')");
+        Long version = jdbcTemplate.queryForObject("SELECT version FROM " + SCHEMA + ".wallet WHERE id = 1", Long.class);
+        assertEquals(Collections.singletonList(1), transactionTemplate.execute(status -> transactionRepository.detachPartition("transaction_p2020_01")));
+        //transaction list of the wallet changed, so its version (ETag) changes
+        assertEquals(Long.valueOf(version + 1), jdbcTemplate.queryForObject("SELECT version FROM " + SCHEMA + ".wallet WHERE id = 1", Long.class));
+
+        assertNull(transactionRepository.findByGlobalId("it-detached"));
+        assertEquals(Collections.singleton("it-detached"),
+                transactionRepository.findUsedGlobalIds(Arrays.asList("it-detached", "it-unused")));
+        try {
+            jdbcTemplate.update("INSERT INTO " + SCHEMA + ".transaction (global_id, type_id, amount, wallet_id, currency_id) " +
+                    "VALUES ('it-detached', 'C', 1, 1, 1)");
+            fail("GlobalId of a detached partition must stay unique");
+        } catch (DataIntegrityViolationException e) {
+            assertTrue(e.getMostSpecificCause().getMessage().contains(ErrorMessage.DUPLICATE_KEY));
+        }
+    }
+
+    @Test
+    public void testMaterializeBalancesWithoutTransaction() {
+        jdbcTemplate.update("UPDATE " + SCHEMA + ".wallet SET last_transaction_id = 0 WHERE id = 2");
+        jdbcTemplate.update("INSERT INTO " + SCHEMA + ".transaction (global_id, type_id, amount, wallet_id, currency_id) " +
+                "VALUES ('it-pending', 'C', 5, 2, 1)");
+
+        //balance materializer runs at start and from its own thread
+        assertEquals(1, walletRepository.materializeBalances(null, "C", "it"));
+        assertEquals(0, new BigDecimal("5.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT balance FROM " + SCHEMA + ".wallet WHERE id = 2", BigDecimal.class)));
+        assertTrue(walletRepository.retireBalanceCheckpoints("C") > 0);
+        assertNull(jdbcTemplate.queryForObject("SELECT last_transaction_id FROM " + SCHEMA + ".wallet WHERE id = 2", Integer.class));
+    }
+}
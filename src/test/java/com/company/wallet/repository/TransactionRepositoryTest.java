@@ -14,10 +14,14 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.validation.ConstraintViolationException;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -100,6 +104,62 @@ public class TransactionRepositoryTest {
         assertTrue(trns.get(0).getId().equals(transaction.getId()));
     }
 
+    @Test
+    public void testFindPageByWalletId() {
+        Transaction second = new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet1,currency,"Second");
+        Transaction third = new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet1,currency,"Third");
+        entityManager.persist(second);
+        entityManager.persist(third);
+        entityManager.persist(new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet2,currency,"Other wallet"));
+        entityManager.flush();
+
+        List<Transaction> page = transactionRepository.findPageByWalletId(wallet1.getId(), new Timestamp(0), 0, PageRequest.of(0, 2));
+        assertEquals(2, page.size());
+        assertEquals(transaction.getId(), page.get(0).getId());
+        assertEquals(second.getId(), page.get(1).getId());
+
+        page = transactionRepository.findPageByWalletId(wallet1.getId(), page.get(1).getLastUpdated(), second.getId(), PageRequest.of(0, 2));
+        assertEquals(1, page.size());
+        assertEquals(third.getId(), page.get(0).getId());
+    }
+
+    @Test
+    public void testFindPageByWalletId_OrderedByCreationTime() {
+        Date now = new Date();
+        Transaction older = new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet1,currency,"Older");
+        older.setLastUpdated(new Date(now.getTime() - 60000));
+        Transaction newer = new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet1,currency,"Newer");
+        newer.setLastUpdated(new Date(now.getTime() + 60000));
+        entityManager.persist(newer);
+        entityManager.persist(older);
+        entityManager.flush();
+
+        List<Transaction> page = transactionRepository.findPageByWalletId(wallet1.getId(), new Timestamp(0), 0, PageRequest.of(0, 2));
+        assertEquals(Arrays.asList(older.getId(), transaction.getId()), Arrays.asList(page.get(0).getId(), page.get(1).getId()));
+
+        page = transactionRepository.findPageByWalletId(wallet1.getId(), page.get(1).getLastUpdated(), page.get(1).getId(), PageRequest.of(0, 2));
+        assertEquals(1, page.size());
+        assertEquals(newer.getId(), page.get(0).getId());
+
+        List<Transaction> recent = transactionRepository.findRecentByWalletId(wallet1.getId(), PageRequest.of(0, 1));
+        assertEquals(newer.getId(), recent.get(0).getId());
+    }
+
+    @Test
+    public void testFindRecentByWalletId() {
+        Transaction second = new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet1,currency,"Second");
+        Transaction third = new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet1,currency,"Third");
+        entityManager.persist(second);
+        entityManager.persist(third);
+        entityManager.persist(new Transaction(String.valueOf(globalIdCounter++),typeCredit,new BigDecimal(5),wallet2,currency,"Other wallet"));
+        entityManager.flush();
+
+        List<Transaction> recent = transactionRepository.findRecentByWalletId(wallet1.getId(), PageRequest.of(0, 2));
+        assertEquals(2, recent.size());
+        assertEquals(third.getId(), recent.get(0).getId());
+        assertEquals(second.getId(), recent.get(1).getId());
+    }
+
     @Test
     public void testSave_Credit() {
         int counter = globalIdCounter++;
@@ -132,7 +192,7 @@ public class TransactionRepositoryTest {
         int counter = globalIdCounter++;
         Transaction transaction = new Transaction(String.valueOf(counter),typeCredit,new BigDecimal(20),wallet2,currency,"Credit transaction");
         try{
-            Transaction found = transactionRepository.save(transaction);
+            Transaction found = transactionRepository.saveAndFlush(transaction);
             fail();
         } catch(ConstraintViolationException ex){
             assertTrue( ex.getMessage().contains("Transaction currency must be provided"));
@@ -144,8 +204,7 @@ public class TransactionRepositoryTest {
         int counter = globalIdCounter - 1;
         Transaction transaction = new Transaction(String.valueOf(counter),typeCredit,new BigDecimal(20),wallet2,currency,"Credit transaction");
         try{
-            Transaction found = transactionRepository.save(transaction);
-            entityManager.flush();
+            Transaction found = transactionRepository.saveAndFlush(transaction);
             fail();
         } catch(DataIntegrityViolationException ex){
             assertTrue( ex.getMessage().contains("could not execute statement"));
@@ -173,8 +232,7 @@ public class TransactionRepositoryTest {
         int counter = globalIdCounter++;
         Transaction transaction = new Transaction(String.valueOf(counter),typeCredit,new BigDecimal(20),wallet,currency,"Credit transaction");
         try{
-            Transaction found = transactionRepository.save(transaction);
-            entityManager.flush();
+            Transaction found = transactionRepository.saveAndFlush(transaction);
             fail();
         } catch(DataIntegrityViolationException ex){
             assertTrue( ex.getMessage().contains("could not execute statement"));
@@ -187,8 +245,7 @@ public class TransactionRepositoryTest {
         int counter = globalIdCounter++;
         Transaction transaction = new Transaction(String.valueOf(counter),type,new BigDecimal(20),wallet2,currency,"Credit transaction");
         try{
-            Transaction found = transactionRepository.save(transaction);
-            entityManager.flush();
+            Transaction found = transactionRepository.saveAndFlush(transaction);
             fail();
         } catch(DataIntegrityViolationException ex){
             assertTrue( ex.getMessage().contains("could not execute statement"));
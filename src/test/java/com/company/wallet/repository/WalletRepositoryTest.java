@@ -14,6 +14,7 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -89,6 +90,18 @@ public class WalletRepositoryTest {
         assertTrue(found.get(1).getUserId().equals(USER));
     }
 
+    @Test
+    public void whenFindAll_thenReturnProjectedWallets() {
+        entityManager.clear();
+        List<Wallet> found = walletRepository.findAllByOrderByIdAsc();
+        assertEquals(2, found.size());
+        assertEquals(wallet1.getId(), found.get(0).getId());
+        assertEquals(TEST_CURRENCY, found.get(0).getCurrency().getName());
+        assertNotNull(found.get(0).getVersion());
+        //wallets are created by constructor, not loaded into persistence context
+        assertFalse(entityManager.getEntityManager().contains(found.get(0)));
+    }
+
     @Test
     public void whenFindByUserId_NotFound() {
         // when
@@ -98,6 +111,18 @@ public class WalletRepositoryTest {
         assertTrue(found.size() == 0);
     }
 
+    @Test
+    public void testForEachOrderById() {
+        List<Wallet> found = new ArrayList<>();
+        walletRepository.forEachOrderById(found::add);
+        assertTrue(found.size() >= 2);
+        assertTrue(found.get(0).getId().equals(wallet1.getId()));
+        assertTrue(found.get(1).getId().equals(wallet2.getId()));
+        assertTrue(found.get(0).getCurrency().getName().equals(wallet1.getCurrency().getName()));
+        //wallets are detached after they are consumed
+        assertFalse(entityManager.getEntityManager().contains(found.get(0)));
+    }
+
     @Test
     public void testFindAllByOrderByIdAsc() {
         List<Wallet> found = walletRepository.findAllByOrderByIdAsc();
@@ -124,7 +149,7 @@ public class WalletRepositoryTest {
         Currency currency = currencyRepository.findByName("AAA");
         Wallet wallet = new Wallet(USER,currency,new BigDecimal(0),LAST_UPDATED_BY);
         try{
-        Wallet found = walletRepository.save(wallet);
+        Wallet found = walletRepository.saveAndFlush(wallet);
         fail();
         } catch(ConstraintViolationException ex){
             assertTrue( ex.getMessage().contains("Wallet currency must be provided"));
@@ -136,7 +161,7 @@ public class WalletRepositoryTest {
         Currency currency = currencyRepository.findByName("AAA+++");
         Wallet wallet = new Wallet(USER,currency,new BigDecimal(0),LAST_UPDATED_BY);
         try{
-            Wallet found = walletRepository.save(wallet);
+            Wallet found = walletRepository.saveAndFlush(wallet);
             fail();
         } catch(ConstraintViolationException ex){
             assertTrue( ex.getMessage().contains("Wallet currency must be provided"));
@@ -0,0 +1,225 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.Helper;
+import com.company.wallet.helper.HelperImpl;
+import com.company.wallet.ledger.LedgerEntry;
+import com.company.wallet.repository.CurrencyRepository;
+import com.company.wallet.repository.TransactionRepository;
+import com.company.wallet.repository.TransactionTypeRepository;
+import com.company.wallet.repository.WalletRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.validation.beanvalidation.MethodValidationPostProcessor;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * InMemoryLedger tests
+ *
+ * @author Elena Medvedeva
+ */
+@RunWith(SpringRunner.class)
+public class InMemoryLedgerTest {
+    @TestConfiguration
+    static class InMemoryLedgerTestContextConfiguration {
+        @Bean
+        public InMemoryLedger inMemoryLedger() {
+            return new InMemoryLedgerImpl();
+        }
+
+        @Bean
+        public ReferenceDataRegistry referenceDataRegistry() {
+            return new ReferenceDataRegistryImpl();
+        }
+
+        @Bean
+        public Helper validator() {
+            return new HelperImpl();
+        }
+
+        @Bean
+        public MethodValidationPostProcessor methodValidationPostProcessor() {
+            return new MethodValidationPostProcessor();
+        }
+    }
+
+    private static final String EUR = "EUR";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private InMemoryLedger inMemoryLedger;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @MockBean
+    private TransactionWriter transactionWriter;
+
+    @MockBean
+    private TransactionRepository transactionRepository;
+
+    @MockBean
+    private WalletRepository walletRepository;
+
+    @MockBean
+    private CurrencyRepository currencyRepository;
+
+    @MockBean
+    private TransactionTypeRepository transactionTypeRepository;
+
+    private InMemoryLedgerImpl ledger;
+
+    @Before
+    public void setUp() throws IOException {
+        Currency currency = new Currency(1, EUR, "user");
+        Wallet wallet = new Wallet("user", currency, new BigDecimal(50), "user");
+        wallet.setId(1);
+        Mockito.when(currencyRepository.findAll()).thenReturn(Arrays.asList(currency));
+        Mockito.when(transactionTypeRepository.findAll()).thenReturn(Arrays.asList(new TransactionType("C", "credit", "user"), new TransactionType("D", "debit", "user")));
+        referenceData.refresh();
+        Mockito.when(walletRepository.findById(1)).thenReturn(Optional.of(wallet));
+        Mockito.when(walletRepository.findById(1001)).thenReturn(Optional.empty());
+        Mockito.when(transactionRepository.nextTransactionIds(Mockito.anyInt())).thenReturn(Arrays.asList(100, 101, 102));
+
+        ledger = AopTestUtils.getTargetObject(inMemoryLedger);
+        ledger.setWriteMode(WriteMode.IN_MEMORY_LEDGER);
+        ledger.setJournalPath(folder.getRoot().toPath().resolve("journal").toString());
+        ledger.setJournalSizeMb(1);
+        ledger.setFlushIntervalMs(60000);
+        ledger.init();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        ledger.shutdown();
+    }
+
+    @Test
+    public void testCreateTransaction_AppliedInMemory() throws WalletException {
+        Transaction debit = inMemoryLedger.createTransaction("g1", EUR, "1", "D", money("20"), "debit");
+        assertEquals(Integer.valueOf(100), debit.getId());
+        assertEquals(0, new BigDecimal(30).compareTo(debit.getWallet().getBalance()));
+
+        Transaction credit = inMemoryLedger.createTransaction("g2", EUR, "1", "C", money("5"), "credit");
+        assertEquals(Integer.valueOf(101), credit.getId());
+        assertEquals(0, new BigDecimal(35).compareTo(credit.getWallet().getBalance()));
+        Mockito.verify(transactionWriter, Mockito.never()).writeLedgerEntries(Mockito.anyList());
+    }
+
+    @Test
+    public void testCreateTransaction_NotEnoughFunds() throws WalletException {
+        inMemoryLedger.createTransaction("g1", EUR, "1", "D", money("40"), "debit");
+        try {
+            inMemoryLedger.createTransaction("g2", EUR, "1", "D", money("40"), "debit");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.NOT_ENOUGH_FUNDS, 1, "40.00"), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_DuplicateGlobalId() throws WalletException {
+        inMemoryLedger.createTransaction("g1", EUR, "1", "C", money("10"), "credit");
+        try {
+            inMemoryLedger.createTransaction("g1", EUR, "1", "C", money("10"), "credit");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, "g1"), ex.getMessage());
+            assertEquals(HttpStatus.CONFLICT.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_GlobalIdUsedInDatabase() throws WalletException {
+        Mockito.when(transactionRepository.findUsedGlobalIds(Collections.singleton("g0"))).thenReturn(new HashSet<>(Collections.singleton("g0")));
+        try {
+            inMemoryLedger.createTransaction("g0", EUR, "1", "C", money("10"), "credit");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, "g0"), ex.getMessage());
+            assertEquals(HttpStatus.CONFLICT.value(), ex.getErrorCode());
+        }
+        //balance of the wallet is unchanged by the rejected transaction
+        Transaction credit = inMemoryLedger.createTransaction("g1", EUR, "1", "C", money("10"), "credit");
+        assertEquals(0, new BigDecimal(60).compareTo(credit.getWallet().getBalance()));
+    }
+
+    @Test
+    public void testCreateTransaction_WalletNotFound() {
+        try {
+            inMemoryLedger.createTransaction("g1", EUR, "1001", "C", money("10"), "credit");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.NO_WALLET_FOUND, "1001"), ex.getMessage());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlush_WritesPendingEntries() throws WalletException {
+        inMemoryLedger.createTransaction("g1", EUR, "1", "C", money("10"), "credit");
+        inMemoryLedger.createTransaction("g2", EUR, "1", "D", money("20"), "debit");
+        inMemoryLedger.flush();
+
+        ArgumentCaptor<List<LedgerEntry>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(transactionWriter).writeLedgerEntries(captor.capture());
+        List<LedgerEntry> entries = captor.getValue();
+        assertEquals(2, entries.size());
+        assertEquals("g1", entries.get(0).getGlobalId());
+        assertEquals(0, new BigDecimal(40).compareTo(entries.get(1).getBalanceAfter()));
+
+        inMemoryLedger.flush();
+        Mockito.verify(transactionWriter, Mockito.times(1)).writeLedgerEntries(Mockito.anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testInit_ReplaysEntriesNotFlushed() throws Exception {
+        Mockito.doThrow(new IllegalStateException("database is down")).when(transactionWriter).writeLedgerEntries(Mockito.anyList());
+        inMemoryLedger.createTransaction("g1", EUR, "1", "C", money("10"), "credit");
+        //entry can't be written on shutdown, it stays in the journal
+        ledger.shutdown();
+
+        Mockito.reset(transactionWriter);
+        ledger.init();
+        ArgumentCaptor<List<LedgerEntry>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(transactionWriter).writeLedgerEntries(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("g1", captor.getValue().get(0).getGlobalId());
+    }
+
+    private static Money money(String amount) {
+        return Money.parse(amount, 2);
+    }
+}
@@ -0,0 +1,131 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.orm.jpa.JpaSystemException;
+
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * RetryExecutor tests
+ *
+ * @author Elena Medvedeva
+ */
+public class RetryExecutorTest {
+
+    private static final String WALLET_ID = "1";
+
+    private RetryExecutorImpl executor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new RetryExecutorImpl();
+        executor.setMeterRegistry(meterRegistry);
+        executor.setMaxAttempts(3);
+        executor.setInitialBackoffMs(1);
+        executor.setMaxBackoffMs(2);
+        executor.init();
+    }
+
+    @Test
+    public void testExecute_RetriedUntilSuccess() throws WalletException {
+        AtomicInteger calls = new AtomicInteger();
+        String result = executor.execute(WALLET_ID, () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("Wallet", 1);
+            }
+            return "done";
+        });
+        assertEquals("done", result);
+        assertEquals(3, calls.get());
+        assertEquals(2.0, meterRegistry.counter("wallet.transaction.retries").count(), 0);
+        assertEquals(0.0, meterRegistry.counter("wallet.transaction.retries.exhausted").count(), 0);
+    }
+
+    @Test
+    public void testExecute_GivesUpAfterMaxAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            executor.execute(WALLET_ID, () -> {
+                calls.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException("Wallet", 1);
+            });
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.CONCURRENT_UPDATE, WALLET_ID), ex.getMessage());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getErrorCode());
+        }
+        assertEquals(3, calls.get());
+        assertEquals(2.0, meterRegistry.counter("wallet.transaction.retries").count(), 0);
+        assertEquals(1.0, meterRegistry.counter("wallet.transaction.retries.exhausted").count(), 0);
+    }
+
+    @Test
+    public void testExecute_InterruptedBackoff() {
+        AtomicInteger calls = new AtomicInteger();
+        executor.setInitialBackoffMs(1000);
+        executor.setMaxBackoffMs(1000);
+        Thread.currentThread().interrupt();
+        try {
+            executor.execute(WALLET_ID, () -> {
+                calls.incrementAndGet();
+                throw new ObjectOptimisticLockingFailureException("Wallet", 1);
+            });
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.RETRY_INTERRUPTED, WALLET_ID), ex.getMessage());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getErrorCode());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testExecute_WalletExceptionNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            executor.execute(WALLET_ID, () -> {
+                calls.incrementAndGet();
+                throw new WalletException("error", HttpStatus.BAD_REQUEST.value());
+            });
+            fail();
+        } catch (WalletException ex) {
+            assertEquals("error", ex.getMessage());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testExecute_DataIntegrityViolationNotRetried() throws WalletException {
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            executor.execute(WALLET_ID, () -> {
+                calls.incrementAndGet();
+                throw new DataIntegrityViolationException("duplicate key");
+            });
+            fail();
+        } catch (DataIntegrityViolationException ex) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void testIsRetryable_SqlState() {
+        assertTrue(RetryExecutorImpl.isRetryable(new JpaSystemException(new PersistenceException(new SQLException("serialization", "40001")))));
+        assertTrue(RetryExecutorImpl.isRetryable(new JpaSystemException(new PersistenceException(new SQLException("deadlock", "40P01")))));
+        assertFalse(RetryExecutorImpl.isRetryable(new JpaSystemException(new PersistenceException(new SQLException("unique", "23505")))));
+    }
+}
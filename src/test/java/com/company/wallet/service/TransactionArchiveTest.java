@@ -0,0 +1,166 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.repository.TransactionRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * TransactionArchive tests on a temporary folder, database is mocked.
+ *
+ * @author Elena Medvedeva
+ */
+public class TransactionArchiveTest {
+
+    private static final YearMonth OCTOBER = YearMonth.of(2025, 10);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransactionRepository transactionRepository;
+    private WalletCache walletCache;
+    private TransactionArchiveImpl archive;
+    private TransactionType credit = new TransactionType("C", "credit trn", "admin");
+    private Currency currency = new Currency(1, "EUR", "admin");
+
+    @Before
+    public void setUp() throws IOException {
+        transactionRepository = Mockito.mock(TransactionRepository.class);
+        walletCache = Mockito.mock(WalletCache.class);
+        ReferenceDataRegistry referenceData = Mockito.mock(ReferenceDataRegistry.class);
+        Mockito.when(referenceData.findTransactionType("C")).thenReturn(credit);
+        Mockito.when(referenceData.findCurrency("EUR")).thenReturn(currency);
+
+        // wallets 1, 2 (segment wallets-0) and 12 (segment wallets-10), 3 transactions each
+        Mockito.doAnswer(invocation -> {
+            BiConsumer<Integer, Transaction> consumer = invocation.getArgument(2);
+            int id = 1;
+            for (int walletId : new int[]{1, 2, 12}) {
+                for (int day = 1; day <= 3; day++) {
+                    consumer.accept(walletId, new Transaction(id, "g" + id, credit, BigDecimal.TEN, currency, "day " + day,
+                            Timestamp.valueOf(OCTOBER.atDay(day).atTime(12, 0)), "admin"));
+                    id++;
+                }
+            }
+            return null;
+        }).when(transactionRepository).forEachCreatedBetween(any(), any(), any());
+
+        archive = newArchive();
+        archive.setReferenceData(referenceData);
+        archive.init();
+    }
+
+    @After
+    public void tearDown() {
+        archive.shutdown();
+    }
+
+    @Test
+    public void testArchiveMonth() throws Exception {
+        assertNull(archive.getHorizon());
+        assertTrue(archive.findTransactions(1).isEmpty());
+        Mockito.when(transactionRepository.dropPartition("transaction_p2025_10")).thenReturn(Arrays.asList(1, 2, 12));
+
+        archive.archiveMonth(OCTOBER);
+
+        Mockito.verify(transactionRepository).forEachCreatedBetween(eq(Timestamp.valueOf("2025-10-01 00:00:00")), eq(Timestamp.valueOf("2025-11-01 00:00:00")), any());
+        Mockito.verify(transactionRepository).dropPartition("transaction_p2025_10");
+        Mockito.verify(walletCache).evictAfterCommit(12);
+        assertEquals(Timestamp.valueOf("2025-11-01 00:00:00"), archive.getHorizon());
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve("2025_10/wallets-0.idx")));
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve("2025_10/wallets-10.idx")));
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("2025_10.tmp")));
+
+        List<Transaction> found = archive.findTransactions(12);
+        assertEquals(Arrays.asList(7, 8, 9), ids(found));
+        Transaction first = found.get(0);
+        assertEquals("g7", first.getGlobalId());
+        assertEquals(credit, first.getType());
+        assertEquals(currency, first.getCurrency());
+        assertEquals(0, BigDecimal.TEN.compareTo(first.getAmount()));
+        assertEquals("day 1", first.getDescription());
+        assertEquals(Timestamp.valueOf("2025-10-01 12:00:00"), first.getLastUpdated());
+        assertTrue(archive.findTransactions(3).isEmpty());
+        assertTrue(archive.findTransactions(25).isEmpty());
+    }
+
+    @Test
+    public void testFindTransactionsAfterCursor() throws Exception {
+        archive.archiveMonth(OCTOBER);
+
+        assertEquals(Arrays.asList(4, 5), ids(archive.findTransactions(2, TransactionPage.Cursor.FIRST, 2)));
+        TransactionPage.Cursor cursor = new TransactionPage.Cursor(Timestamp.valueOf("2025-10-02 12:00:00"), 5);
+        assertEquals(Collections.singletonList(6), ids(archive.findTransactions(2, cursor, 2)));
+    }
+
+    @Test
+    public void testArchivedMonthsAreFoundOnStart() throws Exception {
+        archive.archiveMonth(OCTOBER);
+        archive.shutdown();
+        Files.createDirectories(folder.getRoot().toPath().resolve("2025_11.tmp"));
+
+        archive = newArchive();
+        archive.setReferenceData(Mockito.mock(ReferenceDataRegistry.class));
+        archive.init();
+        assertEquals(Timestamp.valueOf("2025-11-01 00:00:00"), archive.getHorizon());
+        assertEquals(3, archive.findTransactions(1).size());
+    }
+
+    @Test
+    public void testArchiveExpired() {
+        Mockito.when(transactionRepository.findPartitions()).thenReturn(Arrays.asList(
+                "transaction_p2025_11", "transaction_p2025_10", "transaction_p2026_10", "transaction_global_id"));
+
+        assertEquals(Collections.singletonList(OCTOBER), archive.archiveExpired(LocalDate.of(2026, 11, 18)));
+        Mockito.verify(transactionRepository).dropPartition("transaction_p2025_10");
+        Mockito.verify(transactionRepository, Mockito.times(1)).dropPartition(anyString());
+    }
+
+    @Test
+    public void testArchivedMonthIsNotWrittenTwice() {
+        archive.archiveMonth(OCTOBER);
+        archive.archiveMonth(OCTOBER);
+        Mockito.verify(transactionRepository, Mockito.times(1)).forEachCreatedBetween(any(Date.class), any(Date.class), any());
+        Mockito.verify(transactionRepository, Mockito.times(2)).dropPartition(anyString());
+    }
+
+    private TransactionArchiveImpl newArchive() {
+        TransactionArchiveImpl archive = new TransactionArchiveImpl();
+        archive.setTransactionRepository(transactionRepository);
+        archive.setWalletCache(walletCache);
+        archive.setPath(folder.getRoot().getPath());
+        archive.setWalletsPerSegment(10);
+        archive.setBlockSize(2);
+        archive.setRetentionMonths(12);
+        archive.setOpenSegments(16);
+        return archive;
+    }
+
+    private static List<Integer> ids(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getId).collect(Collectors.toList());
+    }
+}
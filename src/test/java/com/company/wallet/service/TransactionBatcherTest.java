@@ -0,0 +1,137 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.view.model.TransactionModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * TransactionBatcher tests
+ *
+ * @author Elena Medvedeva
+ */
+public class TransactionBatcherTest {
+
+    private TransactionBatcherImpl batcher;
+    private TransactionWriter transactionWriter;
+    private SimpleMeterRegistry meterRegistry;
+
+    @Before
+    public void setUp() {
+        transactionWriter = Mockito.mock(TransactionWriter.class);
+        meterRegistry = new SimpleMeterRegistry();
+        RetryExecutorImpl retryExecutor = new RetryExecutorImpl();
+        retryExecutor.setMeterRegistry(meterRegistry);
+        retryExecutor.setMaxAttempts(1);
+        retryExecutor.init();
+
+        batcher = new TransactionBatcherImpl();
+        batcher.setTransactionWriter(transactionWriter);
+        batcher.setRetryExecutor(retryExecutor);
+        batcher.setMeterRegistry(meterRegistry);
+        batcher.setMaxBatchSize(10);
+        batcher.setMaxWaitMs(200);
+        batcher.setQueueCapacity(100);
+        batcher.init();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        batcher.shutdown();
+    }
+
+    @Test
+    public void testSubmit_ConcurrentTransactionsShareBatch() throws Exception {
+        Mockito.when(transactionWriter.createTransactions(Mockito.anyList(), Mockito.anyList(), Mockito.eq(false))).thenAnswer(invocation -> {
+            List<TransactionModel> models = invocation.getArgument(0);
+            //amounts parsed by the caller are passed to the writer
+            List<Money> amounts = invocation.getArgument(1);
+            assertEquals(Collections.nCopies(models.size(), money("10")), amounts);
+            List<TransactionResult> results = new ArrayList<>();
+            for (TransactionModel model : models) {
+                if (model.getGlobalId().equals("3")) {
+                    results.add(TransactionResult.failure(new WalletException("failed " + model.getGlobalId(), HttpStatus.BAD_REQUEST.value())));
+                } else {
+                    Transaction transaction = new Transaction();
+                    transaction.setGlobalId(model.getGlobalId());
+                    results.add(TransactionResult.success(transaction));
+                }
+            }
+            return results;
+        });
+
+        ExecutorService clients = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 1; i <= 5; i++) {
+                String globalId = String.valueOf(i);
+                futures.add(clients.submit(() -> {
+                    try {
+                        return batcher.submit(model(globalId), money("10")).getGlobalId();
+                    } catch (WalletException e) {
+                        return e.getMessage();
+                    }
+                }));
+            }
+            for (int i = 1; i <= 5; i++) {
+                String expected = i == 3 ? "failed 3" : String.valueOf(i);
+                assertEquals(expected, futures.get(i - 1).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        long batches = meterRegistry.summary("wallet.transaction.group-commit.batch.size").count();
+        assertTrue(batches < 5);
+        Mockito.verify(transactionWriter, Mockito.times((int) batches)).createTransactions(Mockito.anyList(), Mockito.anyList(), Mockito.eq(false));
+    }
+
+    @Test
+    public void testSubmit_BatchFailureFallsBackToSingleWrites() throws Exception {
+        Mockito.when(transactionWriter.createTransactions(Mockito.anyList(), Mockito.anyList(), Mockito.eq(false)))
+                .thenThrow(new DataIntegrityViolationException(ErrorMessage.DUPLICATE_KEY));
+        Transaction transaction = new Transaction();
+        transaction.setGlobalId("1");
+        Mockito.when(transactionWriter.createTransactionLocked("1", "EUR", "1", "C", money("10"), null)).thenReturn(transaction);
+
+        assertEquals("1", batcher.submit(model("1"), money("10")).getGlobalId());
+        Mockito.verify(transactionWriter).createTransactionLocked("1", "EUR", "1", "C", money("10"), null);
+    }
+
+    @Test
+    public void testSubmit_RejectedAfterShutdown() throws Exception {
+        batcher.shutdown();
+        try {
+            batcher.submit(model("1"), money("10"));
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(ErrorMessage.GROUP_COMMIT_QUEUE_FULL, ex.getMessage());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getErrorCode());
+        }
+    }
+
+    private static TransactionModel model(String globalId) {
+        return new TransactionModel(globalId, "EUR", "1", "C", "10", null);
+    }
+
+    private static Money money(String amount) {
+        return Money.parse(amount, 2);
+    }
+}
@@ -0,0 +1,180 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.TransactionImport;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.HelperImpl;
+import com.company.wallet.repository.TransactionImportRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * TransactionImportService and TransactionImporter tests, database is mocked.
+ *
+ * @author Elena Medvedeva
+ */
+public class TransactionImportServiceTest {
+
+    private static final String UPDATED_BY = "wallet-microservice";
+
+    private TransactionImportRepository repository;
+    private TransactionPartitionManager partitionManager;
+    private TransactionArchive archive;
+    private WalletCache walletCache;
+    private TransactionImporterImpl importer;
+    private TransactionImportServiceImpl service;
+    private TransactionImport transactionImport;
+
+    @Before
+    public void setUp() {
+        repository = Mockito.mock(TransactionImportRepository.class);
+        partitionManager = Mockito.mock(TransactionPartitionManager.class);
+        archive = Mockito.mock(TransactionArchive.class);
+        walletCache = Mockito.mock(WalletCache.class);
+
+        importer = new TransactionImporterImpl();
+        importer.setTransactionImportRepository(repository);
+        importer.setWalletCache(walletCache);
+        importer.setInputParametersValidator(new HelperImpl());
+        importer.setUpdatedBy(UPDATED_BY);
+        importer.setTransactionTypeCredit("C");
+
+        service = new TransactionImportServiceImpl();
+        service.setImporter(importer);
+        service.setTransactionImportRepository(repository);
+        service.setPartitionManager(partitionManager);
+        service.setTransactionArchive(archive);
+        service.setInputParametersValidator(new HelperImpl());
+        service.setWriteMode(WriteMode.SERIALIZABLE);
+        service.setChunkSize(100);
+        service.setMaxPageLimit(1000);
+
+        transactionImport = new TransactionImport("2017", UPDATED_BY);
+        transactionImport.setId(3);
+        transactionImport.setRowsLoaded(250);
+        Mockito.when(repository.findById(3)).thenReturn(Optional.of(transactionImport));
+        Mockito.when(repository.findByIdForUpdate(3)).thenReturn(transactionImport);
+    }
+
+    @Test
+    public void testRunAllStages() throws WalletException {
+        List<YearMonth> months = Arrays.asList(YearMonth.of(2017, 1), YearMonth.of(2017, 2));
+        Mockito.when(repository.validateRows(eq(3), any(), eq("C"))).thenReturn(12L);
+        Mockito.when(repository.findLastRow(3)).thenReturn(250L);
+        Mockito.when(repository.findMonths(3)).thenReturn(months);
+        Mockito.when(repository.moveRows(eq(3), anyLong(), anyLong(), eq(UPDATED_BY))).thenReturn(95, 100, 43);
+
+        //complete starts the import and runs it in the background, here it is run in the test thread
+        importer.start(3);
+        assertEquals(TransactionImport.Status.RUNNING, transactionImport.getStatus());
+        service.run(3);
+
+        InOrder inOrder = Mockito.inOrder(repository, partitionManager, walletCache);
+        inOrder.verify(repository).validateRows(3, new Timestamp(0), "C");
+        inOrder.verify(partitionManager).createPartitions(months);
+        inOrder.verify(repository).moveRows(3, 0, 100, UPDATED_BY);
+        inOrder.verify(repository).moveRows(3, 100, 200, UPDATED_BY);
+        inOrder.verify(repository).moveRows(3, 200, 250, UPDATED_BY);
+        inOrder.verify(repository).updateBalances(3, "C", UPDATED_BY);
+        inOrder.verify(walletCache).evictAllAfterCommit();
+
+        assertEquals(TransactionImport.Status.COMPLETED, transactionImport.getStatus());
+        assertEquals(TransactionImport.Stage.DONE, transactionImport.getStage());
+        assertEquals(12, transactionImport.getRowsRejected());
+        assertEquals(238, transactionImport.getRowsImported());
+        assertEquals(100, transactionImport.getProgress());
+    }
+
+    @Test
+    public void testResumeFromLastChunk() throws WalletException {
+        transactionImport.setStatus(TransactionImport.Status.FAILED);
+        transactionImport.setError(TransactionImportServiceImpl.INTERRUPTED);
+        transactionImport.setStage(TransactionImport.Stage.MOVE);
+        transactionImport.setLastRow(250);
+        transactionImport.setLastMovedRow(100);
+        transactionImport.setRowsImported(100);
+        assertEquals(40, transactionImport.getProgress());
+        Mockito.when(repository.moveRows(eq(3), anyLong(), anyLong(), eq(UPDATED_BY))).thenReturn(100, 50);
+
+        importer.start(3);
+        assertNull(transactionImport.getError());
+        service.run(3);
+
+        Mockito.verify(repository, Mockito.never()).validateRows(any(), any(), any());
+        Mockito.verify(repository, Mockito.never()).moveRows(3, 0, 100, UPDATED_BY);
+        Mockito.verify(repository).moveRows(3, 100, 200, UPDATED_BY);
+        Mockito.verify(repository).moveRows(3, 200, 250, UPDATED_BY);
+        assertEquals(250, transactionImport.getRowsImported());
+        assertEquals(TransactionImport.Status.COMPLETED, transactionImport.getStatus());
+    }
+
+    @Test
+    public void testHorizon() throws WalletException {
+        Timestamp archived = Timestamp.valueOf("2018-01-01 00:00:00");
+        Mockito.when(archive.getHorizon()).thenReturn(archived);
+        Mockito.when(partitionManager.getRetentionHorizon()).thenReturn(Timestamp.valueOf("2017-06-01 00:00:00"));
+        transactionImport.setStatus(TransactionImport.Status.RUNNING);
+
+        service.run(3);
+
+        Mockito.verify(repository).validateRows(3, archived, "C");
+    }
+
+    @Test
+    public void testStatusMismatch() {
+        transactionImport.setStatus(TransactionImport.Status.COMPLETED);
+        try {
+            importer.start(3);
+            fail("Completed import can't be started");
+        } catch (WalletException e) {
+            assertEquals(HttpStatus.CONFLICT.value(), e.getErrorCode());
+            assertEquals(String.format(ErrorMessage.IMPORT_STATUS_MISMATCH, 3, TransactionImport.Status.COMPLETED, "[LOADING, FAILED]"), e.getMessage());
+        }
+        try {
+            service.loadRows(3, new ByteArrayInputStream(new byte[0]), true);
+            fail("Rows can't be loaded into completed import");
+        } catch (WalletException e) {
+            assertEquals(HttpStatus.CONFLICT.value(), e.getErrorCode());
+        }
+        Mockito.verify(repository, Mockito.never()).copyRows(any(), any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void testValidation() {
+        service.setWriteMode(WriteMode.APPEND_ONLY);
+        try {
+            service.create("2017");
+            fail("Import is not supported");
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.IMPORT_NOT_SUPPORTED, WriteMode.APPEND_ONLY), e.getMessage());
+        }
+        try {
+            service.findRejectedRows(3, 0, 1001);
+            fail("Limit out of range");
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.PAGE_LIMIT_OUT_OF_RANGE, 1000), e.getMessage());
+        }
+        try {
+            service.find(4);
+            fail("Import not found");
+        } catch (WalletException e) {
+            assertEquals(HttpStatus.BAD_REQUEST.value(), e.getErrorCode());
+            assertEquals(String.format(ErrorMessage.NO_IMPORT_FOUND, 4), e.getMessage());
+        }
+    }
+}
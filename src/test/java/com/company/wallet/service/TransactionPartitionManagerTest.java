@@ -0,0 +1,73 @@
+package com.company.wallet.service;
+
+import com.company.wallet.repository.TransactionRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * TransactionPartitionManager tests
+ *
+ * @author Elena Medvedeva
+ */
+public class TransactionPartitionManagerTest {
+
+    private TransactionRepository transactionRepository;
+    private WalletCache walletCache;
+    private TransactionPartitionManagerImpl manager;
+
+    @Before
+    public void setUp() {
+        transactionRepository = Mockito.mock(TransactionRepository.class);
+        walletCache = Mockito.mock(WalletCache.class);
+        manager = new TransactionPartitionManagerImpl();
+        manager.setTransactionRepository(transactionRepository);
+        manager.setWalletCache(walletCache);
+        manager.setMonthsAhead(2);
+    }
+
+    @Test
+    public void testCreatesMissingPartitions() {
+        Mockito.when(transactionRepository.findPartitions()).thenReturn(Arrays.asList("transaction_p2026_10", "transaction_p2026_11"));
+
+        manager.maintainPartitions(LocalDate.of(2026, 10, 18));
+
+        Mockito.verify(transactionRepository).createPartition("transaction_p2026_12", LocalDate.of(2026, 12, 1), LocalDate.of(2027, 1, 1));
+        Mockito.verify(transactionRepository, Mockito.times(1)).createPartition(anyString(), any(), any());
+        Mockito.verify(transactionRepository, Mockito.never()).detachPartition(anyString());
+    }
+
+    @Test
+    public void testDetachesPartitionsOutOfRetention() {
+        manager.setRetentionMonths(12);
+        Mockito.when(transactionRepository.findPartitions()).thenReturn(Arrays.asList(
+                "transaction_p2025_09", "transaction_p2025_10", "transaction_p2025_11", "transaction_archive",
+                "transaction_p2026_10", "transaction_p2026_11", "transaction_p2026_12"));
+        Mockito.when(transactionRepository.detachPartition("transaction_p2025_09")).thenReturn(Arrays.asList(1, 2));
+
+        manager.maintainPartitions(LocalDate.of(2026, 10, 1));
+
+        Mockito.verify(transactionRepository).detachPartition("transaction_p2025_09");
+        Mockito.verify(transactionRepository, Mockito.times(1)).detachPartition(anyString());
+        //wallet versions were incremented by the detach
+        Mockito.verify(walletCache).evictAfterCommit(1);
+        Mockito.verify(walletCache).evictAfterCommit(2);
+        Mockito.verify(transactionRepository, Mockito.never()).createPartition(anyString(), any(), any());
+    }
+
+    @Test
+    public void testPartitionNames() {
+        assertEquals("transaction_p2026_01", TransactionPartitionManagerImpl.nameOf(YearMonth.of(2026, 1)));
+        assertEquals(YearMonth.of(2026, 1), TransactionPartitionManagerImpl.monthOf("transaction_p2026_01"));
+        assertNull(TransactionPartitionManagerImpl.monthOf("transaction_p2026"));
+        assertNull(TransactionPartitionManagerImpl.monthOf("transaction_global_id"));
+    }
+}
@@ -1,17 +1,24 @@
 package com.company.wallet.service;
 
 import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
 import com.company.wallet.entities.Transaction;
 import com.company.wallet.entities.TransactionType;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.ErrorMessage;
 import com.company.wallet.exceptions.WalletException;
 import com.company.wallet.helper.Helper;
+import com.company.wallet.ledger.LedgerEntry;
 import com.company.wallet.repository.CurrencyRepository;
+import com.company.wallet.repository.PendingBalance;
+import com.company.wallet.repository.SlotBalance;
 import com.company.wallet.repository.TransactionRepository;
 import com.company.wallet.repository.TransactionTypeRepository;
 import com.company.wallet.repository.WalletRepository;
 import com.company.wallet.helper.HelperImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.company.wallet.view.model.TransactionModel;
 import org.hibernate.ObjectNotFoundException;
 import org.junit.Before;
 import org.junit.Test;
@@ -22,12 +29,26 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.AopTestUtils;
 import org.springframework.validation.beanvalidation.MethodValidationPostProcessor;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import static com.company.wallet.exceptions.ErrorMessage.NUMBER_FORMAT_MISMATCH;
@@ -49,6 +70,66 @@ public class TransactionServiceTest {
             return new TransactionServiceImpl();
         }
 
+        @Bean
+        public TransactionWriter transactionWriter() {
+            return new TransactionWriterImpl();
+        }
+
+        @Bean
+        public WalletLaneExecutor walletLaneExecutor() {
+            return new WalletLaneExecutorImpl();
+        }
+
+        @Bean
+        public TransactionBatcher transactionBatcher() {
+            return new TransactionBatcherImpl();
+        }
+
+        @Bean
+        public InMemoryLedger inMemoryLedger() {
+            return new InMemoryLedgerImpl();
+        }
+
+        @Bean
+        public WalletCache walletCache() {
+            return new WalletCacheImpl();
+        }
+
+        @Bean
+        public BalanceMaterializer balanceMaterializer() {
+            return new BalanceMaterializerImpl();
+        }
+
+        @Bean
+        public WalletBalanceSlots walletBalanceSlots() {
+            return new WalletBalanceSlotsImpl();
+        }
+
+        @Bean
+        public WalletEventOutbox walletEventOutbox() {
+            return new WalletEventOutboxImpl();
+        }
+
+        @Bean
+        public IdempotencyCache idempotencyCache() {
+            return new IdempotencyCacheImpl();
+        }
+
+        @Bean
+        public ReferenceDataRegistry referenceDataRegistry() {
+            return new ReferenceDataRegistryImpl();
+        }
+
+        @Bean
+        public RetryExecutor retryExecutor() {
+            return new RetryExecutorImpl();
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
         @Bean
         public Helper validator() {
             return new HelperImpl();
@@ -78,6 +159,15 @@ public class TransactionServiceTest {
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private TransactionWriter transactionWriter;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
+    @Autowired
+    private WalletBalanceSlots walletBalanceSlots;
+
     @MockBean
     private WalletRepository walletRepository;
 
@@ -93,6 +183,9 @@ public class TransactionServiceTest {
     @MockBean
     private WalletService walletService;
 
+    @MockBean
+    private TransactionArchive transactionArchive;
+
     private Currency currency;
     private Wallet wallet1;
     private Wallet wallet2;
@@ -114,7 +207,12 @@ public class TransactionServiceTest {
         transactionCredit.setId(5);
         transactionDebit = new Transaction(String.valueOf(globalIdCounter++) ,typeDebit,new BigDecimal(20),wallet2,currency,"Debit transaction");
         transactionDebit.setId(6);
-
+        TransactionWriterImpl writer = AopTestUtils.getTargetObject(transactionWriter);
+        writer.setTransactionTypeCredit("C");
+        writer.setTransactionTypeDebit("D");
+        //ids of wallets with slots are read from the mocked repository by every write
+        WalletBalanceSlotsImpl balanceSlots = AopTestUtils.getTargetObject(walletBalanceSlots);
+        balanceSlots.setRefreshMs(-1);
 
         //getTransactionsByWalletId
         Mockito.when(walletService.findById(wallet1.getId())).thenReturn(wallet1);
@@ -127,10 +225,15 @@ public class TransactionServiceTest {
 
         //createTransaction
         Currency wrong = new Currency(2, "Wrong",LAST_UPDATED_BY);
-        Mockito.when(currencyRepository.findByName("Wrong")).thenReturn(wrong);
         Mockito.when(walletRepository.save(new Wallet(USER,wrong, new BigDecimal(0), LAST_UPDATED_BY))).thenThrow(new ObjectNotFoundException("",""));
 
-        Mockito.when(currencyRepository.findByName(TEST_CURRENCY)).thenReturn(currency);
+        //reference data
+        Mockito.when(currencyRepository.findAll()).thenReturn(Arrays.asList(currency, wrong));
+        Mockito.when(transactionTypeRepository.findAll()).thenReturn(Arrays.asList(typeCredit, typeDebit,
+                new TransactionType("C", "credit trn", LAST_UPDATED_BY), new TransactionType("D", "debit trn", LAST_UPDATED_BY)));
+        referenceData.refresh();
+
+        Mockito.when(currencyRepository.getOne(currency.getId())).thenReturn(currency);
         Mockito.when(transactionTypeRepository.getOne(typeCredit.getId())).thenReturn(typeCredit);
         Mockito.when(transactionTypeRepository.getOne(typeDebit.getId())).thenReturn(typeDebit);
         Mockito.when(walletService.findById(wallet1.getId())).thenReturn(wallet1);
@@ -160,11 +263,98 @@ public class TransactionServiceTest {
         }
     }
 
+    @Test
+    public void testGetTransactionsPage_NextCursor() throws WalletException {
+        Transaction third = new Transaction(String.valueOf(globalIdCounter++), typeCredit, new BigDecimal(1), wallet1, currency, "Third");
+        third.setId(7);
+        Timestamp debitTime = Timestamp.valueOf("2026-10-18 10:15:30.123456");
+        transactionDebit.setLastUpdated(debitTime);
+        Mockito.when(transactionRepository.findPageByWalletId(wallet1.getId(), new Timestamp(0), 0, PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(transactionCredit, transactionDebit, third));
+
+        TransactionPage page = transactionService.getTransactionsPage(wallet1.getId(), null, 2);
+        assertEquals(Arrays.asList(transactionCredit, transactionDebit), page.getTransactions());
+        TransactionPage.Cursor cursor = TransactionPage.decodeCursor(page.getNextCursor());
+        assertEquals(transactionDebit.getId(), cursor.getAfterId());
+        assertEquals(debitTime, cursor.getAfterTime());
+
+        Mockito.when(transactionRepository.findPageByWalletId(wallet1.getId(), debitTime, transactionDebit.getId(), PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(third));
+        page = transactionService.getTransactionsPage(wallet1.getId(), page.getNextCursor(), 2);
+        assertEquals(Arrays.asList(third), page.getTransactions());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void testGetTransactionsPage_AcrossArchiveHorizon() throws WalletException {
+        Timestamp horizon = Timestamp.valueOf("2025-11-01 00:00:00");
+        Mockito.when(transactionArchive.getHorizon()).thenReturn(horizon);
+        transactionCredit.setLastUpdated(Timestamp.valueOf("2025-10-31 23:59:59"));
+        transactionDebit.setLastUpdated(Timestamp.valueOf("2025-11-02 10:00:00"));
+        Mockito.when(transactionArchive.findTransactions(wallet1.getId(), TransactionPage.Cursor.FIRST, 3))
+                .thenReturn(Arrays.asList(transactionCredit));
+        Mockito.when(transactionRepository.findPageByWalletId(wallet1.getId(), horizon, 0, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(transactionDebit));
+
+        TransactionPage page = transactionService.getTransactionsPage(wallet1.getId(), null, 2);
+        assertEquals(Arrays.asList(transactionCredit, transactionDebit), page.getTransactions());
+        assertNull(page.getNextCursor());
+
+        Mockito.when(transactionRepository.findByWallet(wallet1)).thenReturn(Arrays.asList(transactionDebit));
+        Mockito.when(transactionArchive.findTransactions(wallet1.getId())).thenReturn(Arrays.asList(transactionCredit));
+        assertEquals(Arrays.asList(transactionCredit, transactionDebit), transactionService.getTransactionsByWalletId(wallet1.getId()));
+    }
+
+    @Test
+    public void testGetTransactionsPage_Failed() throws WalletException {
+        try {
+            transactionService.getTransactionsPage(wallet1.getId(), "not a cursor", null);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.MALFORMED_CURSOR, "not a cursor"), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+        try {
+            transactionService.getTransactionsPage(wallet1.getId(), null, 0);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testExportTransactions() throws WalletException {
+        OutputStream out = new ByteArrayOutputStream();
+        Mockito.when(walletService.findByIdCached(wallet1.getId())).thenReturn(wallet1);
+        Mockito.when(transactionRepository.copyTransactions(wallet1.getId(), Timestamp.valueOf("2025-11-02 00:00:00"), Timestamp.valueOf("2025-11-03 00:00:00"), out))
+                .thenReturn(2L);
+        assertEquals(2L, transactionService.exportTransactions(wallet1.getId(), LocalDate.of(2025, 11, 2), out));
+
+        //export of a wallet starts at the archive horizon, archived days are rejected
+        Timestamp horizon = Timestamp.valueOf("2025-11-01 00:00:00");
+        Mockito.when(transactionArchive.getHorizon()).thenReturn(horizon);
+        transactionService.exportTransactions(wallet1.getId(), null, out);
+        Mockito.verify(transactionRepository).copyTransactions(wallet1.getId(), horizon, null, out);
+        try {
+            transactionService.exportTransactions(null, LocalDate.of(2025, 10, 31), out);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.EXPORT_DAY_ARCHIVED, "2025-11-01"), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+        try {
+            transactionService.exportTransactions(null, null, out);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(ErrorMessage.EXPORT_FILTER_MISSING, ex.getMessage());
+        }
+    }
+
     //public Transaction createTransaction(@NotBlank String globalId, @NotBlank  String currency, @NotBlank String walletId, @NotBlank String transactionTypeId, @NotBlank String amount, String description) throws WalletException;
     @Test
     public void testCreateTransaction_SuccessCredit() throws WalletException {
         int amount = 100;
-        Mockito.when(walletService.updateWalletAmount(wallet1,String.valueOf(amount),true)).thenReturn(wallet1);
+        Mockito.when(walletService.updateWalletAmount(wallet1, money(amount),true)).thenReturn(wallet1);
         Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionCredit);
         int counter = globalIdCounter++;
         Transaction found = transactionService.createTransaction(String.valueOf(counter),currency.getName(),wallet1.getId().toString(),typeCredit.getId(),String.valueOf(amount),"Success trn");
@@ -175,7 +365,7 @@ public class TransactionServiceTest {
     @Test
     public void testCreateTransaction_SuccessDebit() throws WalletException {
         int amount = -10;
-        Mockito.when(walletService.updateWalletAmount(wallet2,String.valueOf(amount),false)).thenReturn(wallet2);
+        Mockito.when(walletService.updateWalletAmount(wallet2, money(amount),false)).thenReturn(wallet2);
         Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionDebit);
         int counter = globalIdCounter++;
         Transaction found = transactionService.createTransaction(String.valueOf(counter),currency.getName(),wallet2.getId().toString(), typeDebit.getId(),String.valueOf(amount),"Success trn");
@@ -183,12 +373,428 @@ public class TransactionServiceTest {
         assertTrue(found.getId().equals(transactionDebit.getId()) );
     }
 
+    @Test
+    public void testCreateTransaction_ReferenceDataFromRegistry() throws WalletException {
+        int amount = 100;
+        Mockito.when(walletService.updateWalletAmount(wallet1, money(amount),true)).thenReturn(wallet1);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++),currency.getName(),wallet1.getId().toString(),"C",String.valueOf(amount),"Registry trn");
+        assertEquals("credit trn", found.getType().getDescription());
+        assertSame(currency, found.getCurrency());
+        Mockito.verify(currencyRepository, Mockito.never()).findByName(Mockito.anyString());
+        Mockito.verify(transactionTypeRepository, Mockito.never()).findById(Mockito.anyString());
+    }
+
+    @Test
+    public void testCreateTransaction_UnknownTransactionType() throws WalletException {
+        try {
+            transactionService.createTransaction(String.valueOf(globalIdCounter++),currency.getName(),wallet1.getId().toString(),"X","10","Unknown type");
+            fail();
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.NO_TRANSACTION_TYPE_PRESENT, "X"), e.getMessage());
+            assertEquals(HttpStatus.CONFLICT.value(), e.getErrorCode());
+        }
+        Mockito.verify(transactionRepository, Mockito.never()).save(Mockito.any(Transaction.class));
+    }
+
+    @Test
+    public void testCreateTransaction_RetriedOnSerializationFailure() throws WalletException {
+        int amount = 100;
+        Mockito.when(walletService.updateWalletAmount(wallet1, money(amount),true)).thenReturn(wallet1);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class)))
+                .thenThrow(new CannotSerializeTransactionException("could not serialize access"))
+                .thenReturn(transactionCredit);
+        Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++),currency.getName(),wallet1.getId().toString(),typeCredit.getId(),String.valueOf(amount),"Retried trn");
+        assertNotNull(found);
+        assertTrue(found.getId().equals(transactionCredit.getId()));
+        Mockito.verify(transactionRepository, Mockito.times(2)).save(Mockito.any(Transaction.class));
+    }
+
+    @Test
+    public void testCreateTransaction_RetriesExhausted() throws WalletException {
+        int amount = 100;
+        Mockito.when(walletService.updateWalletAmount(wallet1, money(amount),true)).thenReturn(wallet1);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class)))
+                .thenThrow(new CannotAcquireLockException("deadlock detected"));
+        try {
+            transactionService.createTransaction(String.valueOf(globalIdCounter++),currency.getName(),wallet1.getId().toString(),typeCredit.getId(),String.valueOf(amount),"Conflict trn");
+            fail();
+        } catch (WalletException ex){
+            assertEquals(ex.getMessage(),String.format(ErrorMessage.CONCURRENT_UPDATE, wallet1.getId()));
+            assertEquals(ex.getErrorCode(),HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_SuccessLanes() throws WalletException {
+        int amount = 100;
+        Mockito.when(walletService.findByIdForUpdate(wallet1.getId())).thenReturn(wallet1);
+        Mockito.when(walletService.updateWalletAmount(Mockito.eq(wallet1), eq(money(amount)),Mockito.anyBoolean())).thenReturn(wallet1);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionCredit);
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.LANES);
+        try {
+            Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet1.getId().toString(), typeCredit.getId(), String.valueOf(amount), "Lane trn");
+            assertNotNull(found);
+            assertTrue(found.getId().equals(transactionCredit.getId()));
+            Mockito.verify(walletService).findByIdForUpdate(wallet1.getId());
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_SuccessAtomic() throws WalletException {
+        int amount = -10;
+        Mockito.when(transactionRepository.saveWithBalanceUpdate(Mockito.any(Transaction.class), eq(wallet2.getId()), eq(money(10).negate().toBigDecimal())))
+                .thenReturn(transactionDebit);
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.ATOMIC_SQL);
+        try {
+            Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet2.getId().toString(), typeDebit.getId(), String.valueOf(amount), "Atomic trn");
+            assertNotNull(found);
+            assertTrue(found.getId().equals(transactionDebit.getId()));
+            Mockito.verify(walletService, Mockito.never()).updateWalletAmount(Mockito.any(), Mockito.any(Money.class), Mockito.any());
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_DebitFailureAtomic() throws WalletException {
+        int amount = -100;
+        Mockito.when(transactionRepository.saveWithBalanceUpdate(Mockito.any(Transaction.class), eq(wallet2.getId()), Mockito.any(BigDecimal.class)))
+                .thenReturn(null);
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.ATOMIC_SQL);
+        try {
+            transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet2.getId().toString(), typeDebit.getId(), String.valueOf(amount), "Atomic trn");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(ex.getMessage(), String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet2.getId(), money(amount)));
+            assertEquals(ex.getErrorCode(), HttpStatus.BAD_REQUEST.value());
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_WalletNotFoundAtomic() throws WalletException {
+        String notFoundWalletId = "1001";
+        Mockito.when(transactionRepository.saveWithBalanceUpdate(Mockito.any(Transaction.class), eq(1001), Mockito.any(BigDecimal.class)))
+                .thenReturn(null);
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.ATOMIC_SQL);
+        try {
+            transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), notFoundWalletId, typeCredit.getId(), "100", "No wallet");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(ex.getMessage(), String.format(ErrorMessage.NO_WALLET_FOUND, notFoundWalletId));
+            assertEquals(ex.getErrorCode(), HttpStatus.BAD_REQUEST.value());
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_SuccessAppendOnly() throws WalletException {
+        Mockito.when(walletService.findByIdCached(wallet2.getId())).thenReturn(wallet2);
+        //first transaction of the wallet starts balance checkpoint
+        Mockito.when(walletRepository.findPendingBalances(Collections.singletonList(wallet2.getId()), "C"))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(Collections.singletonList(new PendingBalance(wallet2.getId(), new BigDecimal(40), 3L, 6, 0, 6, null)));
+        Mockito.when(transactionRepository.append(Mockito.any(Transaction.class), Mockito.anyInt())).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setId(8);
+            transaction.setLastUpdated(new Timestamp(System.currentTimeMillis()));
+            return transaction;
+        });
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.APPEND_ONLY);
+        try {
+            Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet2.getId().toString(), typeDebit.getId(), "10", "Append only trn");
+            assertEquals(Integer.valueOf(8), found.getId());
+            assertEquals(0, new BigDecimal(30).compareTo(found.getWallet().getBalance()));
+            assertEquals(Long.valueOf(4), found.getWallet().getVersion());
+            Mockito.verify(walletRepository).lockBalance(wallet2.getId());
+            Mockito.verify(walletRepository).initBalanceCheckpoint(wallet2.getId());
+            Mockito.verify(walletService, Mockito.never()).updateWalletAmount(Mockito.any(), Mockito.any(Money.class), Mockito.any());
+            Mockito.verify(walletRepository, Mockito.never()).save(Mockito.any(Wallet.class));
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_SuccessBalanceSlots() throws WalletException {
+        Wallet striped = new Wallet(3, USER, currency, new BigDecimal(0), null, LAST_UPDATED_BY, 1L, null, 4);
+        Mockito.when(walletRepository.findIdsWithBalanceSlots()).thenReturn(Collections.singletonList(striped.getId()));
+        Mockito.when(walletService.findById(striped.getId())).thenReturn(striped);
+        Mockito.when(walletRepository.addToSlot(Mockito.eq(striped.getId()), Mockito.anyInt(), Mockito.any())).thenReturn(true);
+        Mockito.when(walletRepository.findSlotBalances(Collections.singletonList(striped.getId())))
+                .thenReturn(Collections.singletonList(new SlotBalance(striped.getId(), new BigDecimal(50), 9L, 4)));
+        Mockito.when(transactionRepository.append(Mockito.any(Transaction.class), Mockito.anyInt())).thenAnswer(invocation -> {
+            Transaction transaction = invocation.getArgument(0);
+            transaction.setId(9);
+            return transaction;
+        });
+
+        Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), striped.getId().toString(), "C", "10", "Slot trn");
+        assertEquals(Integer.valueOf(9), found.getId());
+        assertEquals(0, new BigDecimal(50).compareTo(found.getWallet().getBalance()));
+        assertEquals(Long.valueOf(10), found.getWallet().getVersion());
+        Mockito.verify(walletRepository).addToSlot(Mockito.eq(striped.getId()), Mockito.anyInt(), Mockito.eq(new BigDecimal("10.00")));
+        Mockito.verify(walletService, Mockito.never()).updateWalletAmount(Mockito.any(), Mockito.any(Money.class), Mockito.any());
+
+        //transfers lock only wallet rows
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.any())).thenReturn(Arrays.asList(wallet1, striped));
+        try {
+            transactionService.createTransfer(String.valueOf(globalIdCounter++), currency.getName(), wallet1.getId().toString(), striped.getId().toString(), "1", "Transfer");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.WALLET_HAS_BALANCE_SLOTS, striped.getId()), ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_DebitFailureAppendOnly() throws WalletException {
+        Mockito.when(walletService.findByIdCached(wallet2.getId())).thenReturn(wallet2);
+        Mockito.when(walletRepository.findPendingBalances(Collections.singletonList(wallet2.getId()), "C"))
+                .thenReturn(Collections.singletonList(new PendingBalance(wallet2.getId(), new BigDecimal(5), 3L, 6, 2, 9, new Date())));
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.APPEND_ONLY);
+        try {
+            transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet2.getId().toString(), typeDebit.getId(), "10", "Append only trn");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet2.getId(), money(10)), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+            Mockito.verify(transactionRepository, Mockito.never()).append(Mockito.any(Transaction.class), Mockito.anyInt());
+            Mockito.verify(walletRepository, Mockito.never()).initBalanceCheckpoint(Mockito.any());
+        }
+        try {
+            transactionService.createTransfer(String.valueOf(globalIdCounter++), currency.getName(), "1", "2", "10", "Transfer");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.TRANSFER_NOT_SUPPORTED, WriteMode.APPEND_ONLY), ex.getMessage());
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransaction_ReplayedFromCache() throws WalletException {
+        int amount = 100;
+        String globalId = String.valueOf(globalIdCounter++);
+        Transaction created = new Transaction(globalId, typeCredit, new BigDecimal(amount), wallet1, currency, "Replayed trn");
+        created.setId(7);
+        Mockito.when(walletService.updateWalletAmount(wallet1, money(amount), true)).thenReturn(wallet1);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(created);
+        transactionService.createTransaction(globalId, currency.getName(), wallet1.getId().toString(), typeCredit.getId(), String.valueOf(amount), "Replayed trn");
+
+        Transaction found = transactionService.createTransaction(globalId, currency.getName(), wallet1.getId().toString(), typeCredit.getId(), "100.00", "Replayed trn");
+        assertTrue(found == created);
+        Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any(Transaction.class));
+        //new globalId is not looked up in the database
+        Mockito.verify(transactionRepository, Mockito.never()).findByGlobalId(globalId);
+    }
+
+    @Test
+    public void testCreateTransaction_ReplayedFromDatabase() throws WalletException {
+        String globalId = String.valueOf(globalIdCounter++);
+        Transaction stored = new Transaction(globalId, typeDebit, new BigDecimal(10), wallet2, currency, null);
+        stored.setId(8);
+        Mockito.when(transactionRepository.findByGlobalId(globalId)).thenReturn(stored);
+        Mockito.when(walletService.updateWalletAmount(wallet2, money(10), false)).thenReturn(wallet2);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class)))
+                .thenThrow(new DataIntegrityViolationException("could not execute statement", new SQLException(ErrorMessage.DUPLICATE_KEY)));
+
+        Transaction found = transactionService.createTransaction(globalId, currency.getName(), wallet2.getId().toString(), typeDebit.getId(), "10", null);
+        assertTrue(found == stored);
+        found = transactionService.createTransaction(globalId, currency.getName(), wallet2.getId().toString(), typeDebit.getId(), "10", null);
+        assertTrue(found == stored);
+        Mockito.verify(transactionRepository, Mockito.times(1)).findByGlobalId(globalId);
+        Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any(Transaction.class));
+    }
+
+    @Test
+    public void testCreateTransaction_ReplayWithDifferentPayload() throws WalletException {
+        String globalId = String.valueOf(globalIdCounter++);
+        Transaction stored = new Transaction(globalId, typeDebit, new BigDecimal(10), wallet2, currency, "Debit trn");
+        stored.setId(9);
+        Mockito.when(transactionRepository.findByGlobalId(globalId)).thenReturn(stored);
+        Mockito.when(walletService.updateWalletAmount(wallet2, money(11), false)).thenReturn(wallet2);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class)))
+                .thenThrow(new DataIntegrityViolationException("could not execute statement", new SQLException(ErrorMessage.DUPLICATE_KEY)));
+        try {
+            transactionService.createTransaction(globalId, currency.getName(), wallet2.getId().toString(), typeDebit.getId(), "11", "Debit trn");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.GLOBAL_ID_REUSED, globalId), ex.getMessage());
+            assertEquals(HttpStatus.CONFLICT.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testCreateTransfer_Success() throws WalletException {
+        TransactionType debitType = new TransactionType("D", "debit trn", LAST_UPDATED_BY);
+        TransactionType creditType = new TransactionType("C", "credit trn", LAST_UPDATED_BY);
+        Mockito.when(transactionTypeRepository.getOne("D")).thenReturn(debitType);
+        Mockito.when(transactionTypeRepository.getOne("C")).thenReturn(creditType);
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.anyCollection())).thenReturn(Arrays.asList(wallet1, wallet2));
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        String globalId = String.valueOf(globalIdCounter++);
+
+        List<Transaction> transfer = transactionService.createTransfer(globalId, TEST_CURRENCY, wallet2.getId().toString(), wallet1.getId().toString(), "15", "Transfer");
+
+        assertEquals(2, transfer.size());
+        assertEquals(globalId + "-debit", transfer.get(0).getGlobalId());
+        assertTrue(transfer.get(0).getWallet() == wallet2);
+        assertTrue(transfer.get(0).getType() == referenceData.findTransactionType("D"));
+        assertEquals(globalId + "-credit", transfer.get(1).getGlobalId());
+        assertTrue(transfer.get(1).getWallet() == wallet1);
+        assertTrue(transfer.get(1).getType() == referenceData.findTransactionType("C"));
+        assertEquals(0, new BigDecimal(25).compareTo(wallet2.getBalance()));
+        assertEquals(0, new BigDecimal(15).compareTo(wallet1.getBalance()));
+        //wallets are locked in id order, whatever the direction of transfer
+        Mockito.verify(walletRepository).findAllByIdForUpdate(Mockito.argThat(ids -> Arrays.asList(1, 2).equals(new ArrayList<>(ids))));
+    }
+
+    @Test
+    public void testCreateTransfer_NotEnoughFunds() throws WalletException {
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.anyCollection())).thenReturn(Arrays.asList(wallet1, wallet2));
+        try {
+            transactionService.createTransfer(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet2.getId().toString(), wallet1.getId().toString(), "41", "Transfer");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet2.getId(), "41.00"), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+        assertEquals(0, new BigDecimal(40).compareTo(wallet2.getBalance()));
+        Mockito.verify(transactionRepository, Mockito.never()).save(Mockito.any(Transaction.class));
+    }
+
+    @Test
+    public void testCreateTransfer_SameWallet() throws WalletException {
+        try {
+            transactionService.createTransfer(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet2.getId().toString(), wallet2.getId().toString(), "1", "Transfer");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.TRANSFER_TO_SAME_WALLET, wallet2.getId()), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+        Mockito.verify(walletRepository, Mockito.never()).findAllByIdForUpdate(Mockito.anyCollection());
+    }
+
+    @Test
+    public void testCreateTransaction_SuccessGroupCommit() throws WalletException {
+        int amount = 100;
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.anyCollection())).thenReturn(Arrays.asList(wallet1));
+        Mockito.when(transactionRepository.findUsedGlobalIds(Mockito.anyCollection())).thenReturn(new HashSet<>());
+        Mockito.doAnswer(invocation -> {
+            List<Transaction> inserted = invocation.getArgument(0);
+            inserted.forEach(transaction -> transaction.setId(transactionCredit.getId()));
+            return null;
+        }).when(transactionRepository).insertAll(Mockito.anyList());
+        TransactionServiceImpl target = AopTestUtils.getTargetObject(transactionService);
+        target.setWriteMode(WriteMode.GROUP_COMMIT);
+        try {
+            Transaction found = transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet1.getId().toString(), "C", String.valueOf(amount), "Group commit trn");
+            assertNotNull(found);
+            assertTrue(found.getId().equals(transactionCredit.getId()));
+        } finally {
+            target.setWriteMode(WriteMode.SERIALIZABLE);
+        }
+    }
+
+    @Test
+    public void testCreateTransactions_PartialFailure() throws WalletException {
+        String duplicate = String.valueOf(globalIdCounter++);
+        String used = String.valueOf(globalIdCounter++);
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.anyCollection())).thenReturn(Arrays.asList(wallet2));
+        Mockito.when(transactionRepository.findUsedGlobalIds(Mockito.anyCollection())).thenReturn(new HashSet<>(Collections.singletonList(used)));
+
+        List<TransactionResult> results = transactionWriter.createTransactions(Arrays.asList(
+                new TransactionModel(duplicate, TEST_CURRENCY, wallet2.getId().toString(), "D", "30", "ok"),
+                new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet2.getId().toString(), "D", "30", "not enough funds"),
+                new TransactionModel(duplicate, TEST_CURRENCY, wallet2.getId().toString(), "C", "5", "duplicate in batch"),
+                new TransactionModel(used, TEST_CURRENCY, wallet2.getId().toString(), "C", "5", "duplicate in database"),
+                new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, "1001", "C", "5", "no wallet"),
+                new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet2.getId().toString(), "C", "5", "ok")),
+                Arrays.asList(money(30), money(30), money(5), money(5), money(5), null), false);
+
+        assertEquals(6, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(String.format(ErrorMessage.NOT_ENOUGH_FUNDS, wallet2.getId(), "30"), results.get(1).getError().getMessage());
+        assertEquals(String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, duplicate), results.get(2).getError().getMessage());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(2).getError().getErrorCode());
+        assertEquals(String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, used), results.get(3).getError().getMessage());
+        assertEquals(String.format(ErrorMessage.NO_WALLET_FOUND, "1001"), results.get(4).getError().getMessage());
+        assertTrue(results.get(5).isSuccess());
+        assertEquals(0, new BigDecimal(15).compareTo(wallet2.getBalance()));
+        Mockito.verify(transactionRepository, Mockito.never()).save(Mockito.any(Transaction.class));
+        Mockito.verify(transactionRepository).insertAll(Arrays.asList(results.get(0).getTransaction(), results.get(5).getTransaction()));
+    }
+
+    @Test
+    public void testCreateTransactions_AllOrNothingRejected() throws WalletException {
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.anyCollection())).thenReturn(Arrays.asList(wallet2));
+        Mockito.when(transactionRepository.findUsedGlobalIds(Mockito.anyCollection())).thenReturn(new HashSet<>());
+        try {
+            transactionService.createTransactions(Arrays.asList(
+                    new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet2.getId().toString(), "D", "10", "ok"),
+                    new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet2.getId().toString(), "D", "", "no amount")),
+                    BatchMode.ALL_OR_NOTHING);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.BATCH_TRANSACTION_FAILED, 1, String.format(ErrorMessage.NO_MANDATORY_FIELD, "amount")), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testWriteLedgerEntries_SkippedEntryKeepsBalance() {
+        String duplicate = String.valueOf(globalIdCounter++);
+        LedgerEntry first = new LedgerEntry(300, wallet2.getId(), CURRENCY_ID, "C", new BigDecimal(10), new BigDecimal(60), String.valueOf(globalIdCounter++), "ok", 1000L);
+        LedgerEntry second = new LedgerEntry(301, wallet2.getId(), CURRENCY_ID, "C", new BigDecimal(5), new BigDecimal(65), duplicate, "duplicate", 2000L);
+        Mockito.when(transactionRepository.insertIfAbsent(Mockito.any(Transaction.class)))
+                .thenAnswer(invocation -> !duplicate.equals(invocation.<Transaction>getArgument(0).getGlobalId()));
+
+        transactionWriter.writeLedgerEntries(Arrays.asList(first, second));
+
+        Mockito.verify(walletRepository).updateBalance(Mockito.eq(wallet2.getId()), Mockito.eq(new BigDecimal(60)), Mockito.any(Date.class), Mockito.anyString());
+        Mockito.verify(walletRepository, Mockito.times(1)).updateBalance(Mockito.anyInt(), Mockito.any(BigDecimal.class), Mockito.any(Date.class), Mockito.anyString());
+    }
+
+    @Test
+    public void testCreateTransactions_PerItemFallsBackToSingleWrites() throws WalletException {
+        Mockito.when(walletRepository.findAllByIdForUpdate(Mockito.anyCollection())).thenThrow(new DataIntegrityViolationException("batch failed"));
+        Mockito.when(walletService.findByIdForUpdate(wallet1.getId())).thenReturn(wallet1);
+        Mockito.when(walletService.updateWalletAmount(Mockito.eq(wallet1), Mockito.any(Money.class), Mockito.anyBoolean())).thenReturn(wallet1);
+        Mockito.when(transactionRepository.save(Mockito.any(Transaction.class)))
+                .thenReturn(transactionCredit)
+                .thenThrow(new DataIntegrityViolationException("could not execute statement",
+                        new RuntimeException(ErrorMessage.DUPLICATE_KEY + " Key (global_id)=(dup) already exists.")));
+
+        List<TransactionResult> results = transactionService.createTransactions(Arrays.asList(
+                new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet1.getId().toString(), "C", "10", "ok"),
+                new TransactionModel("dup", TEST_CURRENCY, wallet1.getId().toString(), "C", "10", "duplicate"),
+                new TransactionModel(String.valueOf(globalIdCounter++), TEST_CURRENCY, wallet1.getId().toString(), "C", null, "no amount")),
+                BatchMode.PER_ITEM);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(String.format(ErrorMessage.TRANSACTION_WITH_GLOBAL_ID_PRESENT, "dup"), results.get(1).getError().getMessage());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(1).getError().getErrorCode());
+        assertEquals(String.format(ErrorMessage.NO_MANDATORY_FIELD, "amount"), results.get(2).getError().getMessage());
+    }
+
     @Test
     public void testCreateTransaction_DebitFailure() throws WalletException {
         int amount = -100;
         int counter = globalIdCounter++;
         String error = String.format(ErrorMessage.NOT_ENOUGH_FUNDS,wallet2.getId(),String.valueOf(amount));
-        Mockito.when(walletService.updateWalletAmount(wallet2,String.valueOf(amount),false)).
+        Mockito.when(walletService.updateWalletAmount(wallet2, money(amount),false)).
                 thenThrow(new WalletException(error, HttpStatus.BAD_REQUEST.value()));
         Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionDebit);
         try {
@@ -205,7 +811,7 @@ public class TransactionServiceTest {
         int amount = 100;
         int counter = globalIdCounter++;
         String notFoundWalletId = "1001";
-        Mockito.when(walletService.updateWalletAmount(wallet1,String.valueOf(amount),true)).thenReturn(wallet1);
+        Mockito.when(walletService.updateWalletAmount(wallet1, money(amount),true)).thenReturn(wallet1);
         Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionCredit);
         try {
             Transaction found = transactionService.createTransaction(String.valueOf(counter),currency.getName(),notFoundWalletId,typeCredit.getId(),String.valueOf(amount),"No wallet");
@@ -217,10 +823,22 @@ public class TransactionServiceTest {
     }
 
 
+    @Test
+    public void testCreateTransaction_AmountNotRepresentable() throws WalletException {
+        try {
+            transactionService.createTransaction(String.valueOf(globalIdCounter++), currency.getName(), wallet1.getId().toString(), typeCredit.getId(), "10.001", "Fail trn");
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.AMOUNT_NOT_REPRESENTABLE, "10.001", 2, currency.getName()), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+        Mockito.verify(walletService, Mockito.never()).updateWalletAmount(Mockito.any(), Mockito.any(Money.class), Mockito.any());
+    }
+
     @Test
     public void testCreateTransaction_AmountNotNumber() throws WalletException {
         String wrongAmount = "AAAee";
-        Mockito.when(walletService.updateWalletAmount(wallet1,String.valueOf(wrongAmount),true)).thenReturn(wallet1);
+        Mockito.when(walletService.updateWalletAmount(Mockito.eq(wallet1), Mockito.any(Money.class), Mockito.eq(true))).thenReturn(wallet1);
         Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionCredit);
         int counter = globalIdCounter++;
         try {
@@ -230,4 +848,8 @@ public class TransactionServiceTest {
             assertEquals(ex.getErrorCode(),HttpStatus.BAD_REQUEST.value());
         }
     }
+
+    private static Money money(Object amount) {
+        return Money.parse(String.valueOf(amount), 2);
+    }
 }
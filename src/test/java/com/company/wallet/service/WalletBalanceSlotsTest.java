@@ -0,0 +1,169 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Money;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import com.company.wallet.helper.HelperImpl;
+import com.company.wallet.repository.SlotBalance;
+import com.company.wallet.repository.WalletRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * WalletBalanceSlots tests, database is mocked.
+ *
+ * @author Elena Medvedeva
+ */
+public class WalletBalanceSlotsTest {
+
+    private static final String UPDATED_BY = "wallet-microservice";
+
+    private WalletRepository walletRepository;
+    private WalletBalanceSlotsImpl balanceSlots;
+    private Currency currency = new Currency(1, "EUR", "admin");
+    private Wallet wallet;
+
+    @Before
+    public void setUp() {
+        walletRepository = Mockito.mock(WalletRepository.class);
+        balanceSlots = new WalletBalanceSlotsImpl();
+        balanceSlots.setWalletRepository(walletRepository);
+        balanceSlots.setInputParametersValidator(new HelperImpl());
+        balanceSlots.setWriteMode(WriteMode.SERIALIZABLE);
+        balanceSlots.setUpdatedBy(UPDATED_BY);
+        balanceSlots.setMaxSlots(16);
+        balanceSlots.setDebitAttempts(2);
+        balanceSlots.setRefreshMs(60000);
+
+        //wallet row keeps 1.00, slots 0..3 keep 10.00 together
+        wallet = new Wallet(7, "user", currency, new BigDecimal("1.00"), null, "admin", 5L, null, 4);
+        Mockito.when(walletRepository.findSlotBalances(Collections.singletonList(7)))
+                .thenReturn(Collections.singletonList(new SlotBalance(7, new BigDecimal("10.00"), 12, 4)));
+    }
+
+    @Test
+    public void testWithSlotBalance() {
+        Wallet found = balanceSlots.withSlotBalance(wallet);
+        assertEquals(new BigDecimal("11.00"), found.getBalance());
+        assertEquals(Long.valueOf(17), found.getVersion());
+        assertEquals(Integer.valueOf(4), found.getBalanceSlots());
+
+        Wallet plain = new Wallet(8, "user", currency, BigDecimal.ONE, null, "admin", 1L);
+        assertSame(plain, balanceSlots.withSlotBalance(plain));
+        List<Wallet> wallets = balanceSlots.withSlotBalance(Arrays.asList(plain, wallet));
+        assertSame(plain, wallets.get(0));
+        assertEquals(new BigDecimal("11.00"), wallets.get(1).getBalance());
+    }
+
+    @Test
+    public void testCreditUpdatesOneSlot() throws WalletException {
+        Mockito.when(walletRepository.addToSlot(eq(7), anyInt(), any())).thenReturn(true);
+
+        Wallet updated = balanceSlots.addToBalance(wallet, Money.parse("2.50", 2));
+
+        Mockito.verify(walletRepository, Mockito.times(1)).addToSlot(eq(7), anyInt(), eq(new BigDecimal("2.50")));
+        Mockito.verify(walletRepository, Mockito.never()).lockSlots(any());
+        assertEquals(Integer.valueOf(4), updated.getBalanceSlots());
+    }
+
+    @Test
+    public void testDebitRebalancesWhenSlotsHaveNotEnoughFunds() throws WalletException {
+        Mockito.when(walletRepository.addToSlot(eq(7), anyInt(), any())).thenReturn(false);
+        Mockito.when(walletRepository.lockSlots(7)).thenReturn(Arrays.asList(new BigDecimal("4.00"), new BigDecimal("3.00"), new BigDecimal("2.00"), new BigDecimal("1.00")));
+        Mockito.when(walletRepository.lockWalletBalance(7)).thenReturn(new BigDecimal("1.00"));
+
+        Wallet updated = balanceSlots.addToBalance(wallet, Money.parse("5.99", 2).negate());
+
+        //two slots are tried before rebalancing, 5.01 is left and spread over 4 slots
+        Mockito.verify(walletRepository, Mockito.times(2)).addToSlot(eq(7), anyInt(), eq(new BigDecimal("-5.99")));
+        Mockito.verify(walletRepository).setSlotBalances(7, new BigDecimal("0.00"),
+                Arrays.asList(new BigDecimal("1.26"), new BigDecimal("1.25"), new BigDecimal("1.25"), new BigDecimal("1.25")), UPDATED_BY);
+        assertEquals(new BigDecimal("5.01"), updated.getBalance());
+        assertEquals(Long.valueOf(18), updated.getVersion());
+    }
+
+    @Test
+    public void testDebitNotEnoughFunds() {
+        Mockito.when(walletRepository.addToSlot(eq(7), anyInt(), any())).thenReturn(false);
+        Mockito.when(walletRepository.lockSlots(7)).thenReturn(Arrays.asList(new BigDecimal("4.00"), new BigDecimal("6.00")));
+        Mockito.when(walletRepository.lockWalletBalance(7)).thenReturn(new BigDecimal("1.00"));
+
+        try {
+            balanceSlots.addToBalance(wallet, Money.parse("11.01", 2).negate());
+            fail("Debit must fail");
+        } catch (WalletException e) {
+            assertEquals(HttpStatus.BAD_REQUEST.value(), e.getErrorCode());
+            assertEquals(String.format(ErrorMessage.NOT_ENOUGH_FUNDS, 7, "11.01"), e.getMessage());
+        }
+        Mockito.verify(walletRepository, Mockito.never()).setSlotBalances(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testSetSlots() throws WalletException {
+        Mockito.when(walletRepository.lockSlots(7)).thenReturn(Collections.emptyList());
+        Mockito.when(walletRepository.lockWalletBalance(7)).thenReturn(new BigDecimal("10.00"));
+
+        Wallet updated = balanceSlots.setSlots(wallet, 3);
+
+        Mockito.verify(walletRepository).setSlotBalances(7, new BigDecimal("0.00"),
+                Arrays.asList(new BigDecimal("3.34"), new BigDecimal("3.33"), new BigDecimal("3.33")), UPDATED_BY);
+        assertEquals(new BigDecimal("10.00"), updated.getBalance());
+        assertEquals(Integer.valueOf(3), updated.getBalanceSlots());
+
+        Mockito.when(walletRepository.lockSlots(7)).thenReturn(Arrays.asList(new BigDecimal("3.34"), new BigDecimal("3.33"), new BigDecimal("3.33")));
+        Mockito.when(walletRepository.lockWalletBalance(7)).thenReturn(new BigDecimal("0.00"));
+        updated = balanceSlots.setSlots(wallet, 0);
+        Mockito.verify(walletRepository).setSlotBalances(7, new BigDecimal("10.00"), Collections.emptyList(), UPDATED_BY);
+        assertNull(updated.getBalanceSlots());
+    }
+
+    @Test
+    public void testHasSlots() throws WalletException {
+        Mockito.when(walletRepository.findIdsWithBalanceSlots()).thenReturn(Collections.singletonList(7));
+        assertTrue(balanceSlots.hasSlots(7));
+        assertFalse(balanceSlots.hasSlots(8));
+        Mockito.verify(walletRepository).findIdsWithBalanceSlots();
+
+        //slots are changed without reload
+        Mockito.when(walletRepository.lockSlots(7)).thenReturn(Arrays.asList(new BigDecimal("4.00"), new BigDecimal("6.00")));
+        Mockito.when(walletRepository.lockWalletBalance(7)).thenReturn(new BigDecimal("1.00"));
+        balanceSlots.setSlots(wallet, 0);
+        assertFalse(balanceSlots.hasSlots(7));
+        Mockito.verify(walletRepository).findIdsWithBalanceSlots();
+
+        balanceSlots.setRefreshMs(-1);
+        assertTrue(balanceSlots.hasSlots(7));
+        Mockito.verify(walletRepository, Mockito.times(2)).findIdsWithBalanceSlots();
+    }
+
+    @Test
+    public void testSetSlotsValidation() {
+        try {
+            balanceSlots.setSlots(wallet, 17);
+            fail("Slots out of range");
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.BALANCE_SLOTS_OUT_OF_RANGE, 16), e.getMessage());
+        }
+        balanceSlots.setWriteMode(WriteMode.APPEND_ONLY);
+        try {
+            balanceSlots.setSlots(wallet, 2);
+            fail("Slots are not supported");
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.BALANCE_SLOTS_NOT_SUPPORTED, WriteMode.APPEND_ONLY), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Wallet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * WalletCache tests
+ *
+ * @author Elena Medvedeva
+ */
+public class WalletCacheTest {
+
+    private WalletCacheImpl cache;
+    private SimpleMeterRegistry meterRegistry;
+    private Wallet wallet;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new WalletCacheImpl();
+        cache.setMeterRegistry(meterRegistry);
+        cache.setCacheSize(10);
+        cache.setTtlSeconds(60);
+        cache.init();
+        wallet = new Wallet("user", new Currency(1, "EUR", "user"), new BigDecimal(10), "user");
+        wallet.setId(1);
+        wallet.setVersion(1L);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testGet_ReturnsSnapshot() {
+        assertNull(cache.get(1));
+        cache.put(wallet);
+        wallet.setBalance(new BigDecimal(20));
+
+        Wallet found = cache.get(1);
+        assertNotSame(wallet, found);
+        assertEquals(0, new BigDecimal(10).compareTo(found.getBalance()));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "wallet.cache").tag("result", "hit").functionCounter().count(), 0);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "wallet.cache").tag("result", "miss").functionCounter().count(), 0);
+        assertEquals(1, meterRegistry.get("wallet.cache.staleness").summary().count());
+    }
+
+    @Test
+    public void testPut_DoesntReplaceNewerVersion() {
+        Wallet newer = new Wallet("user", wallet.getCurrency(), new BigDecimal(30), "user");
+        newer.setId(1);
+        newer.setVersion(2L);
+        cache.put(newer);
+        cache.put(wallet);
+        assertEquals(Long.valueOf(2), cache.get(1).getVersion());
+    }
+
+    @Test
+    public void testPutAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        wallet.setBalance(new BigDecimal(15));
+        cache.putAfterCommit(wallet);
+        cache.evictWalletIdsAfterCommit("user");
+        cache.putWalletIds("user", Arrays.asList(1));
+        assertNull(cache.get(1));
+
+        //balance at the moment of commit is cached
+        wallet.setBalance(new BigDecimal(25));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertEquals(0, new BigDecimal(25).compareTo(cache.get(1).getBalance()));
+        assertNull(cache.getWalletIds("user"));
+    }
+
+    @Test
+    public void testPutAfterCommit_RolledBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.putAfterCommit(wallet);
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        assertNull(cache.get(1));
+    }
+}
@@ -0,0 +1,161 @@
+package com.company.wallet.service;
+
+import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
+import com.company.wallet.entities.Wallet;
+import com.company.wallet.outbox.FileOutboxSink;
+import com.company.wallet.outbox.OutboxEvent;
+import com.company.wallet.outbox.OutboxSink;
+import com.company.wallet.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+
+/**
+ * WalletEventOutbox and WalletEventRelay tests, database is mocked.
+ *
+ * @author Elena Medvedeva
+ */
+public class WalletEventRelayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransactionRepository transactionRepository;
+    private WalletEventOutboxImpl outbox;
+    private Currency currency = new Currency(1, "EUR", "admin");
+
+    @Before
+    public void setUp() {
+        transactionRepository = Mockito.mock(TransactionRepository.class);
+        ReferenceDataRegistry referenceData = Mockito.mock(ReferenceDataRegistry.class);
+        Mockito.when(referenceData.getCurrencies()).thenReturn(Collections.singletonList(currency));
+        outbox = new WalletEventOutboxImpl();
+        outbox.setTransactionRepository(transactionRepository);
+        outbox.setReferenceData(referenceData);
+        outbox.setEnabled(true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriteAll() {
+        Wallet wallet = new Wallet(7, "user", currency, new BigDecimal("15.00"), null, "admin", 3L);
+        Transaction credit = new Transaction("g1", new TransactionType("C", "credit", "admin"), new BigDecimal("10.00"), wallet, currency, null, "admin");
+        credit.setId(101);
+        credit.setLastUpdated(new Date(1000L));
+        Transaction debit = new Transaction("g2", new TransactionType("D", "debit", "admin"), new BigDecimal("2.50"), wallet, currency, null, "admin");
+        debit.setId(102);
+        debit.setLastUpdated(new Date(2000L));
+
+        outbox.writeAll(Arrays.asList(credit, debit), Arrays.asList(new BigDecimal("17.50"), new BigDecimal("15.00")));
+
+        ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(transactionRepository).insertOutboxEvents(captor.capture());
+        List<OutboxEvent> events = captor.getValue();
+        assertEquals(2, events.size());
+        assertEquals(Integer.valueOf(7), events.get(0).getWalletId());
+        assertEquals(Integer.valueOf(101), events.get(0).getTransactionId());
+        assertEquals("{\"walletId\":7,\"transactionId\":101,\"globalId\":\"g1\",\"transactionTypeId\":\"C\",\"amount\":\"10.00\","
+                + "\"currency\":\"EUR\",\"balance\":\"17.50\",\"createdAt\":1000}", events.get(0).getPayload());
+        assertTrue(events.get(1).getPayload().contains("\"balance\":\"15.00\""));
+        assertEquals(2000L, events.get(1).getCreatedAt().getTime());
+
+        outbox.setEnabled(false);
+        outbox.writeAll(Collections.singletonList(credit), Collections.singletonList(BigDecimal.ONE));
+        Mockito.verify(transactionRepository, Mockito.times(1)).insertOutboxEvents(anyList());
+    }
+
+    @Test
+    public void testRelayPublishesBatchesAndRecordsMetrics() throws IOException {
+        OutboxSink sink = Mockito.mock(OutboxSink.class);
+        Mockito.when(transactionRepository.lockOutboxEvents(2))
+                .thenReturn(events(1, 2)).thenReturn(events(3)).thenReturn(Collections.emptyList());
+        Mockito.when(transactionRepository.countOutboxEvents()).thenReturn(0L);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletEventRelayImpl relay = relay(sink, meterRegistry);
+
+        assertEquals(3, relay.relay());
+
+        //the second batch is not full, so the outbox is not read again
+        Mockito.verify(transactionRepository, Mockito.times(2)).lockOutboxEvents(2);
+        Mockito.verify(transactionRepository).deleteOutboxEvents(Arrays.asList(1L, 2L));
+        Mockito.verify(transactionRepository).deleteOutboxEvents(Collections.singletonList(3L));
+        Mockito.verify(sink, Mockito.times(2)).publish(anyList());
+        assertEquals(3.0, meterRegistry.get("wallet.outbox.published").counter().count(), 0.0);
+        assertEquals(3, meterRegistry.get("wallet.outbox.publish.lag").timer().count());
+        assertEquals(0.0, meterRegistry.get("wallet.outbox.backlog").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void testRelaySinkFailureKeepsEvents() throws IOException {
+        OutboxSink sink = Mockito.mock(OutboxSink.class);
+        Mockito.doThrow(new IOException("broker is down")).when(sink).publish(anyList());
+        Mockito.when(transactionRepository.lockOutboxEvents(anyInt())).thenReturn(events(1, 2));
+        Mockito.when(transactionRepository.countOutboxEvents()).thenReturn(2L);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletEventRelayImpl relay = relay(sink, meterRegistry);
+
+        assertEquals(0, relay.relay());
+
+        Mockito.verify(transactionRepository, Mockito.never()).deleteOutboxEvents(any());
+        assertEquals(1.0, meterRegistry.get("wallet.outbox.publish.failures").counter().count(), 0.0);
+        assertEquals(2, relay.getBacklog());
+    }
+
+    @Test
+    public void testFileSink() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("events").resolve("wallet-events.jsonl");
+        FileOutboxSink sink = new FileOutboxSink();
+        sink.setPath(file.toString());
+        sink.setFsync(true);
+        try {
+            sink.publish(events(1, 2));
+            sink.publish(events(3));
+        } finally {
+            sink.close();
+        }
+        assertEquals(Arrays.asList("{\"id\":1}", "{\"id\":2}", "{\"id\":3}"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    private WalletEventRelayImpl relay(OutboxSink sink, SimpleMeterRegistry meterRegistry) {
+        WalletEventRelayImpl relay = new WalletEventRelayImpl();
+        relay.setOutbox(outbox);
+        relay.setSink(sink);
+        relay.setMeterRegistry(meterRegistry);
+        relay.setBatchSize(2);
+        relay.setBacklogCheckIntervalMs(0);
+        //no background relay
+        relay.setRelayIntervalMs(0);
+        relay.init();
+        return relay;
+    }
+
+    private static List<OutboxEvent> events(long... ids) {
+        List<OutboxEvent> events = new ArrayList<>();
+        for (long id : ids) {
+            events.add(new OutboxEvent(id, 7, (int) id, "{\"id\":" + id + "}", new Date()));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,128 @@
+package com.company.wallet.service;
+
+import com.company.wallet.exceptions.ErrorMessage;
+import com.company.wallet.exceptions.WalletException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * WalletLaneExecutor tests
+ *
+ * @author Elena Medvedeva
+ */
+public class WalletLaneExecutorTest {
+
+    private WalletLaneExecutorImpl executor;
+
+    @Before
+    public void setUp() {
+        executor = new WalletLaneExecutorImpl();
+        executor.setLaneCount(4);
+        executor.setQueueCapacity(100);
+        executor.init();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testLaneFor_SameWalletSameLane() {
+        assertEquals(executor.laneFor(1), executor.laneFor(1));
+        assertEquals(executor.laneFor(1), executor.laneFor(5));
+        assertNotEquals(executor.laneFor(1), executor.laneFor(2));
+    }
+
+    @Test
+    public void testExecute_ReturnsResult() throws WalletException {
+        String result = executor.execute(1, () -> Thread.currentThread().getName());
+        assertEquals("wallet-lane-" + executor.laneFor(1), result);
+    }
+
+    @Test
+    public void testExecute_WalletTasksRunOneByOne() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int value = i;
+            futures.add(callers.submit(() -> executor.execute(7, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                applied.add(value);
+                running.decrementAndGet();
+                return applied.size();
+            })));
+        }
+        for (Future<Integer> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        callers.shutdown();
+        assertEquals(50, applied.size());
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void testExecute_UnrelatedWalletsRunInParallel() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        Future<Boolean> first = callers.submit(() -> executor.execute(1, () -> awaitQuietly(bothStarted)));
+        Future<Boolean> second = callers.submit(() -> executor.execute(2, () -> awaitQuietly(bothStarted)));
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+        callers.shutdown();
+    }
+
+    @Test
+    public void testExecute_NestedCallOnSameLane() throws WalletException {
+        Integer result = executor.execute(3, () -> executor.execute(3, () -> 42));
+        assertEquals(Integer.valueOf(42), result);
+    }
+
+    @Test
+    public void testExecute_WalletExceptionPropagated() {
+        String error = String.format(ErrorMessage.NOT_ENOUGH_FUNDS, 1, "10");
+        try {
+            executor.execute(1, () -> {
+                throw new WalletException(error, HttpStatus.BAD_REQUEST.value());
+            });
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(error, ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExecute_RuntimeExceptionPropagated() throws WalletException {
+        executor.execute(1, () -> {
+            throw new IllegalStateException("failed");
+        });
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
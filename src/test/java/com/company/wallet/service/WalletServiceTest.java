@@ -1,14 +1,20 @@
 package com.company.wallet.service;
 
 import com.company.wallet.entities.Currency;
+import com.company.wallet.entities.Transaction;
+import com.company.wallet.entities.TransactionType;
 import com.company.wallet.entities.Wallet;
 import com.company.wallet.exceptions.ErrorMessage;
 import com.company.wallet.exceptions.WalletException;
 import com.company.wallet.repository.CurrencyRepository;
+import com.company.wallet.repository.PendingBalance;
 import com.company.wallet.repository.TransactionRepository;
+import com.company.wallet.repository.TransactionTypeRepository;
 import com.company.wallet.repository.WalletRepository;
 import com.company.wallet.helper.Helper;
 import com.company.wallet.helper.HelperImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hibernate.ObjectNotFoundException;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,6 +25,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.validation.beanvalidation.MethodValidationPostProcessor;
@@ -27,6 +34,8 @@ import javax.validation.ConstraintViolationException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -46,6 +55,31 @@ public class WalletServiceTest {
             return new WalletServiceImpl();
         }
 
+        @Bean
+        public WalletCache walletCache() {
+            return new WalletCacheImpl();
+        }
+
+        @Bean
+        public BalanceMaterializer balanceMaterializer() {
+            return new BalanceMaterializerImpl();
+        }
+
+        @Bean
+        public WalletBalanceSlots walletBalanceSlots() {
+            return new WalletBalanceSlotsImpl();
+        }
+
+        @Bean
+        public ReferenceDataRegistry referenceDataRegistry() {
+            return new ReferenceDataRegistryImpl();
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
         @Bean
         public Helper validator() {
             return new HelperImpl();
@@ -76,6 +110,12 @@ public class WalletServiceTest {
     @MockBean
     private CurrencyRepository currencyRepository;
 
+    @MockBean
+    private TransactionTypeRepository transactionTypeRepository;
+
+    @Autowired
+    private ReferenceDataRegistry referenceData;
+
     Currency currency;
     Wallet wallet1;
     Wallet wallet2;
@@ -103,9 +143,11 @@ public class WalletServiceTest {
 
         //createWallet
         Currency wrong = new Currency(2, "Wrong",LAST_UPDATED_BY) ;
-        Mockito.when(currencyRepository.findByName("Wrong")).thenReturn(wrong);
+        Mockito.when(currencyRepository.findAll()).thenReturn(Arrays.asList(currency, wrong));
+        Mockito.when(currencyRepository.getOne(wrong.getId())).thenReturn(wrong);
         Mockito.when(walletRepository.save(new Wallet(USER,wrong, new BigDecimal(0), LAST_UPDATED_BY))).thenThrow(new ObjectNotFoundException("",""));
-        Mockito.when(currencyRepository.findByName(TEST_CURRENCY)).thenReturn(currency);
+        Mockito.when(currencyRepository.getOne(currency.getId())).thenReturn(currency);
+        referenceData.refresh();
         Mockito.when(walletRepository.save(wallet1)).thenReturn(wallet1);
         Mockito.when(walletRepository.save(wallet2)).thenReturn(wallet2);
     }
@@ -121,6 +163,77 @@ public class WalletServiceTest {
         assertTrue(found.get(1).getId().equals(wallet2.getId()) );
     }
 
+    @Test
+    public void testFindAll_WithPendingBalance() throws WalletException {
+        Wallet checkpoint = new Wallet(2, USER, currency, new BigDecimal(20), null, LAST_UPDATED_BY, 3L, 10);
+        Mockito.when(walletRepository.findAllByOrderByIdAsc()).thenReturn(Arrays.asList(wallet1, checkpoint));
+        Date lastTransaction = new Date();
+        Mockito.when(walletRepository.findPendingBalances(Mockito.eq(Collections.singletonList(2)), Mockito.anyString()))
+                .thenReturn(Collections.singletonList(new PendingBalance(2, new BigDecimal(35), 5L, 10, 2, 12, lastTransaction)));
+
+        List<Wallet> found = walletService.findAll();
+        assertSame(wallet1, found.get(0));
+        assertEquals(new BigDecimal(35), found.get(1).getBalance());
+        assertEquals(Long.valueOf(5), found.get(1).getVersion());
+        assertEquals(lastTransaction, found.get(1).getLastUpdated());
+        assertEquals(USER, found.get(1).getUserId());
+        assertEquals(new BigDecimal(20), checkpoint.getBalance());
+    }
+
+    @Test
+    public void testFindByIdCached_ReadOnce() throws WalletException {
+        Wallet wallet = new Wallet(USER, currency, new BigDecimal(5), LAST_UPDATED_BY);
+        wallet.setId(3);
+        Mockito.when(walletRepository.findById(wallet.getId())).thenReturn(Optional.of(wallet));
+
+        Wallet found = walletService.findByIdCached(wallet.getId());
+        assertEquals(wallet.getId(), found.getId());
+        assertEquals(0, new BigDecimal(5).compareTo(found.getBalance()));
+        found = walletService.findByIdCached(wallet.getId());
+        assertEquals(wallet.getId(), found.getId());
+        Mockito.verify(walletRepository, Mockito.times(1)).findById(wallet.getId());
+    }
+
+    @Test
+    public void testFindByIdCached_UpdatedAfterWrite() throws WalletException {
+        Wallet wallet = new Wallet(USER, currency, new BigDecimal(5), LAST_UPDATED_BY);
+        wallet.setId(4);
+        Mockito.when(walletRepository.findById(wallet.getId())).thenReturn(Optional.of(wallet));
+        Mockito.when(walletRepository.save(wallet)).thenReturn(wallet);
+        walletService.findByIdCached(wallet.getId());
+
+        walletService.updateWalletAmount(wallet, "10", true);
+        assertEquals(0, new BigDecimal(15).compareTo(walletService.findByIdCached(wallet.getId()).getBalance()));
+        Mockito.verify(walletRepository, Mockito.times(1)).findById(wallet.getId());
+    }
+
+    @Test
+    public void testFindByIdCached_DoesntExist() throws WalletException {
+        try {
+            walletService.findByIdCached(110);
+            fail();
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.NO_WALLET_FOUND, "110"), e.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testFindByUserIdCached() throws WalletException {
+        String user = "cachedUser";
+        Wallet wallet = new Wallet(user, currency, new BigDecimal(5), LAST_UPDATED_BY);
+        wallet.setId(5);
+        Mockito.when(walletRepository.findByUserId(user)).thenReturn(Arrays.asList(wallet));
+
+        List<Wallet> found = walletService.findByUserIdCached(user);
+        assertEquals(1, found.size());
+        assertEquals(wallet.getId(), found.get(0).getId());
+        found = walletService.findByUserIdCached(user);
+        assertEquals(1, found.size());
+        Mockito.verify(walletRepository, Mockito.times(1)).findByUserId(user);
+        Mockito.verify(walletRepository, Mockito.never()).findById(wallet.getId());
+    }
+
     //public Wallet findById(@NotNull Integer id) throws WalletException;
     @Test
     public void testFindById_Success() throws WalletException {
@@ -194,6 +307,32 @@ public class WalletServiceTest {
         assertEquals(found.getId(),wallet1.getId());
     }
 
+    @Test
+    public void testCreateWallet_CurrencyFromRegistry() throws WalletException {
+        Mockito.when(walletRepository.save(Mockito.any(Wallet.class))).thenReturn(wallet2);
+        Wallet found = walletService.createWallet(USER,TEST_CURRENCY);
+        assertEquals(wallet2.getId(), found.getId());
+        assertSame(currency, found.getCurrency());
+        Mockito.verify(currencyRepository, Mockito.never()).findByName(Mockito.anyString());
+    }
+
+    @Test
+    public void testCreateWallet_CurrencyAddedAfterRefresh() throws WalletException {
+        Currency added = new Currency(3, "NEW", LAST_UPDATED_BY);
+        Mockito.when(currencyRepository.findAll()).thenReturn(Arrays.asList(currency, added));
+        Mockito.when(currencyRepository.getOne(added.getId())).thenReturn(added);
+        Mockito.when(walletRepository.save(Mockito.any(Wallet.class))).thenReturn(wallet2);
+        try {
+            walletService.createWallet(USER, added.getName());
+            fail();
+        } catch (WalletException e) {
+            assertEquals(String.format(ErrorMessage.NO_CURRENCY_PRESENT, added.getName()), e.getMessage());
+        }
+
+        referenceData.refresh();
+        assertEquals(wallet2.getId(), walletService.createWallet(USER, added.getName()).getId());
+    }
+
     //   public Wallet updateWalletAmount(@NotNull Wallet wallet,@NotNull String amount,@NotNull Boolean isCredit) throws WalletException;
 
     @Test
@@ -201,7 +340,7 @@ public class WalletServiceTest {
         int amount = 30;
         Wallet found = walletService.updateWalletAmount(wallet1,String.valueOf(amount),true);
         assertEquals(found.getId(),wallet1.getId());
-        assertEquals(found.getBalance(),new BigDecimal(amount));
+        assertEquals(0, found.getBalance().compareTo(new BigDecimal(amount)));
     }
 
     @Test
@@ -209,7 +348,7 @@ public class WalletServiceTest {
         int amount = 10;
         Wallet found = walletService.updateWalletAmount(wallet2,String.valueOf(amount),false);
         assertEquals(found.getId(),wallet2.getId());
-        assertEquals(found.getBalance(),new BigDecimal(10));
+        assertEquals(0, found.getBalance().compareTo(new BigDecimal(10)));
     }
 
     @Test
@@ -217,7 +356,7 @@ public class WalletServiceTest {
         int amount = -10;
         Wallet found = walletService.updateWalletAmount(wallet2,String.valueOf(amount),false);
         assertEquals(found.getId(),wallet2.getId());
-        assertEquals(found.getBalance(),new BigDecimal(10));
+        assertEquals(0, found.getBalance().compareTo(new BigDecimal(10)));
     }
 
     @Test
@@ -232,6 +371,37 @@ public class WalletServiceTest {
         }
     }
 
+    @Test
+    public void testUpdateWalletAmount_StoredBalanceWithMoreDecimalPlaces() throws WalletException {
+        Wallet wallet = new Wallet(USER, new Currency(3, "JPY", LAST_UPDATED_BY), new BigDecimal("10.50"), LAST_UPDATED_BY);
+        wallet.setId(30);
+        Mockito.when(walletRepository.save(wallet)).thenReturn(wallet);
+        Wallet found = walletService.updateWalletAmount(wallet, "3", false);
+        assertEquals(0, found.getBalance().compareTo(new BigDecimal("7.50")));
+        //input amount is still checked against the scale of the currency
+        try {
+            walletService.updateWalletAmount(wallet, "1.5", true);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.AMOUNT_NOT_REPRESENTABLE, "1.5", 0, "JPY"), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testFindRecentTransactions() throws WalletException {
+        Transaction transaction = new Transaction("1", new TransactionType("C", "credit", LAST_UPDATED_BY), new BigDecimal(10), wallet1, currency, null);
+        Mockito.when(transactionRepository.findRecentByWalletId(wallet1.getId(), PageRequest.of(0, 5))).thenReturn(Arrays.asList(transaction));
+        assertEquals(Arrays.asList(transaction), walletService.findRecentTransactions(wallet1.getId(), 5));
+        try {
+            walletService.findRecentTransactions(wallet1.getId(), 0);
+            fail();
+        } catch (WalletException ex) {
+            assertEquals(String.format(ErrorMessage.RECENT_TRANSACTIONS_OUT_OF_RANGE, 100), ex.getMessage());
+            assertEquals(HttpStatus.BAD_REQUEST.value(), ex.getErrorCode());
+        }
+    }
+
     @Test
     public void testUpdateWalletAmount_AmountNotANumber() throws WalletException {
         String badAmount = "STTTT";